@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uci.jforests.dataset.Dataset;
+import edu.uci.jforests.dataset.DatasetLoader;
+import edu.uci.jforests.dataset.RankingDataset;
+import edu.uci.jforests.dataset.RankingDatasetLoader;
+
+/**
+ * Loading bin files which are written once in a temporary directory, with
+ * DatasetLoader and RankingDatasetLoader.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinFileLoadingBenchmark {
+
+	@Param({ "100000" })
+	public int numInstances;
+
+	@Param({ "100" })
+	public int numFeatures;
+
+	@Param({ "2", "256", "4096" })
+	public int numBins;
+
+	@Param({ "20" })
+	public int avgDocsPerQuery;
+
+	private File binFile;
+	private File rankingBinFile;
+
+	@Setup
+	public void setup() throws Exception {
+		binFile = File.createTempFile("jforests-benchmark", ".bin");
+		SyntheticData.writeDataset(binFile.getAbsolutePath(), numInstances, numFeatures, numBins, 0.5, 0.5, 1);
+
+		rankingBinFile = File.createTempFile("jforests-benchmark-ranking", ".bin");
+		SyntheticData.writeRankingDataset(rankingBinFile.getAbsolutePath(), numInstances / avgDocsPerQuery,
+				avgDocsPerQuery, numFeatures, numBins, 0.5, 2);
+	}
+
+	@TearDown
+	public void tearDown() {
+		binFile.delete();
+		rankingBinFile.delete();
+	}
+
+	@Benchmark
+	public Dataset load() throws Exception {
+		Dataset dataset = new Dataset();
+		InputStream in = new BufferedInputStream(new FileInputStream(binFile));
+		DatasetLoader.load(in, dataset);
+		in.close();
+		return dataset;
+	}
+
+	@Benchmark
+	public RankingDataset loadRanking() throws Exception {
+		RankingDataset dataset = new RankingDataset();
+		InputStream in = new BufferedInputStream(new FileInputStream(rankingBinFile));
+		RankingDatasetLoader.load(in, dataset);
+		in.close();
+		return dataset;
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uci.jforests.dataset.Dataset;
+import edu.uci.jforests.dataset.RankingDataset;
+import edu.uci.jforests.eval.AUC;
+import edu.uci.jforests.eval.ranking.MultiRankingEval;
+import edu.uci.jforests.eval.ranking.NDCGEval;
+import edu.uci.jforests.sample.RankingSample;
+import edu.uci.jforests.sample.Sample;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+
+/**
+ * Evaluating scores with NDCG (and several ranking measures at once) on a
+ * ranking data set and with exact and approximate AUC on a classification
+ * data set of the same number of instances.
+ *
+ * The thread pool is created once per JVM, so each value of numThreads runs
+ * in its own fork.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+
+	@Param({ "10000" })
+	public int numQueries;
+
+	@Param({ "20", "100" })
+	public int avgDocsPerQuery;
+
+	@Param({ "1", "4" })
+	public int numThreads;
+
+	private RankingSample rankingSample;
+	private Sample classificationSample;
+	private double[] scores;
+
+	private NDCGEval ndcg;
+	private MultiRankingEval multiRankingEval;
+	private AUC auc;
+	private AUC approximateAUC;
+
+	@Setup
+	public void setup() throws Exception {
+		BlockingThreadPoolExecutor.init(numThreads);
+		RankingDataset rankingDataset = SyntheticData.createRankingDataset(numQueries, avgDocsPerQuery, 1, 2, 0.5, 1);
+		rankingSample = new RankingSample(rankingDataset);
+		int numInstances = rankingDataset.numInstances;
+		Dataset dataset = SyntheticData.createDataset(numInstances, 1, 2, 0.5, 0.1, 2);
+		classificationSample = new Sample(dataset);
+		scores = SyntheticData.createScores(numInstances, 3);
+
+		ndcg = new NDCGEval(rankingDataset.maxDocsPerQuery, 10);
+		multiRankingEval = new MultiRankingEval(rankingDataset.maxDocsPerQuery, "NDCG@10+MAP+P@5", 10);
+		auc = new AUC();
+		approximateAUC = new AUC(1024);
+	}
+
+	@Benchmark
+	public double ndcg() throws Exception {
+		return ndcg.measure(scores, rankingSample);
+	}
+
+	@Benchmark
+	public double[] multiRankingEval() throws Exception {
+		return multiRankingEval.getMeasurements(scores, rankingSample);
+	}
+
+	@Benchmark
+	public double auc() {
+		return auc.measure(scores, classificationSample);
+	}
+
+	@Benchmark
+	public double approximateAUC() {
+		return approximateAUC.measure(scores, classificationSample);
+	}
+}
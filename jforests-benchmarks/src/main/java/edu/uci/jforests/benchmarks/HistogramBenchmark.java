@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uci.jforests.dataset.Feature;
+import edu.uci.jforests.dataset.NumericArrayFactory.NumericArrayType;
+import edu.uci.jforests.learning.trees.regression.RegressionHistogram;
+
+/**
+ * Building a histogram of one feature for the instances of a leaf
+ * (NumericArray.initHistogram) for each type of numeric array, and
+ * computing the histogram of a larger child by subtraction
+ * (Histogram.subtractFromMe).
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistogramBenchmark {
+
+	@Param({ "NULL", "BIT", "BYTE", "SHORT", "INT" })
+	public String arrayType;
+
+	@Param({ "100000", "1000000" })
+	public int numInstances;
+
+	/**
+	 * Fraction of the instances which are in the leaf
+	 */
+	@Param({ "1.0", "0.1" })
+	public double leafFraction;
+
+	/**
+	 * Number of bins of the feature (1 for NULL and 2 for BIT arrays)
+	 */
+	@Param({ "127" })
+	public int numBins;
+
+	@Param({ "0.5" })
+	public double sparsity;
+
+	private Feature feature;
+	private int numInstancesInLeaf;
+	private double[] targets;
+	private double[] weights;
+	private int[] indices;
+	private int[] instances;
+
+	private RegressionHistogram histogram;
+	private RegressionHistogram parentHistogram;
+
+	@Setup
+	public void setup() throws Exception {
+		feature = SyntheticData.createFeature(NumericArrayType.valueOf(arrayType), numBins, numInstances, sparsity, 1);
+
+		/*
+		 * The leaf holds a random subset of the instances, in their order
+		 * in the data set as in TreeLeafInstances.
+		 */
+		Random rnd = new Random(1);
+		numInstancesInLeaf = (int) (numInstances * leafFraction);
+		indices = new int[numInstancesInLeaf];
+		int count = 0;
+		for (int i = 0; i < numInstances && count < numInstancesInLeaf; i++) {
+			if (rnd.nextDouble() * (numInstances - i) < numInstancesInLeaf - count) {
+				indices[count++] = i;
+			}
+		}
+		instances = new int[numInstances];
+		for (int i = 0; i < numInstances; i++) {
+			instances[i] = i;
+		}
+		targets = SyntheticData.createScores(numInstancesInLeaf, 2);
+		weights = new double[numInstancesInLeaf];
+		Arrays.fill(weights, 1.0);
+
+		histogram = new RegressionHistogram(feature);
+		parentHistogram = new RegressionHistogram(feature);
+		initHistogram(parentHistogram);
+	}
+
+	private void initHistogram(RegressionHistogram h) {
+		Arrays.fill(h.perValueCount, 0);
+		Arrays.fill(h.perValueWeightedCount, 0);
+		Arrays.fill(h.perValueSumTargets, 0);
+		feature.bins.initHistogram(h, numInstancesInLeaf, targets, weights, indices, instances);
+	}
+
+	@Benchmark
+	public RegressionHistogram initHistogram() {
+		initHistogram(histogram);
+		return histogram;
+	}
+
+	/**
+	 * The counts of the parent histogram drift as it is subtracted from
+	 * repeatedly, which does not change the cost.
+	 */
+	@Benchmark
+	public RegressionHistogram subtractFromMe() throws Exception {
+		parentHistogram.subtractFromMe(histogram);
+		return parentHistogram;
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.benchmarks;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uci.jforests.dataset.RankingDataset;
+import edu.uci.jforests.eval.ranking.NDCGEval;
+import edu.uci.jforests.learning.boosting.LambdaMART;
+import edu.uci.jforests.sample.RankingSample;
+import edu.uci.jforests.sample.Sample;
+import edu.uci.jforests.util.ConfigHolder;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+
+/**
+ * Computing the lambda gradients of LambdaMART for all queries of a training
+ * set (the LambdaWorker tasks of LambdaMART.getSubLearnerSample). Without
+ * sub-sampling, the rest of getSubLearnerSample only clones the sample.
+ *
+ * The thread pool is created once per JVM, so each value of numThreads runs
+ * in its own fork.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LambdaBenchmark {
+
+	@Param({ "10000" })
+	public int numQueries;
+
+	@Param({ "20", "100" })
+	public int avgDocsPerQuery;
+
+	@Param({ "1", "4" })
+	public int numThreads;
+
+	private LambdaGradients lambdaMART;
+
+	/*
+	 * Exposes the protected gradient computation of LambdaMART
+	 */
+	private static class LambdaGradients extends LambdaMART {
+		public void setTrainSet(Sample trainSet, double[] scores) {
+			curTrainSet = trainSet;
+			System.arraycopy(scores, 0, trainPredictions, 0, trainSet.size);
+		}
+
+		public Sample computeGradients() {
+			return getSubLearnerSample();
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		BlockingThreadPoolExecutor.init(numThreads);
+		RankingDataset dataset = SyntheticData.createRankingDataset(numQueries, avgDocsPerQuery, 1, 2, 0.5, 1);
+		/*
+		 * As in ClassificationApp, training uses a sub sample of the data set
+		 */
+		RankingSample sample = new RankingSample(dataset).getRandomSubSample(1.0, new Random(1));
+
+		Properties properties = new Properties();
+		properties.setProperty("boosting.learning-rate", "0.05");
+		lambdaMART = new LambdaGradients();
+		lambdaMART.init(new ConfigHolder(properties), dataset, dataset.numInstances, dataset.numInstances, new NDCGEval(
+				dataset.maxDocsPerQuery, 10));
+		lambdaMART.setTrainSet(sample, SyntheticData.createScores(dataset.numInstances, 2));
+	}
+
+	@Benchmark
+	public Sample computeGradients() {
+		return lambdaMART.computeGradients();
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uci.jforests.dataset.Dataset;
+import edu.uci.jforests.input.BinMapper;
+import edu.uci.jforests.learning.LearningUtils;
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.sample.Sample;
+import edu.uci.jforests.scoring.BinnedEnsembleScorer;
+import edu.uci.jforests.scoring.CompiledEnsembleScorer;
+import edu.uci.jforests.scoring.EnsembleCompiler;
+import edu.uci.jforests.scoring.QuantizedEnsembleScorer;
+import edu.uci.jforests.scoring.QuantizedEnsembleScorer.LeafOutputType;
+
+/**
+ * Scoring a batch of instances with an ensemble of random trees: tree by
+ * tree on the data set as during training (LearningUtils.updateScores), and
+ * with the serving scorers on vectors which are already mapped to bins.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoringBenchmark {
+
+	@Param({ "100", "1000" })
+	public int numTrees;
+
+	@Param({ "7", "31" })
+	public int numLeaves;
+
+	@Param({ "1000" })
+	public int batchSize;
+
+	@Param({ "100" })
+	public int numFeatures;
+
+	@Param({ "256" })
+	public int numBins;
+
+	private Sample sample;
+	private Ensemble ensemble;
+	private int[][] bins;
+	private double[] scores;
+
+	private BinnedEnsembleScorer binnedScorer;
+	private QuantizedEnsembleScorer quantizedScorer;
+	private CompiledEnsembleScorer compiledScorer;
+
+	@Setup
+	public void setup() throws Exception {
+		Dataset dataset = SyntheticData.createDataset(batchSize, numFeatures, numBins, 0.5, 0.5, 1);
+		sample = new Sample(dataset);
+		ensemble = SyntheticData.createEnsemble(dataset, numTrees, numLeaves, 2);
+		bins = new int[batchSize][numFeatures];
+		for (int i = 0; i < batchSize; i++) {
+			for (int f = 0; f < numFeatures; f++) {
+				bins[i][f] = dataset.features[f].bins.get(i);
+			}
+		}
+		scores = new double[batchSize];
+
+		BinMapper binMapper = new BinMapper(dataset.features);
+		binnedScorer = new BinnedEnsembleScorer(ensemble, binMapper);
+		quantizedScorer = new QuantizedEnsembleScorer(binnedScorer, LeafOutputType.Fixed16);
+		compiledScorer = EnsembleCompiler.compile(binnedScorer);
+	}
+
+	@Benchmark
+	public double[] updateScores() {
+		Arrays.fill(scores, 0);
+		LearningUtils.updateScores(sample, scores, ensemble);
+		return scores;
+	}
+
+	@Benchmark
+	public double[] binnedScorer() {
+		binnedScorer.score(bins, batchSize, scores);
+		return scores;
+	}
+
+	@Benchmark
+	public double[] quantizedScorer() {
+		quantizedScorer.score(bins, batchSize, scores);
+		return scores;
+	}
+
+	@Benchmark
+	public double[] compiledScorer() {
+		compiledScorer.score(bins, batchSize, scores);
+		return scores;
+	}
+}
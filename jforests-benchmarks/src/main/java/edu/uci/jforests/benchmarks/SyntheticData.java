@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import edu.uci.jforests.dataset.Dataset;
+import edu.uci.jforests.dataset.DatasetLoader;
+import edu.uci.jforests.dataset.Feature;
+import edu.uci.jforests.dataset.NumericArray;
+import edu.uci.jforests.dataset.NumericArrayFactory;
+import edu.uci.jforests.dataset.NumericArrayFactory.NumericArrayType;
+import edu.uci.jforests.dataset.RankingDataset;
+import edu.uci.jforests.dataset.RankingDatasetLoader;
+import edu.uci.jforests.eval.ranking.NDCGEval;
+import edu.uci.jforests.input.RankingSyntheticBinFileGenerator;
+import edu.uci.jforests.input.SyntheticBinFileGenerator;
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.regression.RegressionTree;
+import edu.uci.jforests.learning.trees.regression.RegressionTreeSplit;
+
+/**
+ * Generates data sets, scores and ensembles for the benchmarks. Everything
+ * is deterministic for a given seed.
+ *
+ * Data sets are generated with SyntheticBinFileGenerator (as with
+ * --cmd=generate-synthetic) in a temporary bin file, which is then loaded.
+ */
+
+public class SyntheticData {
+
+	/**
+	 * Returns the number of bins which are used for features of the given
+	 * type: 1 for NULL, 2 for BIT and otherwise numBins, limited to the
+	 * values which the type can hold.
+	 */
+	public static int getNumBins(NumericArrayType type, int numBins) {
+		switch (type) {
+		case NULL:
+			return 1;
+		case BIT:
+			return 2;
+		case BYTE:
+			return Math.min(Byte.MAX_VALUE, numBins);
+		case SHORT:
+			return Math.min(Short.MAX_VALUE, numBins);
+		default:
+			return numBins;
+		}
+	}
+
+	/**
+	 * Writes a classification data set with labels 0 and 1 to the bin file
+	 */
+	public static void writeDataset(String binFile, int numInstances, int numFeatures, int numBins, double sparsity,
+			double positiveRate, long seed) throws Exception {
+		SyntheticBinFileGenerator generator = new SyntheticBinFileGenerator(binFile, numInstances, numFeatures);
+		generator.setNumBins(numBins);
+		generator.setSparsity(sparsity);
+		generator.setLabelDistribution(new double[] { 1 - positiveRate, positiveRate });
+		generator.setSeed(seed);
+		generator.generate();
+	}
+
+	/**
+	 * Writes a ranking data set with labels 0..4 to the bin file. Query
+	 * lengths are uniform in [1, 2 * avgDocsPerQuery - 1].
+	 */
+	public static void writeRankingDataset(String binFile, int numQueries, int avgDocsPerQuery, int numFeatures,
+			int numBins, double sparsity, long seed) throws Exception {
+		RankingSyntheticBinFileGenerator generator = new RankingSyntheticBinFileGenerator(binFile, numQueries
+				* avgDocsPerQuery, numFeatures);
+		generator.setAvgDocsPerQuery(avgDocsPerQuery);
+		generator.setNumBins(numBins);
+		generator.setSparsity(sparsity);
+		generator.setSeed(seed);
+		generator.generate();
+	}
+
+	private static File createTempFile() throws Exception {
+		File binFile = File.createTempFile("jforests-benchmark", ".bin");
+		binFile.delete();
+		binFile.deleteOnExit();
+		return binFile;
+	}
+
+	/**
+	 * Creates a classification data set with labels 0 and 1
+	 */
+	public static Dataset createDataset(int numInstances, int numFeatures, int numBins, double sparsity,
+			double positiveRate, long seed) throws Exception {
+		File binFile = createTempFile();
+		writeDataset(binFile.getAbsolutePath(), numInstances, numFeatures, numBins, sparsity, positiveRate, seed);
+		Dataset dataset = new Dataset();
+		InputStream in = new BufferedInputStream(new FileInputStream(binFile));
+		DatasetLoader.load(in, dataset);
+		in.close();
+		binFile.delete();
+		return dataset;
+	}
+
+	/**
+	 * Creates a ranking data set with labels 0..4. The maximum DCGs of the
+	 * queries are computed as in RankingApp, so the data set can be
+	 * evaluated with NDCG.
+	 */
+	public static RankingDataset createRankingDataset(int numQueries, int avgDocsPerQuery, int numFeatures,
+			int numBins, double sparsity, long seed) throws Exception {
+		File binFile = createTempFile();
+		writeRankingDataset(binFile.getAbsolutePath(), numQueries, avgDocsPerQuery, numFeatures, numBins, sparsity,
+				seed);
+		RankingDataset dataset = new RankingDataset();
+		InputStream in = new BufferedInputStream(new FileInputStream(binFile));
+		RankingDatasetLoader.load(in, dataset);
+		in.close();
+		binFile.delete();
+
+		NDCGEval.initialize(dataset.maxDocsPerQuery);
+		int[][] labelCounts = NDCGEval.getLabelCountsForQueries(dataset.targets, dataset.queryBoundaries);
+		dataset.maxDCG = NDCGEval.getMaxDCGForAllQueriesUptoTruncation(dataset.targets, dataset.queryBoundaries,
+				NDCGEval.MAX_TRUNCATION_LEVEL, labelCounts);
+		return dataset;
+	}
+
+	/**
+	 * Creates a feature whose bins are stored in an array of the given type.
+	 * The generator picks the smallest type for the number of bins, so the
+	 * values of larger types are copied from it.
+	 */
+	public static Feature createFeature(NumericArrayType type, int numBins, int numInstances, double sparsity, long seed)
+			throws Exception {
+		Feature generated = createDataset(numInstances, 1, getNumBins(type, numBins), sparsity, 0.5, seed).features[0];
+		if (generated.getType() == type) {
+			return generated;
+		}
+		NumericArray bins = NumericArrayFactory.createNumericArray(type, numInstances);
+		for (int i = 0; i < numInstances; i++) {
+			bins.set(i, generated.bins.get(i));
+		}
+		Feature feature = new Feature(bins);
+		feature.upperBounds = generated.upperBounds;
+		feature.setName(generated.getName());
+		feature.setMin(generated.getMin());
+		feature.setMax(generated.getMax());
+		feature.setFactor(generated.getFactor());
+		return feature;
+	}
+
+	public static double[] createScores(int size, long seed) {
+		Random rnd = new Random(seed);
+		double[] scores = new double[size];
+		for (int i = 0; i < size; i++) {
+			scores[i] = rnd.nextGaussian();
+		}
+		return scores;
+	}
+
+	/**
+	 * Creates an ensemble of random trees on the features of the data set.
+	 * Each tree is grown by splitting random leaves on random features and
+	 * thresholds until it has numLeaves leaves.
+	 */
+	public static Ensemble createEnsemble(Dataset dataset, int numTrees, int numLeaves, long seed) {
+		Random rnd = new Random(seed);
+		Ensemble ensemble = new Ensemble();
+		for (int t = 0; t < numTrees; t++) {
+			RegressionTree tree = new RegressionTree();
+			tree.init(numLeaves, Double.POSITIVE_INFINITY);
+			while (tree.numLeaves < numLeaves) {
+				RegressionTreeSplit split = new RegressionTreeSplit();
+				split.feature = rnd.nextInt(dataset.numFeatures);
+				Feature feature = dataset.features[split.feature];
+				int bin = rnd.nextInt(Math.max(1, feature.getNumberOfValues() - 1));
+				split.threshold = feature.upperBounds[bin];
+				split.originalThreshold = feature.getOriginalValue(split.threshold);
+				split.leftOutput = rnd.nextGaussian() * 0.1;
+				split.rightOutput = rnd.nextGaussian() * 0.1;
+				tree.split(rnd.nextInt(tree.numLeaves), split);
+			}
+			ensemble.addTree(tree, 1.0);
+		}
+		return ensemble;
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.benchmarks;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uci.jforests.dataset.Dataset;
+import edu.uci.jforests.dataset.Histogram;
+import edu.uci.jforests.learning.trees.TreeLeafInstances;
+import edu.uci.jforests.learning.trees.TreeSplit;
+import edu.uci.jforests.learning.trees.regression.RegressionCandidateSplitsForLeaf;
+import edu.uci.jforests.learning.trees.regression.RegressionHistogram;
+import edu.uci.jforests.learning.trees.regression.RegressionTreeLearner;
+import edu.uci.jforests.learning.trees.regression.RegressionTreeSplit;
+import edu.uci.jforests.sample.Sample;
+import edu.uci.jforests.util.ConfigHolder;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+
+/**
+ * Searching the best threshold of a feature in its histogram
+ * (RegressionTreeLearner.setBestThresholdForSplit) and partitioning the
+ * instances of a leaf on a split (TreeLeafInstances.split).
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeLearningBenchmark {
+
+	@Param({ "100000", "1000000" })
+	public int numInstances;
+
+	@Param({ "16", "256", "4096" })
+	public int numBins;
+
+	@Param({ "0.5" })
+	public double sparsity;
+
+	private Dataset dataset;
+	private Sample sample;
+	private SplitFinder splitFinder;
+	private Histogram histogram;
+	private TreeSplit split;
+
+	private TreeLeafInstances treeLeafInstances;
+	private int threshold;
+
+	/*
+	 * Exposes the protected split search of the learner
+	 */
+	private static class SplitFinder extends RegressionTreeLearner {
+		public void setTrainSet(Sample trainSet) {
+			curTrainSet = trainSet;
+		}
+
+		public void findBestThreshold(TreeSplit split, Histogram histogram) {
+			setBestThresholdForSplit(split, histogram);
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		BlockingThreadPoolExecutor.init(1);
+		dataset = SyntheticData.createDataset(numInstances, 1, numBins, sparsity, 0.5, 1);
+		dataset.targets = SyntheticData.createScores(numInstances, 2);
+		sample = new Sample(dataset);
+
+		Properties properties = new Properties();
+		properties.setProperty("trees.num-leaves", "2");
+		properties.setProperty("trees.min-instance-per-leaf", "10");
+		splitFinder = new SplitFinder();
+		splitFinder.init(dataset, new ConfigHolder(properties), numInstances);
+		splitFinder.setTrainSet(sample);
+
+		treeLeafInstances = new TreeLeafInstances(numInstances, 2);
+		treeLeafInstances.init(numInstances);
+		RegressionCandidateSplitsForLeaf candidateSplits = new RegressionCandidateSplitsForLeaf(1, numInstances);
+		candidateSplits.init(0, treeLeafInstances, sample);
+		histogram = new RegressionHistogram(dataset.features[0]);
+		histogram.init(candidateSplits, sample.indicesInDataset);
+		split = new RegressionTreeSplit();
+
+		threshold = dataset.features[0].upperBounds[dataset.features[0].getNumberOfValues() / 2];
+	}
+
+	@Benchmark
+	public TreeSplit setBestThresholdForSplit() {
+		splitFinder.findBestThreshold(split, histogram);
+		return split;
+	}
+
+	/**
+	 * Splits the root on the middle bin of the feature. The leaf instances
+	 * are reset first, which is a small part of the time.
+	 */
+	@Benchmark
+	public TreeLeafInstances split() {
+		treeLeafInstances.init(numInstances);
+		treeLeafInstances.split(0, dataset, 0, threshold, 1, sample.indicesInDataset);
+		return treeLeafInstances;
+	}
+}
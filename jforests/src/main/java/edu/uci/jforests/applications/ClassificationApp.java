@@ -29,8 +29,11 @@ import edu.uci.jforests.eval.Accuracy;
 import edu.uci.jforests.eval.BalancedYoundenIndex;
 import edu.uci.jforests.eval.EvaluationMetric;
 import edu.uci.jforests.eval.RMSE;
+import edu.uci.jforests.input.BinaryFileReader;
 import edu.uci.jforests.learning.LearningModule;
 import edu.uci.jforests.learning.LearningProgressListener;
+import edu.uci.jforests.learning.MemoryPlanner;
+import edu.uci.jforests.learning.TrainingProfiler;
 import edu.uci.jforests.learning.boosting.GradientBoosting;
 import edu.uci.jforests.learning.classification.GradientBoostingBinaryClassifier;
 import edu.uci.jforests.learning.trees.Ensemble;
@@ -41,6 +44,7 @@ import edu.uci.jforests.util.ConfigHolder;
 import edu.uci.jforests.util.Constants;
 import edu.uci.jforests.util.IOUtils;
 import edu.uci.jforests.util.Timer;
+import edu.uci.jforests.util.Util;
 import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
 
 /**
@@ -123,7 +127,7 @@ public class ClassificationApp {
 
 	protected EvaluationMetric getEvaluationMetric(String name) throws Exception {
 		if (name.equals("AUC")) {
-			return new AUC();
+			return new AUC(trainingConfig.aucBuckets);
 		} else if (name.equals("RMSE")) {
 			return new RMSE();
 		} else if (name.equals("Accuracy")) {
@@ -186,7 +190,86 @@ public class ClassificationApp {
 	}
 
 	protected int getMaxTrainInstances() {
-		return trainDataset.numInstances;
+		return getMaxTrainInstances(trainDataset.numInstances);
+	}
+
+	/**
+	 * Returns the number of training instances which learners need room for,
+	 * given the size of the training set
+	 */
+	protected int getMaxTrainInstances(int numTrainInstances) {
+		return numTrainInstances;
+	}
+
+	protected BinaryFileReader newBinaryFileReader(InputStream in) {
+		return new BinaryFileReader(in);
+	}
+
+	private BinaryFileReader readSummary(String uri) throws Exception {
+		InputStream in = ioUtils.getInputStream(uri);
+		BinaryFileReader reader = newBinaryFileReader(in);
+		reader.readSummary();
+		reader.close();
+		return reader;
+	}
+
+	/**
+	 * Estimates the memory which is needed for training from the headers of
+	 * the data sets, without loading them.
+	 */
+	protected MemoryPlanner planMemory() throws Exception {
+		BinaryFileReader trainSummary = readSummary(trainingConfig.trainFilename);
+		BinaryFileReader validSummary = null;
+		if (trainingConfig.validFilename != null) {
+			validSummary = readSummary(trainingConfig.validFilename);
+		}
+		return new MemoryPlanner(configHolder, trainingConfig, trainSummary, validSummary,
+				getMaxTrainInstances(trainSummary.getNumInstances()));
+	}
+
+	/**
+	 * Checks the estimate of the memory which is needed for training against
+	 * the memory budget. If it does not fit and auto-adjust is enabled, the
+	 * histogram pool is reduced. Returns false if training should not be
+	 * started.
+	 */
+	protected boolean checkMemoryBudget() throws Exception {
+		MemoryPlanner planner = planMemory();
+		System.out.println(planner);
+		long budget = trainingConfig.memoryBudget;
+		if (planner.getTotalBytes() <= budget) {
+			return true;
+		}
+		if (trainingConfig.memoryAutoAdjust && planner.adjust(budget)) {
+			planner.apply();
+			System.out.println("Adjusted to the memory budget of " + Util.formatByteSize(budget) + ": histogram pool size: "
+					+ planner.getHistogramPoolSize() + ", estimated memory: " + Util.formatByteSize(planner.getTotalBytes()));
+			return true;
+		}
+		System.out.println("Error: Estimated memory for training (" + Util.formatByteSize(planner.getTotalBytes())
+				+ ") exceeds the memory budget (" + Util.formatByteSize(budget) + ").");
+		return false;
+	}
+
+	/**
+	 * Prints the estimate of the memory which is needed for training and,
+	 * if a memory budget is set, whether training fits in it.
+	 */
+	public void estimateMemory(Properties configProperties) throws Exception {
+		configHolder = new ConfigHolder(configProperties);
+		loadConfig();
+		if (!trainingConfig.validate(ioUtils)) {
+			System.out.println("Error: " + trainingConfig.getErrorMessage());
+			return;
+		}
+		if (trainingConfig.memoryBudget > 0) {
+			if (checkMemoryBudget()) {
+				System.out.println("Training fits in the memory budget.");
+			}
+		} else {
+			System.out.println(planMemory());
+			System.out.println("Maximum heap size: " + Util.formatByteSize(Runtime.getRuntime().maxMemory()));
+		}
 	}
 
 	public Ensemble run(Properties configProperties) {
@@ -197,6 +280,9 @@ public class ClassificationApp {
 				System.out.println("Error: " + trainingConfig.getErrorMessage());
 				return null;
 			}
+			if (trainingConfig.memoryBudget > 0 && !checkMemoryBudget()) {
+				return null;
+			}
 			rnd = new Random(trainingConfig.randomSeed);
 
 			System.out.println("Loading datasets...");
@@ -239,10 +325,23 @@ public class ClassificationApp {
 
 			createLearner();
 
+			TrainingProfiler profiler = null;
+			if (trainingConfig.profileTraining) {
+				profiler = TrainingProfiler.init(trainingConfig.profileCsvFilename);
+			}
+
 			Timer timer = new Timer();
 			timer.start();
-			Ensemble ensemble = topLearner.learn(trainSet, validSet);
+			Ensemble ensemble;
+			try {
+				ensemble = topLearner.learn(trainSet, validSet);
+			} finally {
+				TrainingProfiler.disable();
+			}
 			System.out.println("Time taken to build model: " + (timer.getElapsedMillis() / 1000.0) + " seconds.");
+			if (profiler != null) {
+				System.out.println(profiler.getSummary());
+			}
 			return ensemble;
 
 		} catch (Exception e) {
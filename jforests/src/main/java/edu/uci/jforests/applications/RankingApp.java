@@ -28,10 +28,13 @@ import edu.uci.jforests.dataset.RankingDataset;
 import edu.uci.jforests.dataset.RankingDatasetLoader;
 import edu.uci.jforests.eval.EvaluationMetric;
 import edu.uci.jforests.eval.ranking.MAPEval;
+import edu.uci.jforests.eval.ranking.MultiRankingEval;
 import edu.uci.jforests.eval.ranking.NDCGEval;
 import edu.uci.jforests.eval.ranking.TRiskAwareFAROEval;
 import edu.uci.jforests.eval.ranking.TRiskAwareSAROEval;
 import edu.uci.jforests.eval.ranking.URiskAwareEval;
+import edu.uci.jforests.input.BinaryFileReader;
+import edu.uci.jforests.input.RankingBinFileReader;
 import edu.uci.jforests.learning.LearningModule;
 import edu.uci.jforests.learning.boosting.LambdaMART;
 import edu.uci.jforests.sample.RankingSample;
@@ -147,6 +150,9 @@ public class RankingApp extends ClassificationApp {
 		if (name.equals("MAP")) {
 			return new MAPEval(maxDocsPerQuery);
 		}
+		if (name.contains("+") || name.contains("@")) {
+			return new MultiRankingEval(maxDocsPerQuery, name, ((RankingTrainingConfig) trainingConfig).validNDCGTruncation);
+		}
 		
 		return super.getEvaluationMetric(name);
 	}
@@ -164,13 +170,18 @@ public class RankingApp extends ClassificationApp {
 	}
 
 	@Override
-	protected int getMaxTrainInstances() {
+	protected int getMaxTrainInstances(int numTrainInstances) {
 		RankingTrainingConfig config = (RankingTrainingConfig) trainingConfig;
 		if (config.augmentationDocSamplingEnabled) {
-			return trainDataset.numInstances * (config.augmentationDocSamplingTimes + 1);
+			return numTrainInstances * (config.augmentationDocSamplingTimes + 1);
 		} else {
-			return trainDataset.numInstances;
+			return numTrainInstances;
 		}
 	}
 
+	@Override
+	protected BinaryFileReader newBinaryFileReader(InputStream in) {
+		return new RankingBinFileReader(in);
+	}
+
 }
@@ -17,10 +17,14 @@
 
 package edu.uci.jforests.applications;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
@@ -31,15 +35,37 @@ import edu.uci.jforests.dataset.Dataset;
 import edu.uci.jforests.dataset.DatasetLoader;
 import edu.uci.jforests.dataset.RankingDataset;
 import edu.uci.jforests.dataset.RankingDatasetLoader;
+import edu.uci.jforests.eval.PrefixCurveEvaluator;
+import edu.uci.jforests.eval.ranking.MultiRankingEval;
+import edu.uci.jforests.eval.ranking.NDCGEval;
+import edu.uci.jforests.input.BinMapper;
 import edu.uci.jforests.input.RankingRaw2BinConvertor;
+import edu.uci.jforests.input.RankingSyntheticBinFileGenerator;
+import edu.uci.jforests.input.RankingSyntheticBinFileGenerator.QueryLengthDistribution;
 import edu.uci.jforests.input.Raw2BinConvertor;
+import edu.uci.jforests.input.SyntheticBinFileGenerator;
+import edu.uci.jforests.input.sparse.FastSparseTextFileReader;
+import edu.uci.jforests.input.sparse.SparseTextFileLine;
 import edu.uci.jforests.learning.LearningUtils;
 import edu.uci.jforests.learning.trees.Ensemble;
 import edu.uci.jforests.learning.trees.decision.DecisionTree;
+import edu.uci.jforests.learning.trees.regression.EnsembleCompactor;
 import edu.uci.jforests.learning.trees.regression.RegressionTree;
 import edu.uci.jforests.sample.RankingSample;
 import edu.uci.jforests.sample.Sample;
+import edu.uci.jforests.scoring.BinnedEnsembleScorer;
+import edu.uci.jforests.scoring.CascadeScorer;
+import edu.uci.jforests.scoring.CompactFeatureScorer;
+import edu.uci.jforests.scoring.CompiledEnsembleScorer;
+import edu.uci.jforests.scoring.EnsembleCompiler;
+import edu.uci.jforests.scoring.LeafIndexGenerator;
+import edu.uci.jforests.scoring.ModelRegistry;
+import edu.uci.jforests.scoring.QuantizedEnsembleScorer;
+import edu.uci.jforests.scoring.QuantizedEnsembleScorer.LeafOutputType;
+import edu.uci.jforests.scoring.ScoringServer;
+import edu.uci.jforests.scoring.TopKSelector;
 import edu.uci.jforests.util.IOUtils;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
 
 /**
  * @author Yasser Ganjisaffar <ganjisaffar at gmail dot com>
@@ -47,6 +73,21 @@ import edu.uci.jforests.util.IOUtils;
 
 public class Runner {
 
+	/**
+	 * Returns the number of threads of the --num-threads option, or the
+	 * number of processors if it is not given.
+	 */
+	private static int getNumThreads(OptionSet options) {
+		if (options.has("num-threads")) {
+			return Integer.parseInt((String) options.valueOf("num-threads"));
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	private static void initThreadPool(OptionSet options) {
+		BlockingThreadPoolExecutor.init(getNumThreads(options));
+	}
+
 	@SuppressWarnings("unchecked")
 	private static void generateBin(OptionSet options) throws Exception {
 		if (!options.has("folder")) {
@@ -59,6 +100,8 @@ public class Runner {
 			return;
 		}
 
+		initThreadPool(options);
+
 		String folder = (String) options.valueOf("folder");
 		List<String> filesList = (List<String>) options.valuesOf("file");
 		String[] files = new String[filesList.size()];
@@ -66,13 +109,82 @@ public class Runner {
 			files[i] = filesList.get(i);
 		}
 
+		Raw2BinConvertor convertor;
 		if (options.has("ranking")) {
 			System.out.println("Generating binary files for ranking data sets...");
-			new RankingRaw2BinConvertor().convert(folder, files);
+			convertor = new RankingRaw2BinConvertor();
 		} else {
 			System.out.println("Generating binary files...");
-			new Raw2BinConvertor().convert(folder, files);
+			convertor = new Raw2BinConvertor();
 		}
+		convertor.setWithSketches(options.has("feature-sketches"));
+		convertor.convert(folder, files);
+	}
+
+	/**
+	 * Generates a random bin file of the given size, e.g. for testing
+	 * training and scoring at scale.
+	 */
+	private static void generateSynthetic(OptionSet options) throws Exception {
+		if (!options.has("output-file")) {
+			System.err.println("Output file is not specified.");
+			return;
+		}
+
+		if (!options.has("num-instances")) {
+			System.err.println("Number of instances is not specified.");
+			return;
+		}
+
+		if (!options.has("num-features")) {
+			System.err.println("Number of features is not specified.");
+			return;
+		}
+
+		String binFile = (String) options.valueOf("output-file");
+		int numInstances = Integer.parseInt((String) options.valueOf("num-instances"));
+		int numFeatures = Integer.parseInt((String) options.valueOf("num-features"));
+
+		SyntheticBinFileGenerator generator;
+		if (options.has("ranking")) {
+			RankingSyntheticBinFileGenerator rankingGenerator = new RankingSyntheticBinFileGenerator(binFile,
+					numInstances, numFeatures);
+			if (options.has("docs-per-query")) {
+				rankingGenerator.setAvgDocsPerQuery(Integer.parseInt((String) options.valueOf("docs-per-query")));
+			}
+			if (options.has("query-length-distribution")) {
+				rankingGenerator.setQueryLengthDistribution(QueryLengthDistribution.valueOf((String) options
+						.valueOf("query-length-distribution")));
+			}
+			generator = rankingGenerator;
+		} else {
+			generator = new SyntheticBinFileGenerator(binFile, numInstances, numFeatures);
+		}
+
+		if (options.has("num-bins")) {
+			generator.setNumBins(Integer.parseInt((String) options.valueOf("num-bins")));
+		}
+		if (options.has("sparsity")) {
+			generator.setSparsity(Double.parseDouble((String) options.valueOf("sparsity")));
+		}
+		if (options.has("informative-features")) {
+			generator.setNumInformativeFeatures(Integer.parseInt((String) options.valueOf("informative-features")));
+		}
+		if (options.has("noise")) {
+			generator.setNoise(Double.parseDouble((String) options.valueOf("noise")));
+		}
+		if (options.has("label-distribution")) {
+			String[] parts = ((String) options.valueOf("label-distribution")).split(",");
+			double[] labelDistribution = new double[parts.length];
+			for (int l = 0; l < parts.length; l++) {
+				labelDistribution[l] = Double.parseDouble(parts[l].trim());
+			}
+			generator.setLabelDistribution(labelDistribution);
+		}
+		if (options.has("seed")) {
+			generator.setSeed(Long.parseLong((String) options.valueOf("seed")));
+		}
+		generator.generate();
 	}
 
 	private static void train(OptionSet options) throws Exception {
@@ -116,6 +228,28 @@ public class Runner {
 
 	}
 
+	private static void estimateMemory(OptionSet options) throws Exception {
+		if (!options.has("config-file")) {
+			System.err.println("The configurations file is not specified.");
+			return;
+		}
+
+		InputStream configInputStream = new FileInputStream((String) options.valueOf("config-file"));
+		Properties configProperties = new Properties();
+		configProperties.load(configInputStream);
+
+		if (options.has("train-file")) {
+			configProperties.put(TrainingConfig.TRAIN_FILENAME, options.valueOf("train-file"));
+		}
+
+		if (options.has("validation-file")) {
+			configProperties.put(TrainingConfig.VALID_FILENAME, options.valueOf("validation-file"));
+		}
+
+		ClassificationApp app = (options.has("ranking") ? new RankingApp() : new ClassificationApp());
+		app.estimateMemory(configProperties);
+	}
+
 	private static void predict(OptionSet options) throws Exception {
 
 		if (!options.has("model-file")) {
@@ -133,6 +267,67 @@ public class Runner {
 			return;
 		}
 
+		if (options.has("compact-features")) {
+			/*
+			 * The compact scorer only outputs scores; it uses the bin mapper
+			 * (if given) for discretizing the values, but none of the other
+			 * ways of scoring with a bin mapper
+			 */
+			String[] conflicts = { "leaf-indices", "compile", "quantize" };
+			for (String conflict : conflicts) {
+				if (options.has(conflict)) {
+					System.err.println("The options compact-features and " + conflict + " cannot be used together.");
+					return;
+				}
+			}
+		}
+
+		/*
+		 * Compiled and quantized scoring are only done for text files with a
+		 * bin mapper, when the scores (not the leaf indices) are output
+		 */
+		String[] binMapperScorers = { "compile", "quantize" };
+		for (String scorer : binMapperScorers) {
+			if (!options.has(scorer)) {
+				continue;
+			}
+			if (!options.has("bin-mapper")) {
+				System.err.println("The option " + scorer + " can only be used with bin-mapper.");
+				return;
+			}
+			if (options.has("leaf-indices")) {
+				System.err.println("The options " + scorer + " and leaf-indices cannot be used together.");
+				return;
+			}
+		}
+
+		if (options.has("compile") && options.has("quantize")) {
+			System.err.println("The options compile and quantize cannot be used together.");
+			return;
+		}
+
+		if (options.has("top-k")) {
+			/*
+			 * Only the scores of a ranking data set can be reduced to the top
+			 * documents of each query
+			 */
+			if (!options.has("ranking")) {
+				System.err.println("The option top-k can only be used for ranking.");
+				return;
+			}
+			String[] conflicts = { "compact-features", "bin-mapper", "leaf-indices" };
+			for (String conflict : conflicts) {
+				if (options.has(conflict)) {
+					System.err.println("The options top-k and " + conflict + " cannot be used together.");
+					return;
+				}
+			}
+			if (Integer.parseInt((String) options.valueOf("top-k")) <= 0) {
+				System.err.println("The value of top-k must be positive.");
+				return;
+			}
+		}
+
 		/*
 		 * Load the ensemble
 		 */
@@ -146,6 +341,122 @@ public class Runner {
 			System.err.println("Unknown tree type: " + options.valueOf("tree-type"));
 		}
 
+		PrintStream output;
+		if (options.has("output-file")) {
+			output = new PrintStream(new File((String) options.valueOf("output-file")));
+		} else {
+			output = System.out;
+		}
+
+		LeafIndexGenerator leafIndexGenerator = null;
+		if (options.has("leaf-indices")) {
+			initThreadPool(options);
+			leafIndexGenerator = new LeafIndexGenerator(ensemble, !"matrix".equals(options.valueOf("output-format")));
+		}
+
+		if (options.has("compact-features")) {
+			/*
+			 * Score the original text file, gathering only the features
+			 * which are used by the trees
+			 */
+			CompactFeatureScorer scorer;
+			if (options.has("bin-mapper")) {
+				scorer = new CompactFeatureScorer(ensemble, BinMapper.loadFromFile((String) options
+						.valueOf("bin-mapper")));
+			} else {
+				scorer = new CompactFeatureScorer(ensemble, 0);
+			}
+			System.err.println("Using " + scorer.getNumUsedFeatures() + " of " + scorer.getNumFeatures()
+					+ " features");
+			FastSparseTextFileReader reader = new FastSparseTextFileReader();
+			reader.open((String) options.valueOf("test-file"));
+			SparseTextFileLine line = new SparseTextFileLine();
+			double[] compactVector = new double[scorer.getNumUsedFeatures()];
+			int count = 0;
+			final long startms = System.currentTimeMillis();
+			while (reader.loadNextLine(line)) {
+				if (line.meta) {
+					continue;
+				}
+				output.println(scorer.score(line, compactVector));
+				count++;
+			}
+			reader.close();
+			final long stopms = System.currentTimeMillis();
+			System.err.println(count + " predictions in " + (stopms - startms) + " ms");
+			return;
+		}
+
+		if (options.has("bin-mapper")) {
+			BinMapper binMapper = BinMapper.loadFromFile((String) options.valueOf("bin-mapper"));
+			if (leafIndexGenerator != null) {
+				/*
+				 * Stream the leaf indices of the text file
+				 */
+				final long startms = System.currentTimeMillis();
+				long count = leafIndexGenerator.process((String) options.valueOf("test-file"), binMapper, output);
+				output.close();
+				final long stopms = System.currentTimeMillis();
+				System.err.println(count + " leaf index vectors in " + (stopms - startms) + " ms");
+				return;
+			}
+
+			/*
+			 * Score the original text file using the bins of the training set
+			 */
+			BinnedEnsembleScorer scorer = new BinnedEnsembleScorer(ensemble, binMapper);
+			CompiledEnsembleScorer compiledScorer = null;
+			if (options.has("compile")) {
+				if (EnsembleCompiler.canCompile(scorer)) {
+					compiledScorer = EnsembleCompiler.compile(scorer);
+				} else {
+					System.err.println("The ensemble has trees which are too large to be compiled, using the interpreted scorer.");
+				}
+			}
+			QuantizedEnsembleScorer quantizedScorer = null;
+			if (options.has("quantize")) {
+				quantizedScorer = new QuantizedEnsembleScorer(scorer, LeafOutputType.valueOf((String) options
+						.valueOf("quantize")));
+			}
+			double maxDeviation = 0;
+			long quantizedNanos = 0;
+			FastSparseTextFileReader reader = new FastSparseTextFileReader();
+			reader.open((String) options.valueOf("test-file"));
+			SparseTextFileLine line = new SparseTextFileLine();
+			int[] bins = new int[binMapper.getNumFeatures()];
+			int count = 0;
+			final long startms = System.currentTimeMillis();
+			while (reader.loadNextLine(line)) {
+				if (line.meta) {
+					continue;
+				}
+				if (compiledScorer != null) {
+					output.println(compiledScorer.score(line, bins));
+				} else if (quantizedScorer != null) {
+					/*
+					 * Check the accuracy against the double model
+					 */
+					long start = System.nanoTime();
+					double score = quantizedScorer.score(line, bins);
+					quantizedNanos += System.nanoTime() - start;
+					output.println(score);
+					maxDeviation = Math.max(maxDeviation, Math.abs(score - scorer.score(bins)));
+				} else {
+					output.println(scorer.score(line, bins));
+				}
+				count++;
+			}
+			reader.close();
+			final long stopms = System.currentTimeMillis();
+			System.err.println(count + " predictions in " + (stopms - startms) + " ms");
+			if (quantizedScorer != null) {
+				System.err.println("Quantized scoring: " + (quantizedNanos / 1000000) + " ms, model size: "
+						+ quantizedScorer.getSizeInBytes() + " bytes (double model: " + scorer.getSizeInBytes()
+						+ " bytes), max deviation from the double model: " + maxDeviation);
+			}
+			return;
+		}
+
 		/*
 		 * Load the data set
 		 */
@@ -161,25 +472,430 @@ public class Runner {
 			sample = new Sample(dataset);
 		}
 		in.close();
+
+		if (leafIndexGenerator != null) {
+			final long startms = System.currentTimeMillis();
+			long count = leafIndexGenerator.process(sample.dataset, output);
+			output.close();
+			final long stopms = System.currentTimeMillis();
+			System.err.println(count + " leaf index vectors in " + (stopms - startms) + " ms");
+			return;
+		}
+
 		final long startms = System.currentTimeMillis();
 		double[] predictions = new double[sample.size];
 		LearningUtils.updateScores(sample, predictions, ensemble);
 		final long stopms = System.currentTimeMillis();
 		System.err.println(sample.size + " predictions in "+ (stopms - startms) + " ms");
 
-		PrintStream output;
-		if (options.has("output-file")) {
-			output = new PrintStream(new File((String) options.valueOf("output-file")));
-		} else {
-			output = System.out;
+		if (options.has("top-k")) {
+			/*
+			 * Output the top documents of each query instead of all scores
+			 */
+			initThreadPool(options);
+			TopKSelector selector = new TopKSelector(Integer.parseInt((String) options.valueOf("top-k")));
+			selector.select(((RankingSample) sample).queryBoundaries, predictions);
+			if ("binary".equals(options.valueOf("output-format"))) {
+				DataOutputStream binaryOutput = new DataOutputStream(new BufferedOutputStream(output));
+				selector.writeBinary(binaryOutput);
+				binaryOutput.close();
+			} else {
+				selector.writeTsv(output);
+				output.flush();
+			}
+			return;
 		}
-		
+
 		for (int i = 0; i < sample.size; i++) {
 			output.println(predictions[i]);
 		}
 
 	}
 
+	private static void extractBinMapper(OptionSet options) throws Exception {
+		if (!options.has("train-file")) {
+			System.err.println("The bin file of the training set is not specified.");
+			return;
+		}
+
+		if (!options.has("output-file")) {
+			System.err.println("Output file is not specified.");
+			return;
+		}
+
+		InputStream in = new IOUtils().getInputStream((String) options.valueOf("train-file"));
+		Dataset dataset;
+		if (options.has("ranking")) {
+			dataset = new RankingDataset();
+			RankingDatasetLoader.load(in, (RankingDataset) dataset);
+		} else {
+			dataset = new Dataset();
+			DatasetLoader.load(in, dataset);
+		}
+		in.close();
+		new BinMapper(dataset.features).saveToFile((String) options.valueOf("output-file"));
+	}
+
+	private static void loadCanary(ModelRegistry registry, String filename, double maxDeviation) {
+		List<int[]> indices = new ArrayList<int[]>();
+		List<double[]> values = new ArrayList<double[]>();
+		FastSparseTextFileReader reader = new FastSparseTextFileReader();
+		reader.open(filename);
+		SparseTextFileLine line = new SparseTextFileLine();
+		while (reader.loadNextLine(line)) {
+			if (line.meta) {
+				continue;
+			}
+			int[] lineIndices = new int[line.numPairs];
+			double[] lineValues = new double[line.numPairs];
+			for (int i = 0; i < line.numPairs; i++) {
+				lineIndices[i] = line.pairs[i].featureIndex - 1;
+				lineValues[i] = line.pairs[i].featureValue;
+			}
+			indices.add(lineIndices);
+			values.add(lineValues);
+		}
+		reader.close();
+		registry.setCanary(indices.toArray(new int[indices.size()][]), values.toArray(new double[values.size()][]),
+				maxDeviation);
+	}
+
+	private static void serve(OptionSet options) throws Exception {
+
+		if (!options.has("model-file")) {
+			System.err.println("Model file is not specified.");
+			return;
+		}
+
+		if (!options.has("bin-mapper")) {
+			System.err.println("Bin mapper is not specified.");
+			return;
+		}
+
+		int port = 8765;
+		if (options.has("port")) {
+			port = Integer.parseInt((String) options.valueOf("port"));
+		}
+		int maxBatchSize = 256;
+		if (options.has("max-batch-size")) {
+			maxBatchSize = Integer.parseInt((String) options.valueOf("max-batch-size"));
+		}
+		int maxBatchDelay = 1000;
+		if (options.has("max-batch-delay")) {
+			maxBatchDelay = Integer.parseInt((String) options.valueOf("max-batch-delay"));
+		}
+		int numThreads = getNumThreads(options);
+
+		int maxRecentModels = 4;
+		if (options.has("max-recent-models")) {
+			maxRecentModels = Integer.parseInt((String) options.valueOf("max-recent-models"));
+		}
+
+		ModelRegistry registry = new ModelRegistry(maxRecentModels);
+		if (options.has("canary-file")) {
+			double maxDeviation = Double.POSITIVE_INFINITY;
+			if (options.has("max-canary-deviation")) {
+				maxDeviation = Double.parseDouble((String) options.valueOf("max-canary-deviation"));
+			}
+			loadCanary(registry, (String) options.valueOf("canary-file"), maxDeviation);
+		}
+		registry.load("default", (String) options.valueOf("model-file"), (String) options.valueOf("bin-mapper"), true);
+
+		ScoringServer server = new ScoringServer(registry, port, maxBatchSize, maxBatchDelay, numThreads);
+		if (options.has("model-dir")) {
+			// Clients can load models of this directory
+			server.setModelDirectory(new File((String) options.valueOf("model-dir")));
+		}
+		server.start();
+		System.err.println("Listening on localhost:" + server.getPort());
+		server.join();
+	}
+
+	private static RankingSample loadRankingSample(String filename) throws Exception {
+		InputStream in = new IOUtils().getInputStream(filename);
+		RankingDataset dataset = new RankingDataset();
+		RankingDatasetLoader.load(in, dataset);
+		in.close();
+		NDCGEval.initialize(dataset.maxDocsPerQuery);
+		int[][] labelCounts = NDCGEval.getLabelCountsForQueries(dataset.targets, dataset.queryBoundaries);
+		dataset.maxDCG = NDCGEval.getMaxDCGForAllQueriesUptoTruncation(dataset.targets, dataset.queryBoundaries,
+				NDCGEval.MAX_TRUNCATION_LEVEL, labelCounts);
+		return new RankingSample(dataset);
+	}
+
+	private static int[] parseIntList(String str) {
+		String[] parts = str.split(",");
+		int[] result = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			result[i] = Integer.parseInt(parts[i].trim());
+		}
+		return result;
+	}
+
+	private static void printCascadeResult(String name, double ndcg, long treeEvaluations, long fullTreeEvaluations,
+			long ms, long fullMs) {
+		System.out.println(name + "\t" + ndcg + "\t" + treeEvaluations + "\t"
+				+ String.format("%.1f%%", 100.0 * treeEvaluations / fullTreeEvaluations) + "\t" + ms + "\t"
+				+ String.format("%.2f", (double) fullMs / Math.max(ms, 1)));
+	}
+
+	/**
+	 * Compares the NDCG and the cost of early-exit cascades with scoring
+	 * all documents by all trees.
+	 */
+	private static void cascadeReport(OptionSet options) throws Exception {
+
+		if (!options.has("model-file")) {
+			System.err.println("Model file is not specified.");
+			return;
+		}
+
+		if (!options.has("test-file")) {
+			System.err.println("Test file is not specified.");
+			return;
+		}
+
+		initThreadPool(options);
+
+		int topK = 10;
+		if (options.has("top-k")) {
+			topK = Integer.parseInt((String) options.valueOf("top-k"));
+		}
+
+		Ensemble ensemble = new Ensemble();
+		ensemble.loadFromFile(RegressionTree.class, new File((String) options.valueOf("model-file")));
+		int numTrees = ensemble.getNumTrees();
+		int[] stageEnds;
+		if (options.has("stages")) {
+			stageEnds = parseIntList((String) options.valueOf("stages"));
+		} else {
+			stageEnds = new int[] { Math.max(1, numTrees / 10), Math.max(2, numTrees / 3) };
+		}
+
+		RankingSample sample = loadRankingSample((String) options.valueOf("test-file"));
+		NDCGEval ndcg = new NDCGEval(((RankingDataset) sample.dataset).maxDocsPerQuery, Math.min(topK,
+				NDCGEval.MAX_TRUNCATION_LEVEL));
+
+		System.out.println("Scorer\tNDCG@" + Math.min(topK, NDCGEval.MAX_TRUNCATION_LEVEL)
+				+ "\tTreeEvaluations\tOfFull\tTimeMs\tSpeedup");
+
+		double[] scores = new double[sample.size];
+		long startms = System.currentTimeMillis();
+		LearningUtils.updateScores(sample, scores, ensemble);
+		long fullMs = System.currentTimeMillis() - startms;
+		long fullTreeEvaluations = (long) sample.size * numTrees;
+		printCascadeResult("Full", ndcg.measure(scores, sample), fullTreeEvaluations, fullTreeEvaluations, fullMs,
+				fullMs);
+
+		CascadeScorer cascade = new CascadeScorer(ensemble, stageEnds, topK);
+		String stages = "stages " + Arrays.toString(cascade.getStageEnds()).replace(" ", "");
+
+		if (options.has("rank-cutoffs")) {
+			int[] rankCutoffs = parseIntList((String) options.valueOf("rank-cutoffs"));
+			cascade.setRankCutoffs(rankCutoffs);
+			cascade.resetNumTreeEvaluations();
+			startms = System.currentTimeMillis();
+			cascade.score(sample, scores);
+			long ms = System.currentTimeMillis() - startms;
+			printCascadeResult("RankCutoffs " + Arrays.toString(rankCutoffs).replace(" ", "") + " " + stages,
+					ndcg.measure(scores, sample), cascade.getNumTreeEvaluations(), fullTreeEvaluations, ms, fullMs);
+			cascade.setRankCutoffs(null);
+		}
+
+		if (options.has("validation-file")) {
+			RankingSample validSample = loadRankingSample((String) options.valueOf("validation-file"));
+			String[] missRates = (options.has("miss-rates") ? (String) options.valueOf("miss-rates") : "0,0.01,0.05")
+					.split(",");
+			for (String missRate : missRates) {
+				cascade.learnScoreThresholds(validSample, Double.parseDouble(missRate));
+				cascade.resetNumTreeEvaluations();
+				startms = System.currentTimeMillis();
+				cascade.score(sample, scores);
+				long ms = System.currentTimeMillis() - startms;
+				printCascadeResult("Thresholds (miss rate " + missRate.trim() + ") " + stages,
+						ndcg.measure(scores, sample), cascade.getNumTreeEvaluations(), fullTreeEvaluations, ms,
+						fullMs);
+			}
+		}
+	}
+
+	private static long getScoringTime(Sample sample, Ensemble ensemble) {
+		double[] scores = new double[sample.size];
+		long best = Long.MAX_VALUE;
+		for (int run = 0; run < 3; run++) {
+			Arrays.fill(scores, 0);
+			long startms = System.currentTimeMillis();
+			LearningUtils.updateScores(sample, scores, ensemble);
+			best = Math.min(best, System.currentTimeMillis() - startms);
+		}
+		return best;
+	}
+
+	private static int getNumLeaves(Ensemble ensemble) {
+		int numLeaves = 0;
+		for (int t = 0; t < ensemble.getNumTrees(); t++) {
+			numLeaves += ensemble.getTreeAt(t).numLeaves;
+		}
+		return numLeaves;
+	}
+
+	private static double printCompactionResult(String name, Ensemble ensemble, RankingSample sample, NDCGEval ndcg,
+			long[] ms) throws Exception {
+		double[] scores = new double[sample.size];
+		LearningUtils.updateScores(sample, scores, ensemble);
+		double value = ndcg.measure(scores, sample);
+		ms[0] = getScoringTime(sample, ensemble);
+		System.out.println(name + "\t" + ensemble.getNumTrees() + "\t" + getNumLeaves(ensemble) + "\t" + value + "\t"
+				+ ms[0]);
+		return value;
+	}
+
+	/**
+	 * Compacts a trained ensemble: folds tree weights and constant trees,
+	 * removes redundant splits, merges identical trees and, if a validation
+	 * file is given, prunes low-contribution trees within the allowed NDCG
+	 * loss. Reports the size, NDCG and scoring time of each step.
+	 */
+	private static void compact(OptionSet options) throws Exception {
+
+		if (!options.has("model-file")) {
+			System.err.println("Model file is not specified.");
+			return;
+		}
+
+		if (!options.has("test-file")) {
+			System.err.println("Test file is not specified.");
+			return;
+		}
+
+		initThreadPool(options);
+
+		int truncation = NDCGEval.MAX_TRUNCATION_LEVEL;
+		if (options.has("top-k")) {
+			truncation = Math.min(truncation, Integer.parseInt((String) options.valueOf("top-k")));
+		}
+		double maxLoss = 0;
+		if (options.has("max-ndcg-loss")) {
+			maxLoss = Double.parseDouble((String) options.valueOf("max-ndcg-loss"));
+		}
+
+		Ensemble ensemble = new Ensemble();
+		ensemble.loadFromFile(RegressionTree.class, new File((String) options.valueOf("model-file")));
+		RankingSample sample = loadRankingSample((String) options.valueOf("test-file"));
+		NDCGEval ndcg = new NDCGEval(((RankingDataset) sample.dataset).maxDocsPerQuery, truncation);
+
+		System.out.println("Model\tTrees\tLeaves\tNDCG@" + truncation + "\tTimeMs");
+		long[] ms = new long[1];
+		double originalNDCG = printCompactionResult("Original", ensemble, sample, ndcg, ms);
+		long originalMs = ms[0];
+
+		EnsembleCompactor compactor = new EnsembleCompactor(ensemble);
+		compactor.removeRedundantSplits();
+		compactor.mergeIdenticalTrees();
+		Ensemble compacted = compactor.getEnsemble();
+		double compactedNDCG = printCompactionResult("Compacted", compacted, sample, ndcg, ms);
+		System.err.println("Removed splits: " + compactor.getNumRemovedSplits() + ", constant trees: "
+				+ compactor.getNumConstantTrees() + ", merged trees: " + compactor.getNumMergedTrees());
+
+		if (options.has("validation-file")) {
+			RankingSample validSample = loadRankingSample((String) options.valueOf("validation-file"));
+			NDCGEval validNDCG = new NDCGEval(((RankingDataset) validSample.dataset).maxDocsPerQuery, truncation);
+			compactor.pruneTrees(validSample, validNDCG, maxLoss);
+			compacted = compactor.getEnsemble();
+			compactedNDCG = printCompactionResult("Pruned", compacted, sample, ndcg, ms);
+			System.err.println("Pruned trees: " + compactor.getNumPrunedTrees());
+		}
+
+		double pointsLost = 100 * (originalNDCG - compactedNDCG);
+		long msSaved = originalMs - ms[0];
+		System.out.println("Scoring time saved: " + msSaved + " ms ("
+				+ String.format("%.1f%%", 100.0 * msSaved / Math.max(originalMs, 1)) + "), NDCG points lost: "
+				+ String.format("%.4f", pointsLost));
+		if (pointsLost > 0) {
+			System.out.println("Time saved per NDCG point lost: " + String.format("%.1f", msSaved / pointsLost)
+					+ " ms");
+		}
+
+		if (options.has("output-model")) {
+			PrintStream ensembleOutput = new PrintStream(new File((String) options.valueOf("output-model")));
+			ensembleOutput.println(compacted);
+			ensembleOutput.close();
+		}
+	}
+
+	/**
+	 * Evaluates the prefixes of a ranking ensemble (every 'interval' trees)
+	 * on one or more (comma separated) bin files in one pass per file and
+	 * prints the curves, e.g. to select the number of trees after training.
+	 */
+	private static void prefixCurve(OptionSet options) throws Exception {
+
+		if (!options.has("model-file")) {
+			System.err.println("Model file is not specified.");
+			return;
+		}
+
+		if (!options.has("test-file")) {
+			System.err.println("Test file is not specified.");
+			return;
+		}
+
+		int interval = 10;
+		if (options.has("interval")) {
+			interval = Integer.parseInt((String) options.valueOf("interval"));
+			if (interval <= 0) {
+				System.err.println("The interval must be a positive number of trees.");
+				return;
+			}
+		}
+
+		initThreadPool(options);
+		String metric = "NDCG@" + NDCGEval.MAX_TRUNCATION_LEVEL;
+		if (options.has("metric")) {
+			metric = (String) options.valueOf("metric");
+		}
+
+		Ensemble ensemble = new Ensemble();
+		ensemble.loadFromFile(RegressionTree.class, new File((String) options.valueOf("model-file")));
+		PrefixCurveEvaluator evaluator = new PrefixCurveEvaluator(ensemble, interval);
+		int[] checkpoints = evaluator.getCheckpoints();
+
+		String[] files = ((String) options.valueOf("test-file")).split(",");
+		double[][] curves = new double[files.length][];
+		for (int f = 0; f < files.length; f++) {
+			RankingSample sample = loadRankingSample(files[f]);
+			MultiRankingEval eval = new MultiRankingEval(((RankingDataset) sample.dataset).maxDocsPerQuery, metric,
+					NDCGEval.MAX_TRUNCATION_LEVEL);
+			curves[f] = evaluator.evaluate(sample, eval);
+		}
+
+		StringBuilder sb = new StringBuilder("Trees");
+		for (int f = 0; f < files.length; f++) {
+			sb.append('\t').append(new File(files[f]).getName());
+		}
+		System.out.println(sb);
+		for (int c = 0; c < checkpoints.length; c++) {
+			sb.setLength(0);
+			sb.append(checkpoints[c]);
+			for (int f = 0; f < files.length; f++) {
+				sb.append('\t').append(curves[f][c]);
+			}
+			System.out.println(sb);
+		}
+		for (int f = 0; f < files.length; f++) {
+			int best = 0;
+			for (int c = 1; c < checkpoints.length; c++) {
+				if (curves[f][c] > curves[f][best]) {
+					best = c;
+				}
+			}
+			if (checkpoints.length > 0) {
+				System.err.println("Best " + metric + " on " + files[f] + ": " + curves[f][best] + " with "
+						+ checkpoints[best] + " trees");
+			}
+		}
+	}
+
 	public static void main(String[] args) throws Exception {
 
 		OptionParser parser = new OptionParser();
@@ -192,6 +908,22 @@ public class Runner {
 		 */
 		parser.accepts("folder").withRequiredArg();
 		parser.accepts("file").withRequiredArg();
+		parser.accepts("num-threads").withRequiredArg();
+		parser.accepts("feature-sketches");
+
+		/*
+		 * Synthetic data arguments
+		 */
+		parser.accepts("num-instances").withRequiredArg();
+		parser.accepts("num-features").withRequiredArg();
+		parser.accepts("num-bins").withRequiredArg();
+		parser.accepts("sparsity").withRequiredArg();
+		parser.accepts("informative-features").withRequiredArg();
+		parser.accepts("noise").withRequiredArg();
+		parser.accepts("label-distribution").withRequiredArg();
+		parser.accepts("docs-per-query").withRequiredArg();
+		parser.accepts("query-length-distribution").withRequiredArg();
+		parser.accepts("seed").withRequiredArg();
 
 		/*
 		 * Training arguments
@@ -208,6 +940,42 @@ public class Runner {
 		parser.accepts("tree-type").withRequiredArg();
 		parser.accepts("test-file").withRequiredArg();
 		parser.accepts("output-file").withRequiredArg();
+		parser.accepts("bin-mapper").withRequiredArg();
+		parser.accepts("top-k").withRequiredArg();
+		parser.accepts("output-format").withRequiredArg();
+		parser.accepts("compile");
+		parser.accepts("quantize").withRequiredArg();
+		parser.accepts("compact-features");
+		parser.accepts("leaf-indices");
+
+		/*
+		 * Scoring server arguments
+		 */
+		parser.accepts("port").withRequiredArg();
+		parser.accepts("max-batch-size").withRequiredArg();
+		parser.accepts("max-batch-delay").withRequiredArg();
+		parser.accepts("max-recent-models").withRequiredArg();
+		parser.accepts("canary-file").withRequiredArg();
+		parser.accepts("max-canary-deviation").withRequiredArg();
+		parser.accepts("model-dir").withRequiredArg();
+
+		/*
+		 * Cascade report arguments
+		 */
+		parser.accepts("stages").withRequiredArg();
+		parser.accepts("rank-cutoffs").withRequiredArg();
+		parser.accepts("miss-rates").withRequiredArg();
+
+		/*
+		 * Compaction arguments
+		 */
+		parser.accepts("max-ndcg-loss").withRequiredArg();
+
+		/*
+		 * Prefix curve arguments
+		 */
+		parser.accepts("interval").withRequiredArg();
+		parser.accepts("metric").withRequiredArg();
 
 		OptionSet options = parser.parse(args);
 
@@ -218,10 +986,24 @@ public class Runner {
 
 		if (options.valueOf("cmd").equals("generate-bin")) {
 			generateBin(options);
+		} else if (options.valueOf("cmd").equals("generate-synthetic")) {
+			generateSynthetic(options);
 		} else if (options.valueOf("cmd").equals("train")) {
 			train(options);
+		} else if (options.valueOf("cmd").equals("estimate-memory")) {
+			estimateMemory(options);
 		} else if (options.valueOf("cmd").equals("predict")) {
 			predict(options);
+		} else if (options.valueOf("cmd").equals("extract-bin-mapper")) {
+			extractBinMapper(options);
+		} else if (options.valueOf("cmd").equals("serve")) {
+			serve(options);
+		} else if (options.valueOf("cmd").equals("cascade-report")) {
+			cascadeReport(options);
+		} else if (options.valueOf("cmd").equals("compact")) {
+			compact(options);
+		} else if (options.valueOf("cmd").equals("prefix-curve")) {
+			prefixCurve(options);
 		} else {
 			System.err.println("Unknown command: " + options.valueOf("cmd"));
 		}
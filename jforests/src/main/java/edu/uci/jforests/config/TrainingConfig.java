@@ -21,6 +21,7 @@ import java.util.Map.Entry;
 
 import edu.uci.jforests.util.ConfigHolder;
 import edu.uci.jforests.util.IOUtils;
+import edu.uci.jforests.util.Util;
 
 /**
  * @author Yasser Ganjisaffar <ganjisaffar at gmail dot com>
@@ -64,6 +65,14 @@ public class TrainingConfig extends ComponentConfig {
 	public String evaluationMetric = "AUC";
 	private final static String LEARNING_EVALUATION_METRIC = "learning.evaluation-metric";	
 
+	/**
+	 * If this parameter is set to a positive value, AUC is approximated from
+	 * histograms with this number of buckets instead of sorting all scores.
+	 * This is much cheaper for monitoring large validation sets.
+	 */
+	public int aucBuckets = 0;
+	private final static String LEARNING_AUC_BUCKETS = "learning.evaluation-metric.auc-buckets";
+
 	/**
 	 * If this parameter is set to a value less than 1.0, only a fraction of
 	 * the training data will be used for training.
@@ -107,6 +116,39 @@ public class TrainingConfig extends ComponentConfig {
 	public boolean printIntermediateValidMeasurements = false;
 	private final static String PRINT_INTERMEDIATE_VALID_MEASUREMENTS = "params.print-intermediate-valid-measurements";	
 
+	/**
+	 * If this parameter is set to true, the time of each phase of training
+	 * is recorded for each tree iteration (see TrainingProfiler) and a summary
+	 * is printed at the end of training.
+	 */
+	public boolean profileTraining = false;
+	private final static String PROFILE_TRAINING = "params.profile-training";
+
+	/**
+	 * If profiling is enabled and this parameter is set, the profile of each
+	 * iteration is written as a line of this CSV file.
+	 */
+	public String profileCsvFilename = null;
+	private final static String PROFILE_CSV_FILENAME = "params.profile-training.csv-file";
+
+	/**
+	 * If this parameter is set, the memory which is needed for training is
+	 * estimated from the headers of the data sets before loading them (see
+	 * MemoryPlanner) and training is refused if the estimate exceeds this
+	 * budget. The value is a number of bytes with an optional k, m or g
+	 * suffix (e.g. 8g).
+	 */
+	public long memoryBudget = -1;
+	private final static String MEMORY_BUDGET = "params.memory-budget";
+
+	/**
+	 * If this parameter is set to true, training which does not fit in the
+	 * memory budget is run with a smaller histogram pool instead of being
+	 * refused, if this is enough.
+	 */
+	public boolean memoryAutoAdjust = false;
+	private final static String MEMORY_AUTO_ADJUST = "params.memory-budget.auto-adjust";
+
 	public void init(ConfigHolder config) {
 		for (Entry<Object, Object> entry : config.getEntries()) {
 			String key = ((String) entry.getKey()).toLowerCase();
@@ -122,6 +164,8 @@ public class TrainingConfig extends ComponentConfig {
 				learningAlgorithm = value;
 			} else if (key.equals(LEARNING_EVALUATION_METRIC)) {
 				evaluationMetric = value;
+			} else if (key.equals(LEARNING_AUC_BUCKETS)) {
+				aucBuckets = Integer.parseInt(value);
 			} else if (key.equals(TRAIN_FRACTION)) {
 				trainFraction = Double.parseDouble(value);
 			} else if (key.equals(VALID_FRACTION)) {
@@ -134,7 +178,15 @@ public class TrainingConfig extends ComponentConfig {
 				validOutOfTrain = Boolean.parseBoolean(value);
 			} else if (key.equals(PRINT_INTERMEDIATE_VALID_MEASUREMENTS)) {
 				printIntermediateValidMeasurements = Boolean.parseBoolean(value);
-			} 
+			} else if (key.equals(PROFILE_TRAINING)) {
+				profileTraining = Boolean.parseBoolean(value);
+			} else if (key.equals(PROFILE_CSV_FILENAME)) {
+				profileCsvFilename = value;
+			} else if (key.equals(MEMORY_BUDGET)) {
+				memoryBudget = Util.parseByteSize(value);
+			} else if (key.equals(MEMORY_AUTO_ADJUST)) {
+				memoryAutoAdjust = Boolean.parseBoolean(value);
+			}
 		}
 	}
 
@@ -170,6 +222,10 @@ public class TrainingConfig extends ComponentConfig {
 		sb.append(NUM_THREADS + ": " + numThreads + "\n");
 		sb.append(RANDOM_SEED + ": " + randomSeed + "\n");
 		sb.append(PRINT_INTERMEDIATE_VALID_MEASUREMENTS + ": " + printIntermediateValidMeasurements + "\n");
+		sb.append(PROFILE_TRAINING + ": " + profileTraining + "\n");
+		sb.append(PROFILE_CSV_FILENAME + ": " + profileCsvFilename + "\n");
+		sb.append(MEMORY_BUDGET + ": " + memoryBudget + "\n");
+		sb.append(MEMORY_AUTO_ADJUST + ": " + memoryAutoAdjust + "\n");
 		return sb.toString();
 	}
 }
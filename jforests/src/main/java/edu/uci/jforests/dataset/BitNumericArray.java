@@ -47,7 +47,11 @@ public class BitNumericArray extends NumericArray {
 
 	@Override
 	public void set(int index, int value) {
-		data[index / 8] |= (byte) (value << (index % 8));
+		if (value == 0) {
+			data[index / 8] &= (byte) ~(1 << (index % 8));
+		} else {
+			data[index / 8] |= (byte) (1 << (index % 8));
+		}
 	}
 
 	@Override
@@ -51,4 +51,25 @@ public class NumericArrayFactory {
 			throw new Exception(type + " is not implemented yet.");
 		}
 	}
+
+	/**
+	 * Returns the number of bytes of a numeric array of the given type and
+	 * length in bin files (as getSizeInBytes of the array) without creating
+	 * the array.
+	 */
+	public static int getSizeInBytes(NumericArrayType type, int length) throws Exception {
+		switch (type) {
+		case NULL:
+			return 0;
+		case BIT:
+			return (int) Math.ceil(length / 8.0);
+		case BYTE:
+			return length;
+		case SHORT:
+		case INT:
+			return 2 * length;
+		default:
+			throw new Exception(type + " is not implemented yet.");
+		}
+	}
 }
@@ -17,85 +17,260 @@
 
 package edu.uci.jforests.eval;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
 import edu.uci.jforests.sample.Sample;
+import edu.uci.jforests.util.ArraysUtil;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+import edu.uci.jforests.util.concurrency.TaskCollection;
+import edu.uci.jforests.util.concurrency.TaskItem;
 
 /**
+ * Area under the ROC curve. Instances with label 1 are positive and all
+ * other instances are negative.
+ * 
+ * The exact AUC sorts the scores of positive and negative instances
+ * separately (in parallel for large samples) and merges them, so instances
+ * with equal scores form one point of the curve. With a number of buckets,
+ * the AUC is approximated from histograms of the scores over that many
+ * equal width buckets between the smallest and the largest score: scores in
+ * the same bucket are treated as ties. This needs two parallel passes over
+ * the sample, one for the range of the scores and one for the histograms,
+ * and is meant for monitoring during training. The workers and their
+ * histograms are reused between calls, so an instance must not be used by
+ * several threads at the same time.
+ * 
+ * NaN scores are ranked above all other scores (as by Double.compare) and
+ * are ties of each other.
+ * 
  * @author Yasser Ganjisaffar <ganjisaffar at gmail dot com>
  */
 
 public class AUC extends EvaluationMetric {
 
+	private int numBuckets;
+
+	/*
+	 * Workers and histograms of the approximate AUC, reused between calls
+	 */
+	private TaskCollection<HistogramWorker> workers;
+	private long[] positives;
+	private long[] negatives;
+
 	public AUC() {
+		this(0);
+	}
+
+	/**
+	 * @param numBuckets
+	 *            number of histogram buckets of the approximate AUC. Zero
+	 *            computes the exact AUC.
+	 */
+	public AUC(int numBuckets) {
 		super(true);
+		this.numBuckets = numBuckets;
 	}
 
 	@Override
 	public double measure(double[] predictions, Sample sample) {
+		if (numBuckets > 0) {
+			return measureApproximately(predictions, sample);
+		}
 		int totalPositive = 0;
-		int totalNegative = 0;
-		List<DoubleDoublePair> sortedProb = new ArrayList<DoubleDoublePair>();
 		for (int i = 0; i < sample.size; i++) {
-			double label = sample.targets[i];
-			sortedProb.add(new DoubleDoublePair(predictions[i], label));
-			if (label == 0) {
-				totalNegative++;
-			} else {
+			if (sample.targets[i] == 1) {
 				totalPositive++;
 			}
 		}
-		Collections.sort(sortedProb);
+		int totalNegative = sample.size - totalPositive;
+		double[] positiveScores = new double[totalPositive];
+		double[] negativeScores = new double[totalNegative];
+		int p = 0;
+		int n = 0;
+		for (int i = 0; i < sample.size; i++) {
+			if (sample.targets[i] == 1) {
+				positiveScores[p++] = predictions[i];
+			} else {
+				negativeScores[n++] = predictions[i];
+			}
+		}
+		ArraysUtil.parallelSort(positiveScores, totalPositive);
+		ArraysUtil.parallelSort(negativeScores, totalNegative);
 
-		double fp = 0;
-		double tp = 0;
-		double fpPrev = 0;
-		double tpPrev = 0;
+		/*
+		 * Walk down the distinct scores, adding one trapezoid per score
+		 */
 		double area = 0;
-		double fPrev = Double.MIN_VALUE;
-
-		int i = 0;
-		while (i < sortedProb.size()) {
-			DoubleDoublePair pair = sortedProb.get(i);
-			double curF = pair.key;
-			if (curF != fPrev) {
-				area += Math.abs(fp - fpPrev) * ((tp + tpPrev) / 2.0);
-				fPrev = curF;
-				fpPrev = fp;
-				tpPrev = tp;
+		double tp = 0;
+		double fp = 0;
+		p = totalPositive - 1;
+		n = totalNegative - 1;
+		while (p >= 0 || n >= 0) {
+			double score;
+			if (p < 0) {
+				score = negativeScores[n];
+			} else if (n < 0) {
+				score = positiveScores[p];
+			} else if (Double.compare(positiveScores[p], negativeScores[n]) >= 0) {
+				score = positiveScores[p];
+			} else {
+				score = negativeScores[n];
 			}
-			double label = pair.value;
-			if (label == +1) {
+			double tpPrev = tp;
+			double fpPrev = fp;
+			while (p >= 0 && isTie(positiveScores[p], score)) {
 				tp++;
-			} else {
+				p--;
+			}
+			while (n >= 0 && isTie(negativeScores[n], score)) {
 				fp++;
+				n--;
 			}
-			i++;
+			area += (fp - fpPrev) * ((tp + tpPrev) / 2.0);
 		}
-		area += Math.abs(totalNegative - fpPrev) * ((totalPositive + tpPrev) / 2.0);
 		area /= ((double) totalPositive * totalNegative);
 		return area;
 	}
 
-	private static class DoubleDoublePair implements Comparable<DoubleDoublePair> {
-		public double key;
-		public double value;
+	/*
+	 * Unlike ==, NaN scores are ties of each other. Unlike Double.compare,
+	 * 0.0 and -0.0 are ties.
+	 */
+	private static boolean isTie(double a, double b) {
+		return a == b || (Double.isNaN(a) && Double.isNaN(b));
+	}
+
+	private double measureApproximately(double[] predictions, Sample sample) {
+		BlockingThreadPoolExecutor executor = BlockingThreadPoolExecutor.getInstance();
+		int numWorkers = (executor != null ? executor.getMaximumPoolSize() : 1);
+		if (workers == null || workers.getSize() != numWorkers) {
+			workers = new TaskCollection<HistogramWorker>();
+			for (int i = 0; i < numWorkers; i++) {
+				workers.addTask(new HistogramWorker(numBuckets));
+			}
+			positives = new long[numBuckets];
+			negatives = new long[numBuckets];
+		}
+		int chunkSize = 1 + sample.size / numWorkers;
+		for (int i = 0; i < numWorkers; i++) {
+			int begin = Math.min(sample.size, i * chunkSize);
+			workers.getTask(i).init(predictions, sample.targets, begin, Math.min(sample.size, begin + chunkSize));
+		}
+
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		runWorkers(executor);
+		for (int w = 0; w < numWorkers; w++) {
+			min = Math.min(min, workers.getTask(w).min);
+			max = Math.max(max, workers.getTask(w).max);
+		}
+
+		double scale = (max > min ? numBuckets / (max - min) : 0);
+		for (int w = 0; w < numWorkers; w++) {
+			workers.getTask(w).initHistogram(min, scale);
+		}
+		runWorkers(executor);
+		Arrays.fill(positives, 0);
+		Arrays.fill(negatives, 0);
+		for (int w = 0; w < numWorkers; w++) {
+			HistogramWorker worker = workers.getTask(w);
+			for (int b = 0; b < numBuckets; b++) {
+				positives[b] += worker.positives[b];
+				negatives[b] += worker.negatives[b];
+			}
+		}
+
+		double area = 0;
+		double tp = 0;
+		double fp = 0;
+		for (int b = numBuckets - 1; b >= 0; b--) {
+			double tpPrev = tp;
+			tp += positives[b];
+			fp += negatives[b];
+			area += negatives[b] * ((tp + tpPrev) / 2.0);
+		}
+		return area / (tp * fp);
+	}
+
+	private void runWorkers(BlockingThreadPoolExecutor executor) {
+		if (workers.getSize() == 1 || executor == null) {
+			for (int i = 0; i < workers.getSize(); i++) {
+				workers.getTask(i).run();
+			}
+		} else {
+			workers.run();
+		}
+	}
+
+	/*
+	 * Finds the range of the scores after init() is called and fills the
+	 * histograms after initHistogram() is called.
+	 */
+	private static class HistogramWorker extends TaskItem {
+
+		private double[] predictions;
+		private double[] targets;
+		private int begin;
+		private int end;
+
+		private boolean findRange;
+		private double min;
+		private double max;
+		private double scale;
+		private long[] positives;
+		private long[] negatives;
 
-		public DoubleDoublePair(double key, double value) {
-			this.key = key;
-			this.value = value;
+		public HistogramWorker(int numBuckets) {
+			positives = new long[numBuckets];
+			negatives = new long[numBuckets];
+		}
+
+		public void init(double[] predictions, double[] targets, int begin, int end) {
+			this.predictions = predictions;
+			this.targets = targets;
+			this.begin = begin;
+			this.end = end;
+			findRange = true;
+		}
+
+		public void initHistogram(double min, double scale) {
+			this.min = min;
+			this.scale = scale;
+			findRange = false;
 		}
 
 		@Override
-		public int compareTo(DoubleDoublePair o) {
-			if (this.key > o.key) {
-				return -1;
-			} else if (this.key < o.key) {
-				return 1;
+		public void run() {
+			if (findRange) {
+				min = Double.POSITIVE_INFINITY;
+				max = Double.NEGATIVE_INFINITY;
+				// NaN scores are not part of the range
+				for (int i = begin; i < end; i++) {
+					if (predictions[i] < min) {
+						min = predictions[i];
+					}
+					if (predictions[i] > max) {
+						max = predictions[i];
+					}
+				}
+				return;
+			}
+			Arrays.fill(positives, 0);
+			Arrays.fill(negatives, 0);
+			int lastBucket = positives.length - 1;
+			for (int i = begin; i < end; i++) {
+				int bucket;
+				if (Double.isNaN(predictions[i])) {
+					bucket = lastBucket;
+				} else {
+					bucket = Math.min(lastBucket, (int) ((predictions[i] - min) * scale));
+				}
+				if (targets[i] == 1) {
+					positives[bucket]++;
+				} else {
+					negatives[bucket]++;
+				}
 			}
-			return 0;
 		}
 	}
 }
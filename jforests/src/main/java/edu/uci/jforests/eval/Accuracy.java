@@ -17,26 +17,29 @@
 
 package edu.uci.jforests.eval;
 
-import edu.uci.jforests.sample.Sample;
-
 /**
  * @author Yasser Ganjisaffar <ganjisaffar at gmail dot com>
  */
 
-public class Accuracy extends EvaluationMetric {
+public class Accuracy extends ParallelEvaluationMetric {
 	
 	public Accuracy() {
-		super(true);
+		super(true, 1);
 	}
 	
 	@Override
-	public double measure(double[] predictions, Sample sample) {
+	protected void accumulate(double[] predictions, double[] targets, int begin, int end, double[] sums) {
 		int correctCount = 0;
-		for (int i = 0; i < sample.size; i++) {
-			if (sample.targets[i] == predictions[i]) {
+		for (int i = begin; i < end; i++) {
+			if (targets[i] == predictions[i]) {
 				correctCount++;
-			}			
-		}		
-		return (double) correctCount / sample.size;
+			}
+		}
+		sums[0] += correctCount;
+	}
+
+	@Override
+	protected double getResult(double[] sums, int size) {
+		return sums[0] / size;
 	}
 }
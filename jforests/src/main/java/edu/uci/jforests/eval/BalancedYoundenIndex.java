@@ -17,28 +17,26 @@
 
 package edu.uci.jforests.eval;
 
-import edu.uci.jforests.sample.Sample;
-
 /**
  * @author Yasser Ganjisaffar <ganjisaffar at gmail dot com>
  */
 
-public class BalancedYoundenIndex extends EvaluationMetric {
+public class BalancedYoundenIndex extends ParallelEvaluationMetric {
 	
 	private static final double THRESHOLD = 0.5;
 	
 	public BalancedYoundenIndex() {
-		super(true);
+		super(true, 4);
 	}
 	
 	@Override
-	public double measure(double[] predictions, Sample sample) {
+	protected void accumulate(double[] predictions, double[] targets, int begin, int end, double[] sums) {
 		int tp = 0;
 		int tn = 0;
 		int fn = 0;
 		int fp = 0;
-		for (int i = 0; i < sample.size; i++) {
-			double target = sample.targets[i];
+		for (int i = begin; i < end; i++) {
+			double target = targets[i];
 			double pred = predictions[i];
 			if (target > THRESHOLD) {
 				if (pred > THRESHOLD) {
@@ -54,10 +52,17 @@ public class BalancedYoundenIndex extends EvaluationMetric {
 				}
 			}
 		}
-		
-		double sensitivity = (double) tp / (tp + fn);
-		double specificity = (double) tn / (tn + fp);
-		
+		sums[0] += tp;
+		sums[1] += tn;
+		sums[2] += fn;
+		sums[3] += fp;
+	}
+
+	@Override
+	protected double getResult(double[] sums, int size) {
+		double sensitivity = sums[0] / (sums[0] + sums[2]);
+		double specificity = sums[1] / (sums[1] + sums[3]);
+
 		return Math.min(sensitivity, specificity);
 	}
 }
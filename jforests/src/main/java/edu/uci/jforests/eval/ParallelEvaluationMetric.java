@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.eval;
+
+import java.util.Arrays;
+
+import edu.uci.jforests.sample.Sample;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+import edu.uci.jforests.util.concurrency.TaskCollection;
+import edu.uci.jforests.util.concurrency.TaskItem;
+
+/**
+ * Base class of metrics which are computed from a few sums over the
+ * instances of a sample. The sums are computed by workers over chunks of
+ * the sample in parallel and are then added up in the order of the chunks,
+ * so the result only depends on the number of threads. The workers and
+ * their sums are reused between calls, so an instance must not be used by
+ * several threads at the same time.
+ */
+
+public abstract class ParallelEvaluationMetric extends EvaluationMetric {
+
+	/*
+	 * Samples smaller than this are processed by the calling thread
+	 */
+	private final static int MIN_PARALLEL_SIZE = 1 << 14;
+
+	private int numSums;
+	private double[] sums;
+	private TaskCollection<SumWorker> workers;
+
+	public ParallelEvaluationMetric(boolean isLargerBetter, int numSums) {
+		super(isLargerBetter);
+		this.numSums = numSums;
+		sums = new double[numSums];
+	}
+
+	/**
+	 * Adds the contributions of the instances in [begin, end) to the sums.
+	 * The sums are cleared by the caller, so implementations must add to
+	 * them rather than assign them.
+	 */
+	protected abstract void accumulate(double[] predictions, double[] targets, int begin, int end, double[] sums);
+
+	/**
+	 * Computes the metric from the sums over all instances of the sample.
+	 */
+	protected abstract double getResult(double[] sums, int size);
+
+	@Override
+	public double measure(double[] predictions, Sample sample) {
+		BlockingThreadPoolExecutor executor = BlockingThreadPoolExecutor.getInstance();
+		int numWorkers = (executor != null ? executor.getMaximumPoolSize() : 1);
+		Arrays.fill(sums, 0);
+		if (numWorkers == 1 || sample.size < MIN_PARALLEL_SIZE) {
+			accumulate(predictions, sample.targets, 0, sample.size, sums);
+			return getResult(sums, sample.size);
+		}
+
+		if (workers == null || workers.getSize() != numWorkers) {
+			workers = new TaskCollection<SumWorker>();
+			for (int i = 0; i < numWorkers; i++) {
+				workers.addTask(new SumWorker());
+			}
+		}
+		int chunkSize = 1 + sample.size / numWorkers;
+		for (int i = 0; i < numWorkers; i++) {
+			int begin = Math.min(sample.size, i * chunkSize);
+			workers.getTask(i).init(predictions, sample.targets, begin, Math.min(sample.size, begin + chunkSize));
+		}
+		workers.run();
+		for (int i = 0; i < numWorkers; i++) {
+			double[] workerSums = workers.getTask(i).sums;
+			for (int s = 0; s < numSums; s++) {
+				sums[s] += workerSums[s];
+			}
+		}
+		return getResult(sums, sample.size);
+	}
+
+	private class SumWorker extends TaskItem {
+
+		private double[] predictions;
+		private double[] targets;
+		private int begin;
+		private int end;
+		private double[] sums;
+
+		public SumWorker() {
+			sums = new double[numSums];
+		}
+
+		public void init(double[] predictions, double[] targets, int begin, int end) {
+			this.predictions = predictions;
+			this.targets = targets;
+			this.begin = begin;
+			this.end = end;
+		}
+
+		@Override
+		public void run() {
+			Arrays.fill(sums, 0);
+			accumulate(predictions, targets, begin, end, sums);
+		}
+	}
+}
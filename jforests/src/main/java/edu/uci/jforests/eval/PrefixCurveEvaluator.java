@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.regression.RegressionTree;
+import edu.uci.jforests.sample.Sample;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+
+/**
+ * Evaluates a metric for the prefixes of an ensemble (the first k, 2k, ...
+ * trees and the whole ensemble) in one pass over the trees. The scores of
+ * the sample are updated tree by tree; at each checkpoint a copy of the
+ * scores is evaluated on a separate thread while the scores of the next
+ * trees are computed. The metric may use the shared thread pool, the scores
+ * are computed on threads of their own.
+ *
+ * The scores of each prefix are added up in the order of the trees, so they
+ * are the same as the scores of the prefix of the ensemble as a model.
+ */
+
+public class PrefixCurveEvaluator {
+
+	private Ensemble ensemble;
+	private int[] checkpoints;
+
+	/**
+	 * @param interval
+	 *            number of trees between checkpoints (positive)
+	 */
+	public PrefixCurveEvaluator(Ensemble ensemble, int interval) throws Exception {
+		if (interval <= 0) {
+			throw new Exception("Invalid interval: " + interval + " (must be positive)");
+		}
+		this.ensemble = ensemble;
+		int numTrees = ensemble.getNumTrees();
+		checkpoints = new int[(numTrees + interval - 1) / interval];
+		for (int c = 0; c < checkpoints.length; c++) {
+			checkpoints[c] = Math.min(numTrees, (c + 1) * interval);
+		}
+	}
+
+	/**
+	 * Returns the number of trees at each checkpoint
+	 */
+	public int[] getCheckpoints() {
+		return checkpoints;
+	}
+
+	/**
+	 * Returns the measurement of each checkpoint on the sample
+	 */
+	public double[] evaluate(Sample sample, final EvaluationMetric metric) throws Exception {
+		double[] curve = new double[checkpoints.length];
+		if (checkpoints.length == 0) {
+			return curve;
+		}
+		double[] scores = new double[sample.size];
+
+		/*
+		 * One copy is evaluated while the next one is filled
+		 */
+		double[][] snapshots = new double[2][sample.size];
+
+		BlockingThreadPoolExecutor executor = BlockingThreadPoolExecutor.getInstance();
+		int numWorkers = (executor != null ? executor.getMaximumPoolSize() : 1);
+		int chunkSize = 1 + sample.size / numWorkers;
+		List<ScoreWorker> workers = new ArrayList<ScoreWorker>();
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int begin = 0; begin < sample.size; begin += chunkSize) {
+			ScoreWorker worker = new ScoreWorker(sample, scores, begin, Math.min(sample.size, begin + chunkSize));
+			workers.add(worker);
+			tasks.add(Executors.callable(worker));
+		}
+
+		/*
+		 * The scores are computed on their own threads rather than on the
+		 * shared thread pool: the metrics use the shared pool, whose await()
+		 * waits for all of its tasks, so sharing it would make each step wait
+		 * for the other one.
+		 */
+		ExecutorService scorer = (workers.size() > 1 ? Executors.newFixedThreadPool(workers.size()) : null);
+		ExecutorService evaluator = Executors.newSingleThreadExecutor();
+		try {
+			Future<Double> pending = null;
+			int firstTree = 0;
+			for (int c = 0; c < checkpoints.length; c++) {
+				for (ScoreWorker worker : workers) {
+					worker.init(firstTree, checkpoints[c]);
+				}
+				if (scorer == null) {
+					for (ScoreWorker worker : workers) {
+						worker.run();
+					}
+				} else {
+					for (Future<Object> future : scorer.invokeAll(tasks)) {
+						getResult(future);
+					}
+				}
+				firstTree = checkpoints[c];
+
+				final double[] snapshot = snapshots[c % 2];
+				System.arraycopy(scores, 0, snapshot, 0, sample.size);
+				if (pending != null) {
+					curve[c - 1] = getResult(pending);
+				}
+				final Sample evalSample = sample;
+				pending = evaluator.submit(new Callable<Double>() {
+					@Override
+					public Double call() throws Exception {
+						return metric.measure(snapshot, evalSample);
+					}
+				});
+			}
+			curve[checkpoints.length - 1] = getResult(pending);
+		} finally {
+			if (scorer != null) {
+				scorer.shutdownNow();
+			}
+			evaluator.shutdownNow();
+		}
+		return curve;
+	}
+
+	private <T> T getResult(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private class ScoreWorker implements Runnable {
+
+		private Sample sample;
+		private double[] scores;
+		private int begin;
+		private int end;
+		private int firstTree;
+		private int lastTree;
+
+		public ScoreWorker(Sample sample, double[] scores, int begin, int end) {
+			this.sample = sample;
+			this.scores = scores;
+			this.begin = begin;
+			this.end = end;
+		}
+
+		public void init(int firstTree, int lastTree) {
+			this.firstTree = firstTree;
+			this.lastTree = lastTree;
+		}
+
+		@Override
+		public void run() {
+			for (int t = firstTree; t < lastTree; t++) {
+				RegressionTree tree = (RegressionTree) ensemble.getTreeAt(t);
+				double weight = ensemble.getWeightAt(t);
+				for (int i = begin; i < end; i++) {
+					int instance = (sample.indicesInDataset == null ? i : sample.indicesInDataset[i]);
+					scores[i] += weight * tree.getOutput(sample.dataset, instance);
+				}
+			}
+		}
+	}
+}
@@ -17,27 +17,29 @@
 
 package edu.uci.jforests.eval;
 
-import edu.uci.jforests.sample.Sample;
-
 /**
  * @author Yasser Ganjisaffar <ganjisaffar at gmail dot com>
  */
 
-public class RMSE extends EvaluationMetric {
+public class RMSE extends ParallelEvaluationMetric {
 	
 	public RMSE() {
-		super(false);
+		super(false, 1);
 	}
 	
 	@Override
-	public double measure(double[] predictions, Sample sample) {
-		double rmse = 0;
+	protected void accumulate(double[] predictions, double[] targets, int begin, int end, double[] sums) {
+		double sum = 0;
 		double diff;
-		for (int i = 0; i < sample.size; i++) {
-			diff = sample.targets[i] - predictions[i];
-			rmse += diff * diff;
+		for (int i = begin; i < end; i++) {
+			diff = targets[i] - predictions[i];
+			sum += diff * diff;
 		}
-		rmse = Math.sqrt(rmse / sample.size);
-		return rmse;
+		sums[0] += sum;
+	}
+
+	@Override
+	protected double getResult(double[] sums, int size) {
+		return Math.sqrt(sums[0] / size);
 	}
 }
@@ -56,6 +56,7 @@ public class MAPEval extends RankingEvaluationMetric {
 		private int beginIdx;
 		private int endIdx;
 		private double result;
+		private double[] queryResults;
 		private ScoreBasedComparator comparator;
 
 		public MAPWorker() {
@@ -63,10 +64,12 @@ public class MAPEval extends RankingEvaluationMetric {
 			comparator = new ScoreBasedComparator();			
 		}
 
-		public void init(RankingSample sample, double[] scores, int beginIdx, int endIdx, TieBreaker tieBreaker) {
+		public void init(RankingSample sample, double[] scores, int beginIdx, int endIdx, TieBreaker tieBreaker,
+				double[] queryResults) {
 			this.sample = sample;
 			this.beginIdx = beginIdx;
 			this.endIdx = endIdx;
+			this.queryResults = queryResults;
 			comparator.labels = sample.targets;
 			comparator.scores = scores;
 			comparator.tieBreaker = tieBreaker;
@@ -100,9 +103,11 @@ public class MAPEval extends RankingEvaluationMetric {
 							avgPrecision += ((double) numRelevant / (pos + 1));
 						}						
 					}
-					if (numRelevant > 0) {
-						result += (avgPrecision / numRelevant);
-					}					
+					double value = (numRelevant > 0 ? avgPrecision / numRelevant : 0);
+					result += value;
+					if (queryResults != null) {
+						queryResults[q] = value;
+					}
 				} catch (Exception e) {
 					e.printStackTrace();
 				}
@@ -112,6 +117,17 @@ public class MAPEval extends RankingEvaluationMetric {
 	}
 
 	public double[] getMAP(double[] predictions, Sample sample, TieBreaker tieBreaker) throws Exception {
+		double[] result = new double[((RankingSample) sample).numQueries];
+		getMAP(predictions, sample, tieBreaker, result);
+		return result;
+	}
+
+	/**
+	 * Stores the average precision of each query in queryResults (if not
+	 * null) and returns the mean over all queries
+	 */
+	public double getMAP(double[] predictions, Sample sample, TieBreaker tieBreaker, double[] queryResults)
+			throws Exception {
 		RankingSample rankingSample = (RankingSample) sample;
 
 		int chunkSize = 1 + (rankingSample.numQueries / mapWorkers.getSize());
@@ -121,17 +137,22 @@ public class MAPEval extends RankingEvaluationMetric {
 			int endOffset = offset + Math.min(rankingSample.numQueries - offset, chunkSize);
 			MAPWorker worker = mapWorkers.getTask(i);
 			workerCount++;
-			worker.init(rankingSample, predictions, offset, endOffset, tieBreaker);
+			worker.init(rankingSample, predictions, offset, endOffset, tieBreaker, queryResults);
 			BlockingThreadPoolExecutor.getInstance().execute(worker);
 			offset += chunkSize;
 		}
 		BlockingThreadPoolExecutor.getInstance().await();
 
-		double[] result = new double[rankingSample.numQueries];
+		double result = 0;
 		for (int i = 0; i < workerCount; i++) {
-			result[i] = mapWorkers.getTask(i).getResult();			
+			result += mapWorkers.getTask(i).getResult();			
 		}		
-		return result;
+		return result / rankingSample.numQueries;
+	}
+
+	@Override
+	public double measure(double[] predictions, Sample sample) throws Exception {
+		return getMAP(predictions, sample, TieBreaker.ReverseLabels, null);
 	}
 
 	@Override
@@ -140,6 +161,11 @@ public class MAPEval extends RankingEvaluationMetric {
 		return getMAP(predictions, sample, TieBreaker.ReverseLabels);
 	}
 
+	@Override
+	public void measureByQuery(double[] predictions, Sample sample, double[] result) throws Exception {
+		getMAP(predictions, sample, TieBreaker.ReverseLabels, result);
+	}
+
 	@Override
 	public SwapScorer getSwapScorer(double[] targets, int[] boundaries,
 			int trunc, int[][] labelCounts) throws Exception {
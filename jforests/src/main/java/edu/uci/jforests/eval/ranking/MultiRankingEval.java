@@ -0,0 +1,299 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.eval.ranking;
+
+import edu.uci.jforests.dataset.RankingDataset;
+import edu.uci.jforests.sample.RankingSample;
+import edu.uci.jforests.sample.Sample;
+import edu.uci.jforests.util.ArraysUtil;
+import edu.uci.jforests.util.ScoreBasedComparator;
+import edu.uci.jforests.util.ScoreBasedComparator.TieBreaker;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+import edu.uci.jforests.util.concurrency.TaskCollection;
+import edu.uci.jforests.util.concurrency.TaskItem;
+
+/**
+ * Computes several ranking measures from a single sort of each query. The
+ * measures are given as a '+' separated list, e.g. "NDCG@10+MAP+P@5":
+ *
+ * <pre>
+ * NDCG@k  NDCG at truncation k (at most NDCGEval.MAX_TRUNCATION_LEVEL), as in NDCGEval
+ * NDCG    NDCG at the default truncation
+ * MAP     mean average precision, as in MAPEval
+ * P@k     fraction of relevant (label > 0) documents among the top k
+ * </pre>
+ *
+ * The first measure is the one which is returned by measure() and
+ * measureByQuery() (e.g. for early stopping); all of them are returned by
+ * getMeasurements() and getMeasurementsByQuery(). The per-query vectors are
+ * reused between calls, so an instance must not be used by several threads
+ * at the same time.
+ */
+
+public class MultiRankingEval extends RankingEvaluationMetric {
+
+	public enum MeasureType {
+		NDCG, MAP, Precision
+	}
+
+	private int numMeasures;
+	private MeasureType[] types;
+	private int[] truncations;
+	private String[] names;
+
+	private int maxDocsPerQuery;
+	private TaskCollection<MultiRankingWorker> workers;
+
+	/*
+	 * Value of each measure for each query of the last sample
+	 */
+	private double[][] queryResults;
+	private int numQueries;
+
+	public MultiRankingEval(int maxDocsPerQuery, String measures, int defaultNDCGTruncation) throws Exception {
+		super(true);
+		this.maxDocsPerQuery = maxDocsPerQuery;
+		NDCGEval.initialize(maxDocsPerQuery);
+		String[] parts = measures.split("\\+");
+		numMeasures = parts.length;
+		types = new MeasureType[numMeasures];
+		truncations = new int[numMeasures];
+		names = new String[numMeasures];
+		for (int m = 0; m < numMeasures; m++) {
+			String name = parts[m].trim();
+			int at = name.indexOf('@');
+			String type = (at >= 0 ? name.substring(0, at) : name);
+			if (type.equals("NDCG")) {
+				types[m] = MeasureType.NDCG;
+				truncations[m] = (at >= 0 ? Integer.parseInt(name.substring(at + 1)) : defaultNDCGTruncation);
+				if (truncations[m] < 1 || truncations[m] > NDCGEval.MAX_TRUNCATION_LEVEL) {
+					throw new Exception("Invalid NDCG truncation level in " + name + " (must be between 1 and "
+							+ NDCGEval.MAX_TRUNCATION_LEVEL + ")");
+				}
+				names[m] = "NDCG@" + truncations[m];
+			} else if (type.equals("MAP") && at < 0) {
+				types[m] = MeasureType.MAP;
+				names[m] = "MAP";
+			} else if (type.equals("P") && at >= 0) {
+				types[m] = MeasureType.Precision;
+				truncations[m] = Integer.parseInt(name.substring(at + 1));
+				if (truncations[m] < 1) {
+					throw new Exception("Invalid precision level in " + name);
+				}
+				names[m] = "P@" + truncations[m];
+			} else {
+				throw new Exception("Unknown ranking measure: " + name);
+			}
+		}
+
+		BlockingThreadPoolExecutor executor = BlockingThreadPoolExecutor.getInstance();
+		int numWorkers = (executor != null ? executor.getMaximumPoolSize() : 1);
+		workers = new TaskCollection<MultiRankingWorker>();
+		for (int i = 0; i < numWorkers; i++) {
+			workers.addTask(new MultiRankingWorker());
+		}
+	}
+
+	public int getNumMeasures() {
+		return numMeasures;
+	}
+
+	public String getMeasureName(int measure) {
+		return names[measure];
+	}
+
+	private class MultiRankingWorker extends TaskItem {
+
+		private int[] permutation;
+		private RankingSample sample;
+		private int beginIdx;
+		private int endIdx;
+		private ScoreBasedComparator comparator;
+
+		public MultiRankingWorker() {
+			permutation = new int[maxDocsPerQuery];
+			comparator = new ScoreBasedComparator();
+		}
+
+		public void init(RankingSample sample, double[] scores, int beginIdx, int endIdx, TieBreaker tieBreaker) {
+			this.sample = sample;
+			this.beginIdx = beginIdx;
+			this.endIdx = endIdx;
+			comparator.labels = sample.targets;
+			comparator.scores = scores;
+			comparator.tieBreaker = tieBreaker;
+		}
+
+		@Override
+		public void run() {
+			double[][] maxDCG = ((RankingDataset) (sample.dataset)).maxDCG;
+			for (int q = beginIdx; q < endIdx; q++) {
+				int begin = sample.queryBoundaries[q];
+				int numDocs = sample.queryBoundaries[q + 1] - begin;
+
+				comparator.offset = begin;
+				for (int d = 0; d < numDocs; d++) {
+					permutation[d] = d;
+				}
+				ArraysUtil.sort(permutation, numDocs, comparator);
+
+				for (int m = 0; m < numMeasures; m++) {
+					int trunc = truncations[m];
+					double value = 0;
+					if (types[m] == MeasureType.NDCG) {
+						int queryIndex = sample.queryIndices[q];
+						if (maxDCG[0][queryIndex] == 0) {
+							value = 1;
+						} else {
+							double dcg = 0;
+							for (int t = 0; t < Math.min(numDocs, trunc); t++) {
+								dcg += NDCGEval.GAINS[(int) (sample.targets[begin + permutation[t]])] * NDCGEval.discounts[t];
+							}
+							if (dcg > 0) {
+								value = dcg / maxDCG[trunc - 1][queryIndex];
+							}
+						}
+					} else if (types[m] == MeasureType.MAP) {
+						int numRelevant = 0;
+						double avgPrecision = 0;
+						for (int pos = 0; pos < numDocs; pos++) {
+							if (sample.targets[begin + permutation[pos]] > 0) {
+								numRelevant++;
+								avgPrecision += ((double) numRelevant / (pos + 1));
+							}
+						}
+						if (numRelevant > 0) {
+							value = avgPrecision / numRelevant;
+						}
+					} else {
+						int numRelevant = 0;
+						for (int pos = 0; pos < Math.min(numDocs, trunc); pos++) {
+							if (sample.targets[begin + permutation[pos]] > 0) {
+								numRelevant++;
+							}
+						}
+						value = (double) numRelevant / trunc;
+					}
+					queryResults[m][q] = value;
+				}
+			}
+		}
+	}
+
+	private void computeQueryResults(double[] predictions, Sample sample, TieBreaker tieBreaker) throws Exception {
+		if (((RankingDataset) (sample.dataset)).maxDCG == null) {
+			throw new Exception("maxDCG is not initialized for dataset.");
+		}
+		RankingSample rankingSample = (RankingSample) sample;
+		numQueries = rankingSample.numQueries;
+		if (queryResults == null || queryResults[0].length < numQueries) {
+			queryResults = new double[numMeasures][numQueries];
+		}
+
+		int chunkSize = 1 + (numQueries / workers.getSize());
+		int workerCount = 0;
+		for (int offset = 0; offset < numQueries; offset += chunkSize) {
+			workers.getTask(workerCount).init(rankingSample, predictions, offset,
+					Math.min(numQueries, offset + chunkSize), tieBreaker);
+			workerCount++;
+		}
+		if (workerCount == 1 || BlockingThreadPoolExecutor.getInstance() == null) {
+			for (int i = 0; i < workerCount; i++) {
+				workers.getTask(i).run();
+			}
+		} else {
+			for (int i = 0; i < workerCount; i++) {
+				BlockingThreadPoolExecutor.getInstance().execute(workers.getTask(i));
+			}
+			BlockingThreadPoolExecutor.getInstance().await();
+		}
+	}
+
+	private double getMean(int measure) {
+		double sum = 0;
+		for (int q = 0; q < numQueries; q++) {
+			sum += queryResults[measure][q];
+		}
+		return sum / numQueries;
+	}
+
+	/**
+	 * Returns the mean of each measure over the queries of the sample
+	 */
+	public double[] getMeasurements(double[] predictions, Sample sample) throws Exception {
+		computeQueryResults(predictions, sample, TieBreaker.ReverseLabels);
+		double[] result = new double[numMeasures];
+		for (int m = 0; m < numMeasures; m++) {
+			result[m] = getMean(m);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the value of each measure for each query of the sample
+	 */
+	public double[][] getMeasurementsByQuery(double[] predictions, Sample sample) throws Exception {
+		computeQueryResults(predictions, sample, TieBreaker.ReverseLabels);
+		double[][] result = new double[numMeasures][numQueries];
+		for (int m = 0; m < numMeasures; m++) {
+			System.arraycopy(queryResults[m], 0, result[m], 0, numQueries);
+		}
+		return result;
+	}
+
+	@Override
+	public double measure(double[] predictions, Sample sample) throws Exception {
+		computeQueryResults(predictions, sample, TieBreaker.ReverseLabels);
+		return getMean(0);
+	}
+
+	@Override
+	public double[] measureByQuery(double[] predictions, Sample sample) throws Exception {
+		computeQueryResults(predictions, sample, TieBreaker.ReverseLabels);
+		double[] result = new double[numQueries];
+		System.arraycopy(queryResults[0], 0, result, 0, numQueries);
+		return result;
+	}
+
+	@Override
+	public void measureByQuery(double[] predictions, Sample sample, double[] result) throws Exception {
+		computeQueryResults(predictions, sample, TieBreaker.ReverseLabels);
+		System.arraycopy(queryResults[0], 0, result, 0, numQueries);
+	}
+
+	@Override
+	public SwapScorer getSwapScorer(double[] targets, int[] boundaries, int trunc, int[][] labelCounts)
+			throws Exception {
+		if (types[0] != MeasureType.NDCG) {
+			throw new UnsupportedOperationException(names[0] + " does not yet support SwapScoring for LambdaMART");
+		}
+		return new NDCGEval.NDCGSwapScorer(targets, boundaries, trunc, labelCounts);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int m = 0; m < numMeasures; m++) {
+			if (m > 0) {
+				sb.append('+');
+			}
+			sb.append(names[m]);
+		}
+		return sb.toString();
+	}
+}
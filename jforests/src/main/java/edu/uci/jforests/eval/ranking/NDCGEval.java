@@ -46,10 +46,16 @@ public class NDCGEval extends RankingEvaluationMetric {
 	public static double[] GAINS = new double[] { 0, 1, 3, 7, 15 };
 	public static double[] discounts;
 
-	private TaskCollection<PerQueryNDCGWorker> ndcgWorkers;
+	private TaskCollection<NDCGWorker> ndcgWorkers;
 	private int evalTruncationLevel;
 	private int maxDocsPerQuery;
 
+	/*
+	 * Buffers which are reused between calls
+	 */
+	private double[] sums;
+	private double[][] queryOutputs;
+
 	public static synchronized void initialize(int maxDocsPerQuery) {
 		if (discounts == null || discounts.length < maxDocsPerQuery) {
 			discounts = new double[maxDocsPerQuery];
@@ -69,10 +75,12 @@ public class NDCGEval extends RankingEvaluationMetric {
 		}
 		this.evalTruncationLevel = evalTruncationLevel;
 		int numWorkers = BlockingThreadPoolExecutor.getInstance().getMaximumPoolSize();
-		ndcgWorkers = new TaskCollection<NDCGEval.PerQueryNDCGWorker>();
+		ndcgWorkers = new TaskCollection<NDCGEval.NDCGWorker>();
 		for (int i = 0; i < numWorkers; i++) {
-			ndcgWorkers.addTask(new PerQueryNDCGWorker());
+			ndcgWorkers.addTask(new NDCGWorker());
 		}
+		sums = new double[MAX_TRUNCATION_LEVEL];
+		queryOutputs = new double[MAX_TRUNCATION_LEVEL][];
 	}
 
 	public static int[][] getLabelCountsForQueries(double[] labels, int[] boundaries) {
@@ -166,87 +174,21 @@ public class NDCGEval extends RankingEvaluationMetric {
 	}
 	
 
-	private class PerQueryNDCGWorker extends NDCGWorker {
-		private double[][] queryresult;
-		
-		public double[][] getQueryResults() {
-			return queryresult;
-		}
-		
-		public PerQueryNDCGWorker() {
-			super();
-		}
-		
-		@Override
-		public void init(RankingSample sample, double[] scores, int beginIdx,
-				int endIdx, TieBreaker tieBreaker) {
-			super.init(sample, scores, beginIdx, endIdx, tieBreaker);
-			queryresult = new double[MAX_TRUNCATION_LEVEL][endIdx - beginIdx];
-		}
-		
-		@Override
-		public void run() {
-
-			int qid=0;
-			for (int q = beginIdx; q < endIdx; q++) {
-				int begin = sample.queryBoundaries[q];
-				int numDocs = sample.queryBoundaries[q + 1] - begin;
+	private class NDCGWorker extends TaskItem {
 
-				double[][] maxDCG = ((RankingDataset) (sample.dataset)).maxDCG;
+		private int[] permutation;
+		private RankingSample sample;
+		private int beginIdx;
+		private int endIdx;
+		private double[] result;
 
-				comparator.offset = begin;
+		/*
+		 * Per-query outputs of each truncation level (indexed by query, null
+		 * for levels which are not needed)
+		 */
+		private double[][] queryResults;
 
-				for (int d = 0; d < numDocs; d++) {
-					permutation[d] = d;
-				}				
-				ArraysUtil.sort(permutation, numDocs, comparator);
-
-				if (numDocs > MAX_TRUNCATION_LEVEL) {
-					numDocs = MAX_TRUNCATION_LEVEL;
-				}
-				try {
-					double dcg = 0;
-					if (maxDCG[0][sample.queryIndices[q]] == 0) {
-						for (int t = 0; t < MAX_TRUNCATION_LEVEL; t++) {
-							result[t] += 1;
-							queryresult[t][qid] += 1;
-						}
-					} else {
-						for (int t = 0; t < numDocs; t++) {
-							dcg += GAINS[(int) (sample.targets[begin + permutation[t]])] * discounts[t];
-							if (dcg > 0) {
-								result[t] += dcg / maxDCG[t][sample.queryIndices[q]];
-								queryresult[t][qid] += dcg / maxDCG[t][sample.queryIndices[q]];
-							}
-						}
-						if (dcg > 0) {
-							for (int t = numDocs; t < MAX_TRUNCATION_LEVEL; t++) {
-								result[t] += dcg / maxDCG[t][sample.queryIndices[q]];
-								queryresult[t][qid] += dcg / maxDCG[t][sample.queryIndices[q]];
-							}
-						}
-					}
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-				qid++;
-			}
-
-		}
-		
-		
-		
-	}
-	
-	private class NDCGWorker extends TaskItem {
-
-		protected int[] permutation;
-		protected RankingSample sample;
-		protected int beginIdx;
-		protected int endIdx;
-		protected double[] result;
-		
-		protected ScoreBasedComparator comparator;
+		private ScoreBasedComparator comparator;
 
 		public NDCGWorker() {
 			permutation = new int[maxDocsPerQuery];
@@ -254,10 +196,12 @@ public class NDCGEval extends RankingEvaluationMetric {
 			result = new double[MAX_TRUNCATION_LEVEL];
 		}
 
-		public void init(RankingSample sample, double[] scores, int beginIdx, int endIdx, TieBreaker tieBreaker) {
+		public void init(RankingSample sample, double[] scores, int beginIdx, int endIdx, TieBreaker tieBreaker,
+				double[][] queryResults) {
 			this.sample = sample;
 			this.beginIdx = beginIdx;
 			this.endIdx = endIdx;
+			this.queryResults = queryResults;
 			comparator.labels = sample.targets;
 			comparator.scores = scores;
 			comparator.tieBreaker = tieBreaker;
@@ -267,7 +211,13 @@ public class NDCGEval extends RankingEvaluationMetric {
 		public double[] getResults() {
 			return result;
 		}	
-		
+
+		private void addResult(int t, int q, double value) {
+			result[t] += value;
+			if (queryResults != null && queryResults[t] != null) {
+				queryResults[t][q] = value;
+			}
+		}
 
 		@Override
 		public void run() {
@@ -292,19 +242,15 @@ public class NDCGEval extends RankingEvaluationMetric {
 					double dcg = 0;
 					if (maxDCG[0][sample.queryIndices[q]] == 0) {
 						for (int t = 0; t < MAX_TRUNCATION_LEVEL; t++) {
-							result[t] += 1;
+							addResult(t, q, 1);
 						}
 					} else {
 						for (int t = 0; t < numDocs; t++) {
 							dcg += GAINS[(int) (sample.targets[begin + permutation[t]])] * discounts[t];
-							if (dcg > 0) {
-								result[t] += dcg / maxDCG[t][sample.queryIndices[q]];
-							}
+							addResult(t, q, (dcg > 0 ? dcg / maxDCG[t][sample.queryIndices[q]] : 0));
 						}
-						if (dcg > 0) {
-							for (int t = numDocs; t < MAX_TRUNCATION_LEVEL; t++) {
-								result[t] += dcg / maxDCG[t][sample.queryIndices[q]];
-							}
+						for (int t = numDocs; t < MAX_TRUNCATION_LEVEL; t++) {
+							addResult(t, q, (dcg > 0 ? dcg / maxDCG[t][sample.queryIndices[q]] : 0));
 						}
 					}
 				} catch (Exception e) {
@@ -315,7 +261,13 @@ public class NDCGEval extends RankingEvaluationMetric {
 		}
 	}
 
-	public double[] getNDCGatAllTruncations(double[] predictions, Sample sample, TieBreaker tieBreaker) throws Exception {
+	/*
+	 * Evaluates the queries of the sample with the workers. Per-query values
+	 * are stored in queryResults (if not null) and the sums over all queries
+	 * in result.
+	 */
+	private void runWorkers(double[] predictions, Sample sample, TieBreaker tieBreaker, double[][] queryResults,
+			double[] result) throws Exception {
 		if (((RankingDataset) (sample.dataset)).maxDCG == null) {
 			throw new Exception("maxDCG is not initialized for dataset.");
 		}
@@ -328,69 +280,76 @@ public class NDCGEval extends RankingEvaluationMetric {
 			int endOffset = offset + Math.min(rankingSample.numQueries - offset, chunkSize);
 			NDCGWorker worker = ndcgWorkers.getTask(i);
 			workerCount++;
-			worker.init(rankingSample, predictions, offset, endOffset, tieBreaker);
+			worker.init(rankingSample, predictions, offset, endOffset, tieBreaker, queryResults);
 			BlockingThreadPoolExecutor.getInstance().execute(worker);
 			offset += chunkSize;
 		}
 		BlockingThreadPoolExecutor.getInstance().await();
 
-		double[] result = new double[MAX_TRUNCATION_LEVEL];
+		Arrays.fill(result, 0);
 		for (int i = 0; i < workerCount; i++) {
 			double[] localResult = ndcgWorkers.getTask(i).getResults();
 			for (int t = 0; t < MAX_TRUNCATION_LEVEL; t++) {
 				result[t] += localResult[t];
 			}
 		}
+	}
 
+	public double[] getNDCGatAllTruncations(double[] predictions, Sample sample, TieBreaker tieBreaker) throws Exception {
+		double[] result = new double[MAX_TRUNCATION_LEVEL];
+		getNDCGatAllTruncations(predictions, sample, tieBreaker, result);
+		return result;
+	}
+
+	/**
+	 * Stores the mean NDCG at each truncation level in result (of length
+	 * MAX_TRUNCATION_LEVEL)
+	 */
+	public void getNDCGatAllTruncations(double[] predictions, Sample sample, TieBreaker tieBreaker, double[] result)
+			throws Exception {
+		runWorkers(predictions, sample, tieBreaker, null, result);
 		for (int t = 0; t < MAX_TRUNCATION_LEVEL; t++) {
-			result[t] /= rankingSample.numQueries;
+			result[t] /= ((RankingSample) sample).numQueries;
 		}
-		return result;
 	}
 	
 	public double[][] getNDCGatAllTruncationsAllQueries(double[] predictions, Sample sample, TieBreaker tieBreaker) throws Exception {
-		if (((RankingDataset) (sample.dataset)).maxDCG == null) {
-			throw new Exception("maxDCG is not initialized for dataset.");
-		}
-		RankingSample rankingSample = (RankingSample) sample;
-
-		int chunkSize = 1 + (rankingSample.numQueries / ndcgWorkers.getSize());
-		int offset = 0;
-		int workerCount = 0;
-		for (int i = 0; i < ndcgWorkers.getSize() && offset < rankingSample.numQueries; i++) {
-			int endOffset = offset + Math.min(rankingSample.numQueries - offset, chunkSize);
-			NDCGWorker worker = ndcgWorkers.getTask(i);
-			workerCount++;
-			worker.init(rankingSample, predictions, offset, endOffset, tieBreaker);
-			BlockingThreadPoolExecutor.getInstance().execute(worker);
-			offset += chunkSize;
-		}
-		BlockingThreadPoolExecutor.getInstance().await();
-
-		double[][] result = new double[MAX_TRUNCATION_LEVEL][rankingSample.numQueries];
-		offset = 0;
-		for (int i = 0; i < workerCount; i++) {
-			double[][] localResult = ndcgWorkers.getTask(i).getQueryResults();
-			
-			for (int t = 0; t < MAX_TRUNCATION_LEVEL; t++) {
-				System.arraycopy(localResult[t], 0, result[t], offset, localResult[t].length);
-			}
-			offset += localResult[0].length;
-		}
-		assert offset == rankingSample.numQueries;
+		double[][] result = new double[MAX_TRUNCATION_LEVEL][((RankingSample) sample).numQueries];
+		getNDCGatAllTruncationsAllQueries(predictions, sample, tieBreaker, result);
 		return result;
 	}
-	
+
+	/**
+	 * Stores the NDCG of each query at each truncation level in result.
+	 * Truncation levels whose arrays are null are skipped.
+	 */
+	public void getNDCGatAllTruncationsAllQueries(double[] predictions, Sample sample, TieBreaker tieBreaker,
+			double[][] result) throws Exception {
+		runWorkers(predictions, sample, tieBreaker, result, sums);
+	}
 	
 	@Override
 	public double measure(double[] predictions, Sample sample) throws Exception {
-		return getNDCGatAllTruncations(predictions, sample, TieBreaker.ReverseLabels)[evalTruncationLevel - 1];
+		getNDCGatAllTruncations(predictions, sample, TieBreaker.ReverseLabels, sums);
+		return sums[evalTruncationLevel - 1];
 	}
 
 	@Override
 	public double[] measureByQuery(double[] predictions, Sample sample)
 			throws Exception {
-		return getNDCGatAllTruncationsAllQueries(predictions, sample, TieBreaker.ReverseLabels)[evalTruncationLevel - 1];
+		double[] result = new double[((RankingSample) sample).numQueries];
+		measureByQuery(predictions, sample, result);
+		return result;
+	}
+
+	@Override
+	public void measureByQuery(double[] predictions, Sample sample, double[] result) throws Exception {
+		queryOutputs[evalTruncationLevel - 1] = result;
+		try {
+			getNDCGatAllTruncationsAllQueries(predictions, sample, TieBreaker.ReverseLabels, queryOutputs);
+		} finally {
+			queryOutputs[evalTruncationLevel - 1] = null;
+		}
 	}
 
 	@Override
@@ -62,6 +62,13 @@ public abstract class RankingEvaluationMetric extends EvaluationMetric {
 		
 		public void setCurrentIterationEvaluation(int iteration, double[] nDCG) {}
 		
+		/** Whether setCurrentIterationEvaluation() needs to be called, i.e. whether
+		 * the training set has to be evaluated after each iteration.
+		 */
+		public boolean usesIterationEvaluation() {
+			return false;
+		}
+		
 		public int[] getQueryBoundaries()
 		{
 			return boundaries;
@@ -84,6 +91,17 @@ public abstract class RankingEvaluationMetric extends EvaluationMetric {
 	public abstract SwapScorer getSwapScorer(double[] targets, int[] boundaries, int trunc, int[][] labelCounts) throws Exception;
 	
 	public abstract double[] measureByQuery(double[] predictions, Sample sample) throws Exception;
+
+	/**
+	 * Stores the value of each query of the sample in result (whose length
+	 * must be at least the number of queries), so that callers can reuse the
+	 * array between calls. Subclasses override this to avoid the temporary
+	 * array.
+	 */
+	public void measureByQuery(double[] predictions, Sample sample, double[] result) throws Exception {
+		double[] perQuery = measureByQuery(predictions, sample);
+		System.arraycopy(perQuery, 0, result, 0, perQuery.length);
+	}
 	
 	@Override
 	public double measure(double[] predictions, Sample sample) throws Exception {
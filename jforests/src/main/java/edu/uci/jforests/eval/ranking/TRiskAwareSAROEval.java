@@ -9,7 +9,6 @@ import java.util.Arrays;
 import org.junit.Test;
 
 import edu.uci.jforests.eval.EvaluationMetric;
-import edu.uci.jforests.sample.RankingSample;
 import edu.uci.jforests.sample.Sample;
 import edu.uci.jforests.util.CDF_Normal;
 import edu.uci.jforests.util.MathUtil;
@@ -145,7 +144,13 @@ public class TRiskAwareSAROEval extends URiskAwareEval {
 	/** returns double[] params where params[0] = URisk; params[1] = PairedVar. */
 	public static double[] getEstimates(final double[] baselinePerQuery, final double[] perQuery, final double ALPHA)
 	{
-        final double c = baselinePerQuery.length;
+		return getEstimates(baselinePerQuery, perQuery, baselinePerQuery.length, ALPHA);
+	}
+
+	/** As getEstimates(double[], double[], double), over the first numQueries values of the arrays. */
+	public static double[] getEstimates(final double[] baselinePerQuery, final double[] perQuery, final int numQueries, final double ALPHA)
+	{
+        final double c = numQueries;
         double sum = 0D;
         double SSQR = 0D;
         double d_i = 0D;
@@ -169,9 +174,15 @@ public class TRiskAwareSAROEval extends URiskAwareEval {
 	/* Returns TRisk =  Math.sqrt(c / PairedVar) * URisk */
 	public static double T_measure(final double[] baselinePerQuery, final double[] perQuery, final double ALPHA)
 	{
-        final double c = baselinePerQuery.length;
+		return T_measure(baselinePerQuery, perQuery, baselinePerQuery.length, ALPHA);
+	}
+
+	/** As T_measure(double[], double[], double), over the first numQueries values of the arrays. */
+	public static double T_measure(final double[] baselinePerQuery, final double[] perQuery, final int numQueries, final double ALPHA)
+	{
+        final double c = numQueries;
 
-        double[] params = getEstimates(baselinePerQuery, perQuery, ALPHA);
+        double[] params = getEstimates(baselinePerQuery, perQuery, numQueries, ALPHA);
 		
 		return params[1] == 0D ? 0 : Math.sqrt(c / params[1]) * params[0];   
 	}
@@ -179,13 +190,9 @@ public class TRiskAwareSAROEval extends URiskAwareEval {
 	@Override
 	public double measure(double[] predictions, Sample sample) throws Exception {
 		
-		final RankingSample rankingSample = (RankingSample)sample;
-		assert rankingSample.queryBoundaries.length -1 == rankingSample.numQueries;
-		final double[] naturalOrder = computeNaturalOrderScores(predictions.length, rankingSample.queryBoundaries);
-				
-		double[] baselinePerQuery = ((RankingEvaluationMetric) parent).measureByQuery(naturalOrder, sample);
-		double[] perQuery = ((RankingEvaluationMetric) parent).measureByQuery(predictions, sample);
-		return T_measure(baselinePerQuery, perQuery, this.ALPHA);
+		final double[] baselinePerQuery = getBaselinePerQuery(sample);
+		final int numQueries = loadPerQuery(predictions, sample);
+		return T_measure(baselinePerQuery, perQuery, numQueries, this.ALPHA);
 	}
 	
 	@Override
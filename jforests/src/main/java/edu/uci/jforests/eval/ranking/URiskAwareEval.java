@@ -3,6 +3,8 @@ package edu.uci.jforests.eval.ranking;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.junit.Test;
 
@@ -23,6 +25,54 @@ public class URiskAwareEval extends RankingEvaluationMetric {
 
 	EvaluationMetric parent;
 	final double ALPHA;
+
+	/*
+	 * Per-query values of the baseline (natural order) ranking of each
+	 * sample, and a buffer for the per-query values of the predictions which
+	 * is reused between calls.
+	 */
+	private Map<Sample, Baseline> baselinesPerSample = new WeakHashMap<Sample, Baseline>();
+	protected double[] perQuery;
+
+	/**
+	 * The baseline of a sample, together with a copy of the data it was
+	 * computed from (labels, query boundaries and query indices). Samples
+	 * can be changed in place, so a cached baseline is only used while the
+	 * data of the sample is still the same.
+	 */
+	private static class Baseline
+	{
+		final double[] targets;
+		final int[] queryBoundaries;
+		final int[] queryIndices;
+		final double[] perQuery;
+
+		Baseline(RankingSample sample, double[] perQuery)
+		{
+			targets = Arrays.copyOf(sample.targets, sample.size);
+			queryBoundaries = Arrays.copyOf(sample.queryBoundaries, sample.numQueries + 1);
+			queryIndices = Arrays.copyOf(sample.queryIndices, sample.numQueries);
+			this.perQuery = perQuery;
+		}
+
+		boolean isBaselineOf(RankingSample sample)
+		{
+			if (sample.size != targets.length || sample.numQueries != queryIndices.length) {
+				return false;
+			}
+			for (int i = 0; i < targets.length; i++) {
+				if (sample.targets[i] != targets[i]) {
+					return false;
+				}
+			}
+			for (int q = 0; q < queryIndices.length; q++) {
+				if (sample.queryBoundaries[q] != queryBoundaries[q] || sample.queryIndices[q] != queryIndices[q]) {
+					return false;
+				}
+			}
+			return sample.queryBoundaries[queryIndices.length] == queryBoundaries[queryIndices.length];
+		}
+	}
 	
 	static class URiskSwapScorer extends SwapScorer
 	{
@@ -52,6 +102,11 @@ public class URiskAwareEval extends RankingEvaluationMetric {
 			this.parentSwap = _parent;
 		}
 
+		@Override
+		public boolean usesIterationEvaluation() {
+			return true;
+		}
+
 		@Override
 		public void setCurrentIterationEvaluation(int iteration, double[] nDCG) {
 			final double meanNDCG = MathUtil.getAvg(nDCG);
@@ -175,19 +230,45 @@ public class URiskAwareEval extends RankingEvaluationMetric {
 		ALPHA = alpha;
 	}
 		
+	/**
+	 * Returns the per-query values of the parent metric for the natural order
+	 * of the sample. They are computed once per sample, and again if the
+	 * labels or queries of the sample have changed since.
+	 */
+	protected double[] getBaselinePerQuery(Sample sample) throws Exception {
+		final RankingSample rankingSample = (RankingSample)sample;
+		Baseline baseline = baselinesPerSample.get(sample);
+		if (baseline == null || !baseline.isBaselineOf(rankingSample)) {
+			assert rankingSample.queryBoundaries.length -1 == rankingSample.numQueries;
+			final double[] naturalOrder = computeNaturalOrderScores(rankingSample.size, rankingSample.queryBoundaries);
+			baseline = new Baseline(rankingSample, ((RankingEvaluationMetric) parent).measureByQuery(naturalOrder, sample));
+			baselinesPerSample.put(sample, baseline);
+		}
+		return baseline.perQuery;
+	}
+
+	/**
+	 * Loads the per-query values of the parent metric for the predictions into
+	 * perQuery.
+	 * @return the number of queries
+	 */
+	protected int loadPerQuery(double[] predictions, Sample sample) throws Exception {
+		final int numQueries = ((RankingSample) sample).numQueries;
+		if (perQuery == null || perQuery.length < numQueries) {
+			perQuery = new double[numQueries];
+		}
+		((RankingEvaluationMetric) parent).measureByQuery(predictions, sample, perQuery);
+		return numQueries;
+	}
+
 	@Override @SuppressWarnings("unused")
 	public double measure(double[] predictions, Sample sample) throws Exception {
 		
-		final RankingSample rankingSample = (RankingSample)sample;
-		assert rankingSample.queryBoundaries.length -1 == rankingSample.numQueries;
-		final double[] naturalOrder = computeNaturalOrderScores(predictions.length, rankingSample.queryBoundaries);
-				
-		double[] baselinePerQuery = ((RankingEvaluationMetric) parent).measureByQuery(naturalOrder, sample);
-		double[] perQuery = ((RankingEvaluationMetric) parent).measureByQuery(predictions, sample);
+		final double[] baselinePerQuery = getBaselinePerQuery(sample);
+		final int queryLength = loadPerQuery(predictions, sample);
 		
 		double T1 = 0, T2 = 0;
 					
-		final int queryLength = perQuery.length;
 		double F_reward = 0.0d;
 		double F_risk = 0.0d;
 		for(int i=0;i<queryLength;i++)
@@ -0,0 +1,242 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.input;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+import edu.uci.jforests.dataset.ByteSerializable;
+import edu.uci.jforests.dataset.Feature;
+import edu.uci.jforests.input.sparse.SparseTextFileLine;
+import edu.uci.jforests.util.Util;
+
+/**
+ * Maps original feature values to the bins of a data set (usually the
+ * training set), so that new data can be scored without generating bin
+ * files for it.
+ *
+ * A value is first discretized in the same way as the bin file generation
+ * does and then mapped to the index of the first upper bound which is not
+ * smaller than the discrete value. Since tree thresholds are upper bounds of
+ * the training set, comparing bins gives the same result as comparing
+ * discrete values.
+ */
+
+public class BinMapper implements ByteSerializable {
+
+	private int numFeatures;
+	private double[] min;
+	private double[] factor;
+	private boolean[] onLogScale;
+	private int[][] upperBounds;
+
+	/*
+	 * Bin of each feature when it is missing from a sparse vector
+	 */
+	private int[] missingBins;
+
+	public BinMapper() {
+	}
+
+	public BinMapper(Feature[] features) {
+		numFeatures = features.length;
+		min = new double[numFeatures];
+		factor = new double[numFeatures];
+		onLogScale = new boolean[numFeatures];
+		upperBounds = new int[numFeatures][];
+		for (int f = 0; f < numFeatures; f++) {
+			min[f] = features[f].getMin();
+			factor[f] = features[f].getFactor();
+			onLogScale[f] = features[f].isOnLogScale();
+			upperBounds[f] = features[f].upperBounds;
+		}
+		initMissingBins();
+	}
+
+	private void initMissingBins() {
+		missingBins = new int[numFeatures];
+		for (int f = 0; f < numFeatures; f++) {
+			missingBins[f] = getBin(f, 0);
+		}
+	}
+
+	/**
+	 * Discretizes an original feature value. This is the transformation which
+	 * is used for generating bin files.
+	 */
+	public static int getDiscreteValue(double value, double min, double factor, boolean onLogScale) {
+		if (onLogScale) {
+			value = (Math.log(value - min + 1) * factor);
+		} else {
+			value = (value - min) * factor;
+		}
+		return (int) Math.round(value);
+	}
+
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	public int getNumBins(int feature) {
+		return upperBounds[feature].length;
+	}
+
+	public int[] getUpperBounds(int feature) {
+		return upperBounds[feature];
+	}
+
+	public int getDiscreteValue(int feature, double value) {
+		return getDiscreteValue(value, min[feature], factor[feature], onLogScale[feature]);
+	}
+
+	/**
+	 * Returns the index of the first upper bound of the feature which is not
+	 * smaller than the given discrete value.
+	 */
+	public int getBin(int feature, int discreteValue) {
+		int[] bounds = upperBounds[feature];
+		int low = 0;
+		int high = bounds.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (bounds[mid] < discreteValue) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	public int getBinForValue(int feature, double value) {
+		return getBin(feature, getDiscreteValue(feature, value));
+	}
+
+	public int getMissingBin(int feature) {
+		return missingBins[feature];
+	}
+
+	/**
+	 * Maps a dense vector of original values (indexed from zero) to bins.
+	 * Features beyond the end of the vector are considered missing.
+	 */
+	public void map(double[] featureVector, int[] bins) {
+		int length = Math.min(featureVector.length, numFeatures);
+		for (int f = 0; f < length; f++) {
+			bins[f] = getBinForValue(f, featureVector[f]);
+		}
+		for (int f = length; f < numFeatures; f++) {
+			bins[f] = missingBins[f];
+		}
+	}
+
+	/**
+	 * Maps a sparse vector to bins. Feature indices are zero based and
+	 * features which are not listed are considered missing.
+	 */
+	public void map(int[] featureIndices, double[] values, int length, int[] bins) {
+		System.arraycopy(missingBins, 0, bins, 0, numFeatures);
+		for (int i = 0; i < length; i++) {
+			int f = featureIndices[i];
+			if (f < numFeatures) {
+				bins[f] = getBinForValue(f, values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Maps a line of a sparse text file (with one based feature indices) to
+	 * bins.
+	 */
+	public void map(SparseTextFileLine line, int[] bins) {
+		System.arraycopy(missingBins, 0, bins, 0, numFeatures);
+		for (int i = 0; i < line.numPairs; i++) {
+			int f = line.pairs[i].featureIndex - 1;
+			if (f < numFeatures) {
+				bins[f] = getBinForValue(f, line.pairs[i].featureValue);
+			}
+		}
+	}
+
+	@Override
+	public int getSizeInBytes() {
+		int size = 4;
+		for (int f = 0; f < numFeatures; f++) {
+			// upperBounds, min, factor, onLogScale
+			size += 4 + upperBounds[f].length * 4 + 8 + 8 + 1;
+		}
+		return size;
+	}
+
+	@Override
+	public int toByteArray(byte[] arr, int offset) {
+		offset = Util.putIntInByteArray(numFeatures, arr, offset);
+		for (int f = 0; f < numFeatures; f++) {
+			offset = Util.putIntArrayInByteArray(upperBounds[f], arr, offset);
+			offset = Util.putDoubleInByteArray(min[f], arr, offset);
+			offset = Util.putDoubleInByteArray(factor[f], arr, offset);
+			offset = Util.putBooleanInByteArray(onLogScale[f], arr, offset);
+		}
+		return offset;
+	}
+
+	@Override
+	public int loadFromByteArray(byte[] arr, int offset) {
+		numFeatures = Util.toInt(arr, offset);
+		offset += 4;
+		min = new double[numFeatures];
+		factor = new double[numFeatures];
+		onLogScale = new boolean[numFeatures];
+		upperBounds = new int[numFeatures][];
+		for (int f = 0; f < numFeatures; f++) {
+			upperBounds[f] = Util.toIntArray(arr, offset);
+			offset += 4 + upperBounds[f].length * 4;
+			min[f] = Util.toDouble(arr, offset);
+			offset += 8;
+			factor[f] = Util.toDouble(arr, offset);
+			offset += 8;
+			onLogScale[f] = Util.toBoolean(arr, offset);
+			offset += 1;
+		}
+		initMissingBins();
+		return offset;
+	}
+
+	public void saveToFile(String filename) throws Exception {
+		byte[] arr = new byte[getSizeInBytes()];
+		toByteArray(arr, 0);
+		BufferedOutputStream output = new BufferedOutputStream(new FileOutputStream(new File(filename)));
+		output.write(arr);
+		output.close();
+	}
+
+	public static BinMapper loadFromFile(String filename) throws Exception {
+		File file = new File(filename);
+		byte[] arr = new byte[(int) file.length()];
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		input.readFully(arr);
+		input.close();
+		BinMapper binMapper = new BinMapper();
+		binMapper.loadFromByteArray(arr, 0);
+		return binMapper;
+	}
+}
@@ -18,12 +18,8 @@
 package edu.uci.jforests.input;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
 
 import edu.uci.jforests.dataset.BitNumericArray;
 import edu.uci.jforests.dataset.ByteNumericArray;
@@ -32,10 +28,14 @@ import edu.uci.jforests.dataset.NullNumericArray;
 import edu.uci.jforests.dataset.ShortNumericArray;
 import edu.uci.jforests.dataset.Feature;
 import edu.uci.jforests.dataset.NumericArray;
+import edu.uci.jforests.input.sparse.FastSparseTextFileReader;
+import edu.uci.jforests.input.sparse.SparseTextFileChunk;
 import edu.uci.jforests.input.sparse.SparseTextFileLine;
-import edu.uci.jforests.input.sparse.SparseTextFileReader;
-import edu.uci.jforests.util.ArraysUtil;
+import edu.uci.jforests.util.IntCounter;
 import edu.uci.jforests.util.Timer;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+import edu.uci.jforests.util.concurrency.TaskCollection;
+import edu.uci.jforests.util.concurrency.TaskItem;
 
 /**
  * @author Yasser Ganjisaffar <ganjisaffar at gmail dot com>
@@ -43,11 +43,20 @@ import edu.uci.jforests.util.Timer;
 
 public class BinaryFileGenerator {
 
-	private List<HashMap<Integer, Integer>> valueHashMaps;
+	private final static int INITIAL_COLUMN_CAPACITY = 16;
+
+	private IntCounter[] valueCounters;
 	private int[][] valueDistributions;
-	private int[] totalCount;
+	private long[] totalCount;
 	private NumericArray[] bins;
 
+	private TaskCollection<ChunkLoader> chunkLoaders;
+
+	/*
+	 * Index of the first instance of each chunk
+	 */
+	protected int[] chunkOffsets;
+
 	protected double[] targets;
 	protected Feature[] features;
 
@@ -57,55 +66,96 @@ public class BinaryFileGenerator {
 
 	private String textFile;
 	private String featuresStatFile;
+	private boolean rawInput;
 	private Timer timer;
 
 	protected String binFile;
 	protected BinaryFileWriter writer;
 
 	public BinaryFileGenerator(String textFile, String featuresStatFile, String binFile) {
+		this(textFile, featuresStatFile, binFile, false);
+	}
+
+	/**
+	 * @param rawInput
+	 *            if true, textFile contains original feature values which are
+	 *            discretized in memory using the feature statistics. Otherwise
+	 *            textFile is expected to be the output of
+	 *            DiscreteSparseTextFileGenerator.
+	 */
+	public BinaryFileGenerator(String textFile, String featuresStatFile, String binFile, boolean rawInput) {
 		this.textFile = textFile;
 		this.featuresStatFile = featuresStatFile;
 		this.binFile = binFile;
+		this.rawInput = rawInput;
 		timer = new Timer();
 	}
 
-	protected void handle(SparseTextFileLine line) {
+	/**
+	 * Returns true if chunks of the text file which are loaded in parallel
+	 * must not split lines of the same query.
+	 */
+	protected boolean alignChunksToQueries() {
+		return false;
+	}
+
+	/**
+	 * Called before the chunks of the text file are loaded.
+	 */
+	protected void beforeLoading(int numChunks) {
 		// Subclasses will override this function if needed
 	}
 
-	protected void loadValueHashMaps() {
+	/**
+	 * Called for each instance in the order of lines of the chunk. Different
+	 * chunks are loaded concurrently.
+	 */
+	protected void handle(int chunk, SparseTextFileLine line) {
+		// Subclasses will override this function if needed
+	}
+
+	protected void loadValueHashMaps() throws Exception {
 		timer.start();
 		System.out.print("Loading values...");
-		valueHashMaps = new ArrayList<HashMap<Integer, Integer>>(featureCount);
-		for (int f = 0; f < featureCount; f++) {
-			valueHashMaps.add(new HashMap<Integer, Integer>());
-		}
-
-		SparseTextFileReader reader = new SparseTextFileReader();
-		reader.open(textFile);
-		SparseTextFileLine line = new SparseTextFileLine();
-		HashMap<Integer, Integer> curMap;
-		int key;
-		instanceCount = 0;
-		while (reader.loadNextLine(line)) {
-			if (line.meta) {
-				continue;
+		BlockingThreadPoolExecutor executor = BlockingThreadPoolExecutor.getInstance();
+		int numWorkers = (executor != null ? executor.getMaximumPoolSize() : 1);
+		List<SparseTextFileChunk> chunks = SparseTextFileChunk.split(textFile, numWorkers, alignChunksToQueries());
+		beforeLoading(chunks.size());
+		chunkLoaders = new TaskCollection<ChunkLoader>();
+		for (int c = 0; c < chunks.size(); c++) {
+			chunkLoaders.addTask(new ChunkLoader(c, chunks.get(c)));
+		}
+		if (chunkLoaders.getSize() == 1) {
+			chunkLoaders.getTask(0).run();
+		} else {
+			chunkLoaders.run();
+		}
+
+		/*
+		 * Assign instance indices to chunks and merge their values
+		 */
+		chunkOffsets = new int[chunkLoaders.getSize() + 1];
+		for (int c = 0; c < chunkLoaders.getSize(); c++) {
+			ChunkLoader loader = chunkLoaders.getTask(c);
+			if (loader.error != null) {
+				throw loader.error;
 			}
-			for (int i = 0; i < line.numPairs; i++) {
-				FeatureValuePair pair = line.pairs[i];
-				curMap = valueHashMaps.get(pair.featureIndex - 1);
-				key = (int) pair.featureValue;
-				Integer count = curMap.get(key);
-				if (count == null) {
-					count = 0;
+			chunkOffsets[c + 1] = chunkOffsets[c] + loader.instanceCount;
+		}
+		instanceCount = chunkOffsets[chunkLoaders.getSize()];
+		targets = new double[instanceCount];
+		valueCounters = chunkLoaders.getTask(0).valueCounters;
+		for (int c = 0; c < chunkLoaders.getSize(); c++) {
+			ChunkLoader loader = chunkLoaders.getTask(c);
+			System.arraycopy(loader.targets, 0, targets, chunkOffsets[c], loader.instanceCount);
+			loader.targets = null;
+			if (c > 0) {
+				for (int f = 0; f < featureCount; f++) {
+					valueCounters[f].merge(loader.valueCounters[f]);
 				}
-				count++;
-				curMap.put(key, count);
 			}
-			handle(line);
-			instanceCount++;
+			loader.valueCounters = null;
 		}
-		reader.close();
 		System.out.println("  [Done in: " + timer.getElapsedSeconds() + " seconds.]");
 	}
 
@@ -113,24 +163,21 @@ public class BinaryFileGenerator {
 		timer.start();
 		System.out.print("Making distributions...");
 		valueDistributions = new int[featureCount][];
-		totalCount = new int[featureCount];
+		totalCount = new long[featureCount];
 
-		List<Integer> valueMap = new ArrayList<Integer>();
-		HashMap<Integer, Integer> curMap;
 		for (int f = 0; f < featureCount; f++) {
-			valueMap.clear();
-			curMap = valueHashMaps.get(f);
-			totalCount[f] = 0;
-			for (Entry<Integer, Integer> entry : curMap.entrySet()) {
-				valueMap.add(entry.getKey());
-				totalCount[f] += entry.getValue();
+			totalCount[f] = valueCounters[f].getTotalCount();
+			int[] values = valueCounters[f].getSortedKeys();
+			int zeroIdx = Arrays.binarySearch(values, 0);
+			if (zeroIdx < 0) {
+				zeroIdx = -(zeroIdx + 1);
+				int[] valuesWithZero = new int[values.length + 1];
+				System.arraycopy(values, 0, valuesWithZero, 0, zeroIdx);
+				System.arraycopy(values, zeroIdx, valuesWithZero, zeroIdx + 1, values.length - zeroIdx);
+				values = valuesWithZero;
 			}
-
-			if (!valueMap.contains(0)) {
-				valueMap.add(0);
-			}
-			Collections.sort(valueMap);
-			valueDistributions[f] = ArraysUtil.toArray(valueMap);
+			valueDistributions[f] = values;
+			valueCounters[f] = null;
 		}
 		System.out.println("  [Done in: " + timer.getElapsedSeconds() + " seconds.]");
 	}
@@ -158,30 +205,19 @@ public class BinaryFileGenerator {
 			System.out.println("Feature: " + i + ", type: " + bins[i].getType().toString());
 		}
 
-		targets = new double[instanceCount];
-		int[] zeroCount = new int[featureCount];
-
-		SparseTextFileReader reader = new SparseTextFileReader();
-		reader.open(textFile);
-		SparseTextFileLine line = new SparseTextFileLine();
-		int instanceIdx = 0;
-		while (reader.loadNextLine(line)) {
-			if (line.meta) {
-				continue;
-			}
-			targets[instanceIdx] = line.target;
-			for (int i = 0; i < line.numPairs; i++) {
-				FeatureValuePair pair = line.pairs[i];
-				int fidx = pair.featureIndex - 1;
-				int index = Arrays.binarySearch(valueDistributions[fidx], (int) pair.featureValue);
-				bins[fidx].set(instanceIdx, index);
-				if (index == 0) {
-					zeroCount[fidx]++;
-				}
-			}
-			instanceIdx++;
+		BlockingThreadPoolExecutor executor = BlockingThreadPoolExecutor.getInstance();
+		int numWorkers = (executor != null ? executor.getMaximumPoolSize() : 1);
+		TaskCollection<BinFiller> binFillers = new TaskCollection<BinFiller>();
+		int chunkSize = 1 + (featureCount / numWorkers);
+		for (int begin = 0; begin < featureCount; begin += chunkSize) {
+			binFillers.addTask(new BinFiller(begin, Math.min(begin + chunkSize, featureCount)));
+		}
+		if (binFillers.getSize() == 1) {
+			binFillers.getTask(0).run();
+		} else {
+			binFillers.run();
 		}
-		reader.close();
+		chunkLoaders = null;
 		System.out.println("  [Done in: " + timer.getElapsedSeconds() + " seconds.]");
 	}
 
@@ -229,4 +265,125 @@ public class BinaryFileGenerator {
 		createBinFile();
 		writeBinFile();
 	}
+
+	/**
+	 * Loads the discrete values and targets of one chunk of the text file.
+	 * Non-zero values of each feature are kept together with the (chunk
+	 * local) indices of their instances, so that bins can be filled without
+	 * reading the file again.
+	 */
+	private class ChunkLoader extends TaskItem {
+
+		private int chunkIndex;
+		private SparseTextFileChunk chunk;
+		private int instanceCount;
+		private double[] targets;
+		private IntCounter[] valueCounters;
+		private int[][] columnInstances;
+		private int[][] columnValues;
+		private int[] columnSizes;
+		private Exception error;
+
+		public ChunkLoader(int chunkIndex, SparseTextFileChunk chunk) {
+			this.chunkIndex = chunkIndex;
+			this.chunk = chunk;
+		}
+
+		private void addToColumn(int fidx, int instanceIdx, int value) {
+			int size = columnSizes[fidx];
+			if (size == columnInstances[fidx].length) {
+				columnInstances[fidx] = Arrays.copyOf(columnInstances[fidx], size * 2);
+				columnValues[fidx] = Arrays.copyOf(columnValues[fidx], size * 2);
+			}
+			columnInstances[fidx][size] = instanceIdx;
+			columnValues[fidx][size] = value;
+			columnSizes[fidx] = size + 1;
+		}
+
+		@Override
+		public void run() {
+			try {
+				load();
+			} catch (Exception e) {
+				error = e;
+			}
+		}
+
+		private void load() {
+			valueCounters = new IntCounter[featureCount];
+			for (int f = 0; f < featureCount; f++) {
+				valueCounters[f] = new IntCounter();
+			}
+			columnInstances = new int[featureCount][INITIAL_COLUMN_CAPACITY];
+			columnValues = new int[featureCount][INITIAL_COLUMN_CAPACITY];
+			columnSizes = new int[featureCount];
+			targets = new double[INITIAL_COLUMN_CAPACITY];
+
+			FastSparseTextFileReader reader = new FastSparseTextFileReader();
+			reader.open(chunk);
+			SparseTextFileLine line = new SparseTextFileLine();
+			int key;
+			int fidx;
+			instanceCount = 0;
+			while (reader.loadNextLine(line)) {
+				if (line.meta) {
+					continue;
+				}
+				if (instanceCount == targets.length) {
+					targets = Arrays.copyOf(targets, targets.length * 2);
+				}
+				targets[instanceCount] = line.target;
+				for (int i = 0; i < line.numPairs; i++) {
+					FeatureValuePair pair = line.pairs[i];
+					fidx = pair.featureIndex - 1;
+					if (rawInput) {
+						key = featureAnalyzer.getDiscreteValue(fidx, pair.featureValue);
+						if (key == 0) {
+							continue;
+						}
+					} else {
+						key = (int) pair.featureValue;
+					}
+					valueCounters[fidx].increment(key);
+					addToColumn(fidx, instanceCount, key);
+				}
+				handle(chunkIndex, line);
+				instanceCount++;
+			}
+			reader.close();
+		}
+	}
+
+	/**
+	 * Fills the bins of a range of features from the values collected by
+	 * the chunk loaders.
+	 */
+	private class BinFiller extends TaskItem {
+
+		private int beginFeature;
+		private int endFeature;
+
+		public BinFiller(int beginFeature, int endFeature) {
+			this.beginFeature = beginFeature;
+			this.endFeature = endFeature;
+		}
+
+		@Override
+		public void run() {
+			for (int f = beginFeature; f < endFeature; f++) {
+				for (int c = 0; c < chunkLoaders.getSize(); c++) {
+					ChunkLoader loader = chunkLoaders.getTask(c);
+					int offset = chunkOffsets[c];
+					int[] instances = loader.columnInstances[f];
+					int[] values = loader.columnValues[f];
+					for (int i = 0; i < loader.columnSizes[f]; i++) {
+						bins[f].set(offset + instances[i], Arrays.binarySearch(valueDistributions[f], values[i]));
+					}
+					// Columns are no longer needed; let them be garbage collected
+					loader.columnInstances[f] = null;
+					loader.columnValues[f] = null;
+				}
+			}
+		}
+	}
 }
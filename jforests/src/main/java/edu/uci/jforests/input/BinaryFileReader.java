@@ -37,8 +37,10 @@ public class BinaryFileReader {
 
 	private Feature[] features;
 	private double[] targets;
+	private int numInstances;
 	private int[] featureSizes;
 	private NumericArrayType[] featureTypes;
+	private int[] featureNumValues;
 
 	public BinaryFileReader(InputStream in) {
 		try {
@@ -67,6 +69,16 @@ public class BinaryFileReader {
 		}
 	}
 
+	protected void skip(long len) throws IOException {
+		while (len > 0) {
+			long ret = input.skip(len);
+			if (ret <= 0) {
+				throw new IOException("Premeture EOF from inputStream");
+			}
+			len -= ret;
+		}
+	}
+
 	private void read(double[] arr) {
 		for (int i = 0; i < arr.length; i++) {
 			arr[i] = readDouble();
@@ -94,7 +106,7 @@ public class BinaryFileReader {
 	private Feature readFeature(int featureSize, NumericArrayType type) throws Exception {
 		byte[] buf = new byte[featureSize];
 		read(buf, 0, featureSize);
-		Feature feature = new Feature(NumericArrayFactory.createNumericArray(type, targets.length));
+		Feature feature = new Feature(NumericArrayFactory.createNumericArray(type, numInstances));
 		feature.loadFromByteArray(buf, 0);
 		return feature;
 	}
@@ -113,7 +125,7 @@ public class BinaryFileReader {
 			throw new Exception("Expected bin file version: " + BinaryFileWriter.VERSION + ", found: " + version);
 		}
 		features = new Feature[readInt()];
-		targets = new double[readInt()];
+		numInstances = readInt();
 		featureSizes = new int[features.length];
 		for (int f = 0; f < features.length; f++) {
 			featureSizes[f] = readInt();
@@ -126,12 +138,33 @@ public class BinaryFileReader {
 
 	public void read() throws Exception {
 		readHeader();
+		targets = new double[numInstances];
 		read(targets);
 		for (int f = 0; f < features.length; f++) {
 			features[f] = readFeature(featureSizes[f], featureTypes[f]);
 		}
 	}
 
+	/**
+	 * Reads the header and the number of values of each feature without
+	 * loading the targets and the features, e.g. for estimating the memory
+	 * which is needed for training on the data set.
+	 */
+	public void readSummary() throws Exception {
+		readHeader();
+		skip(8L * numInstances);
+		featureNumValues = new int[features.length];
+		for (int f = 0; f < features.length; f++) {
+			/*
+			 * The bins of each feature are followed by its upper bounds
+			 */
+			int binsSize = NumericArrayFactory.getSizeInBytes(featureTypes[f], numInstances);
+			skip(binsSize);
+			featureNumValues[f] = readInt();
+			skip(featureSizes[f] - binsSize - 4);
+		}
+	}
+
 	public int getVersion() {
 		return version;
 	}
@@ -143,4 +176,23 @@ public class BinaryFileReader {
 	public double[] getTargets() {
 		return targets;
 	}
+
+	public int getNumInstances() {
+		return numInstances;
+	}
+
+	public int[] getFeatureSizes() {
+		return featureSizes;
+	}
+
+	public NumericArrayType[] getFeatureTypes() {
+		return featureTypes;
+	}
+
+	/**
+	 * Only available after readSummary
+	 */
+	public int[] getFeatureNumValues() {
+		return featureNumValues;
+	}
 }
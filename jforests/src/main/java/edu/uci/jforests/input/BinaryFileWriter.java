@@ -84,7 +84,11 @@ public class BinaryFileWriter {
 		}	
 	}
 	
-	private void writeFeature(Feature feature) {
+	/**
+	 * Writes the data of one feature. Features must be written in the order
+	 * of the header.
+	 */
+	public void writeFeature(Feature feature) {
 		byte[] buf = new byte[feature.getSizeInBytes()];
 		feature.toByteArray(buf, 0);
 		write(buf);
@@ -110,11 +114,29 @@ public class BinaryFileWriter {
 		}
 	}
 	
-	public void write() {
+	/**
+	 * Writes the header and the targets. Data sets which do not fit in memory
+	 * can then be written one feature at a time with writeFeature, followed
+	 * by writeEnd. In this case, the features which are given to the
+	 * constructor are only used for the header (their types and sizes).
+	 */
+	public void writeBeginning() {
 		writeHeader();
 		write(targets);
+	}
+
+	/**
+	 * Writes whatever follows the features
+	 */
+	public void writeEnd() {
+		// Subclasses will override this function if needed
+	}
+
+	public void write() {
+		writeBeginning();
 		for (int f = 0; f < features.length; f++) {
 			writeFeature(features[f]);
-		}		
+		}
+		writeEnd();
 	}
 }
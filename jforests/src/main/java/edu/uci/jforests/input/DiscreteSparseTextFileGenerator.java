@@ -23,6 +23,7 @@ import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.util.zip.GZIPOutputStream;
 
+import edu.uci.jforests.input.sparse.FastSparseTextFileReader;
 import edu.uci.jforests.input.sparse.SparseTextFileLine;
 import edu.uci.jforests.input.sparse.SparseTextFileReader;
 
@@ -47,8 +48,7 @@ public class DiscreteSparseTextFileGenerator {
 		featureAnalyzer.loadFeaturesFromFile(featuresStatFile);
 
 		StringBuilder sb = new StringBuilder();
-		double value;
-		SparseTextFileReader reader = new SparseTextFileReader();
+		SparseTextFileReader reader = new FastSparseTextFileReader();
 		SparseTextFileLine line = new SparseTextFileLine();
 		reader.open(inputFilename);
 		int intValue;
@@ -76,14 +76,7 @@ public class DiscreteSparseTextFileGenerator {
 				}
 				for (int i = 0; i < line.numPairs; i++) {
 					FeatureValuePair pair = line.pairs[i];
-					value = pair.featureValue;
-					int idx = pair.featureIndex - 1;
-					if (featureAnalyzer.onLogScale[idx]) {
-						value = (Math.log(value - featureAnalyzer.min[idx] + 1) * featureAnalyzer.factor[idx]);
-					} else {
-						value = (value - featureAnalyzer.min[idx]) * featureAnalyzer.factor[idx];
-					}
-					intValue = (int) Math.round(value);
+					intValue = featureAnalyzer.getDiscreteValue(pair.featureIndex - 1, pair.featureValue);
 					if (intValue != 0) {
 						sb.append(" " + pair.featureIndex + ":" + intValue);
 					}
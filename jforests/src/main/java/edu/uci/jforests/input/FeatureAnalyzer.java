@@ -21,14 +21,21 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.TreeMap;
 
 import edu.uci.jforests.input.sparse.FeatureMetaData;
 import edu.uci.jforests.input.sparse.MetaData;
 import edu.uci.jforests.input.sparse.MetaLineParser;
+import edu.uci.jforests.input.sparse.FastSparseTextFileReader;
+import edu.uci.jforests.input.sparse.SparseTextFileChunk;
 import edu.uci.jforests.input.sparse.SparseTextFileLine;
-import edu.uci.jforests.input.sparse.SparseTextFileReader;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+import edu.uci.jforests.util.concurrency.TaskCollection;
+import edu.uci.jforests.util.concurrency.TaskItem;
 
 /**
  * Extracts feature ranges from sparse textual file.
@@ -44,6 +51,12 @@ public class FeatureAnalyzer {
 	
 	private TreeMap<Integer, FeatureStatistics> fid2statistics;
 	private HashMap<Integer, String> fid2name;
+
+	/*
+	 * Number of lines the statistics are computed from
+	 */
+	private long lineCount;
+	private boolean withSketches;
 	
 	public double[] min;
 	public double[] max;
@@ -51,6 +64,16 @@ public class FeatureAnalyzer {
 	public boolean[] onLogScale;
 
 	public FeatureAnalyzer() {
+		this(false);
+	}
+
+	/**
+	 * @param withSketches
+	 *            if true, a quantile sketch of the values of each feature is
+	 *            also kept.
+	 */
+	public FeatureAnalyzer(boolean withSketches) {
+		this.withSketches = withSketches;
 		fid2statistics = new TreeMap<Integer, FeatureStatistics>();
 		fid2name = new HashMap<Integer, String>();
 	}
@@ -58,101 +81,203 @@ public class FeatureAnalyzer {
 	public void clear() {
 		fid2statistics.clear();
 		fid2name.clear();
+		lineCount = 0;
 	}
 
 	public void processFolder(String folder, String extension) {
 		File[] files = new File(folder).listFiles();
+		List<String> filenames = new ArrayList<String>();
 		for (File file : files) {
 			if (file.getAbsolutePath().endsWith(extension)) {
-				processFile(file.getAbsolutePath());
+				filenames.add(file.getAbsolutePath());
 			}
 		}
+		processFiles(filenames.toArray(new String[filenames.size()]));
 	}
 
 	public void processFiles(String folder, String[] files) {
-		for (String file : files) {
-			processFile(folder + file);
+		String[] filenames = new String[files.length];
+		for (int i = 0; i < files.length; i++) {
+			filenames[i] = folder + files[i];
 		}
+		processFiles(filenames);
 	}
 
 	public void processFile(String inputFile) {
-		System.out.println("Processing: " + inputFile);
-		SparseTextFileReader reader = new SparseTextFileReader();
-		reader.open(inputFile);
-		SparseTextFileLine line = new SparseTextFileLine();
-		FeatureStatistics stat;
-		int count = 0;
-		int maxFeatureIndex = 0;
-		while (reader.loadNextLine(line)) {
-			if (line.meta) {
-				MetaData metaData = MetaLineParser.parse(line.content);
-				if (metaData instanceof FeatureMetaData) {
-					fid2name.put(((FeatureMetaData) metaData).id, ((FeatureMetaData) metaData).name);
-				}
+		processFiles(new String[] { inputFile });
+	}
+
+	/**
+	 * Extracts statistics of the given files. All chunks of all files are
+	 * analyzed concurrently and their statistics are merged afterwards.
+	 */
+	public void processFiles(String[] inputFiles) {
+		BlockingThreadPoolExecutor executor = BlockingThreadPoolExecutor.getInstance();
+		int numWorkers = (executor != null ? executor.getMaximumPoolSize() : 1);
+		TaskCollection<ChunkAnalyzer> analyzers = new TaskCollection<ChunkAnalyzer>();
+		for (String inputFile : inputFiles) {
+			System.out.println("Processing: " + inputFile);
+			for (SparseTextFileChunk chunk : SparseTextFileChunk.split(inputFile, numWorkers, false)) {
+				analyzers.addTask(new ChunkAnalyzer(chunk, withSketches));
+			}
+		}
+		if (analyzers.getSize() == 1) {
+			analyzers.getTask(0).run();
+		} else {
+			analyzers.run();
+		}
+
+		long prevLineCount = lineCount;
+		for (int c = 0; c < analyzers.getSize(); c++) {
+			ChunkAnalyzer analyzer = analyzers.getTask(c);
+			if (analyzer.error != null) {
+				throw analyzer.error;
+			}
+			merge(analyzer.getResult());
+		}
+		System.out.println("\t Processed: " + (lineCount - prevLineCount) + " lines in " + analyzers.getSize()
+				+ " chunk(s)");
+		loadStatistics();
+	}
+
+	/**
+	 * Combines the statistics of another analyzer (e.g. computed on a
+	 * different file or shard) into this one. Counts and min/max values do
+	 * not depend on the order of merging, but the estimates of the quantile
+	 * sketches can (see QuantileSketch). If both analyzers name a feature,
+	 * the name of the other analyzer is kept. The statistics objects of the
+	 * other analyzer are reused, so it should not be used afterwards.
+	 */
+	public void merge(FeatureAnalyzer other) {
+		for (Integer fid : fid2statistics.keySet()) {
+			if (!other.fid2statistics.containsKey(fid)) {
+				fid2statistics.get(fid).addMissing(other.lineCount);
+			}
+		}
+		for (Integer fid : other.fid2statistics.keySet()) {
+			FeatureStatistics otherStat = other.fid2statistics.get(fid);
+			FeatureStatistics stat = fid2statistics.get(fid);
+			if (stat == null) {
+				otherStat.addMissing(lineCount);
+				fid2statistics.put(fid, otherStat);
 			} else {
-				int prevIdx = 0;
-				for (int i = 0; i < line.numPairs; i++) {
-					FeatureValuePair pair = line.pairs[i];
-					if (pair.featureIndex != (prevIdx + 1)) {
-						for (int f = prevIdx + 1; f < pair.featureIndex; f++) {
-							stat = fid2statistics.get(f);
-							if (stat != null) {
-								if (stat.maxValue < 0) {
-									stat.maxValue = 0;
-								}
-								if (stat.minValue > 0) {
-									stat.minValue = 0;
-								}
-							}
+				stat.merge(otherStat);
+			}
+		}
+		fid2name.putAll(other.fid2name);
+		lineCount += other.lineCount;
+	}
+
+	public long getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * Extracts statistics of the features in one chunk of a file
+	 */
+	private static class ChunkAnalyzer extends TaskItem {
+
+		private SparseTextFileChunk chunk;
+		private boolean withSketches;
+		private int lineCount;
+		private int maxFeatureIndex;
+		private double[] min;
+		private double[] max;
+		private int[] count;
+		private QuantileSketch[] sketches;
+		private HashMap<Integer, String> names;
+		private RuntimeException error;
+
+		public ChunkAnalyzer(SparseTextFileChunk chunk, boolean withSketches) {
+			this.chunk = chunk;
+			this.withSketches = withSketches;
+			min = new double[1];
+			max = new double[1];
+			count = new int[1];
+			sketches = new QuantileSketch[1];
+			names = new HashMap<Integer, String>();
+		}
+
+		private void ensureCapacity(int featureIndex) {
+			if (featureIndex < count.length) {
+				return;
+			}
+			int oldLength = count.length;
+			int newLength = Math.max(featureIndex + 1, oldLength * 2);
+			min = Arrays.copyOf(min, newLength);
+			max = Arrays.copyOf(max, newLength);
+			count = Arrays.copyOf(count, newLength);
+			sketches = Arrays.copyOf(sketches, newLength);
+			Arrays.fill(min, oldLength, newLength, Double.POSITIVE_INFINITY);
+			Arrays.fill(max, oldLength, newLength, Double.NEGATIVE_INFINITY);
+		}
+
+		@Override
+		public void run() {
+			FastSparseTextFileReader reader = new FastSparseTextFileReader();
+			reader.open(chunk);
+			SparseTextFileLine line = new SparseTextFileLine();
+			try {
+				while (reader.loadNextLine(line)) {
+					if (line.meta) {
+						MetaData metaData = MetaLineParser.parse(line.content);
+						if (metaData instanceof FeatureMetaData) {
+							names.put(((FeatureMetaData) metaData).id, ((FeatureMetaData) metaData).name);
 						}
+						continue;
 					}
-					stat = fid2statistics.get(pair.featureIndex);
-					if (stat == null) {
-						stat = new FeatureStatistics();
-						fid2statistics.put(pair.featureIndex, stat);
-						if (count > 0) {
-							stat.minValue = 0;
-							stat.maxValue = 0;
+					for (int i = 0; i < line.numPairs; i++) {
+						FeatureValuePair pair = line.pairs[i];
+						int fid = pair.featureIndex;
+						ensureCapacity(fid);
+						if (fid > maxFeatureIndex) {
+							maxFeatureIndex = fid;
 						}
-						if (pair.featureIndex > maxFeatureIndex) {
-							maxFeatureIndex = pair.featureIndex;
+						if (Double.isInfinite(pair.featureValue)) {
+							System.out.println(chunk + ": " + lineCount + "\t" + pair.featureValue);
 						}
-					}
-					if (Double.isInfinite(pair.featureValue)) {
-						System.out.println(count + "\t" + pair.featureValue);
-					}
-					if (pair.featureValue > stat.maxValue) {
-						stat.maxValue = pair.featureValue;
-					}
-					if (pair.featureValue < stat.minValue) {
-						stat.minValue = pair.featureValue;
-					}					
-					prevIdx = pair.featureIndex;
-				}
-				if (prevIdx < maxFeatureIndex) {
-					for (int f = prevIdx + 1; f <= maxFeatureIndex; f++) {
-						stat = fid2statistics.get(f);
-						if (stat != null) {
-							if (stat.maxValue < 0) {
-								stat.maxValue = 0;
-							}
-							if (stat.minValue > 0) {
-								stat.minValue = 0;
+						if (pair.featureValue > max[fid]) {
+							max[fid] = pair.featureValue;
+						}
+						if (pair.featureValue < min[fid]) {
+							min[fid] = pair.featureValue;
+						}
+						count[fid]++;
+						if (withSketches) {
+							if (sketches[fid] == null) {
+								sketches[fid] = new QuantileSketch();
 							}
+							sketches[fid].add(pair.featureValue);
 						}
 					}
+					lineCount++;
 				}
-				count++;
-				if (count % 100000 == 0) {
-					System.out.println("\t Processed: " + count);
-					dumpStatistics(System.out);
+			} catch (RuntimeException e) {
+				error = e;
+			}
+			reader.close();
+		}
+
+		public FeatureAnalyzer getResult() {
+			FeatureAnalyzer result = new FeatureAnalyzer(withSketches);
+			for (int fid = 1; fid <= maxFeatureIndex; fid++) {
+				if (count[fid] == 0) {
+					continue;
 				}
+				FeatureStatistics stat = new FeatureStatistics();
+				stat.minValue = min[fid];
+				stat.maxValue = max[fid];
+				stat.count = count[fid];
+				stat.sketch = sketches[fid];
+				stat.addMissing(lineCount - count[fid]);
+				result.fid2statistics.put(fid, stat);
 			}
+			result.fid2name.putAll(names);
+			result.lineCount = lineCount;
+			return result;
 		}
-		reader.close();
-		loadStatistics();		
 	}
-	
+
 	private void loadStatistics() {
 		int featureCount = getFeatureCount();
 		min = new double[featureCount];
@@ -178,6 +303,14 @@ public class FeatureAnalyzer {
 		}
 	}
 
+	/**
+	 * Maps the original value of the feature with the given (zero-based)
+	 * index to the discrete value space used in bin files.
+	 */
+	public int getDiscreteValue(int idx, double value) {
+		return BinMapper.getDiscreteValue(value, min[idx], factor[idx], onLogScale[idx]);
+	}
+
 	public FeatureStatistics getStatistics(int fid) {
 		return fid2statistics.get(fid);
 	}
@@ -190,6 +323,11 @@ public class FeatureAnalyzer {
 		return fid2statistics.lastKey();
 	}
 
+	/**
+	 * Loads statistics from a file written by dumpStatistics. Files which
+	 * only have the FeatureIndex, Name, Min and Max columns are supported as
+	 * well.
+	 */
 	public void loadFeaturesFromFile(String filename) {
 		try {
 			BufferedReader reader = new BufferedReader(new FileReader(new File(filename)));
@@ -201,6 +339,14 @@ public class FeatureAnalyzer {
 				FeatureStatistics stat = new FeatureStatistics();
 				stat.minValue = Double.parseDouble(parts[2]);
 				stat.maxValue = Double.parseDouble(parts[3]);
+				if (parts.length > 4) {
+					stat.count = Long.parseLong(parts[4]);
+				}
+				if (parts.length > 5) {
+					stat.sketch = QuantileSketch.parse(parts[5]);
+					lineCount = Math.max(lineCount, (long) stat.sketch.getTotalWeight());
+				}
+				lineCount = Math.max(lineCount, stat.count);
 				fid2statistics.put(fid, stat);
 				fid2name.put(fid, name);
 			}
@@ -212,12 +358,13 @@ public class FeatureAnalyzer {
 	}
 
 	public void dumpStatistics(PrintStream output) {
-		output.println("FeatureIndex" + "\tName\tMin" + "\tMax");
+		output.println("FeatureIndex" + "\tName\tMin" + "\tMax\tCount" + (withSketches ? "\tSketch" : ""));
 		Integer key = fid2statistics.firstKey();
 		do {
 			FeatureStatistics stat = fid2statistics.get(key);
 			String name = fid2name.get(key);
-			output.println(key + "\t" + name + "\t" + stat.minValue + "\t" + stat.maxValue);
+			output.println(key + "\t" + name + "\t" + stat.minValue + "\t" + stat.maxValue + "\t" + stat.count
+					+ (withSketches && stat.sketch != null ? "\t" + stat.sketch : ""));
 		} while ((key = fid2statistics.higherKey(key)) != null);
 	}
 
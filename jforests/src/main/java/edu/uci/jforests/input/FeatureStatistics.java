@@ -25,9 +25,57 @@ public class FeatureStatistics {
 
 	public double minValue;
 	public double maxValue;
+
+	/*
+	 * Number of lines in which this feature has an explicit value
+	 */
+	public long count;
+
+	/*
+	 * Optional sketch of the distribution of values (including zero values
+	 * of lines in which this feature is missing). It is only written to the
+	 * statistics file; bins are made of the distinct discrete values (see
+	 * BinaryFileGenerator).
+	 */
+	public QuantileSketch sketch;
 	
 	public FeatureStatistics() {
 		minValue = Double.POSITIVE_INFINITY;
 		maxValue = Double.NEGATIVE_INFINITY;
 	}
+
+	/**
+	 * Accounts for lines in which this feature is missing, i.e. has a
+	 * value of zero.
+	 */
+	public void addMissing(long numLines) {
+		if (numLines <= 0) {
+			return;
+		}
+		if (maxValue < 0) {
+			maxValue = 0;
+		}
+		if (minValue > 0) {
+			minValue = 0;
+		}
+		if (sketch != null) {
+			sketch.add(0, numLines);
+		}
+	}
+
+	/**
+	 * Combines the statistics of another set of lines into this one. Min,
+	 * max and count do not depend on the order in which statistics are
+	 * merged, but the centroids of merged sketches may.
+	 */
+	public void merge(FeatureStatistics other) {
+		minValue = Math.min(minValue, other.minValue);
+		maxValue = Math.max(maxValue, other.maxValue);
+		count += other.count;
+		if (sketch != null && other.sketch != null) {
+			sketch.merge(other.sketch);
+		} else {
+			sketch = null;
+		}
+	}
 }
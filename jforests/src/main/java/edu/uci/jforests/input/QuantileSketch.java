@@ -0,0 +1,246 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.input;
+
+/**
+ * A mergeable sketch of the distribution of values of a feature, based on
+ * weighted centroids (in the spirit of the merging t-digest). Centroids
+ * near the extremes of the distribution are kept small so that tail
+ * quantiles are accurate. Sketches of different chunks or files can be
+ * merged; the result approximates the sketch of all values, but its
+ * centroids (and estimates) can slightly depend on the order of merging.
+ */
+
+public class QuantileSketch {
+
+	public final static int DEFAULT_COMPRESSION = 100;
+
+	private int compression;
+
+	/*
+	 * Centroids sorted by their means
+	 */
+	private double[] means;
+	private double[] weights;
+	private int size;
+
+	/*
+	 * Values which are not merged into centroids yet
+	 */
+	private double[] bufferValues;
+	private double[] bufferWeights;
+	private int bufferSize;
+
+	private double totalWeight;
+
+	public QuantileSketch() {
+		this(DEFAULT_COMPRESSION);
+	}
+
+	public QuantileSketch(int compression) {
+		this.compression = compression;
+		means = new double[0];
+		weights = new double[0];
+		bufferValues = new double[5 * compression];
+		bufferWeights = new double[5 * compression];
+	}
+
+	public void add(double value) {
+		add(value, 1);
+	}
+
+	public void add(double value, double weight) {
+		if (weight <= 0) {
+			return;
+		}
+		if (bufferSize == bufferValues.length) {
+			compress();
+		}
+		bufferValues[bufferSize] = value;
+		bufferWeights[bufferSize] = weight;
+		bufferSize++;
+		totalWeight += weight;
+	}
+
+	public void merge(QuantileSketch other) {
+		for (int i = 0; i < other.size; i++) {
+			add(other.means[i], other.weights[i]);
+		}
+		for (int i = 0; i < other.bufferSize; i++) {
+			add(other.bufferValues[i], other.bufferWeights[i]);
+		}
+	}
+
+	public double getTotalWeight() {
+		return totalWeight;
+	}
+
+	/**
+	 * Merges buffered values into the centroids.
+	 */
+	public void compress() {
+		if (bufferSize == 0) {
+			return;
+		}
+		sort(bufferValues, bufferWeights, 0, bufferSize - 1);
+
+		int maxSize = size + bufferSize;
+		double[] newMeans = new double[maxSize];
+		double[] newWeights = new double[maxSize];
+		int newSize = 0;
+		double cumulative = 0;
+
+		int i = 0;
+		int j = 0;
+		while (i < size || j < bufferSize) {
+			double mean;
+			double weight;
+			if (j == bufferSize || (i < size && means[i] <= bufferValues[j])) {
+				mean = means[i];
+				weight = weights[i];
+				i++;
+			} else {
+				mean = bufferValues[j];
+				weight = bufferWeights[j];
+				j++;
+			}
+			if (newSize > 0) {
+				double proposed = newWeights[newSize - 1] + weight;
+				/*
+				 * Centroid sizes are proportional to sqrt(q(1-q)), which
+				 * keeps about 'compression' centroids in total.
+				 */
+				double q = (cumulative + proposed / 2) / totalWeight;
+				double limit = Math.PI * totalWeight * Math.sqrt(q * (1 - q)) / compression;
+				if (proposed <= limit) {
+					newMeans[newSize - 1] += (mean - newMeans[newSize - 1]) * weight / proposed;
+					newWeights[newSize - 1] = proposed;
+					continue;
+				}
+				cumulative += newWeights[newSize - 1];
+			}
+			newMeans[newSize] = mean;
+			newWeights[newSize] = weight;
+			newSize++;
+		}
+
+		means = new double[newSize];
+		weights = new double[newSize];
+		System.arraycopy(newMeans, 0, means, 0, newSize);
+		System.arraycopy(newWeights, 0, weights, 0, newSize);
+		size = newSize;
+		bufferSize = 0;
+	}
+
+	/**
+	 * Returns an estimate of the value at the given quantile (0 <= q <= 1).
+	 */
+	public double getQuantile(double q) {
+		compress();
+		if (size == 0) {
+			return Double.NaN;
+		}
+		double target = q * totalWeight;
+		double cumulative = 0;
+		double prevCenter = 0;
+		for (int i = 0; i < size; i++) {
+			double center = cumulative + weights[i] / 2;
+			if (target <= center) {
+				if (i == 0) {
+					return means[0];
+				}
+				double fraction = (target - prevCenter) / (center - prevCenter);
+				return means[i - 1] + fraction * (means[i] - means[i - 1]);
+			}
+			prevCenter = center;
+			cumulative += weights[i];
+		}
+		return means[size - 1];
+	}
+
+	private static void sort(double[] keys, double[] values, int left, int right) {
+		while (right - left > 16) {
+			double pivot = keys[(left + right) >>> 1];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (keys[i] < pivot) {
+					i++;
+				}
+				while (keys[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					swap(keys, values, i, j);
+					i++;
+					j--;
+				}
+			}
+			if (j - left < right - i) {
+				sort(keys, values, left, j);
+				left = i;
+			} else {
+				sort(keys, values, i, right);
+				right = j;
+			}
+		}
+		for (int i = left + 1; i <= right; i++) {
+			for (int j = i; j > left && keys[j - 1] > keys[j]; j--) {
+				swap(keys, values, j, j - 1);
+			}
+		}
+	}
+
+	private static void swap(double[] keys, double[] values, int a, int b) {
+		double temp = keys[a];
+		keys[a] = keys[b];
+		keys[b] = temp;
+		temp = values[a];
+		values[a] = values[b];
+		values[b] = temp;
+	}
+
+	/**
+	 * Serializes the centroids as comma separated mean:weight pairs.
+	 */
+	@Override
+	public String toString() {
+		compress();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(means[i]).append(':').append(weights[i]);
+		}
+		return sb.toString();
+	}
+
+	public static QuantileSketch parse(String str) {
+		QuantileSketch sketch = new QuantileSketch();
+		if (str.length() == 0) {
+			return sketch;
+		}
+		String[] parts = str.split(",");
+		for (String part : parts) {
+			int idx = part.indexOf(':');
+			sketch.add(Double.parseDouble(part.substring(0, idx)), Double.parseDouble(part.substring(idx + 1)));
+		}
+		return sketch;
+	}
+}
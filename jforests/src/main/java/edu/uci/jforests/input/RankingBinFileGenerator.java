@@ -29,30 +29,57 @@ import edu.uci.jforests.util.ArraysUtil;
 
 public class RankingBinFileGenerator extends BinaryFileGenerator {
 
-	private String prevQid;
-	private int lineIndex;
+	/*
+	 * Query boundaries inside each chunk (relative to the first line of the
+	 * chunk). Chunks never split a query.
+	 */
+	private String[] prevQids;
+	private int[] lineIndices;
+	private List<List<Integer>> chunkQueryBoundaries;
 	private List<Integer> queryBoundaries;
 	
 	public RankingBinFileGenerator(String textFile, String featuresStatFile, String binFile) {
-		super(textFile, featuresStatFile, binFile);
-		prevQid = null;
-		lineIndex = 0;
+		this(textFile, featuresStatFile, binFile, false);
+	}
+
+	public RankingBinFileGenerator(String textFile, String featuresStatFile, String binFile, boolean rawInput) {
+		super(textFile, featuresStatFile, binFile, rawInput);
 		queryBoundaries = new ArrayList<Integer>();
 	}
+
+	@Override
+	protected boolean alignChunksToQueries() {
+		return true;
+	}
+
+	@Override
+	protected void beforeLoading(int numChunks) {
+		prevQids = new String[numChunks];
+		lineIndices = new int[numChunks];
+		chunkQueryBoundaries = new ArrayList<List<Integer>>(numChunks);
+		for (int c = 0; c < numChunks; c++) {
+			chunkQueryBoundaries.add(new ArrayList<Integer>());
+		}
+	}
 	
 	@Override
-	protected void handle(SparseTextFileLine line) {
-		if (!line.qid.equals(prevQid)) {
-			queryBoundaries.add(lineIndex);
+	protected void handle(int chunk, SparseTextFileLine line) {
+		if (!line.qid.equals(prevQids[chunk])) {
+			chunkQueryBoundaries.get(chunk).add(lineIndices[chunk]);
 		}
-		prevQid = line.qid;
-		lineIndex++;
+		prevQids[chunk] = line.qid;
+		lineIndices[chunk]++;
 	}
 
 	@Override
-	protected void loadValueHashMaps() {
+	protected void loadValueHashMaps() throws Exception {
 		super.loadValueHashMaps();
-		queryBoundaries.add(lineIndex);
+		for (int c = 0; c < chunkQueryBoundaries.size(); c++) {
+			for (int boundary : chunkQueryBoundaries.get(c)) {
+				queryBoundaries.add(chunkOffsets[c] + boundary);
+			}
+		}
+		queryBoundaries.add(chunkOffsets[chunkQueryBoundaries.size()]);
 	}
 	
 	@Override
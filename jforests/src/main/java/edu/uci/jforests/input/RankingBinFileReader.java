@@ -41,6 +41,10 @@ public class RankingBinFileReader extends BinaryFileReader {
 		return maxDocsPerQuery;
 	}
 
+	public int getNumQueries() {
+		return numQueries;
+	}
+
 	@Override
 	protected void readHeader() throws Exception {
 		super.readHeader();
@@ -51,6 +55,16 @@ public class RankingBinFileReader extends BinaryFileReader {
 	@Override
 	public void read() throws Exception {
 		super.read();
+		readQueryBoundaries();
+	}
+
+	@Override
+	public void readSummary() throws Exception {
+		super.readSummary();
+		readQueryBoundaries();
+	}
+
+	private void readQueryBoundaries() {
 		for (int q = 0; q < numQueries + 1; q++) {
 			queryBoundaries[q] = readInt();
 		}
@@ -40,8 +40,7 @@ public class RankingBinFileWriter extends BinaryFileWriter {
 	}
 	
 	@Override
-	public void write() {
-		super.write();
+	public void writeEnd() {
 		for (int q = 0; q < queryBoundaries.length; q++) {
 			writeInt(queryBoundaries[q]);			
 		}
@@ -25,7 +25,7 @@ public class RankingRaw2BinConvertor extends Raw2BinConvertor {
 
 	@Override
 	protected BinaryFileGenerator getBinFileGenerator() {
-		return new RankingBinFileGenerator(discreteFile, featureStatsFile, binFile);
+		return new RankingBinFileGenerator(inputFile, featureStatsFile, binFile, true);
 	}
 
 }
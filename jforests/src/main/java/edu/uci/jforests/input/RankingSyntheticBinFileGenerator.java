@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.input;
+
+import java.util.Random;
+
+/**
+ * Generates a random ranking data set. Instances are split into queries whose
+ * lengths follow the given distribution; the last query is truncated to the
+ * number of instances. Labels default to a typical graded relevance
+ * distribution (most documents are not relevant).
+ */
+
+public class RankingSyntheticBinFileGenerator extends SyntheticBinFileGenerator {
+
+	public enum QueryLengthDistribution {
+		/*
+		 * All queries have the average length
+		 */
+		Fixed,
+
+		/*
+		 * Uniform in [1, 2 * average - 1]
+		 */
+		Uniform,
+
+		/*
+		 * Geometric with the given average, i.e. many short queries and a
+		 * long tail
+		 */
+		Geometric
+	}
+
+	private int avgDocsPerQuery = 20;
+	private QueryLengthDistribution queryLengthDistribution = QueryLengthDistribution.Uniform;
+
+	private int[] queryBoundaries;
+
+	public RankingSyntheticBinFileGenerator(String binFile, int numInstances, int numFeatures) {
+		super(binFile, numInstances, numFeatures);
+		setLabelDistribution(new double[] { 0.5, 0.3, 0.12, 0.05, 0.03 });
+	}
+
+	public void setAvgDocsPerQuery(int avgDocsPerQuery) {
+		this.avgDocsPerQuery = avgDocsPerQuery;
+	}
+
+	public void setQueryLengthDistribution(QueryLengthDistribution queryLengthDistribution) {
+		this.queryLengthDistribution = queryLengthDistribution;
+	}
+
+	private int getQueryLength(Random rnd) {
+		switch (queryLengthDistribution) {
+		case Uniform:
+			return 1 + rnd.nextInt(Math.max(1, 2 * avgDocsPerQuery - 1));
+		case Geometric:
+			if (avgDocsPerQuery <= 1) {
+				return 1;
+			}
+			return 1 + (int) (Math.log(1 - rnd.nextDouble()) / Math.log(1 - 1.0 / avgDocsPerQuery));
+		default:
+			return avgDocsPerQuery;
+		}
+	}
+
+	@Override
+	protected void beforeGenerating() {
+		/*
+		 * The number of queries is counted first, so that the boundaries can
+		 * be kept in an array of the right size.
+		 */
+		Random rnd = getRandom(-1);
+		int numQueries = 0;
+		for (long count = 0; count < numInstances; numQueries++) {
+			count += getQueryLength(rnd);
+		}
+
+		rnd = getRandom(-1);
+		queryBoundaries = new int[numQueries + 1];
+		int maxDocsPerQuery = 0;
+		for (int q = 0; q < numQueries; q++) {
+			queryBoundaries[q + 1] = (int) Math.min(numInstances, (long) queryBoundaries[q] + getQueryLength(rnd));
+			maxDocsPerQuery = Math.max(maxDocsPerQuery, queryBoundaries[q + 1] - queryBoundaries[q]);
+		}
+		System.out.println("Queries: " + numQueries + ", max docs per query: " + maxDocsPerQuery);
+	}
+
+	@Override
+	protected void createBinFile() {
+		writer = new RankingBinFileWriter(binFile, features, targets, queryBoundaries);
+	}
+}
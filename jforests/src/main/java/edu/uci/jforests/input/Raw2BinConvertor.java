@@ -30,11 +30,19 @@ public class Raw2BinConvertor {
 
 	protected String inputFile;
 	protected String featureStatsFile;
-	protected String discreteFile;
 	protected String binFile;
+	protected boolean withSketches;
+
+	/**
+	 * If set, quantile sketches of feature values are also written to the
+	 * feature statistics file.
+	 */
+	public void setWithSketches(boolean withSketches) {
+		this.withSketches = withSketches;
+	}
 
 	protected BinaryFileGenerator getBinFileGenerator() {
-		return new BinaryFileGenerator(discreteFile, featureStatsFile, binFile);
+		return new BinaryFileGenerator(inputFile, featureStatsFile, binFile, true);
 	}
 
 	public void convert(String folder, String[] inputFileNames) throws Exception {
@@ -50,25 +58,18 @@ public class Raw2BinConvertor {
 			/*
 			 * Extract feature statistics
 			 */
-			FeatureAnalyzer analyzer = new FeatureAnalyzer();
-			for (String inputFileName : inputFileNames) {
-				analyzer.processFile(folder + inputFileName);
-			}
+			FeatureAnalyzer analyzer = new FeatureAnalyzer(withSketches);
+			analyzer.processFiles(folder, inputFileNames);
 			analyzer.dumpStatistics(new PrintStream(featuresFile));
 		}
 
 		for (String inputFileName : inputFileNames) {
 			inputFile = folder + inputFileName;
-			discreteFile = folder + "jforests-discrete-" + inputFileName;
 			binFile = folder + Util.getFileNameWithoutExtension(inputFileName) + ".bin";
 
 			/*
-			 * Convert to discrete sparse
-			 */
-			DiscreteSparseTextFileGenerator.convert(inputFile, featureStatsFile, discreteFile);
-
-			/*
-			 * Generate bin file
+			 * Generate bin file. Feature values are discretized in memory,
+			 * so the raw file is read only once more here.
 			 */
 			BinaryFileGenerator binFileGenerator = getBinFileGenerator();
 			binFileGenerator.convert();
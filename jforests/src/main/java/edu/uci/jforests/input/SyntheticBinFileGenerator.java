@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.input;
+
+import java.util.Random;
+
+import edu.uci.jforests.dataset.Feature;
+import edu.uci.jforests.dataset.NumericArray;
+import edu.uci.jforests.dataset.NumericArrayFactory;
+import edu.uci.jforests.dataset.NumericArrayFactory.NumericArrayType;
+import edu.uci.jforests.util.Timer;
+
+/**
+ * Generates a random data set directly in the bin format, e.g. for testing
+ * training and scoring at scale without real data. The output only depends
+ * on the parameters and the seed.
+ *
+ * A fraction of the values of each feature (the sparsity) are zero and the
+ * others are uniform over the remaining bins. Targets are a random linear
+ * function of the first (informative) features plus Gaussian noise, cut into
+ * labels at the quantiles of the label distribution.
+ *
+ * Features are generated and written one at a time, so besides the targets
+ * (8 bytes per instance) only one feature is kept in memory, whatever the
+ * size of the bin file.
+ */
+
+public class SyntheticBinFileGenerator {
+
+	protected String binFile;
+	protected int numInstances;
+	protected int numFeatures;
+
+	private int numBins = 64;
+	private double sparsity = 0.5;
+	private int numInformativeFeatures = 10;
+	private double noise = 1.0;
+	private double[] labelDistribution = new double[] { 0.5, 0.5 };
+	private long seed = 1;
+
+	protected double[] targets;
+
+	/*
+	 * Features of the header. They share the bins of the feature which is
+	 * currently generated.
+	 */
+	protected Feature[] features;
+
+	private Timer timer;
+	protected BinaryFileWriter writer;
+
+	public SyntheticBinFileGenerator(String binFile, int numInstances, int numFeatures) {
+		this.binFile = binFile;
+		this.numInstances = numInstances;
+		this.numFeatures = numFeatures;
+		timer = new Timer();
+	}
+
+	/**
+	 * Number of distinct values of each feature (at most Short.MAX_VALUE)
+	 */
+	public void setNumBins(int numBins) {
+		this.numBins = numBins;
+	}
+
+	/**
+	 * Fraction of the values of each feature which are zero
+	 */
+	public void setSparsity(double sparsity) {
+		this.sparsity = sparsity;
+	}
+
+	/**
+	 * Number of (first) features which the targets depend on
+	 */
+	public void setNumInformativeFeatures(int numInformativeFeatures) {
+		this.numInformativeFeatures = numInformativeFeatures;
+	}
+
+	/**
+	 * Standard deviation of the noise which is added to the targets, relative
+	 * to that of their informative part
+	 */
+	public void setNoise(double noise) {
+		this.noise = noise;
+	}
+
+	/**
+	 * Probabilities of the labels 0, 1, ... (normalized if they do not sum up
+	 * to 1)
+	 */
+	public void setLabelDistribution(double[] labelDistribution) {
+		this.labelDistribution = labelDistribution;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns an independent random stream of the seed. Each feature has its
+	 * own stream, so that it can be generated again without generating the
+	 * other ones.
+	 */
+	protected Random getRandom(int stream) {
+		return new Random(seed * 1000003L + stream);
+	}
+
+	/**
+	 * Called before anything is generated.
+	 */
+	protected void beforeGenerating() {
+		// Subclasses will override this function if needed
+	}
+
+	private NumericArrayType getFeatureType() throws Exception {
+		if (numBins <= 1) {
+			return NumericArrayType.NULL;
+		} else if (numBins <= 2) {
+			return NumericArrayType.BIT;
+		} else if (numBins <= Byte.MAX_VALUE) {
+			return NumericArrayType.BYTE;
+		} else if (numBins <= Short.MAX_VALUE) {
+			return NumericArrayType.SHORT;
+		}
+		throw new Exception("At most " + Short.MAX_VALUE + " bins per feature are supported.");
+	}
+
+	/**
+	 * Sets all values of the bins to those of the given feature
+	 */
+	private void fillBins(int f, NumericArray bins) {
+		if (bins.getType() == NumericArrayType.NULL) {
+			return;
+		}
+		Random rnd = getRandom(f + 1);
+		for (int i = 0; i < numInstances; i++) {
+			if (rnd.nextDouble() < sparsity) {
+				bins.set(i, 0);
+			} else {
+				bins.set(i, 1 + rnd.nextInt(numBins - 1));
+			}
+		}
+	}
+
+	private void makeTargets(NumericArray bins) {
+		timer.start();
+		System.out.print("Generating targets...");
+		Random rnd = getRandom(0);
+		targets = new double[numInstances];
+		int numInformative = Math.min(numInformativeFeatures, numFeatures);
+		if (numBins > 1) {
+			for (int f = 0; f < numInformative; f++) {
+				double weight = rnd.nextGaussian() / (numBins - 1);
+				fillBins(f, bins);
+				for (int i = 0; i < numInstances; i++) {
+					targets[i] += weight * bins.get(i);
+				}
+			}
+		}
+
+		double sum = 0;
+		double sumSquares = 0;
+		for (int i = 0; i < numInstances; i++) {
+			sum += targets[i];
+			sumSquares += targets[i] * targets[i];
+		}
+		double mean = sum / numInstances;
+		double std = Math.sqrt(Math.max(0, sumSquares / numInstances - mean * mean));
+		if (std == 0) {
+			std = 1;
+		}
+		QuantileSketch sketch = new QuantileSketch();
+		for (int i = 0; i < numInstances; i++) {
+			targets[i] += noise * std * rnd.nextGaussian();
+			sketch.add(targets[i]);
+		}
+
+		/*
+		 * Labels are cut at the quantiles of the label distribution
+		 */
+		double total = 0;
+		for (int l = 0; l < labelDistribution.length; l++) {
+			total += labelDistribution[l];
+		}
+		double[] thresholds = new double[labelDistribution.length - 1];
+		double cumulative = 0;
+		for (int l = 0; l < thresholds.length; l++) {
+			cumulative += labelDistribution[l];
+			thresholds[l] = sketch.getQuantile(cumulative / total);
+		}
+		for (int i = 0; i < numInstances; i++) {
+			int label = 0;
+			while (label < thresholds.length && targets[i] > thresholds[label]) {
+				label++;
+			}
+			targets[i] = label;
+		}
+		System.out.println("  [Done in: " + timer.getElapsedSeconds() + " seconds.]");
+	}
+
+	private void makeFeatures(NumericArray bins) {
+		int[] upperBounds = new int[numBins];
+		for (int b = 0; b < numBins; b++) {
+			upperBounds[b] = b;
+		}
+		features = new Feature[numFeatures];
+		for (int f = 0; f < numFeatures; f++) {
+			features[f] = new Feature(bins);
+			features[f].upperBounds = upperBounds;
+			features[f].setName("f" + (f + 1));
+			features[f].setMin(0);
+			features[f].setMax(numBins - 1);
+			features[f].setFactor(1);
+		}
+	}
+
+	protected void createBinFile() {
+		writer = new BinaryFileWriter(binFile, features, targets);
+	}
+
+	private void writeBinFile(NumericArray bins) {
+		timer.start();
+		System.out.print("Creating bin file...");
+		writer.writeBeginning();
+		for (int f = 0; f < numFeatures; f++) {
+			fillBins(f, bins);
+			writer.writeFeature(features[f]);
+		}
+		writer.writeEnd();
+		writer.close();
+		System.out.println("  [Done in: " + timer.getElapsedSeconds() + " seconds.]");
+	}
+
+	public void generate() throws Exception {
+		NumericArray bins = NumericArrayFactory.createNumericArray(getFeatureType(), numInstances);
+		beforeGenerating();
+		makeTargets(bins);
+		makeFeatures(bins);
+		createBinFile();
+		writeBinFile(bins);
+	}
+}
@@ -0,0 +1,400 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.input.sparse;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads sparse text files (SVMlight/LETOR format) directly from a byte
+ * buffer. Numbers are parsed in place and the qid string is only created
+ * when it differs from the qid of the previous line, so no objects are
+ * allocated per feature value.
+ */
+
+public class FastSparseTextFileReader extends SparseTextFileReader {
+
+	private final static int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private final static double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13,
+			1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	protected InputStream input;
+	private byte[] buffer;
+	private int position;
+	private int limit;
+	private boolean endOfStream;
+
+	private byte[] qidBytes;
+	private int qidLength;
+	private String qid;
+
+	public FastSparseTextFileReader() {
+		buffer = new byte[DEFAULT_BUFFER_SIZE];
+		qidBytes = new byte[16];
+	}
+
+	@Override
+	public void open(String filename) {
+		try {
+			if (filename.endsWith(".gz")) {
+				open(new GZIPInputStream(new FileInputStream(filename), DEFAULT_BUFFER_SIZE));
+			} else {
+				open(new FileInputStream(filename));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Opens the given chunk of a file. Only the lines inside the chunk are
+	 * loaded.
+	 */
+	public void open(SparseTextFileChunk chunk) {
+		if (chunk.isWholeFile()) {
+			open(chunk.filename);
+			return;
+		}
+		try {
+			FileInputStream fileStream = new FileInputStream(chunk.filename);
+			fileStream.getChannel().position(chunk.start);
+			open(new BoundedInputStream(fileStream, chunk.end - chunk.start));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void open(InputStream input) {
+		this.input = input;
+		position = 0;
+		limit = 0;
+		endOfStream = false;
+		qidLength = 0;
+		qid = null;
+	}
+
+	/**
+	 * Makes sure that buffer contains a complete line starting at position.
+	 *
+	 * @return the index of the end of line (exclusive) or -1 if there are no
+	 *         more lines.
+	 */
+	private int fillLine() throws IOException {
+		int scanFrom = position;
+		while (true) {
+			for (int i = scanFrom; i < limit; i++) {
+				if (buffer[i] == '\n') {
+					return i;
+				}
+			}
+			if (endOfStream) {
+				return (position < limit ? limit : -1);
+			}
+			if (position > 0) {
+				System.arraycopy(buffer, position, buffer, 0, limit - position);
+				limit -= position;
+				position = 0;
+			} else if (limit == buffer.length) {
+				byte[] newBuffer = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, newBuffer, 0, limit);
+				buffer = newBuffer;
+			}
+			scanFrom = limit;
+			int count = input.read(buffer, limit, buffer.length - limit);
+			if (count < 0) {
+				endOfStream = true;
+			} else {
+				limit += count;
+			}
+		}
+	}
+
+	private static boolean isSeparator(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	@Override
+	public boolean loadNextLine(SparseTextFileLine line) {
+		try {
+			int lineEnd;
+			while ((lineEnd = fillLine()) >= 0) {
+				int start = position;
+				position = (lineEnd < limit ? lineEnd + 1 : lineEnd);
+				if (parseLine(buffer, start, lineEnd, line)) {
+					return true;
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	/**
+	 * Parses the bytes in [start, end) into the given line.
+	 *
+	 * @return false if the line is empty or only contains a comment.
+	 */
+	protected boolean parseLine(byte[] buf, int start, int end, SparseTextFileLine line) {
+		for (int i = start; i < end; i++) {
+			if (buf[i] == '#') {
+				end = i;
+				break;
+			}
+		}
+		while (start < end && (buf[start] & 0xff) <= ' ') {
+			start++;
+		}
+		while (end > start && (buf[end - 1] & 0xff) <= ' ') {
+			end--;
+		}
+		if (start == end) {
+			return false;
+		}
+		if (buf[start] == '@') {
+			line.meta = true;
+			line.content = new String(buf, start, end - start);
+			return true;
+		}
+		line.meta = false;
+		line.content = null;
+		line.numPairs = 0;
+
+		int tokenEnd = start;
+		while (tokenEnd < end && !isSeparator(buf[tokenEnd])) {
+			tokenEnd++;
+		}
+		line.target = parseInt(buf, start, tokenEnd);
+
+		int pos = tokenEnd;
+		while (pos < end) {
+			while (pos < end && isSeparator(buf[pos])) {
+				pos++;
+			}
+			if (pos == end) {
+				break;
+			}
+			int tokenStart = pos;
+			int colon = -1;
+			while (pos < end && !isSeparator(buf[pos])) {
+				if (colon < 0 && buf[pos] == ':') {
+					colon = pos;
+				}
+				pos++;
+			}
+			if (colon < 0) {
+				throw new NumberFormatException("Invalid token: " + new String(buf, tokenStart, pos - tokenStart));
+			}
+			if (colon - tokenStart == 3 && buf[tokenStart] == 'q' && buf[tokenStart + 1] == 'i' && buf[tokenStart + 2] == 'd') {
+				line.qid = internQid(buf, colon + 1, pos);
+			} else {
+				line.ensureCapacity(line.numPairs + 1);
+				line.pairs[line.numPairs].featureIndex = parseInt(buf, tokenStart, colon);
+				line.pairs[line.numPairs].featureValue = parseDouble(buf, colon + 1, pos);
+				line.numPairs++;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Consecutive lines usually belong to the same query, so the qid string
+	 * is reused as long as its bytes don't change.
+	 */
+	private String internQid(byte[] buf, int start, int end) {
+		int length = end - start;
+		if (qid != null && length == qidLength) {
+			boolean same = true;
+			for (int i = 0; i < length; i++) {
+				if (qidBytes[i] != buf[start + i]) {
+					same = false;
+					break;
+				}
+			}
+			if (same) {
+				return qid;
+			}
+		}
+		if (qidBytes.length < length) {
+			qidBytes = new byte[length * 2];
+		}
+		System.arraycopy(buf, start, qidBytes, 0, length);
+		qidLength = length;
+		qid = new String(buf, start, length);
+		return qid;
+	}
+
+	public static int parseInt(byte[] buf, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+			negative = (buf[i] == '-');
+			i++;
+		}
+		if (i == end || end - i > 9) {
+			// Empty or possibly overflowing values are left to the JDK
+			return Integer.parseInt(new String(buf, start, end - start));
+		}
+		int value = 0;
+		for (; i < end; i++) {
+			int digit = buf[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return Integer.parseInt(new String(buf, start, end - start));
+			}
+			value = value * 10 + digit;
+		}
+		return (negative ? -value : value);
+	}
+
+	/**
+	 * Parses decimal values with at most 15 significant digits and small
+	 * exponents exactly (one multiplication or division of two exact
+	 * doubles). Other values fall back to Double.parseDouble, so the result
+	 * is always the same as Double.parseDouble.
+	 */
+	public static double parseDouble(byte[] buf, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+			negative = (buf[i] == '-');
+			i++;
+		}
+		long mantissa = 0;
+		int significantDigits = 0;
+		int exponent = 0;
+		boolean seenDigit = false;
+		boolean seenDot = false;
+		for (; i < end; i++) {
+			byte b = buf[i];
+			if (b >= '0' && b <= '9') {
+				seenDigit = true;
+				if (mantissa == 0 && b == '0') {
+					if (seenDot) {
+						exponent--;
+					}
+					continue;
+				}
+				significantDigits++;
+				if (significantDigits > 15) {
+					return slowParseDouble(buf, start, end);
+				}
+				mantissa = mantissa * 10 + (b - '0');
+				if (seenDot) {
+					exponent--;
+				}
+			} else if (b == '.' && !seenDot) {
+				seenDot = true;
+			} else {
+				break;
+			}
+		}
+		if (!seenDigit) {
+			return slowParseDouble(buf, start, end);
+		}
+		if (i < end) {
+			if (buf[i] != 'e' && buf[i] != 'E') {
+				return slowParseDouble(buf, start, end);
+			}
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+				negativeExponent = (buf[i] == '-');
+				i++;
+			}
+			if (i == end || end - i > 4) {
+				return slowParseDouble(buf, start, end);
+			}
+			int e = 0;
+			for (; i < end; i++) {
+				int digit = buf[i] - '0';
+				if (digit < 0 || digit > 9) {
+					return slowParseDouble(buf, start, end);
+				}
+				e = e * 10 + digit;
+			}
+			exponent += (negativeExponent ? -e : e);
+		}
+		double value;
+		if (mantissa == 0) {
+			value = 0;
+		} else if (exponent >= 0 && exponent < POW10.length) {
+			value = mantissa * POW10[exponent];
+		} else if (exponent < 0 && -exponent < POW10.length) {
+			value = mantissa / POW10[-exponent];
+		} else {
+			return slowParseDouble(buf, start, end);
+		}
+		return (negative ? -value : value);
+	}
+
+	private static double slowParseDouble(byte[] buf, int start, int end) {
+		return Double.parseDouble(new String(buf, start, end - start));
+	}
+
+	@Override
+	public void close() {
+		try {
+			input.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static class BoundedInputStream extends InputStream {
+
+		private InputStream input;
+		private long remaining;
+
+		public BoundedInputStream(InputStream input, long length) {
+			this.input = input;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = input.read();
+			if (b >= 0) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int count = input.read(b, off, (int) Math.min(len, remaining));
+			if (count > 0) {
+				remaining -= count;
+			}
+			return count;
+		}
+
+		@Override
+		public void close() throws IOException {
+			input.close();
+		}
+	}
+}
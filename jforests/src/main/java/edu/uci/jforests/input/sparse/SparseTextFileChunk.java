@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.input.sparse;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A byte range of a sparse text file which starts at the beginning of a line
+ * and ends at the end of a line. Chunks of a file can be parsed
+ * independently of each other.
+ */
+
+public class SparseTextFileChunk {
+
+	/*
+	 * Files smaller than this are not split
+	 */
+	private final static long MIN_CHUNK_SIZE = 1 << 20;
+
+	public String filename;
+	public long start;
+	public long end;
+
+	public SparseTextFileChunk(String filename, long start, long end) {
+		this.filename = filename;
+		this.start = start;
+		this.end = end;
+	}
+
+	public boolean isWholeFile() {
+		return start == 0 && end == Long.MAX_VALUE;
+	}
+
+	/**
+	 * Splits the given file into at most numChunks chunks of roughly equal
+	 * sizes. Compressed files can't be split and are returned as a single
+	 * chunk.
+	 *
+	 * @param alignToQueries
+	 *            if true, lines of the same query are never separated.
+	 */
+	public static List<SparseTextFileChunk> split(String filename, int numChunks, boolean alignToQueries) {
+		List<SparseTextFileChunk> chunks = new ArrayList<SparseTextFileChunk>();
+		long length = new File(filename).length();
+		if (filename.endsWith(".gz") || numChunks <= 1 || length < 2 * MIN_CHUNK_SIZE) {
+			chunks.add(new SparseTextFileChunk(filename, 0, Long.MAX_VALUE));
+			return chunks;
+		}
+		numChunks = (int) Math.min(numChunks, length / MIN_CHUNK_SIZE);
+
+		long start = 0;
+		try {
+			for (int c = 1; c < numChunks && start < length; c++) {
+				long boundary = findBoundary(filename, Math.max(start, c * length / numChunks), alignToQueries);
+				if (boundary > start) {
+					chunks.add(new SparseTextFileChunk(filename, start, boundary));
+					start = boundary;
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		if (start < length) {
+			chunks.add(new SparseTextFileChunk(filename, start, length));
+		}
+		return chunks;
+	}
+
+	/**
+	 * Returns the offset of the first line which starts at or after the given
+	 * offset. When aligning to queries, the offset is moved to the first line
+	 * whose qid differs from the qid of the line at that point.
+	 */
+	private static long findBoundary(String filename, long offset, boolean alignToQueries) throws IOException {
+		FileInputStream fileStream = new FileInputStream(filename);
+		try {
+			fileStream.getChannel().position(offset - 1);
+			InputStream input = new BufferedInputStream(fileStream);
+			long position = offset - 1;
+
+			// Skip the rest of the line which contains offset - 1
+			int b;
+			while ((b = input.read()) >= 0) {
+				position++;
+				if (b == '\n') {
+					break;
+				}
+			}
+			if (b < 0 || !alignToQueries) {
+				return position;
+			}
+
+			byte[] firstQid = null;
+			byte[] lineBuffer = new byte[1024];
+			while (true) {
+				long lineStart = position;
+				int length = 0;
+				while ((b = input.read()) >= 0) {
+					position++;
+					if (b == '\n') {
+						break;
+					}
+					if (length == lineBuffer.length) {
+						lineBuffer = Arrays.copyOf(lineBuffer, length * 2);
+					}
+					lineBuffer[length++] = (byte) b;
+				}
+				if (length == 0 && b < 0) {
+					return position;
+				}
+				byte[] qid = getQid(lineBuffer, length);
+				if (qid != null) {
+					if (firstQid == null) {
+						firstQid = qid;
+					} else if (!Arrays.equals(firstQid, qid)) {
+						return lineStart;
+					}
+				}
+				if (b < 0) {
+					return position;
+				}
+			}
+		} finally {
+			fileStream.close();
+		}
+	}
+
+	private static byte[] getQid(byte[] line, int length) {
+		for (int i = 0; i + 4 <= length; i++) {
+			if (line[i] == 'q' && line[i + 1] == 'i' && line[i + 2] == 'd' && line[i + 3] == ':'
+					&& (i == 0 || line[i - 1] == ' ' || line[i - 1] == '\t')) {
+				int end = i + 4;
+				while (end < length && line[end] != ' ' && line[end] != '\t' && line[end] != '\r' && line[end] != '#') {
+					end++;
+				}
+				return Arrays.copyOfRange(line, i + 4, end);
+			}
+			if (line[i] == '#') {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return filename + "[" + start + ", " + (end == Long.MAX_VALUE ? "EOF" : String.valueOf(end)) + ")";
+	}
+}
@@ -100,7 +100,22 @@ public abstract class LearningModule {
 		printTrainAndValidMeasurement(iteration, validMeasurement, Double.NaN, evaluationMetric);
 	}
 
+	/**
+	 * Returns true if each call of learn() learns a single tree. A profiled
+	 * iteration ends in the module whose sub-learner learns a single tree.
+	 */
+	protected boolean learnsSingleTree() {
+		return false;
+	}
+
 	protected void onIterationEnd() {
+		TrainingProfiler profiler = TrainingProfiler.getInstance();
+		if (profiler != null && subLearner != null && subLearner.learnsSingleTree()) {
+			TrainingProfiler.IterationProfile profile = profiler.endIteration();
+			if (progressListener instanceof ProfilingProgressListener) {
+				((ProfilingProgressListener) progressListener).onIterationProfile(profile);
+			}
+		}
 		if (progressListener != null) {
 			progressListener.onIterationEnd();
 		}
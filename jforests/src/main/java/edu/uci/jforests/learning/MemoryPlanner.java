@@ -0,0 +1,319 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.learning;
+
+import edu.uci.jforests.config.TrainingConfig;
+import edu.uci.jforests.dataset.NumericArrayFactory.NumericArrayType;
+import edu.uci.jforests.eval.ranking.NDCGEval;
+import edu.uci.jforests.input.BinaryFileReader;
+import edu.uci.jforests.input.RankingBinFileReader;
+import edu.uci.jforests.learning.bagging.BaggingConfig;
+import edu.uci.jforests.learning.boosting.GradientBoostingConfig;
+import edu.uci.jforests.learning.trees.TreesConfig;
+import edu.uci.jforests.util.ConfigHolder;
+import edu.uci.jforests.util.Util;
+
+/**
+ * Estimates the memory which is needed for training from the summaries of
+ * the bin files (see BinaryFileReader.readSummary) and the configuration,
+ * before the data sets are loaded. The estimate is split into:
+ *
+ * - the data sets: bins, upper bounds and targets of the features (and the
+ * queries of ranking data sets),
+ *
+ * - the histogram pool: the histograms of all features for each leaf whose
+ * histograms are kept (trees.histogram-pool-size),
+ *
+ * - per-instance buffers: samples, predictions, gradients and leaf instances
+ * of the learners,
+ *
+ * - threads: per-query buffers of the worker threads,
+ *
+ * - the model, including its text.
+ *
+ * The sizes are approximate and do not include the JVM itself, so the budget
+ * should leave some room below the maximum heap size. Thread stacks are not
+ * part of the heap, so they are reported separately and are not counted
+ * against the budget.
+ */
+
+public class MemoryPlanner {
+
+	/*
+	 * Count, weighted count and sum of targets per value of a regression
+	 * histogram; decision histograms have an array of class distributions
+	 * (2 classes) instead of the sum of targets.
+	 */
+	private final static int REGRESSION_HISTOGRAM_BYTES_PER_VALUE = 4 + 8 + 8;
+	private final static int DECISION_HISTOGRAM_BYTES_PER_VALUE = 4 + 8 + 16 + 2 * 8;
+	private final static int HISTOGRAM_OVERHEAD_BYTES = 96;
+
+	private final static int FEATURE_OVERHEAD_BYTES = 96;
+
+	/*
+	 * Split and leaf arrays of the trees and the text of the model
+	 */
+	private final static int BYTES_PER_TREE_LEAF = 400;
+
+	private final static long THREAD_STACK_BYTES = 1L << 20;
+
+	private final static int MIN_HISTOGRAM_POOL_SIZE = 2;
+
+	private TrainingConfig trainingConfig;
+	private TreesConfig treesConfig;
+
+	private BinaryFileReader trainSummary;
+	private BinaryFileReader validSummary;
+	private int maxTrainInstances;
+
+	private boolean boosting;
+	private boolean lambdaMART;
+	private boolean binaryClassifier;
+	private boolean decisionTrees;
+	private int numTrees;
+	private double validationSamplingRate;
+
+	private int histogramPoolSize;
+	private int numThreads;
+
+	/**
+	 * @param validSummary
+	 *            may be null if there is no validation set
+	 * @param maxTrainInstances
+	 *            number of training instances, which may be larger than the
+	 *            size of the training set (e.g. if it is augmented)
+	 */
+	public MemoryPlanner(ConfigHolder configHolder, TrainingConfig trainingConfig, BinaryFileReader trainSummary,
+			BinaryFileReader validSummary, int maxTrainInstances) throws Exception {
+		this.trainingConfig = trainingConfig;
+		this.trainSummary = trainSummary;
+		this.validSummary = validSummary;
+		this.maxTrainInstances = maxTrainInstances;
+		treesConfig = configHolder.getConfig(TreesConfig.class);
+		GradientBoostingConfig gradientBoostingConfig = configHolder.getConfig(GradientBoostingConfig.class);
+		BaggingConfig baggingConfig = configHolder.getConfig(BaggingConfig.class);
+
+		String algorithm = trainingConfig.learningAlgorithm;
+		lambdaMART = algorithm.contains("LambdaMART");
+		binaryClassifier = algorithm.contains("GradientBoostingBinaryClassifier");
+		boosting = lambdaMART || algorithm.contains("GradientBoosting");
+		decisionTrees = algorithm.contains("RandomForest") || algorithm.contains("DecisionTree");
+		numTrees = 1;
+		if (boosting) {
+			numTrees *= gradientBoostingConfig.numTrees;
+		}
+		if (algorithm.contains("Bagging") || algorithm.contains("RandomForest")) {
+			numTrees *= baggingConfig.bagCount;
+		}
+		validationSamplingRate = (boosting ? gradientBoostingConfig.validationSamplingRate : 1.0);
+
+		histogramPoolSize = treesConfig.getHistogramPoolSize();
+		numThreads = trainingConfig.numThreads;
+	}
+
+	private static long getDatasetBytes(BinaryFileReader summary) {
+		long numInstances = summary.getNumInstances();
+		long bytes = 8 * numInstances;
+		NumericArrayType[] types = summary.getFeatureTypes();
+		int[] numValues = summary.getFeatureNumValues();
+		for (int f = 0; f < types.length; f++) {
+			switch (types[f]) {
+			case BIT:
+				bytes += (numInstances + 7) / 8;
+				break;
+			case BYTE:
+				bytes += numInstances;
+				break;
+			case SHORT:
+				bytes += 2 * numInstances;
+				break;
+			case INT:
+				bytes += 4 * numInstances;
+				break;
+			default:
+				break;
+			}
+			bytes += 4L * numValues[f] + FEATURE_OVERHEAD_BYTES;
+		}
+		if (summary instanceof RankingBinFileReader) {
+			/*
+			 * Boundaries, maximum DCGs, label counts and query indices
+			 */
+			long numQueries = ((RankingBinFileReader) summary).getNumQueries();
+			bytes += numQueries * (4 + 8 * NDCGEval.MAX_TRUNCATION_LEVEL + 16 + 4 * NDCGEval.GAIN_LEVELS + 4);
+		}
+		return bytes;
+	}
+
+	private static int getMaxFeatureSize(BinaryFileReader summary) {
+		int max = 0;
+		for (int size : summary.getFeatureSizes()) {
+			max = Math.max(max, size);
+		}
+		return max;
+	}
+
+	private int getMaxDocsPerQuery() {
+		int max = 0;
+		if (trainSummary instanceof RankingBinFileReader) {
+			max = ((RankingBinFileReader) trainSummary).getMaximumDocsPerQuery();
+		}
+		if (validSummary instanceof RankingBinFileReader) {
+			max = Math.max(max, ((RankingBinFileReader) validSummary).getMaximumDocsPerQuery());
+		}
+		return max;
+	}
+
+	public long getDatasetBytes() {
+		long bytes = getDatasetBytes(trainSummary);
+		if (validSummary != null) {
+			bytes += getDatasetBytes(validSummary);
+		}
+		return bytes;
+	}
+
+	public long getTotalNumValues() {
+		long total = 0;
+		for (int numValues : trainSummary.getFeatureNumValues()) {
+			total += numValues;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the size of the histograms of all features for one leaf
+	 */
+	public long getHistogramBytesPerLeaf() {
+		int bytesPerValue = (decisionTrees ? DECISION_HISTOGRAM_BYTES_PER_VALUE : REGRESSION_HISTOGRAM_BYTES_PER_VALUE);
+		return getTotalNumValues() * bytesPerValue + (long) trainSummary.getFeatureTypes().length
+				* HISTOGRAM_OVERHEAD_BYTES;
+	}
+
+	public long getHistogramPoolBytes() {
+		return histogramPoolSize * getHistogramBytesPerLeaf();
+	}
+
+	public long getBufferBytes() {
+		/*
+		 * Training sample, sample of each iteration, leaf instances and the
+		 * instances of the smaller and larger leaves
+		 */
+		long bytesPerTrainInstance = 24 + 24 + 4 + 2 * 20;
+		if (boosting) {
+			// Predictions and residuals
+			bytesPerTrainInstance += 8 + 8;
+		}
+		if (lambdaMART) {
+			// Denominator weights and indices of the sub-learner sample
+			bytesPerTrainInstance += 8 + 4;
+		}
+		if (binaryClassifier) {
+			// Probabilities, weights and indices of the sub-learner sample
+			bytesPerTrainInstance += 8 + 8 + 4;
+		}
+
+		long bytesPerValidInstance = 8;
+		if (trainingConfig.validFraction < 1.0) {
+			bytesPerValidInstance += 24;
+		}
+		if (validationSamplingRate < 1.0) {
+			bytesPerValidInstance += 24 + 8;
+		}
+
+		int numValidInstances = (validSummary != null ? validSummary.getNumInstances() : 0);
+
+		/*
+		 * Shared index and weight arrays, and the buffer for loading a
+		 * feature
+		 */
+		long bytes = 12L * Math.max(maxTrainInstances, numValidInstances);
+		int maxFeatureSize = getMaxFeatureSize(trainSummary);
+		if (validSummary != null) {
+			maxFeatureSize = Math.max(maxFeatureSize, getMaxFeatureSize(validSummary));
+		}
+		bytes += maxFeatureSize;
+
+		return bytes + bytesPerTrainInstance * maxTrainInstances + bytesPerValidInstance * numValidInstances;
+	}
+
+	/**
+	 * Returns the heap memory of the worker threads: their per-query buffers
+	 * (for ranking)
+	 */
+	public long getThreadBytes() {
+		return numThreads * 16L * getMaxDocsPerQuery();
+	}
+
+	/**
+	 * Returns the memory of the stacks of the worker threads, which is
+	 * outside of the heap
+	 */
+	public long getThreadStackBytes() {
+		return numThreads * THREAD_STACK_BYTES;
+	}
+
+	public long getModelBytes() {
+		return (long) numTrees * treesConfig.numLeaves * BYTES_PER_TREE_LEAF;
+	}
+
+	public long getTotalBytes() {
+		return getDatasetBytes() + getHistogramPoolBytes() + getBufferBytes() + getThreadBytes() + getModelBytes();
+	}
+
+	public int getHistogramPoolSize() {
+		return histogramPoolSize;
+	}
+
+	/**
+	 * Reduces the histogram pool (down to 2 leaves) until the estimate fits
+	 * in the budget. Returns false if it still does not fit. The number of
+	 * threads is not reduced: their heap memory is small, so fewer threads
+	 * would slow training down without saving much. The configuration is not
+	 * changed until apply is called.
+	 */
+	public boolean adjust(long budget) {
+		while (getTotalBytes() > budget && histogramPoolSize > MIN_HISTOGRAM_POOL_SIZE) {
+			histogramPoolSize--;
+		}
+		return getTotalBytes() <= budget;
+	}
+
+	/**
+	 * Applies the adjusted histogram pool size to the configuration
+	 */
+	public void apply() {
+		if (histogramPoolSize < treesConfig.getHistogramPoolSize()) {
+			treesConfig.histogramPoolSize = histogramPoolSize;
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Estimated memory for training:\n");
+		sb.append("\tData sets: " + Util.formatByteSize(getDatasetBytes()) + "\n");
+		sb.append("\tHistogram pool: " + Util.formatByteSize(getHistogramPoolBytes()) + " (" + histogramPoolSize
+				+ " of " + treesConfig.numLeaves + " leaves, " + getTotalNumValues() + " values)\n");
+		sb.append("\tPer-instance buffers: " + Util.formatByteSize(getBufferBytes()) + "\n");
+		sb.append("\tThreads: " + Util.formatByteSize(getThreadBytes()) + " (" + numThreads + " threads, plus "
+				+ Util.formatByteSize(getThreadStackBytes()) + " of stacks outside of the heap)\n");
+		sb.append("\tModel: " + Util.formatByteSize(getModelBytes()) + " (" + numTrees + " trees)\n");
+		sb.append("\tTotal: " + Util.formatByteSize(getTotalBytes()));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,371 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.learning;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records the time and the number of executions of the phases of training
+ * for each tree iteration. Profiling is disabled (and the static start() and
+ * end() methods do nothing) from the time disable() is called, or unless
+ * init() is called.
+ *
+ * Phases which run in the workers of the thread pool (histogram build,
+ * histogram subtraction and split search) are added up over the workers, so
+ * their times can be larger than the time of the iteration. The allocated
+ * bytes of an iteration are added up over all threads, if the JVM supports
+ * it through com.sun.management.ThreadMXBean (otherwise they are -1).
+ *
+ * The cumulative values are exposed as the MBean
+ * "edu.uci.jforests:type=TrainingProfiler", and the values of each iteration
+ * can optionally be written to a CSV file.
+ */
+
+public class TrainingProfiler implements TrainingProfilerMBean {
+
+	public enum Phase {
+		Gradients, Sampling, HistogramBuild, HistogramSubtraction, SplitSearch, Partitioning, OutputAdjustment, ScoreUpdate, Evaluation
+	}
+
+	public final static String MBEAN_NAME = "edu.uci.jforests:type=TrainingProfiler";
+
+	private final static Phase[] PHASES = Phase.values();
+
+	private static volatile TrainingProfiler instance;
+
+	/*
+	 * Values of the current iteration
+	 */
+	private AtomicLongArray phaseNanos = new AtomicLongArray(PHASES.length);
+	private AtomicLongArray phaseCounts = new AtomicLongArray(PHASES.length);
+	private long iterationStart;
+
+	/*
+	 * Cumulative values of the finished iterations
+	 */
+	private int iterations;
+	private long[] totalPhaseNanos = new long[PHASES.length];
+	private long[] totalPhaseCounts = new long[PHASES.length];
+	private long totalNanos;
+	private long totalAllocatedBytes;
+	private IterationProfile lastProfile;
+
+	private ThreadMXBean threadBean;
+	private Method getThreadAllocatedBytes;
+	private Map<Long, Long> allocatedBytesPerThread = new HashMap<Long, Long>();
+
+	private PrintStream csvOutput;
+
+	public static class IterationProfile {
+		public int iteration;
+		public long wallNanos;
+		public long allocatedBytes;
+		public long[] phaseNanos = new long[PHASES.length];
+		public long[] phaseCounts = new long[PHASES.length];
+
+		public double getWallMillis() {
+			return wallNanos / 1e6;
+		}
+
+		public double getMillis(Phase phase) {
+			return phaseNanos[phase.ordinal()] / 1e6;
+		}
+
+		public long getCount(Phase phase) {
+			return phaseCounts[phase.ordinal()];
+		}
+	}
+
+	/**
+	 * Enables profiling. If csvFilename is not null, one line is written to
+	 * this file at the end of each iteration.
+	 */
+	public synchronized static TrainingProfiler init(String csvFilename) throws Exception {
+		if (instance != null) {
+			instance.close();
+		}
+		TrainingProfiler profiler = new TrainingProfiler();
+		if (csvFilename != null) {
+			profiler.csvOutput = new PrintStream(new File(csvFilename));
+			profiler.printCsvHeader();
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(MBEAN_NAME);
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+		server.registerMBean(profiler, name);
+		instance = profiler;
+		return profiler;
+	}
+
+	/**
+	 * Disables profiling: closes the CSV file and unregisters the MBean.
+	 * The profiler which was returned by init() keeps its values.
+	 */
+	public synchronized static void disable() {
+		if (instance == null) {
+			return;
+		}
+		instance.close();
+		instance = null;
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static TrainingProfiler getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the start time of a phase, or zero if profiling is disabled
+	 */
+	public static long start() {
+		return (instance != null ? System.nanoTime() : 0);
+	}
+
+	/**
+	 * Records one execution of a phase which started at the given time
+	 */
+	public static void end(Phase phase, long start) {
+		end(phase, start, 1);
+	}
+
+	/**
+	 * Records the given number of executions of a phase which started at
+	 * the given time. A count of zero adds time to the phase without
+	 * counting it (e.g. for preparing work which is counted elsewhere).
+	 */
+	public static void end(Phase phase, long start, long count) {
+		TrainingProfiler profiler = instance;
+		if (profiler != null) {
+			profiler.add(phase, System.nanoTime() - start, count);
+		}
+	}
+
+	private TrainingProfiler() {
+		/*
+		 * The allocated bytes are only available through an extension of the
+		 * JVM, which is loaded reflectively so that other JVMs fall back to -1
+		 */
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		try {
+			Class<?> extension = Class.forName("com.sun.management.ThreadMXBean");
+			if (extension.isInstance(bean)
+					&& (Boolean) extension.getMethod("isThreadAllocatedMemorySupported").invoke(bean)
+					&& (Boolean) extension.getMethod("isThreadAllocatedMemoryEnabled").invoke(bean)) {
+				getThreadAllocatedBytes = extension.getMethod("getThreadAllocatedBytes", long[].class);
+				threadBean = bean;
+			}
+		} catch (Exception e) {
+			threadBean = null;
+		} catch (LinkageError e) {
+			threadBean = null;
+		}
+		reset();
+	}
+
+	/**
+	 * Adds the time and number of executions of a phase to the current
+	 * iteration. This can be called by several threads at the same time.
+	 */
+	public void add(Phase phase, long nanos, long count) {
+		phaseNanos.addAndGet(phase.ordinal(), nanos);
+		phaseCounts.addAndGet(phase.ordinal(), count);
+	}
+
+	/**
+	 * Finishes the current iteration, which started at the end of the
+	 * previous one (or when the profiler was reset), and returns its profile.
+	 * Iterations are numbered from one since the last reset.
+	 */
+	public synchronized IterationProfile endIteration() {
+		long now = System.nanoTime();
+		IterationProfile profile = new IterationProfile();
+		profile.iteration = iterations + 1;
+		profile.wallNanos = now - iterationStart;
+		profile.allocatedBytes = getAllocatedBytesSinceLastCall();
+		for (int p = 0; p < PHASES.length; p++) {
+			profile.phaseNanos[p] = phaseNanos.getAndSet(p, 0);
+			profile.phaseCounts[p] = phaseCounts.getAndSet(p, 0);
+			totalPhaseNanos[p] += profile.phaseNanos[p];
+			totalPhaseCounts[p] += profile.phaseCounts[p];
+		}
+		iterations++;
+		totalNanos += profile.wallNanos;
+		if (profile.allocatedBytes >= 0) {
+			totalAllocatedBytes += profile.allocatedBytes;
+		}
+		lastProfile = profile;
+		iterationStart = now;
+
+		if (csvOutput != null) {
+			printCsvLine(profile);
+		}
+		return profile;
+	}
+
+	private long getAllocatedBytesSinceLastCall() {
+		if (threadBean == null) {
+			return -1;
+		}
+		long[] ids = threadBean.getAllThreadIds();
+		long[] allocated;
+		try {
+			allocated = (long[]) getThreadAllocatedBytes.invoke(threadBean, ids);
+		} catch (Exception e) {
+			return -1;
+		}
+		long result = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (allocated[i] < 0) {
+				continue;
+			}
+			Long previous = allocatedBytesPerThread.put(ids[i], allocated[i]);
+			result += allocated[i] - (previous != null ? previous : 0);
+		}
+		return result;
+	}
+
+	private void printCsvHeader() {
+		StringBuilder sb = new StringBuilder("iteration,wall_ms,allocated_bytes");
+		for (Phase phase : PHASES) {
+			sb.append("," + phase + "_ms," + phase + "_count");
+		}
+		csvOutput.println(sb.toString());
+	}
+
+	private void printCsvLine(IterationProfile profile) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(profile.iteration + "," + profile.getWallMillis() + "," + profile.allocatedBytes);
+		for (int p = 0; p < PHASES.length; p++) {
+			sb.append("," + (profile.phaseNanos[p] / 1e6) + "," + profile.phaseCounts[p]);
+		}
+		csvOutput.println(sb.toString());
+	}
+
+	/**
+	 * Closes the CSV file
+	 */
+	public synchronized void close() {
+		if (csvOutput != null) {
+			csvOutput.close();
+			csvOutput = null;
+		}
+	}
+
+	/**
+	 * Returns the cumulative time of each phase as a table
+	 */
+	public synchronized String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Phase\tTime (ms)\tCount\n");
+		for (int p = 0; p < PHASES.length; p++) {
+			sb.append(PHASES[p] + "\t" + (totalPhaseNanos[p] / 1e6) + "\t" + totalPhaseCounts[p] + "\n");
+		}
+		sb.append("Iterations: " + iterations + ", Time (ms): " + (totalNanos / 1e6));
+		if (threadBean != null) {
+			sb.append(", Allocated bytes: " + totalAllocatedBytes);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public synchronized int getIterations() {
+		return iterations;
+	}
+
+	@Override
+	public String[] getPhaseNames() {
+		String[] names = new String[PHASES.length];
+		for (int p = 0; p < PHASES.length; p++) {
+			names[p] = PHASES[p].toString();
+		}
+		return names;
+	}
+
+	@Override
+	public synchronized double[] getPhaseMillis() {
+		double[] result = new double[PHASES.length];
+		for (int p = 0; p < PHASES.length; p++) {
+			result[p] = totalPhaseNanos[p] / 1e6;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized long[] getPhaseCounts() {
+		return totalPhaseCounts.clone();
+	}
+
+	@Override
+	public synchronized double getTotalMillis() {
+		return totalNanos / 1e6;
+	}
+
+	@Override
+	public synchronized long getAllocatedBytes() {
+		return (threadBean != null ? totalAllocatedBytes : -1);
+	}
+
+	@Override
+	public synchronized double getLastIterationMillis() {
+		return (lastProfile != null ? lastProfile.getWallMillis() : Double.NaN);
+	}
+
+	@Override
+	public synchronized long getLastIterationAllocatedBytes() {
+		return (lastProfile != null ? lastProfile.allocatedBytes : -1);
+	}
+
+	@Override
+	public synchronized void reset() {
+		for (int p = 0; p < PHASES.length; p++) {
+			phaseNanos.set(p, 0);
+			phaseCounts.set(p, 0);
+			totalPhaseNanos[p] = 0;
+			totalPhaseCounts[p] = 0;
+		}
+		iterations = 0;
+		totalNanos = 0;
+		totalAllocatedBytes = 0;
+		lastProfile = null;
+		if (threadBean != null) {
+			allocatedBytesPerThread.clear();
+			getAllocatedBytesSinceLastCall();
+		}
+		iterationStart = System.nanoTime();
+	}
+}
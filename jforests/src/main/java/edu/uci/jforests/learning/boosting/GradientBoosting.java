@@ -24,6 +24,8 @@ import edu.uci.jforests.config.TrainingConfig;
 import edu.uci.jforests.eval.EvaluationMetric;
 import edu.uci.jforests.learning.LearningModule;
 import edu.uci.jforests.learning.LearningUtils;
+import edu.uci.jforests.learning.TrainingProfiler;
+import edu.uci.jforests.learning.TrainingProfiler.Phase;
 import edu.uci.jforests.learning.trees.Ensemble;
 import edu.uci.jforests.learning.trees.Tree;
 import edu.uci.jforests.learning.trees.TreeLeafInstances;
@@ -48,6 +50,8 @@ public class GradientBoosting extends LearningModule {
 	protected double learningRate;
 	protected double samplingRate;
 	protected double earlyStoppingTolerance;
+	protected int evaluationInterval;
+	protected double validationSamplingRate;
 
 	protected Sample curTrainSet;
 	protected Sample curValidSet;
@@ -58,6 +62,14 @@ public class GradientBoosting extends LearningModule {
 	protected EvaluationMetric evaluationMetric;
 
 	protected Random rnd;
+	private int randomSeed;
+
+	/*
+	 * Stratified sub sample of the validation set which is used for early
+	 * stopping (null if the whole validation set is used)
+	 */
+	protected Sample validSubSample;
+	protected double[] validSubSamplePredictions;
 
 	public GradientBoosting(String algorithmName) {
 		super(algorithmName);
@@ -74,6 +86,8 @@ public class GradientBoosting extends LearningModule {
 		this.learningRate = gradientBoostingConfig.learningRate;
 		this.samplingRate = gradientBoostingConfig.samplingRate;
 		this.earlyStoppingTolerance = gradientBoostingConfig.earlyStoppingTolerance;
+		this.evaluationInterval = Math.max(1, gradientBoostingConfig.evaluationInterval);
+		this.validationSamplingRate = gradientBoostingConfig.validationSamplingRate;
 
 		trainPredictions = new double[maxNumTrainInstances];
 		residuals = new double[maxNumTrainInstances];
@@ -82,6 +96,10 @@ public class GradientBoosting extends LearningModule {
 		TrainingConfig trainingConfig = configHolder.getConfig(TrainingConfig.class);
 		printIntermediateValidMeasurements = trainingConfig.printIntermediateValidMeasurements;
 		rnd = new Random(trainingConfig.randomSeed);
+		randomSeed = trainingConfig.randomSeed;
+		if (validationSamplingRate < 1.0) {
+			validSubSamplePredictions = new double[maxNumValidInstances];
+		}
 	}
 
 	protected void preprocess() {
@@ -94,6 +112,10 @@ public class GradientBoosting extends LearningModule {
 	public Ensemble learn(Sample trainSet, Sample validSet) throws Exception {
 		curTrainSet = trainSet;
 		curValidSet = validSet;
+		validSubSample = null;
+		if (validSet != null && validationSamplingRate < 1.0) {
+			validSubSample = validSet.getStratifiedSubSample(validationSamplingRate, new Random(randomSeed));
+		}
 
 		preprocess();
 
@@ -109,6 +131,7 @@ public class GradientBoosting extends LearningModule {
 			if (subEnsemble == null) {
 				break;
 			}
+			long phaseStart = TrainingProfiler.start();
 			for (int t = 0; t < subEnsemble.getNumTrees(); t++) {
 				Tree tree = subEnsemble.getTreeAt(t);
 				ensemble.addTree(tree, subEnsemble.getWeightAt(t));
@@ -116,12 +139,20 @@ public class GradientBoosting extends LearningModule {
 					LearningUtils.updateScores(validSet, validPredictions, ((RegressionTree) tree), 1.0);
 				}
 			}
+			TrainingProfiler.end(Phase.ScoreUpdate, phaseStart);
 			treeCounts[curIteration - 1] = ensemble.getNumTrees();
 
 			if (validSet == null) {
 				earlyStoppingIteration = curIteration;
-			} else {
+			} else if (curIteration % evaluationInterval == 0 || curIteration == numSubModules) {
+				/*
+				 * Iterations which are not evaluated are never selected for
+				 * early stopping: the trees of the iterations after the last
+				 * evaluated one are removed at the end.
+				 */
+				phaseStart = TrainingProfiler.start();
 				double validMeasurement = getValidMeasurement();
+				TrainingProfiler.end(Phase.Evaluation, phaseStart);
 				if (evaluationMetric.isFirstBetter(validMeasurement, bestValidationMeasurement, earlyStoppingTolerance)) {
 					earlyStoppingIteration = curIteration;
 					if (evaluationMetric.isFirstBetter(validMeasurement, bestValidationMeasurement, 0)) {
@@ -145,8 +176,21 @@ public class GradientBoosting extends LearningModule {
 		if (earlyStoppingIteration > 0) {
 			int treesToKeep = treeCounts[earlyStoppingIteration - 1];
 			int treesToDelete = ensemble.getNumTrees() - treesToKeep;
+			if (validSubSample != null) {
+				for (int t = treesToKeep; t < ensemble.getNumTrees(); t++) {
+					LearningUtils.updateScores(validSet, validPredictions, (RegressionTree) ensemble.getTreeAt(t), -1.0);
+				}
+			}
 			ensemble.removeLastTrees(treesToDelete);
 		}
+		if (validSubSample != null) {
+			/*
+			 * Early stopping was based on the sub sample; report the
+			 * measurement of the selected model on the whole validation set.
+			 */
+			validSubSample = null;
+			bestValidationMeasurement = getValidMeasurement();
+		}
 
 		onLearningEnd();
 		return ensemble;
@@ -157,8 +201,22 @@ public class GradientBoosting extends LearningModule {
 		return bestValidationMeasurement;
 	}
 
+	/**
+	 * Evaluates the current predictions on the validation sub sample, if
+	 * there is one, and otherwise on the whole validation set.
+	 */
 	protected double getValidMeasurement() throws Exception {
-		return curValidSet.evaluate(validPredictions, evaluationMetric);
+		if (validSubSample == null) {
+			return getValidMeasurement(curValidSet, validPredictions);
+		}
+		for (int i = 0; i < validSubSample.size; i++) {
+			validSubSamplePredictions[i] = validPredictions[validSubSample.indicesInParentSample[i]];
+		}
+		return getValidMeasurement(validSubSample, validSubSamplePredictions);
+	}
+
+	protected double getValidMeasurement(Sample sample, double[] predictions) throws Exception {
+		return sample.evaluate(predictions, evaluationMetric);
 	}
 
 	protected double getTrainMeasurement() throws Exception {
@@ -166,12 +224,17 @@ public class GradientBoosting extends LearningModule {
 	}
 
 	protected Sample getSubLearnerSample() {
+		long phaseStart = TrainingProfiler.start();
 		for (int i = 0; i < curTrainSet.size; i++) {
 			residuals[i] = curTrainSet.targets[i] - trainPredictions[i];
 		}
+		TrainingProfiler.end(Phase.Gradients, phaseStart);
+
+		phaseStart = TrainingProfiler.start();
 		Sample subLearnerSample = curTrainSet.getClone();
 		subLearnerSample.targets = residuals;
 		subLearnerSample = subLearnerSample.getRandomSubSample(samplingRate, rnd);
+		TrainingProfiler.end(Phase.Sampling, phaseStart);
 		return subLearnerSample;
 	}
 
@@ -181,9 +244,14 @@ public class GradientBoosting extends LearningModule {
 
 	@Override
 	public void postProcess(Tree tree, TreeLeafInstances treeLeafInstances) {
+		long phaseStart = TrainingProfiler.start();
 		adjustOutputs(tree, treeLeafInstances);
+		TrainingProfiler.end(Phase.OutputAdjustment, phaseStart);
+
+		phaseStart = TrainingProfiler.start();
 		LearningUtils.updateScores(curTrainSet, trainPredictions, ((RegressionTree) tree), 1.0);
 		postProcessScores();
+		TrainingProfiler.end(Phase.ScoreUpdate, phaseStart);
 	}
 
 	protected void postProcessScores() {
@@ -43,6 +43,21 @@ public class GradientBoostingConfig extends ComponentConfig {
 	private final static String EARLY_STOPPING_TOLERANCE = "boosting.early-stopping-tolerance";
 	public double earlyStoppingTolerance = 0.0;
 	
+	/*
+	 * The validation set is evaluated after every evaluationInterval
+	 * iterations (and after the last one)
+	 */
+	private final static String EVALUATION_INTERVAL = "boosting.evaluation-interval";
+	public int evaluationInterval = 1;
+	
+	/*
+	 * If less than 1, a stratified random sub sample of the validation set
+	 * with this rate is used for early stopping, and the selected model is
+	 * evaluated on the whole validation set at the end of training
+	 */
+	private final static String VALIDATION_SAMPLING_RATE = "boosting.validation-sub-sampling";
+	public double validationSamplingRate = 1.0;
+	
 	public void init(ConfigHolder config) {
 		for (Entry<Object, Object> entry : config.getEntries()) {
 			String key = ((String) entry.getKey()).toLowerCase();
@@ -58,6 +73,10 @@ public class GradientBoostingConfig extends ComponentConfig {
 				samplingRate = Double.parseDouble(value);
 			} else if (key.equals(EARLY_STOPPING_TOLERANCE)) {
 				earlyStoppingTolerance = Double.parseDouble(value);
+			} else if (key.equals(EVALUATION_INTERVAL)) {
+				evaluationInterval = Integer.parseInt(value);
+			} else if (key.equals(VALIDATION_SAMPLING_RATE)) {
+				validationSamplingRate = Double.parseDouble(value);
 			}
 		}
 	}
@@ -70,6 +89,8 @@ public class GradientBoostingConfig extends ComponentConfig {
 		sb.append(IMBALANCE_COST_ADJUSTMENT + ": " + imbalanceCostAdjustment + "\n");
 		sb.append(SAMPLING_RATE + ": " + samplingRate);
 		sb.append(EARLY_STOPPING_TOLERANCE + ": " + earlyStoppingTolerance + "\n");
+		sb.append(EVALUATION_INTERVAL + ": " + evaluationInterval + "\n");
+		sb.append(VALIDATION_SAMPLING_RATE + ": " + validationSamplingRate + "\n");
 		return sb.toString();
 	}
 }
@@ -23,6 +23,8 @@ import edu.uci.jforests.dataset.RankingDataset;
 import edu.uci.jforests.eval.EvaluationMetric;
 import edu.uci.jforests.eval.ranking.NDCGEval;
 import edu.uci.jforests.eval.ranking.RankingEvaluationMetric;
+import edu.uci.jforests.learning.TrainingProfiler;
+import edu.uci.jforests.learning.TrainingProfiler.Phase;
 import edu.uci.jforests.learning.trees.LeafInstances;
 import edu.uci.jforests.learning.trees.Tree;
 import edu.uci.jforests.learning.trees.TreeLeafInstances;
@@ -129,6 +131,9 @@ public class LambdaMART extends GradientBoosting {
 			Arrays.fill(validPredictions, 0, curValidSet.size, 0);
 		
 		//calculate the effectiveness of the natural ranking. this is needed for U_risk
+		if (!swapScorer.usesIterationEvaluation()) {
+			return;
+		}
 		
 		RankingEvaluationMetric rankingMetric = (RankingEvaluationMetric) ( (RankingEvaluationMetric) evaluationMetric).getParentMetric();
 		
@@ -176,6 +181,7 @@ public class LambdaMART extends GradientBoosting {
 
 	@Override
 	protected Sample getSubLearnerSample() {
+		long phaseStart = TrainingProfiler.start();
 		Arrays.fill(residuals, 0, curTrainSet.size, 0);
 		Arrays.fill(denomWeights, 0, curTrainSet.size, 0);
 		RankingSample trainSample = (RankingSample) curTrainSet;
@@ -188,7 +194,9 @@ public class LambdaMART extends GradientBoosting {
 			offset += chunkSize;
 		}
 		BlockingThreadPoolExecutor.getInstance().await();
+		TrainingProfiler.end(Phase.Gradients, phaseStart);
 
+		phaseStart = TrainingProfiler.start();
 		trainSample = trainSample.getClone();
 		trainSample.targets = residuals;
 		setSubLearnerSampleWeights(trainSample);
@@ -198,15 +206,21 @@ public class LambdaMART extends GradientBoosting {
 		for (int i = 0; i < subLearnerSample.size; i++) {
 			subLearnerSampleIndicesInTrainSet[i] = zeroFilteredSample.indicesInParentSample[subLearnerSample.indicesInParentSample[i]];
 		}
+		TrainingProfiler.end(Phase.Sampling, phaseStart);
 		return subLearnerSample;
 	}
 
 	@Override
 	protected void onIterationEnd() {
+		if (!swapScorer.usesIterationEvaluation()) {
+			super.onIterationEnd();
+			return;
+		}
 		
 		RankingEvaluationMetric rankingMetric = (RankingEvaluationMetric) ( (RankingEvaluationMetric) evaluationMetric).getParentMetric();
 		
 		//inform the swap scorer of the new training measurement
+		long phaseStart = TrainingProfiler.start();
 		double[] nDCG = null;
 		try {
 			nDCG = ((RankingSample) curTrainSet).evaluateByQuery(
@@ -214,6 +228,7 @@ public class LambdaMART extends GradientBoosting {
 		} catch (Exception e) {
 			e.printStackTrace();
 		}		
+		TrainingProfiler.end(Phase.Evaluation, phaseStart);
 		swapScorer.setCurrentIterationEvaluation(curIteration, nDCG);
 		
 		
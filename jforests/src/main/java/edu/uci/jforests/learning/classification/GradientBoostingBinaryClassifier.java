@@ -21,6 +21,8 @@ import java.util.Arrays;
 
 import edu.uci.jforests.eval.EvaluationMetric;
 import edu.uci.jforests.learning.LearningUtils;
+import edu.uci.jforests.learning.TrainingProfiler;
+import edu.uci.jforests.learning.TrainingProfiler.Phase;
 import edu.uci.jforests.learning.boosting.GradientBoosting;
 import edu.uci.jforests.learning.boosting.GradientBoostingConfig;
 import edu.uci.jforests.learning.trees.LeafInstances;
@@ -98,13 +100,14 @@ public class GradientBoostingBinaryClassifier extends GradientBoosting {
 	}
 
 	@Override
-	protected double getValidMeasurement() throws Exception {
-		LearningUtils.updateProbabilities(validProb, validPredictions, curValidSet.size);
-		return curValidSet.evaluate(validProb, evaluationMetric);
+	protected double getValidMeasurement(Sample sample, double[] predictions) throws Exception {
+		LearningUtils.updateProbabilities(validProb, predictions, sample.size);
+		return sample.evaluate(validProb, evaluationMetric);
 	}
 
 	@Override
 	protected Sample getSubLearnerSample() {
+		long phaseStart = TrainingProfiler.start();
 		double responseAbs;
 		double target;
 		for (int d = 0; d < curTrainSet.size; d++) {
@@ -114,13 +117,16 @@ public class GradientBoostingBinaryClassifier extends GradientBoosting {
 			responseAbs = Math.abs(residuals[instance]);
 			weights[instance] = responseAbs * (2 - responseAbs);
 		}
+		TrainingProfiler.end(Phase.Gradients, phaseStart);
 
+		phaseStart = TrainingProfiler.start();
 		Sample subLearnerSample = curTrainSet.getRandomSubSample(samplingRate, rnd).getClone();
 		subLearnerSample.targets = residuals;
 
 		for (int i = 0; i < subLearnerSample.size; i++) {
 			subLearnerSampleIndicesInTrainSet[i] = subLearnerSample.indicesInParentSample[i];
 		}
+		TrainingProfiler.end(Phase.Sampling, phaseStart);
 
 		return subLearnerSample;
 	}
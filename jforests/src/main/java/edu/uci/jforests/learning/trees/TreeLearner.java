@@ -25,6 +25,8 @@ import edu.uci.jforests.dataset.Dataset;
 import edu.uci.jforests.dataset.Feature;
 import edu.uci.jforests.dataset.Histogram;
 import edu.uci.jforests.learning.LearningModule;
+import edu.uci.jforests.learning.TrainingProfiler;
+import edu.uci.jforests.learning.TrainingProfiler.Phase;
 import edu.uci.jforests.sample.Sample;
 import edu.uci.jforests.util.ConfigHolder;
 import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
@@ -52,13 +54,25 @@ public abstract class TreeLearner extends LearningModule {
 	private TreeLeafInstances trainTreeLeafInstances;
 	protected Sample curTrainSet;
 
+	/*
+	 * Histograms of the leaves. At most histogramPoolSize leaves have
+	 * histograms; the others are null.
+	 */
 	private Histogram[][] perNodeHistograms;
+	private int histogramPoolSize;
+	private int numHistogramArrays;
 	protected TreeSplit[] perLeafBestSplit;
 
 	private int parentNodeIndex;
 	private int smallerChildIndex;
 	private int largerChildIndex;
 
+	/*
+	 * True if the histograms of the parent were dropped from the pool, so
+	 * that those of the larger child can not be computed by subtraction
+	 */
+	private boolean buildLargerChild;
+
 	private CandidateSplitsForLeaf candidateSplitsForSmallerChild;
 	private CandidateSplitsForLeaf candidateSplitsForLargerChild;
 
@@ -70,6 +84,11 @@ public abstract class TreeLearner extends LearningModule {
 		super(algorithmName);
 	}
 
+	@Override
+	protected boolean learnsSingleTree() {
+		return true;
+	}
+
 	public void init(Dataset dataset, ConfigHolder configHolder, int maxTrainInstances) throws Exception {
 		TrainingConfig trainingConfig = configHolder.getConfig(TrainingConfig.class);
 		TreesConfig treesConfig = configHolder.getConfig(TreesConfig.class);
@@ -90,6 +109,8 @@ public abstract class TreeLearner extends LearningModule {
 		}
 
 		perNodeHistograms = new Histogram[treesConfig.numLeaves][];
+		histogramPoolSize = treesConfig.getHistogramPoolSize();
+		numHistogramArrays = 0;
 
 		candidateSplitsForSmallerChild = getNewCandidateSplitsForLeaf(dataset.numFeatures, maxTrainInstances);
 		candidateSplitsForLargerChild = getNewCandidateSplitsForLeaf(dataset.numFeatures, maxTrainInstances);
@@ -155,7 +176,7 @@ public abstract class TreeLearner extends LearningModule {
 
 		for (int i = 0; i < perNodeHistograms.length; i++) {
 			if (perNodeHistograms[i] != null) {
-				for (int f = 0; f < perNodeHistograms[0].length; f++) {
+				for (int f = 0; f < perNodeHistograms[i].length; f++) {
 					Histogram dist = perNodeHistograms[i][f];
 					if (dist != null) {
 						dist.splittable = true;
@@ -166,15 +187,25 @@ public abstract class TreeLearner extends LearningModule {
 
 		Tree tree = getNewTree();
 
+		/*
+		 * Loading the instances of the leaves and choosing the best split of
+		 * each leaf are timed but not counted: the counts of these phases are
+		 * the numbers of histograms which are built and searched.
+		 */
+		long phaseStart = TrainingProfiler.start();
 		candidateSplitsForSmallerChild.init(ROOT_LEAF_INDEX, trainTreeLeafInstances, curTrainSet);
 		parentNodeIndex = -1;
 		smallerChildIndex = ROOT_LEAF_INDEX;
+		buildLargerChild = false;
 		if (perNodeHistograms[ROOT_LEAF_INDEX] == null) {
-			perNodeHistograms[ROOT_LEAF_INDEX] = getNewHistogramArray();
+			perNodeHistograms[ROOT_LEAF_INDEX] = getHistogramArray(tree, -1);
 		}
 		candidateSplitsForLargerChild.init(-1);
+		TrainingProfiler.end(Phase.HistogramBuild, phaseStart, 0);
 		leafCandidateSplitsCalculationTask.run();
+		phaseStart = TrainingProfiler.start();
 		setBestTreeSplitForLeaf(candidateSplitsForSmallerChild);
+		TrainingProfiler.end(Phase.SplitSearch, phaseStart, 0);
 
 		TreeSplit rootSplit = perLeafBestSplit[ROOT_LEAF_INDEX];
 		if (Double.isInfinite(rootSplit.gain)) {
@@ -187,7 +218,9 @@ public abstract class TreeLearner extends LearningModule {
 
 		int bestLeaf = ROOT_LEAF_INDEX;
 		parentNodeIndex = ROOT_LEAF_INDEX;
+		phaseStart = TrainingProfiler.start();
 		trainTreeLeafInstances.split(bestLeaf, curTrainSet.dataset, rootSplit.feature, rootSplit.threshold, rightChild, curTrainSet.indicesInDataset);
+		TrainingProfiler.end(Phase.Partitioning, phaseStart);
 		for (int k = 2; k < maxLeaves; k++) {
 
 			int numInstancesInLeftChild = trainTreeLeafInstances.getNumberOfInstancesInLeaf(leftChild);
@@ -195,14 +228,26 @@ public abstract class TreeLearner extends LearningModule {
 
 			if (numInstancesInRightChild >= 2 * minInstancesPerLeaf || numInstancesInLeftChild >= 2 * minInstancesPerLeaf) {
 
+				/*
+				 * The larger child takes the histograms of the parent (left
+				 * child) if they are still in the pool.
+				 */
+				buildLargerChild = (perNodeHistograms[leftChild] == null);
 				if (numInstancesInLeftChild < numInstancesInRightChild) {
 
+					/*
+					 * The slot of the left child is cleared before new
+					 * histograms are taken, so that the histograms of the
+					 * parent (now in the right child) can not be taken for
+					 * it.
+					 */
 					Histogram[] tmpDist = perNodeHistograms[rightChild];
 					perNodeHistograms[rightChild] = perNodeHistograms[leftChild];
+					perNodeHistograms[leftChild] = null;
 					if (tmpDist != null) {
 						perNodeHistograms[leftChild] = tmpDist;
 					} else {
-						perNodeHistograms[leftChild] = getNewHistogramArray();
+						perNodeHistograms[leftChild] = getHistogramArray(tree, rightChild);
 					}
 
 					largerChildIndex = rightChild;
@@ -211,21 +256,28 @@ public abstract class TreeLearner extends LearningModule {
 				} else {
 
 					if (perNodeHistograms[rightChild] == null) {
-						perNodeHistograms[rightChild] = getNewHistogramArray();
+						perNodeHistograms[rightChild] = getHistogramArray(tree, leftChild);
 					}
 
 					largerChildIndex = leftChild;
 					smallerChildIndex = rightChild;
 
 				}
+				if (buildLargerChild) {
+					perNodeHistograms[largerChildIndex] = getHistogramArray(tree, smallerChildIndex);
+				}
 
+				phaseStart = TrainingProfiler.start();
 				candidateSplitsForSmallerChild.init(smallerChildIndex, trainTreeLeafInstances, curTrainSet);
 				candidateSplitsForLargerChild.init(largerChildIndex, trainTreeLeafInstances, curTrainSet);
+				TrainingProfiler.end(Phase.HistogramBuild, phaseStart, 0);
 
 				leafCandidateSplitsCalculationTask.run();
 
+				phaseStart = TrainingProfiler.start();
 				setBestTreeSplitForLeaf(candidateSplitsForSmallerChild);
 				setBestTreeSplitForLeaf(candidateSplitsForLargerChild);
+				TrainingProfiler.end(Phase.SplitSearch, phaseStart, 0);
 
 			} else {
 				perLeafBestSplit[leftChild].gain = Double.NEGATIVE_INFINITY;
@@ -252,8 +304,10 @@ public abstract class TreeLearner extends LearningModule {
 			rightChild = ~tree.getRightChild(newInteriorNodeIndex);
 			parentNodeIndex = bestLeaf;
 
+			phaseStart = TrainingProfiler.start();
 			trainTreeLeafInstances.split(bestLeaf, curTrainSet.dataset, bestLeafSplit.feature, bestLeafSplit.threshold, rightChild,
 					curTrainSet.indicesInDataset);
+			TrainingProfiler.end(Phase.Partitioning, phaseStart);
 
 		}
 
@@ -298,8 +352,16 @@ public abstract class TreeLearner extends LearningModule {
 			this.endIdx = endIdx;
 		}
 
+		/*
+		 * If training is profiled, the time of each step is added up locally
+		 * and is given to the profiler at the end.
+		 */
 		@Override
 		public void run() {
+			TrainingProfiler profiler = TrainingProfiler.getInstance();
+			boolean profiling = (profiler != null);
+			long buildNanos = 0, subtractionNanos = 0, searchNanos = 0;
+			int numBuilds = 0, numSubtractions = 0, numSearches = 0;
 			for (int f = beginIdx; f < endIdx; f++) {
 				if (!selectedFeatures[f]) {
 					continue;
@@ -310,18 +372,49 @@ public abstract class TreeLearner extends LearningModule {
 					continue;
 				}
 
+				long t0 = (profiling ? System.nanoTime() : 0);
 				perNodeHistograms[smallerChildIndex][f].init(candidateSplitsForSmallerChild, curTrainSet.indicesInDataset);
+				long t1 = (profiling ? System.nanoTime() : 0);
 				setBestThresholdForSplit(candidateSplitsForSmallerChild.getFeatureSplit(f), perNodeHistograms[smallerChildIndex][f]);
+				if (profiling) {
+					long t2 = System.nanoTime();
+					buildNanos += t1 - t0;
+					searchNanos += t2 - t1;
+					numBuilds++;
+					numSearches++;
+				}
 
 				if (parentNodeIndex != -1) {
 					try {
-						perNodeHistograms[largerChildIndex][f].subtractFromMe(perNodeHistograms[smallerChildIndex][f]);
+						long t2 = (profiling ? System.nanoTime() : 0);
+						if (buildLargerChild) {
+							perNodeHistograms[largerChildIndex][f].init(candidateSplitsForLargerChild, curTrainSet.indicesInDataset);
+						} else {
+							perNodeHistograms[largerChildIndex][f].subtractFromMe(perNodeHistograms[smallerChildIndex][f]);
+						}
+						long t3 = (profiling ? System.nanoTime() : 0);
 						setBestThresholdForSplit(candidateSplitsForLargerChild.getFeatureSplit(f), perNodeHistograms[largerChildIndex][f]);
+						if (profiling) {
+							if (buildLargerChild) {
+								buildNanos += t3 - t2;
+								numBuilds++;
+							} else {
+								subtractionNanos += t3 - t2;
+								numSubtractions++;
+							}
+							searchNanos += System.nanoTime() - t3;
+							numSearches++;
+						}
 					} catch (Exception e) {
 						e.printStackTrace();
 					}
 				}
 			}
+			if (profiling) {
+				profiler.add(Phase.HistogramBuild, buildNanos, numBuilds);
+				profiler.add(Phase.HistogramSubtraction, subtractionNanos, numSubtractions);
+				profiler.add(Phase.SplitSearch, searchNanos, numSearches);
+			}
 		}
 	}
 
@@ -339,4 +432,41 @@ public abstract class TreeLearner extends LearningModule {
 		}
 		return result;
 	}
+
+	/**
+	 * Returns histograms for a leaf: new ones while the pool is not full,
+	 * otherwise those of another leaf. Histograms of leaves of the previous
+	 * trees are taken first and then those of the leaf of the current tree
+	 * with the lowest gain, which is the least likely to be split. The
+	 * histograms of busyLeaf are never taken.
+	 */
+	private Histogram[] getHistogramArray(Tree tree, int busyLeaf) {
+		if (numHistogramArrays < histogramPoolSize) {
+			numHistogramArrays++;
+			return getNewHistogramArray();
+		}
+		int leaf = -1;
+		for (int i = perNodeHistograms.length - 1; i >= 0; i--) {
+			if (perNodeHistograms[i] == null || i == busyLeaf) {
+				continue;
+			}
+			if (i >= tree.numLeaves) {
+				leaf = i;
+				break;
+			}
+			if (leaf < 0 || getGain(i) < getGain(leaf)) {
+				leaf = i;
+			}
+		}
+		Histogram[] result = perNodeHistograms[leaf];
+		perNodeHistograms[leaf] = null;
+		for (int f = 0; f < result.length; f++) {
+			result[f].splittable = true;
+		}
+		return result;
+	}
+
+	private double getGain(int leaf) {
+		return (perLeafBestSplit[leaf] != null ? perLeafBestSplit[leaf].gain : Double.NEGATIVE_INFINITY);
+	}
 }
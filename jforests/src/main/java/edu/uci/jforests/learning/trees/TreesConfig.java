@@ -42,6 +42,18 @@ public class TreesConfig extends ComponentConfig {
 	
 	public boolean randomizedSplits = false;
 	private final static String RANDOMIZED_SPLITS = "trees.randomized-splits";
+
+	/**
+	 * Maximum number of leaves whose histograms are kept for computing the
+	 * histograms of their children by subtraction (at least 2). When a leaf
+	 * whose histograms were dropped is split, the histograms of both children
+	 * are built from the instances. Their sums may differ from those computed
+	 * by subtraction by rounding, so the leaf outputs (and rarely the splits)
+	 * may differ slightly from those with the full pool. If this parameter is
+	 * not positive, the histograms of all leaves are kept.
+	 */
+	public int histogramPoolSize = -1;
+	private final static String HISTOGRAM_POOL_SIZE = "trees.histogram-pool-size";
 	
 	/**
 	 * If this parameter is set to a not null value, the listed features will be
@@ -58,6 +70,16 @@ public class TreesConfig extends ComponentConfig {
 	private final static String FEATURES_TO_INCLUDE = "trees.features-to-include";
 	
 
+	/**
+	 * Returns the number of leaves whose histograms are kept
+	 */
+	public int getHistogramPoolSize() {
+		if (histogramPoolSize <= 0) {
+			return numLeaves;
+		}
+		return Math.max(2, Math.min(histogramPoolSize, numLeaves));
+	}
+
 	public void init(ConfigHolder config) {
 		for (Entry<Object, Object> entry : config.getEntries()) {
 			String key = ((String) entry.getKey()).toLowerCase();
@@ -67,6 +89,8 @@ public class TreesConfig extends ComponentConfig {
 				featureSamplingPerSplit = Double.parseDouble(value);
 			} else if (key.equals(RANDOMIZED_SPLITS)) {
 				randomizedSplits = value.equals("true");
+			} else if (key.equals(HISTOGRAM_POOL_SIZE)) {
+				histogramPoolSize = Integer.parseInt(value);
 			} else if (key.equals(NUM_LEAVES)) {
 				numLeaves = Integer.parseInt(value);
 			} else if (key.equals(MIN_INSTANCE_PERCENTAGE_PER_LEAF)) {
@@ -89,6 +113,7 @@ public class TreesConfig extends ComponentConfig {
 		sb.append(MIN_INSTANCE_PER_LEAF + ": " + minInstancePerLeaf + "\n");
 		sb.append(SPLIT_SAMPLING + ": " + featureSamplingPerSplit + "\n");
 		sb.append(RANDOMIZED_SPLITS + ": " + randomizedSplits + "\n");
+		sb.append(HISTOGRAM_POOL_SIZE + ": " + histogramPoolSize + "\n");
 		sb.append(FEATURES_TO_DISCARD + ": " + featuresToDiscard);
 		return sb.toString();
 	}
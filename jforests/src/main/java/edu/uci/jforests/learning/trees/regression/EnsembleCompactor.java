@@ -0,0 +1,312 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.learning.trees.regression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.uci.jforests.eval.EvaluationMetric;
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.sample.Sample;
+
+/**
+ * Post-processes a trained ensemble of regression trees to make it cheaper
+ * to evaluate:
+ *
+ * <ul>
+ * <li>Tree weights are multiplied into the leaf outputs (all trees of the
+ * result have weight 1).</li>
+ * <li>Splits whose two subtrees are identical are removed. Trees which end up
+ * with a single leaf are folded into a bias.</li>
+ * <li>Trees with identical structure are merged into one tree by adding up
+ * their leaf outputs.</li>
+ * <li>Trees with small contributions are removed by greedy backward
+ * elimination as long as the loss on a validation sample stays within a
+ * given budget.</li>
+ * </ul>
+ *
+ * The bias is stored as a tree with a single leaf at the beginning of the
+ * resulting ensemble. Except for pruning, the scores of the resulting
+ * ensemble are the same as the original ones up to floating point rounding.
+ */
+
+public class EnsembleCompactor {
+
+	private List<RegressionTree> trees;
+	private double bias;
+
+	private int numRemovedSplits;
+	private int numConstantTrees;
+	private int numMergedTrees;
+	private int numPrunedTrees;
+
+	public EnsembleCompactor(Ensemble ensemble) {
+		trees = new ArrayList<RegressionTree>();
+		for (int t = 0; t < ensemble.getNumTrees(); t++) {
+			RegressionTree tree = (RegressionTree) ensemble.getTreeAt(t);
+			trees.add(rebuild(tree, ensemble.getWeightAt(t), false));
+		}
+	}
+
+	/**
+	 * Copies the tree with its leaf outputs multiplied by the weight. The
+	 * nodes of the copy are numbered in pre-order, so trees with the same
+	 * structure get the same arrays.
+	 */
+	private RegressionTree rebuild(RegressionTree tree, double weight, boolean removeRedundantSplits) {
+		RegressionTree result = new RegressionTree();
+		result.init(tree.numLeaves, 0);
+		double[] outputs = new double[tree.numLeaves];
+		copySubtree(tree, (tree.numLeaves == 1 ? ~0 : 0), result, 0, weight, removeRedundantSplits, outputs,
+				new RegressionTreeSplit());
+		for (int l = 0; l < result.numLeaves; l++) {
+			result.setLeafOutput(l, outputs[l]);
+		}
+		return result;
+	}
+
+	private void copySubtree(RegressionTree tree, int node, RegressionTree result, int leaf, double weight,
+			boolean removeRedundantSplits, double[] outputs, RegressionTreeSplit split) {
+		if (removeRedundantSplits) {
+			while (node >= 0
+					&& (isConstantSubtree(tree, node) || isSameSubtree(tree, tree.getLeftChild(node),
+							tree.getRightChild(node)))) {
+				node = tree.getLeftChild(node);
+			}
+		}
+		if (node < 0) {
+			outputs[leaf] = weight * tree.getLeafOutput(~node);
+			return;
+		}
+		split.feature = tree.getSplitFeature(node);
+		split.threshold = tree.getThreshold(node);
+		split.originalThreshold = tree.getOriginalThreshold(node);
+		result.split(leaf, split);
+		int rightLeaf = result.numLeaves - 1;
+		copySubtree(tree, tree.getLeftChild(node), result, leaf, weight, removeRedundantSplits, outputs, split);
+		copySubtree(tree, tree.getRightChild(node), result, rightLeaf, weight, removeRedundantSplits, outputs,
+				split);
+	}
+
+	private boolean isConstantSubtree(RegressionTree tree, int node) {
+		List<Integer> leaves = new ArrayList<Integer>();
+		tree.loadLeavesInSubtree(node, leaves);
+		for (int leaf : leaves) {
+			if (tree.getLeafOutput(leaf) != tree.getLeafOutput(leaves.get(0))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isSameSubtree(RegressionTree tree, int node1, int node2) {
+		if (node1 < 0 || node2 < 0) {
+			return node1 < 0 && node2 < 0 && tree.getLeafOutput(~node1) == tree.getLeafOutput(~node2);
+		}
+		return tree.getSplitFeature(node1) == tree.getSplitFeature(node2)
+				&& tree.getThreshold(node1) == tree.getThreshold(node2)
+				&& isSameSubtree(tree, tree.getLeftChild(node1), tree.getLeftChild(node2))
+				&& isSameSubtree(tree, tree.getRightChild(node1), tree.getRightChild(node2));
+	}
+
+	/**
+	 * Removes splits whose two subtrees are identical or whose leaves all
+	 * have the same output, and folds the trees which become constant into
+	 * the bias.
+	 */
+	public void removeRedundantSplits() {
+		List<RegressionTree> result = new ArrayList<RegressionTree>();
+		for (RegressionTree tree : trees) {
+			RegressionTree simplified = rebuild(tree, 1.0, true);
+			numRemovedSplits += tree.numLeaves - simplified.numLeaves;
+			if (simplified.numLeaves == 1) {
+				bias += simplified.getLeafOutput(0);
+				numConstantTrees++;
+			} else {
+				result.add(simplified);
+			}
+		}
+		trees = result;
+	}
+
+	private String getStructureKey(RegressionTree tree) {
+		StringBuilder sb = new StringBuilder();
+		for (int n = 0; n < tree.numLeaves - 1; n++) {
+			sb.append(tree.getSplitFeature(n)).append(':').append(tree.getThreshold(n)).append(':')
+					.append(tree.getLeftChild(n)).append(':').append(tree.getRightChild(n)).append(' ');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Merges trees which have the same splits. The merged tree takes the
+	 * place of the first of them.
+	 */
+	public void mergeIdenticalTrees() {
+		List<RegressionTree> result = new ArrayList<RegressionTree>();
+		Map<String, RegressionTree> treesByStructure = new HashMap<String, RegressionTree>();
+		for (RegressionTree tree : trees) {
+			String key = getStructureKey(tree);
+			RegressionTree first = treesByStructure.get(key);
+			if (first == null) {
+				treesByStructure.put(key, tree);
+				result.add(tree);
+			} else {
+				for (int l = 0; l < tree.numLeaves; l++) {
+					first.setLeafOutput(l, first.getLeafOutput(l) + tree.getLeafOutput(l));
+				}
+				numMergedTrees++;
+			}
+		}
+		trees = result;
+	}
+
+	/*
+	 * Scale of the fixed point scores which are used while pruning. Adding
+	 * and subtracting tree outputs in floating point leaves rounding errors
+	 * of the removed trees in the scores, which then break ties between
+	 * documents in favor of the removed trees.
+	 */
+	private final static double FIXED_POINT_SCALE = 1L << 32;
+
+	private void getFixedPointOutputs(Sample sample, RegressionTree tree, long[] outputs) {
+		for (int i = 0; i < sample.size; i++) {
+			int instance = (sample.indicesInDataset == null ? i : sample.indicesInDataset[i]);
+			outputs[i] = Math.round(tree.getOutput(sample.dataset, instance) * FIXED_POINT_SCALE);
+		}
+	}
+
+	/**
+	 * Removes trees by greedy backward elimination: trees are visited in
+	 * increasing order of their mean absolute output on the sample, and a
+	 * tree is removed if the metric of the remaining ensemble is at most
+	 * maxLoss worse than the metric of the ensemble before pruning. The mean
+	 * output of a removed tree is added to the bias. The scores which are
+	 * evaluated include the bias, so they are those of getEnsemble().
+	 *
+	 * @return the metric of the pruned ensemble on the sample
+	 */
+	public double pruneTrees(Sample sample, EvaluationMetric metric, double maxLoss) throws Exception {
+		int numTrees = trees.size();
+		long[] scores = new long[sample.size];
+		long[] outputs = new long[sample.size];
+		double[] contributions = new double[numTrees];
+		for (int t = 0; t < numTrees; t++) {
+			getFixedPointOutputs(sample, trees.get(t), outputs);
+			double sum = 0;
+			for (int i = 0; i < sample.size; i++) {
+				scores[i] += outputs[i];
+				sum += Math.abs(outputs[i]);
+			}
+			contributions[t] = sum / sample.size;
+		}
+		/*
+		 * The bias holds the outputs of the constant trees and the mean
+		 * outputs of the removed trees, so it is part of the evaluated scores.
+		 */
+		double[] candidateScores = new double[sample.size];
+		for (int i = 0; i < sample.size; i++) {
+			candidateScores[i] = scores[i] / FIXED_POINT_SCALE + bias;
+		}
+		double baseline = metric.measure(candidateScores, sample);
+		double current = baseline;
+
+		Integer[] order = new Integer[numTrees];
+		for (int t = 0; t < numTrees; t++) {
+			order[t] = t;
+		}
+		final double[] keys = contributions;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer t1, Integer t2) {
+				return Double.compare(keys[t1], keys[t2]);
+			}
+		});
+
+		boolean[] removed = new boolean[numTrees];
+		for (int t : order) {
+			getFixedPointOutputs(sample, trees.get(t), outputs);
+			double sum = 0;
+			for (int i = 0; i < sample.size; i++) {
+				sum += outputs[i];
+			}
+			double candidateBias = bias + sum / FIXED_POINT_SCALE / sample.size;
+			for (int i = 0; i < sample.size; i++) {
+				candidateScores[i] = (scores[i] - outputs[i]) / FIXED_POINT_SCALE + candidateBias;
+			}
+			double value = metric.measure(candidateScores, sample);
+			double loss = (metric.largerIsBetter() ? baseline - value : value - baseline);
+			if (loss <= maxLoss) {
+				for (int i = 0; i < sample.size; i++) {
+					scores[i] -= outputs[i];
+				}
+				bias = candidateBias;
+				removed[t] = true;
+				current = value;
+				numPrunedTrees++;
+			}
+		}
+
+		List<RegressionTree> result = new ArrayList<RegressionTree>();
+		for (int t = 0; t < numTrees; t++) {
+			if (!removed[t]) {
+				result.add(trees.get(t));
+			}
+		}
+		trees = result;
+		return current;
+	}
+
+	public Ensemble getEnsemble() {
+		Ensemble ensemble = new Ensemble();
+		if (bias != 0) {
+			RegressionTree biasTree = new RegressionTree();
+			biasTree.init(1, 0);
+			biasTree.setLeafOutput(0, bias);
+			ensemble.addTree(biasTree, 1.0);
+		}
+		for (RegressionTree tree : trees) {
+			ensemble.addTree(tree, 1.0);
+		}
+		return ensemble;
+	}
+
+	public double getBias() {
+		return bias;
+	}
+
+	public int getNumRemovedSplits() {
+		return numRemovedSplits;
+	}
+
+	public int getNumConstantTrees() {
+		return numConstantTrees;
+	}
+
+	public int getNumMergedTrees() {
+		return numMergedTrees;
+	}
+
+	public int getNumPrunedTrees() {
+		return numPrunedTrees;
+	}
+}
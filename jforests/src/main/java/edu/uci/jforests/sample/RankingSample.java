@@ -70,35 +70,31 @@ public class RankingSample extends Sample {
 			}
 			ArraysUtil.shuffle(tempQueryIndices, rnd);
 			Arrays.sort(tempQueryIndices, 0, subSampleNumQueries);
-			int[] subSampleQueryBoundaries = new int[subSampleNumQueries + 1];
-			int subSampleSize = 0;
-			for (int idx = 0; idx < subSampleNumQueries; idx++) {
-				int f = tempQueryIndices[idx];
-				subSampleSize += queryBoundaries[f + 1] - queryBoundaries[f];
-			}
-			int[] sampleIndicesInDataset = new int[subSampleSize];
-			double[] sampleWeights = new double[subSampleSize];
-			double[] sampleTargets = new double[subSampleSize];
-			int[] sampleIndicesInParentSample = new int[subSampleSize];
-			int curSampleSize = 0;
-			int[] subSampleQueryIndices = new int[subSampleNumQueries];
-			for (int idx = 0; idx < subSampleNumQueries; idx++) {
-				int f = tempQueryIndices[idx];
-				subSampleQueryBoundaries[idx] = curSampleSize;
-				int beginOffset = queryBoundaries[f];
-				int numDocs = queryBoundaries[f + 1] - beginOffset;
-				for (int d = 0; d < numDocs; d++) {
-					sampleIndicesInDataset[curSampleSize] = indicesInDataset[beginOffset + d];
-					sampleWeights[curSampleSize] = weights[beginOffset + d];
-					sampleTargets[curSampleSize] = targets[beginOffset + d];
-					sampleIndicesInParentSample[curSampleSize] = beginOffset + d;
-					curSampleSize++;
+			return getSubSampleOfQueries(tempQueryIndices, subSampleNumQueries);
+		} else {
+			RankingSample result = this.getClone();
+			result.indicesInParentSample = Constants.ONE_TWO_THREE_ETC;
+			return result;
+		}
+	}
+
+	/**
+	 * Returns a random sub sample of the queries whose distribution of the
+	 * highest label of the queries is the same as the one of this sample (up
+	 * to rounding).
+	 */
+	@Override
+	public RankingSample getStratifiedSubSample(double rate, Random rnd) {
+		if (rate < 1.0) {
+			double[] maxTargets = new double[numQueries];
+			for (int q = 0; q < numQueries; q++) {
+				maxTargets[q] = Double.NEGATIVE_INFINITY;
+				for (int i = queryBoundaries[q]; i < queryBoundaries[q + 1]; i++) {
+					maxTargets[q] = Math.max(maxTargets[q], targets[i]);
 				}
-				subSampleQueryIndices[idx] = queryIndices[f];
 			}
-			subSampleQueryBoundaries[subSampleNumQueries] = curSampleSize;
-			return new RankingSample((RankingDataset) dataset, subSampleQueryIndices, subSampleQueryBoundaries, sampleIndicesInDataset, sampleWeights,
-					sampleTargets, sampleIndicesInParentSample, subSampleSize, subSampleNumQueries);
+			int[] selected = selectStratified(maxTargets, numQueries, rate, rnd);
+			return getSubSampleOfQueries(selected, selected.length);
 		} else {
 			RankingSample result = this.getClone();
 			result.indicesInParentSample = Constants.ONE_TWO_THREE_ETC;
@@ -106,6 +102,42 @@ public class RankingSample extends Sample {
 		}
 	}
 
+	/*
+	 * Creates a sub sample from the given (sorted) query indices of this
+	 * sample
+	 */
+	private RankingSample getSubSampleOfQueries(int[] tempQueryIndices, int subSampleNumQueries) {
+		int[] subSampleQueryBoundaries = new int[subSampleNumQueries + 1];
+		int subSampleSize = 0;
+		for (int idx = 0; idx < subSampleNumQueries; idx++) {
+			int f = tempQueryIndices[idx];
+			subSampleSize += queryBoundaries[f + 1] - queryBoundaries[f];
+		}
+		int[] sampleIndicesInDataset = new int[subSampleSize];
+		double[] sampleWeights = new double[subSampleSize];
+		double[] sampleTargets = new double[subSampleSize];
+		int[] sampleIndicesInParentSample = new int[subSampleSize];
+		int curSampleSize = 0;
+		int[] subSampleQueryIndices = new int[subSampleNumQueries];
+		for (int idx = 0; idx < subSampleNumQueries; idx++) {
+			int f = tempQueryIndices[idx];
+			subSampleQueryBoundaries[idx] = curSampleSize;
+			int beginOffset = queryBoundaries[f];
+			int numDocs = queryBoundaries[f + 1] - beginOffset;
+			for (int d = 0; d < numDocs; d++) {
+				sampleIndicesInDataset[curSampleSize] = indicesInDataset[beginOffset + d];
+				sampleWeights[curSampleSize] = weights[beginOffset + d];
+				sampleTargets[curSampleSize] = targets[beginOffset + d];
+				sampleIndicesInParentSample[curSampleSize] = beginOffset + d;
+				curSampleSize++;
+			}
+			subSampleQueryIndices[idx] = queryIndices[f];
+		}
+		subSampleQueryBoundaries[subSampleNumQueries] = curSampleSize;
+		return new RankingSample((RankingDataset) dataset, subSampleQueryIndices, subSampleQueryBoundaries, sampleIndicesInDataset, sampleWeights,
+				sampleTargets, sampleIndicesInParentSample, subSampleSize, subSampleNumQueries);
+	}
+
 	public RankingSample getFilteredSubSample(List<Integer> qids) {
 		int subSampleNumQueries = qids.size();
 		int[] subSampleQueryBoundaries = new int[subSampleNumQueries + 1];
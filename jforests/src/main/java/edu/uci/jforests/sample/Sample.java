@@ -20,6 +20,7 @@ package edu.uci.jforests.sample;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
 
@@ -75,22 +76,22 @@ public class Sample {
 			}
 			ArraysUtil.shuffle(tempIndices, rnd);
 			Arrays.sort(tempIndices, 0, sampleSize);
+			return getSubSample(tempIndices, sampleSize);
+		} else {
+			Sample result = this.getClone();
+			result.indicesInParentSample = Constants.ONE_TWO_THREE_ETC;
+			return result;
+		}
+	}
 
-			int[] sampleIndicesInDataset = new int[sampleSize];
-			double[] sampleWeights = new double[sampleSize];
-			double[] sampleTargets = new double[sampleSize];
-			int[] sampleIndicesInParentSample = new int[sampleSize];
-			int curSampleSize = 0;
-			for (int idx = 0; idx < sampleSize; idx++) {
-				int f = tempIndices[idx];
-				sampleIndicesInDataset[curSampleSize] = indicesInDataset[f];
-				sampleWeights[curSampleSize] = weights[f];
-				sampleTargets[curSampleSize] = targets[f];
-				sampleIndicesInParentSample[curSampleSize] = f;
-				curSampleSize++;
-			}
-			return new Sample(dataset, sampleIndicesInDataset, sampleWeights, sampleTargets,
-					sampleIndicesInParentSample, sampleSize);
+	/**
+	 * Returns a random sub sample whose distribution of targets is the same
+	 * as the one of this sample (up to rounding).
+	 */
+	public Sample getStratifiedSubSample(double rate, Random rnd) {
+		if (rate < 1.0) {
+			int[] selected = selectStratified(targets, size, rate, rnd);
+			return getSubSample(selected, selected.length);
 		} else {
 			Sample result = this.getClone();
 			result.indicesInParentSample = Constants.ONE_TWO_THREE_ETC;
@@ -98,6 +99,62 @@ public class Sample {
 		}
 	}
 
+	/*
+	 * Creates a sub sample from the given (sorted) indices of this sample
+	 */
+	private Sample getSubSample(int[] indices, int sampleSize) {
+		int[] sampleIndicesInDataset = new int[sampleSize];
+		double[] sampleWeights = new double[sampleSize];
+		double[] sampleTargets = new double[sampleSize];
+		int[] sampleIndicesInParentSample = new int[sampleSize];
+		int curSampleSize = 0;
+		for (int idx = 0; idx < sampleSize; idx++) {
+			int f = indices[idx];
+			sampleIndicesInDataset[curSampleSize] = indicesInDataset[f];
+			sampleWeights[curSampleSize] = weights[f];
+			sampleTargets[curSampleSize] = targets[f];
+			sampleIndicesInParentSample[curSampleSize] = f;
+			curSampleSize++;
+		}
+		return new Sample(dataset, sampleIndicesInDataset, sampleWeights, sampleTargets,
+				sampleIndicesInParentSample, sampleSize);
+	}
+
+	/**
+	 * Selects round(count * rate) of the items [0, count) such that the
+	 * distribution of their keys is the same as for all items: items are
+	 * ordered by key (ties in random order) and every (1 / rate)-th item is
+	 * selected, starting at a random offset.
+	 * 
+	 * @return indices of the selected items in increasing order
+	 */
+	protected static int[] selectStratified(final double[] keys, int count, double rate, Random rnd) {
+		int sampleSize = Math.max(1, (int) Math.round(count * rate));
+		int[] shuffled = new int[count];
+		for (int i = 0; i < count; i++) {
+			shuffled[i] = i;
+		}
+		ArraysUtil.shuffle(shuffled, rnd);
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = shuffled[i];
+		}
+		// Stable sort, so that ties stay in random order
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Double.compare(keys[i1], keys[i2]);
+			}
+		});
+		double offset = rnd.nextDouble();
+		int[] selected = new int[sampleSize];
+		for (int k = 0; k < sampleSize; k++) {
+			selected[k] = order[(int) ((k + offset) * count / sampleSize)];
+		}
+		Arrays.sort(selected);
+		return selected;
+	}
+
 	public class BinFreq implements Comparable<BinFreq> {
 		public int bin;
 		public int freq;
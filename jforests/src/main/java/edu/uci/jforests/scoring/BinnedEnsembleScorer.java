@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.scoring;
+
+import java.util.Arrays;
+
+import edu.uci.jforests.input.BinMapper;
+import edu.uci.jforests.input.sparse.SparseTextFileLine;
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.regression.RegressionTree;
+
+/**
+ * Scores original feature vectors with an ensemble of regression trees by
+ * mapping them to the bins of the training set and comparing integer bins
+ * in the trees. The results are the same as generating a bin file for the
+ * data and running predict on it.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+
+public class BinnedEnsembleScorer implements Scorer {
+
+	private final BinMapper binMapper;
+	private final int numTrees;
+	private final int[][] splitFeatures;
+	private final int[][] binThresholds;
+	private final int[][] leftChild;
+	private final int[][] rightChild;
+
+	/*
+	 * Leaf outputs multiplied by the weight of the tree
+	 */
+	private final double[][] leafOutputs;
+
+	public BinnedEnsembleScorer(Ensemble ensemble, BinMapper binMapper) throws Exception {
+		this.binMapper = binMapper;
+		numTrees = ensemble.getNumTrees();
+		splitFeatures = new int[numTrees][];
+		binThresholds = new int[numTrees][];
+		leftChild = new int[numTrees][];
+		rightChild = new int[numTrees][];
+		leafOutputs = new double[numTrees][];
+		for (int t = 0; t < numTrees; t++) {
+			RegressionTree tree = (RegressionTree) ensemble.getTreeAt(t);
+			double weight = ensemble.getWeightAt(t);
+			int numInternalNodes = tree.numLeaves - 1;
+			splitFeatures[t] = new int[numInternalNodes];
+			binThresholds[t] = new int[numInternalNodes];
+			leftChild[t] = new int[numInternalNodes];
+			rightChild[t] = new int[numInternalNodes];
+			for (int n = 0; n < numInternalNodes; n++) {
+				int feature = tree.getSplitFeature(n);
+				if (feature >= binMapper.getNumFeatures()
+						|| Arrays.binarySearch(binMapper.getUpperBounds(feature), tree.getThreshold(n)) < 0) {
+					throw new Exception("Threshold " + tree.getThreshold(n) + " of feature " + feature
+							+ " is not a bin boundary. The bin mapper must be created from the training set.");
+				}
+				splitFeatures[t][n] = feature;
+				binThresholds[t][n] = binMapper.getBin(feature, tree.getThreshold(n));
+				leftChild[t][n] = tree.getLeftChild(n);
+				rightChild[t][n] = tree.getRightChild(n);
+			}
+			leafOutputs[t] = new double[tree.numLeaves];
+			for (int l = 0; l < tree.numLeaves; l++) {
+				leafOutputs[t][l] = weight * tree.getLeafOutput(l);
+			}
+		}
+	}
+
+	public BinMapper getBinMapper() {
+		return binMapper;
+	}
+
+	public int getNumTrees() {
+		return numTrees;
+	}
+
+	@Override
+	public int getNumFeatures() {
+		return binMapper.getNumFeatures();
+	}
+
+	/*
+	 * Flattened structure of the trees, used by EnsembleCompiler
+	 */
+
+	int[] getSplitFeatures(int tree) {
+		return splitFeatures[tree];
+	}
+
+	int[] getBinThresholds(int tree) {
+		return binThresholds[tree];
+	}
+
+	int[] getLeftChildren(int tree) {
+		return leftChild[tree];
+	}
+
+	int[] getRightChildren(int tree) {
+		return rightChild[tree];
+	}
+
+	double[] getLeafOutputs(int tree) {
+		return leafOutputs[tree];
+	}
+
+	public int getLeaf(int tree, int[] bins) {
+		int[] features = splitFeatures[tree];
+		int[] thresholds = binThresholds[tree];
+		int[] left = leftChild[tree];
+		int[] right = rightChild[tree];
+		if (features.length == 0) {
+			return 0;
+		}
+		int node = 0;
+		while (node >= 0) {
+			if (bins[features[node]] <= thresholds[node]) {
+				node = left[node];
+			} else {
+				node = right[node];
+			}
+		}
+		return ~node;
+	}
+
+	/**
+	 * Computes the leaf index of every tree for the vectors in [begin, end)
+	 * of a batch of vectors which are already mapped to bins. leaves[i][t]
+	 * is the leaf of tree t for vector i.
+	 */
+	public void getLeaves(int[][] bins, int begin, int end, int[][] leaves) {
+		for (int t = 0; t < numTrees; t++) {
+			for (int i = begin; i < end; i++) {
+				leaves[i][t] = getLeaf(t, bins[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the memory which is used by the arrays of the trees
+	 */
+	public long getSizeInBytes() {
+		long size = 0;
+		for (int t = 0; t < numTrees; t++) {
+			size += 4L * 4 * splitFeatures[t].length + 8L * leafOutputs[t].length;
+		}
+		return size;
+	}
+
+	public int getNumLeaves(int tree) {
+		return leafOutputs[tree].length;
+	}
+
+	/**
+	 * Scores a vector which is already mapped to bins
+	 */
+	public double score(int[] bins) {
+		double score = 0;
+		for (int t = 0; t < numTrees; t++) {
+			score += leafOutputs[t][getLeaf(t, bins)];
+		}
+		return score;
+	}
+
+	/**
+	 * Scores a batch of vectors which are already mapped to bins. Each tree is
+	 * applied to all vectors of the batch before moving to the next tree, so
+	 * that the arrays of the tree stay in cache.
+	 */
+	public void score(int[][] bins, int count, double[] scores) {
+		Arrays.fill(scores, 0, count, 0);
+		for (int t = 0; t < numTrees; t++) {
+			double[] outputs = leafOutputs[t];
+			for (int i = 0; i < count; i++) {
+				scores[i] += outputs[getLeaf(t, bins[i])];
+			}
+		}
+	}
+
+	@Override
+	public double score(double[] featureVector) {
+		int[] bins = new int[binMapper.getNumFeatures()];
+		binMapper.map(featureVector, bins);
+		return score(bins);
+	}
+
+	@Override
+	public double score(int[] featureIndices, double[] values, int length) {
+		int[] bins = new int[binMapper.getNumFeatures()];
+		binMapper.map(featureIndices, values, length, bins);
+		return score(bins);
+	}
+
+	public double score(SparseTextFileLine line, int[] bins) {
+		binMapper.map(line, bins);
+		return score(bins);
+	}
+}
@@ -0,0 +1,278 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.scoring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.regression.RegressionTree;
+import edu.uci.jforests.sample.RankingSample;
+import edu.uci.jforests.util.ArraysUtil;
+import edu.uci.jforests.util.ScoreBasedComparator;
+import edu.uci.jforests.util.ScoreBasedComparator.TieBreaker;
+
+/**
+ * Scores the documents of each query with the trees of an ensemble in
+ * stages. After each stage (except the last one), documents which are not
+ * expected to reach the top k of their query are pruned and are not
+ * evaluated by the remaining trees.
+ *
+ * Documents can be pruned by a rank based cutoff (only the top n documents
+ * of a query continue after a stage) and/or by score thresholds which are
+ * learned from validation data. At least k documents of each query always
+ * continue.
+ *
+ * Pruned documents are ranked below all documents which survive the
+ * cascade: documents pruned at a later stage are ranked above documents
+ * pruned earlier, and documents pruned at the same stage are ordered by
+ * their partial scores.
+ */
+
+public class CascadeScorer {
+
+	private Ensemble ensemble;
+	private int numTrees;
+
+	/*
+	 * Index of the first tree after each stage. The last stage ends at
+	 * numTrees.
+	 */
+	private int[] stageEnds;
+	private int topK;
+
+	private int[] rankCutoffs;
+	private double[] scoreThresholds;
+
+	private long numTreeEvaluations;
+
+	public CascadeScorer(Ensemble ensemble, int[] stageEnds, int topK) throws Exception {
+		this.ensemble = ensemble;
+		this.numTrees = ensemble.getNumTrees();
+		this.topK = topK;
+		List<Integer> ends = new ArrayList<Integer>();
+		int prev = 0;
+		for (int end : stageEnds) {
+			if (end <= prev || end > numTrees) {
+				throw new Exception("Invalid stage end: " + end + " (number of trees: " + numTrees + ")");
+			}
+			ends.add(end);
+			prev = end;
+		}
+		if (prev < numTrees) {
+			ends.add(numTrees);
+		}
+		this.stageEnds = ArraysUtil.toArray(ends);
+	}
+
+	public int getNumStages() {
+		return stageEnds.length;
+	}
+
+	public int[] getStageEnds() {
+		return stageEnds;
+	}
+
+	/**
+	 * Sets the maximum number of documents of a query which continue after
+	 * each stage (except the last one).
+	 */
+	public void setRankCutoffs(int[] rankCutoffs) {
+		this.rankCutoffs = rankCutoffs;
+	}
+
+	/**
+	 * Sets the minimum partial score which a document needs after each stage
+	 * (except the last one) to continue.
+	 */
+	public void setScoreThresholds(double[] scoreThresholds) {
+		this.scoreThresholds = scoreThresholds;
+	}
+
+	public double[] getScoreThresholds() {
+		return scoreThresholds;
+	}
+
+	/**
+	 * Returns the number of (document, tree) evaluations since the last
+	 * call to resetNumTreeEvaluations().
+	 */
+	public long getNumTreeEvaluations() {
+		return numTreeEvaluations;
+	}
+
+	public void resetNumTreeEvaluations() {
+		numTreeEvaluations = 0;
+	}
+
+	private void evaluateStage(RankingSample sample, int begin, int[] docs, int numDocs, int stage, double[] scores) {
+		int firstTree = (stage == 0 ? 0 : stageEnds[stage - 1]);
+		for (int t = firstTree; t < stageEnds[stage]; t++) {
+			RegressionTree tree = (RegressionTree) ensemble.getTreeAt(t);
+			double treeWeight = ensemble.getWeightAt(t);
+			for (int i = 0; i < numDocs; i++) {
+				int idx = begin + docs[i];
+				scores[idx] += treeWeight * tree.getOutput(sample.dataset, sample.indicesInDataset[idx]);
+			}
+		}
+		numTreeEvaluations += (long) numDocs * (stageEnds[stage] - firstTree);
+	}
+
+	/**
+	 * Computes the scores of all documents of the sample.
+	 */
+	public void score(RankingSample sample, double[] scores) {
+		ScoreBasedComparator comparator = new ScoreBasedComparator();
+		comparator.scores = scores;
+		comparator.tieBreaker = TieBreaker.Positions;
+		int[] docs = new int[0];
+		int[] prunedAtStage = new int[0];
+		int lastStage = stageEnds.length - 1;
+
+		for (int q = 0; q < sample.numQueries; q++) {
+			int begin = sample.queryBoundaries[q];
+			int numDocs = sample.queryBoundaries[q + 1] - begin;
+			if (docs.length < numDocs) {
+				docs = new int[numDocs];
+				prunedAtStage = new int[numDocs];
+			}
+			for (int d = 0; d < numDocs; d++) {
+				docs[d] = d;
+				scores[begin + d] = 0;
+			}
+			Arrays.fill(prunedAtStage, 0, numDocs, -1);
+
+			int numAlive = numDocs;
+			comparator.offset = begin;
+			for (int s = 0; s < stageEnds.length; s++) {
+				evaluateStage(sample, begin, docs, numAlive, s, scores);
+				if (s == lastStage || numAlive <= topK) {
+					continue;
+				}
+				ArraysUtil.sort(docs, numAlive, comparator);
+				int numKeep = numAlive;
+				if (rankCutoffs != null && s < rankCutoffs.length) {
+					numKeep = Math.min(numKeep, rankCutoffs[s]);
+				}
+				if (scoreThresholds != null && s < scoreThresholds.length) {
+					while (numKeep > 0 && scores[begin + docs[numKeep - 1]] < scoreThresholds[s]) {
+						numKeep--;
+					}
+				}
+				numKeep = Math.max(numKeep, Math.min(topK, numAlive));
+				for (int i = numKeep; i < numAlive; i++) {
+					prunedAtStage[docs[i]] = s;
+				}
+				numAlive = numKeep;
+			}
+
+			if (numAlive < numDocs) {
+				rankPrunedDocuments(scores, begin, docs, numAlive, prunedAtStage, numDocs);
+			}
+		}
+	}
+
+	/**
+	 * Moves the scores of pruned documents below the scores of the
+	 * documents which survived the cascade.
+	 */
+	private void rankPrunedDocuments(double[] scores, int begin, int[] docs, int numAlive, int[] prunedAtStage,
+			int numDocs) {
+		double floor = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < numAlive; i++) {
+			floor = Math.min(floor, scores[begin + docs[i]]);
+		}
+		for (int d = 0; d < numDocs; d++) {
+			int stage = prunedAtStage[d];
+			if (stage >= 0) {
+				double partial = 0.5 + Math.atan(scores[begin + d]) / Math.PI;
+				scores[begin + d] = floor - (stageEnds.length - stage) + partial;
+			}
+		}
+	}
+
+	/**
+	 * Learns a score threshold for each stage from the given validation
+	 * sample. The threshold of a stage is chosen such that the given
+	 * fraction (missRate) of the documents which are in the top k of the full
+	 * ensemble would have been pruned at that stage. A miss rate of zero
+	 * gives the most conservative thresholds which keep all top k documents
+	 * of the validation sample.
+	 */
+	public void learnScoreThresholds(RankingSample sample, double missRate) {
+		int numStages = stageEnds.length;
+		List<List<Double>> topScores = new ArrayList<List<Double>>();
+		for (int s = 0; s < numStages - 1; s++) {
+			topScores.add(new ArrayList<Double>());
+		}
+
+		double[] scores = new double[sample.size];
+		double[][] partialScores = new double[numStages][];
+		int[] docs = new int[0];
+		ScoreBasedComparator comparator = new ScoreBasedComparator();
+		comparator.scores = scores;
+		comparator.tieBreaker = TieBreaker.Positions;
+		long prevNumTreeEvaluations = numTreeEvaluations;
+
+		for (int q = 0; q < sample.numQueries; q++) {
+			int begin = sample.queryBoundaries[q];
+			int numDocs = sample.queryBoundaries[q + 1] - begin;
+			if (numDocs <= topK) {
+				continue;
+			}
+			if (docs.length < numDocs) {
+				docs = new int[numDocs];
+				for (int s = 0; s < numStages; s++) {
+					partialScores[s] = new double[numDocs];
+				}
+			}
+			for (int d = 0; d < numDocs; d++) {
+				docs[d] = d;
+			}
+			for (int s = 0; s < numStages; s++) {
+				evaluateStage(sample, begin, docs, numDocs, s, scores);
+				System.arraycopy(scores, begin, partialScores[s], 0, numDocs);
+			}
+			comparator.offset = begin;
+			ArraysUtil.sort(docs, numDocs, comparator);
+			for (int i = 0; i < topK; i++) {
+				for (int s = 0; s < numStages - 1; s++) {
+					topScores.get(s).add(partialScores[s][docs[i]]);
+				}
+			}
+		}
+		numTreeEvaluations = prevNumTreeEvaluations;
+
+		scoreThresholds = new double[numStages - 1];
+		for (int s = 0; s < numStages - 1; s++) {
+			List<Double> values = topScores.get(s);
+			if (values.isEmpty()) {
+				scoreThresholds[s] = Double.NEGATIVE_INFINITY;
+				continue;
+			}
+			double[] sorted = new double[values.size()];
+			for (int i = 0; i < sorted.length; i++) {
+				sorted[i] = values.get(i);
+			}
+			Arrays.sort(sorted);
+			int idx = Math.min(sorted.length - 1, (int) (missRate * sorted.length));
+			scoreThresholds[s] = sorted[idx];
+		}
+	}
+}
@@ -0,0 +1,270 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.scoring;
+
+import java.util.Arrays;
+
+import edu.uci.jforests.input.BinMapper;
+import edu.uci.jforests.input.sparse.SparseTextFileLine;
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.regression.RegressionTree;
+
+/**
+ * Scores feature vectors using only the features which appear in the
+ * splits of the ensemble. These features are remapped to dense indices
+ * [0, k), and input vectors are gathered into a compact buffer of k values,
+ * so that the cost of building a vector depends on the number of used
+ * features and not on the width of the schema.
+ *
+ * Without a bin mapper, the original thresholds of the trees are used (as
+ * in Tree.getLeafFromOriginalThreshold). With the bin mapper of the
+ * training set, values are discretized while they are gathered and are
+ * compared with the discrete thresholds, which gives the same results as
+ * BinnedEnsembleScorer.
+ *
+ * Features which are not given in a sparse vector are zero (or have the
+ * discrete value zero with a bin mapper, as in BinMapper).
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+
+public class CompactFeatureScorer implements Scorer {
+
+	private final int numFeatures;
+	private final int numTrees;
+	private final BinMapper binMapper;
+
+	/*
+	 * Original ids of the used features, in the order of their dense
+	 * indices, and the dense index of each original feature (-1 for unused
+	 * features).
+	 */
+	private final int[] usedFeatures;
+	private final int[] denseIndices;
+
+	private final int[][] splitFeatures;
+	private final double[][] thresholds;
+	private final int[][] leftChild;
+	private final int[][] rightChild;
+
+	/*
+	 * Leaf outputs multiplied by the weight of the tree
+	 */
+	private final double[][] leafOutputs;
+
+	/**
+	 * Creates a scorer which uses the original thresholds of the trees.
+	 *
+	 * @param numFeatures
+	 *            the width of dense input vectors. Zero means one more than
+	 *            the largest used feature.
+	 */
+	public CompactFeatureScorer(Ensemble ensemble, int numFeatures) {
+		this(ensemble, numFeatures, null);
+	}
+
+	/**
+	 * Creates a scorer which discretizes the values with the given bin
+	 * mapper of the training set.
+	 */
+	public CompactFeatureScorer(Ensemble ensemble, BinMapper binMapper) {
+		this(ensemble, binMapper.getNumFeatures(), binMapper);
+	}
+
+	private CompactFeatureScorer(Ensemble ensemble, int numFeatures, BinMapper binMapper) {
+		this.binMapper = binMapper;
+		numTrees = ensemble.getNumTrees();
+		int maxFeature = -1;
+		for (int t = 0; t < numTrees; t++) {
+			RegressionTree tree = (RegressionTree) ensemble.getTreeAt(t);
+			for (int n = 0; n < tree.numLeaves - 1; n++) {
+				maxFeature = Math.max(maxFeature, tree.getSplitFeature(n));
+			}
+		}
+		this.numFeatures = Math.max(numFeatures, maxFeature + 1);
+
+		boolean[] isUsed = new boolean[maxFeature + 1];
+		int numUsedFeatures = 0;
+		for (int t = 0; t < numTrees; t++) {
+			RegressionTree tree = (RegressionTree) ensemble.getTreeAt(t);
+			for (int n = 0; n < tree.numLeaves - 1; n++) {
+				if (!isUsed[tree.getSplitFeature(n)]) {
+					isUsed[tree.getSplitFeature(n)] = true;
+					numUsedFeatures++;
+				}
+			}
+		}
+		usedFeatures = new int[numUsedFeatures];
+		denseIndices = new int[maxFeature + 1];
+		Arrays.fill(denseIndices, -1);
+		int idx = 0;
+		for (int f = 0; f <= maxFeature; f++) {
+			if (isUsed[f]) {
+				usedFeatures[idx] = f;
+				denseIndices[f] = idx;
+				idx++;
+			}
+		}
+
+		splitFeatures = new int[numTrees][];
+		thresholds = new double[numTrees][];
+		leftChild = new int[numTrees][];
+		rightChild = new int[numTrees][];
+		leafOutputs = new double[numTrees][];
+		for (int t = 0; t < numTrees; t++) {
+			RegressionTree tree = (RegressionTree) ensemble.getTreeAt(t);
+			double weight = ensemble.getWeightAt(t);
+			int numInternalNodes = tree.numLeaves - 1;
+			splitFeatures[t] = new int[numInternalNodes];
+			thresholds[t] = new double[numInternalNodes];
+			leftChild[t] = new int[numInternalNodes];
+			rightChild[t] = new int[numInternalNodes];
+			for (int n = 0; n < numInternalNodes; n++) {
+				splitFeatures[t][n] = denseIndices[tree.getSplitFeature(n)];
+				thresholds[t][n] = (binMapper != null ? tree.getThreshold(n) : tree.getOriginalThreshold(n));
+				leftChild[t][n] = tree.getLeftChild(n);
+				rightChild[t][n] = tree.getRightChild(n);
+			}
+			leafOutputs[t] = new double[tree.numLeaves];
+			for (int l = 0; l < tree.numLeaves; l++) {
+				leafOutputs[t][l] = weight * tree.getLeafOutput(l);
+			}
+		}
+	}
+
+	@Override
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	private double getValue(int feature, double value) {
+		return (binMapper != null ? binMapper.getDiscreteValue(feature, value) : value);
+	}
+
+	/**
+	 * Returns the number of features which are used by the trees, i.e. the
+	 * size of compact vectors
+	 */
+	public int getNumUsedFeatures() {
+		return usedFeatures.length;
+	}
+
+	/**
+	 * Returns the original id of the feature at the given index of compact
+	 * vectors
+	 */
+	public int getUsedFeature(int denseIndex) {
+		return usedFeatures[denseIndex];
+	}
+
+	/**
+	 * Returns the index of the given feature in compact vectors or -1 if the
+	 * feature is not used by the trees
+	 */
+	public int getDenseIndex(int feature) {
+		return (feature < denseIndices.length ? denseIndices[feature] : -1);
+	}
+
+	/**
+	 * Gathers the used features of a dense vector (indexed from zero) into a
+	 * compact vector
+	 */
+	public void gather(double[] featureVector, double[] compactVector) {
+		for (int i = 0; i < usedFeatures.length; i++) {
+			int f = usedFeatures[i];
+			compactVector[i] = (f < featureVector.length ? getValue(f, featureVector[f]) : 0);
+		}
+	}
+
+	/**
+	 * Gathers the used features of a sparse vector (with zero based feature
+	 * indices) into a compact vector
+	 */
+	public void gather(int[] featureIndices, double[] values, int length, double[] compactVector) {
+		Arrays.fill(compactVector, 0, usedFeatures.length, 0);
+		for (int i = 0; i < length; i++) {
+			int f = featureIndices[i];
+			if (f < denseIndices.length && denseIndices[f] >= 0) {
+				compactVector[denseIndices[f]] = getValue(f, values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Gathers the used features of a line of a sparse text file (with one
+	 * based feature indices) into a compact vector
+	 */
+	public void gather(SparseTextFileLine line, double[] compactVector) {
+		Arrays.fill(compactVector, 0, usedFeatures.length, 0);
+		for (int i = 0; i < line.numPairs; i++) {
+			int f = line.pairs[i].featureIndex - 1;
+			if (f < denseIndices.length && denseIndices[f] >= 0) {
+				compactVector[denseIndices[f]] = getValue(f, line.pairs[i].featureValue);
+			}
+		}
+	}
+
+	public int getLeaf(int tree, double[] compactVector) {
+		int[] features = splitFeatures[tree];
+		double[] treeThresholds = thresholds[tree];
+		int[] left = leftChild[tree];
+		int[] right = rightChild[tree];
+		if (features.length == 0) {
+			return 0;
+		}
+		int node = 0;
+		while (node >= 0) {
+			if (compactVector[features[node]] <= treeThresholds[node]) {
+				node = left[node];
+			} else {
+				node = right[node];
+			}
+		}
+		return ~node;
+	}
+
+	/**
+	 * Scores a compact vector
+	 */
+	public double scoreCompact(double[] compactVector) {
+		double score = 0;
+		for (int t = 0; t < numTrees; t++) {
+			score += leafOutputs[t][getLeaf(t, compactVector)];
+		}
+		return score;
+	}
+
+	@Override
+	public double score(double[] featureVector) {
+		double[] compactVector = new double[usedFeatures.length];
+		gather(featureVector, compactVector);
+		return scoreCompact(compactVector);
+	}
+
+	@Override
+	public double score(int[] featureIndices, double[] values, int length) {
+		double[] compactVector = new double[usedFeatures.length];
+		gather(featureIndices, values, length, compactVector);
+		return scoreCompact(compactVector);
+	}
+
+	public double score(SparseTextFileLine line, double[] compactVector) {
+		gather(line, compactVector);
+		return scoreCompact(compactVector);
+	}
+}
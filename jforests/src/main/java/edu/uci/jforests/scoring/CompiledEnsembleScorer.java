@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.scoring;
+
+import edu.uci.jforests.input.BinMapper;
+import edu.uci.jforests.input.sparse.SparseTextFileLine;
+
+/**
+ * Base class of the scorers which are generated by EnsembleCompiler. The
+ * generated subclasses implement score(int[] bins) with the trees of the
+ * ensemble as nested if/else statements over constant features and bin
+ * thresholds.
+ */
+
+public abstract class CompiledEnsembleScorer implements Scorer {
+
+	private BinMapper binMapper;
+	private int numTrees;
+
+	protected CompiledEnsembleScorer() {
+	}
+
+	void init(BinMapper binMapper, int numTrees) {
+		this.binMapper = binMapper;
+		this.numTrees = numTrees;
+	}
+
+	public BinMapper getBinMapper() {
+		return binMapper;
+	}
+
+	public int getNumTrees() {
+		return numTrees;
+	}
+
+	@Override
+	public int getNumFeatures() {
+		return binMapper.getNumFeatures();
+	}
+
+	/**
+	 * Scores a vector which is already mapped to bins
+	 */
+	public abstract double score(int[] bins);
+
+	public void score(int[][] bins, int count, double[] scores) {
+		for (int i = 0; i < count; i++) {
+			scores[i] = score(bins[i]);
+		}
+	}
+
+	@Override
+	public double score(double[] featureVector) {
+		int[] bins = new int[binMapper.getNumFeatures()];
+		binMapper.map(featureVector, bins);
+		return score(bins);
+	}
+
+	@Override
+	public double score(int[] featureIndices, double[] values, int length) {
+		int[] bins = new int[binMapper.getNumFeatures()];
+		binMapper.map(featureIndices, values, length, bins);
+		return score(bins);
+	}
+
+	public double score(SparseTextFileLine line, int[] bins) {
+		binMapper.map(line, bins);
+		return score(bins);
+	}
+}
@@ -0,0 +1,515 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.scoring;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.uci.jforests.input.BinMapper;
+import edu.uci.jforests.learning.trees.Ensemble;
+
+/**
+ * Compiles an ensemble of regression trees into a class which is generated
+ * at runtime. Each tree becomes a static method of nested if/else
+ * statements with constant feature indices, bin thresholds and leaf
+ * outputs, so the JIT compiler can specialize it.
+ *
+ * Methods are kept below MAX_METHOD_SIZE bytes of bytecode (the default
+ * inlining limit of hot methods): large subtrees are moved to methods of
+ * their own, and trees are summed by a hierarchy of small methods. The
+ * trees are summed in their original order, so the scores are identical
+ * to the scores of BinnedEnsembleScorer.
+ *
+ * A class file can have at most 65535 constants, so the trees are split
+ * into classes of at most MAX_CONSTANTS_PER_CLASS constants (leaf outputs,
+ * large thresholds and method references). Each of these classes sums its
+ * trees in a static method which is called in order by the scorer class.
+ * Trees which don't fit in a class on their own can't be compiled (see
+ * canCompile).
+ *
+ * The class files are written directly (version 49, which doesn't need
+ * stack map frames) and loaded by a dedicated class loader, so they can be
+ * garbage collected with their scorer.
+ */
+
+public class EnsembleCompiler {
+
+	private final static int MAX_METHOD_SIZE = 325;
+	private final static int MAX_CALLS_PER_METHOD = 60;
+	private final static int MAX_CONSTANTS_PER_CLASS = 60000;
+
+	private final static String SUPER_CLASS = "edu/uci/jforests/scoring/CompiledEnsembleScorer";
+	private final static String CLASS_PREFIX = "edu/uci/jforests/scoring/generated/CompiledEnsemble";
+	private final static AtomicInteger classCounter = new AtomicInteger();
+
+	private final static String TREE_DESCRIPTOR = "([I)D";
+	private final static String GROUP_DESCRIPTOR = "(D[I)D";
+
+	private BinnedEnsembleScorer scorer;
+	private String scorerClassName;
+
+	/*
+	 * Names and class files of the classes of trees
+	 */
+	private List<String> classNames = new ArrayList<String>();
+	private List<byte[]> classBytes = new ArrayList<byte[]>();
+
+	/*
+	 * Class of trees which is currently generated
+	 */
+	private String className;
+	private ClassFileWriter classFile;
+	private List<String> terms;
+
+	private EnsembleCompiler(BinnedEnsembleScorer scorer) {
+		this.scorer = scorer;
+		this.scorerClassName = CLASS_PREFIX + classCounter.incrementAndGet();
+	}
+
+	/**
+	 * Returns false if a tree of the scorer has too many nodes to be compiled
+	 * into a class.
+	 */
+	public static boolean canCompile(BinnedEnsembleScorer scorer) {
+		for (int t = 0; t < scorer.getNumTrees(); t++) {
+			if (getMaxConstants(scorer, t) > MAX_CONSTANTS_PER_CLASS) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public static CompiledEnsembleScorer compile(Ensemble ensemble, BinMapper binMapper) throws Exception {
+		return compile(new BinnedEnsembleScorer(ensemble, binMapper));
+	}
+
+	public static CompiledEnsembleScorer compile(BinnedEnsembleScorer scorer) throws Exception {
+		if (!canCompile(scorer)) {
+			throw new Exception("The ensemble has trees which are too large to be compiled.");
+		}
+		EnsembleCompiler compiler = new EnsembleCompiler(scorer);
+		byte[] bytes = compiler.generate();
+		GeneratedClassLoader loader = new GeneratedClassLoader(EnsembleCompiler.class.getClassLoader());
+		for (int i = 0; i < compiler.classNames.size(); i++) {
+			loader.define(compiler.classNames.get(i).replace('/', '.'), compiler.classBytes.get(i));
+		}
+		Class<?> c = loader.define(compiler.scorerClassName.replace('/', '.'), bytes);
+		CompiledEnsembleScorer compiled = (CompiledEnsembleScorer) c.getDeclaredConstructor().newInstance();
+		compiled.init(scorer.getBinMapper(), scorer.getNumTrees());
+		return compiled;
+	}
+
+	/**
+	 * Returns the number of constants which the methods of a tree can add to
+	 * the constant pool at most: two entries per leaf output, a feature index
+	 * and a threshold per node, three entries per method (name, name and
+	 * type, method reference) and one for its share of the group methods.
+	 */
+	private static int getMaxConstants(BinnedEnsembleScorer scorer, int tree) {
+		int numNodes = scorer.getSplitFeatures(tree).length;
+		int numLeaves = numNodes + 1;
+		return 2 * numLeaves + 2 * numNodes + 3 * (numNodes + 1) + 1;
+	}
+
+	private void beginClass() {
+		className = scorerClassName + "_" + classNames.size();
+		classFile = new ClassFileWriter(className, "java/lang/Object");
+		terms = new ArrayList<String>();
+	}
+
+	/*
+	 * Sums the trees of the current class in order with a hierarchy of group
+	 * methods, the last of which is the public sum method.
+	 */
+	private void endClass() throws IOException {
+		boolean treeTerms = true;
+		int level = 0;
+		while (true) {
+			boolean last = (terms.size() <= MAX_CALLS_PER_METHOD);
+			List<String> groups = new ArrayList<String>();
+			for (int begin = 0; begin == 0 || begin < terms.size(); begin += MAX_CALLS_PER_METHOD) {
+				String name = (last ? "sum" : "group" + level + "_" + groups.size());
+				Code code = new Code();
+				code.op(0x26); // dload_0
+				for (int i = begin; i < Math.min(terms.size(), begin + MAX_CALLS_PER_METHOD); i++) {
+					addTerm(code, terms.get(i), treeTerms);
+				}
+				code.op(0xaf); // dreturn
+				classFile.addMethod(last ? 0x0009 : 0x000a, name, GROUP_DESCRIPTOR, code, 4, 3);
+				groups.add(name);
+			}
+			if (last) {
+				break;
+			}
+			terms = groups;
+			treeTerms = false;
+			level++;
+		}
+		classNames.add(className);
+		classBytes.add(classFile.toByteArray());
+	}
+
+	private byte[] generate() throws IOException {
+		// One static method per tree, in classes of limited size
+		beginClass();
+		for (int t = 0; t < scorer.getNumTrees(); t++) {
+			if (!terms.isEmpty()
+					&& classFile.getConstantPoolCount() + getMaxConstants(scorer, t) > MAX_CONSTANTS_PER_CLASS) {
+				endClass();
+				beginClass();
+			}
+			String name = "tree" + t;
+			generateTree(t, name);
+			terms.add(name);
+		}
+		endClass();
+
+		ClassFileWriter scorerClassFile = new ClassFileWriter(scorerClassName, SUPER_CLASS);
+
+		// Constructor
+		Code code = new Code();
+		code.op(0x2a); // aload_0
+		code.op(0xb7); // invokespecial
+		code.u2(scorerClassFile.methodRef(SUPER_CLASS, "<init>", "()V"));
+		code.op(0xb1); // return
+		scorerClassFile.addMethod(0x0001, "<init>", "()V", code, 1, 1);
+
+		// score(int[] bins) adds the sums of the classes of trees in order
+		code = new Code();
+		code.op(0x0e); // dconst_0
+		for (String name : classNames) {
+			code.op(0x2b); // aload_1
+			code.op(0xb8); // invokestatic
+			code.u2(scorerClassFile.methodRef(name, "sum", GROUP_DESCRIPTOR));
+		}
+		code.op(0xaf); // dreturn
+		scorerClassFile.addMethod(0x0001, "score", TREE_DESCRIPTOR, code, 4, 2);
+
+		return scorerClassFile.toByteArray();
+	}
+
+	/*
+	 * Adds a term to the sum which is on top of the stack
+	 */
+	private void addTerm(Code code, String name, boolean isTree) {
+		if (isTree) {
+			code.op(0x2c); // aload_2
+			code.op(0xb8); // invokestatic
+			code.u2(classFile.methodRef(className, name, TREE_DESCRIPTOR));
+			code.op(0x63); // dadd
+		} else {
+			code.op(0x2c); // aload_2
+			code.op(0xb8); // invokestatic
+			code.u2(classFile.methodRef(className, name, GROUP_DESCRIPTOR));
+		}
+	}
+
+	private void generateTree(int tree, String name) {
+		int[] features = scorer.getSplitFeatures(tree);
+		boolean[] outlined = new boolean[features.length];
+		if (features.length > 0) {
+			getInlineSize(tree, 0, outlined);
+		}
+		generateSubtree(tree, 0, name, outlined, features.length == 0);
+	}
+
+	private void generateSubtree(int tree, int node, String name, boolean[] outlined, boolean isLeaf) {
+		Code code = new Code();
+		if (isLeaf) {
+			emitLeaf(code, tree, 0);
+		} else {
+			emitNode(code, tree, node, outlined, name);
+		}
+		classFile.addMethod(0x000a, name, TREE_DESCRIPTOR, code, 2, 1);
+	}
+
+	private void emitLeaf(Code code, int tree, int leaf) {
+		code.op(0x14); // ldc2_w
+		code.u2(classFile.doubleConstant(scorer.getLeafOutputs(tree)[leaf]));
+		code.op(0xaf); // dreturn
+	}
+
+	private void emitChild(Code code, int tree, int child, boolean[] outlined, String treeName) {
+		if (child < 0) {
+			emitLeaf(code, tree, ~child);
+		} else if (outlined[child]) {
+			String name = treeName + "_" + child;
+			generateSubtree(tree, child, name, outlined, false);
+			code.op(0x2a); // aload_0
+			code.op(0xb8); // invokestatic
+			code.u2(classFile.methodRef(className, name, TREE_DESCRIPTOR));
+			code.op(0xaf); // dreturn
+		} else {
+			emitNode(code, tree, child, outlined, treeName);
+		}
+	}
+
+	private void emitNode(Code code, int tree, int node, boolean[] outlined, String treeName) {
+		code.op(0x2a); // aload_0
+		code.pushInt(scorer.getSplitFeatures(tree)[node]);
+		code.op(0x2e); // iaload
+		code.pushInt(scorer.getBinThresholds(tree)[node]);
+		int branch = code.size();
+		code.op(0xa3); // if_icmpgt
+		code.u2(0);
+		emitChild(code, tree, scorer.getLeftChildren(tree)[node], outlined, treeName);
+		code.patchOffset(branch);
+		emitChild(code, tree, scorer.getRightChildren(tree)[node], outlined, treeName);
+	}
+
+	private static int getPushSize(int value) {
+		if (value >= -1 && value <= 5) {
+			return 1;
+		} else if (value >= -128 && value <= 127) {
+			return 2;
+		}
+		return 3;
+	}
+
+	/**
+	 * Returns the size of the code of the subtree when it is inlined in its
+	 * parent. Children are moved to separate methods (marked as outlined)
+	 * until the subtree fits in a method.
+	 */
+	private int getInlineSize(int tree, int node, boolean[] outlined) {
+		int left = scorer.getLeftChildren(tree)[node];
+		int right = scorer.getRightChildren(tree)[node];
+		int leftSize = (left < 0 ? 4 : getInlineSize(tree, left, outlined));
+		int rightSize = (right < 0 ? 4 : getInlineSize(tree, right, outlined));
+		int header = 1 + getPushSize(scorer.getSplitFeatures(tree)[node]) + 1
+				+ getPushSize(scorer.getBinThresholds(tree)[node]) + 3;
+		while (header + leftSize + rightSize > MAX_METHOD_SIZE) {
+			// Move the larger child to a separate method (a call takes 5 bytes)
+			if (left >= 0 && !outlined[left] && (leftSize >= rightSize || right < 0 || outlined[right])) {
+				outlined[left] = true;
+				leftSize = 5;
+			} else if (right >= 0 && !outlined[right]) {
+				outlined[right] = true;
+				rightSize = 5;
+			} else {
+				break;
+			}
+		}
+		return header + leftSize + rightSize;
+	}
+
+	/**
+	 * Bytecode of a method
+	 */
+	private class Code {
+		private byte[] bytes = new byte[256];
+		private int size;
+
+		int size() {
+			return size;
+		}
+
+		void op(int b) {
+			if (size == bytes.length) {
+				byte[] newBytes = new byte[bytes.length * 2];
+				System.arraycopy(bytes, 0, newBytes, 0, size);
+				bytes = newBytes;
+			}
+			bytes[size++] = (byte) b;
+		}
+
+		void u2(int value) {
+			op(value >>> 8);
+			op(value);
+		}
+
+		void pushInt(int value) {
+			if (value >= -1 && value <= 5) {
+				op(0x03 + value); // iconst_<value>
+			} else if (value >= -128 && value <= 127) {
+				op(0x10); // bipush
+				op(value);
+			} else if (value >= -32768 && value <= 32767) {
+				op(0x11); // sipush
+				u2(value);
+			} else {
+				op(0x13); // ldc_w
+				u2(classFile.intConstant(value));
+			}
+		}
+
+		/*
+		 * Sets the target of the branch instruction at the given position to
+		 * the current position
+		 */
+		void patchOffset(int branch) {
+			int offset = size - branch;
+			bytes[branch + 1] = (byte) (offset >>> 8);
+			bytes[branch + 2] = (byte) offset;
+		}
+	}
+
+	/**
+	 * A minimal writer of class files: a constant pool and methods with code
+	 * attributes.
+	 */
+	private static class ClassFileWriter {
+
+		private ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+		private DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+		private int constantPoolCount = 1;
+		private Map<String, Integer> constants = new HashMap<String, Integer>();
+
+		private ByteArrayOutputStream methodsBytes = new ByteArrayOutputStream();
+		private DataOutputStream methods = new DataOutputStream(methodsBytes);
+		private int methodsCount;
+		private int maxCodeSize;
+
+		private int thisClass;
+		private int superClass;
+		private int codeName;
+
+		ClassFileWriter(String className, String superClassName) {
+			thisClass = classConstant(className);
+			superClass = classConstant(superClassName);
+			codeName = utf8("Code");
+		}
+
+		private int addConstant(String key, int tag, Object... values) {
+			Integer idx = constants.get(key);
+			if (idx != null) {
+				return idx;
+			}
+			try {
+				constantPool.writeByte(tag);
+				for (Object value : values) {
+					if (value instanceof String) {
+						constantPool.writeUTF((String) value);
+					} else if (value instanceof Double) {
+						constantPool.writeDouble((Double) value);
+					} else {
+						constantPool.writeShort((Integer) value);
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			idx = constantPoolCount;
+			constantPoolCount += (tag == 6 ? 2 : 1);
+			constants.put(key, idx);
+			return idx;
+		}
+
+		int getConstantPoolCount() {
+			return constantPoolCount;
+		}
+
+		int utf8(String value) {
+			return addConstant("U" + value, 1, value);
+		}
+
+		int classConstant(String name) {
+			return addConstant("C" + name, 7, utf8(name));
+		}
+
+		int intConstant(int value) {
+			Integer idx = constants.get("I" + value);
+			if (idx != null) {
+				return idx;
+			}
+			try {
+				constantPool.writeByte(3);
+				constantPool.writeInt(value);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			idx = constantPoolCount++;
+			constants.put("I" + value, idx);
+			return idx;
+		}
+
+		int doubleConstant(double value) {
+			return addConstant("D" + Double.doubleToRawLongBits(value), 6, value);
+		}
+
+		int methodRef(String owner, String name, String descriptor) {
+			int nameAndType = addConstant("N" + name + descriptor, 12, utf8(name), utf8(descriptor));
+			return addConstant("M" + owner + "." + name + descriptor, 10, classConstant(owner), nameAndType);
+		}
+
+		void addMethod(int access, String name, String descriptor, Code code, int maxStack, int maxLocals) {
+			try {
+				methods.writeShort(access);
+				methods.writeShort(utf8(name));
+				methods.writeShort(utf8(descriptor));
+				methods.writeShort(1);
+				methods.writeShort(codeName);
+				methods.writeInt(12 + code.size);
+				methods.writeShort(maxStack);
+				methods.writeShort(maxLocals);
+				methods.writeInt(code.size);
+				methods.write(code.bytes, 0, code.size);
+				methods.writeShort(0); // exception table
+				methods.writeShort(0); // attributes
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			methodsCount++;
+			maxCodeSize = Math.max(maxCodeSize, code.size);
+		}
+
+		byte[] toByteArray() throws IOException {
+			/*
+			 * These are written as unsigned shorts and would wrap around
+			 */
+			if (constantPoolCount > 0xFFFF || methodsCount > 0xFFFF || maxCodeSize > 0xFFFF) {
+				throw new IOException("Generated class is too large: " + constantPoolCount + " constants, "
+						+ methodsCount + " methods, " + maxCodeSize + " bytes of code in a method");
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream output = new DataOutputStream(bytes);
+			output.writeInt(0xCAFEBABE);
+			output.writeShort(0); // minor version
+			output.writeShort(49); // major version (Java 5)
+			output.writeShort(constantPoolCount);
+			constantPoolBytes.writeTo(output);
+			output.writeShort(0x0031); // public final super
+			output.writeShort(thisClass);
+			output.writeShort(superClass);
+			output.writeShort(0); // interfaces
+			output.writeShort(0); // fields
+			output.writeShort(methodsCount);
+			methodsBytes.writeTo(output);
+			output.writeShort(0); // attributes
+			output.flush();
+			return bytes.toByteArray();
+		}
+	}
+
+	private static class GeneratedClassLoader extends ClassLoader {
+
+		GeneratedClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.scoring;
+
+import java.util.Arrays;
+
+/**
+ * Latency and throughput counters of a scoring server. Percentiles are
+ * computed over a window of the most recent requests.
+ */
+
+public class LatencyStats {
+
+	private final static int DEFAULT_WINDOW_SIZE = 1 << 14;
+
+	private long[] latencies;
+	private int next;
+	private int numLatencies;
+
+	private long numRequests;
+	private long numVectors;
+	private long numBatches;
+	private long startTime;
+
+	public LatencyStats() {
+		this(DEFAULT_WINDOW_SIZE);
+	}
+
+	public LatencyStats(int windowSize) {
+		latencies = new long[windowSize];
+		startTime = System.nanoTime();
+	}
+
+	public synchronized void recordRequest(long latencyNanos, int vectors) {
+		latencies[next] = latencyNanos;
+		next = (next + 1) % latencies.length;
+		if (numLatencies < latencies.length) {
+			numLatencies++;
+		}
+		numRequests++;
+		numVectors += vectors;
+	}
+
+	public synchronized void recordBatch() {
+		numBatches++;
+	}
+
+	public synchronized void reset() {
+		next = 0;
+		numLatencies = 0;
+		numRequests = 0;
+		numVectors = 0;
+		numBatches = 0;
+		startTime = System.nanoTime();
+	}
+
+	/**
+	 * Returns the latency (in milliseconds) at the given percentile (0..100)
+	 * of the recent requests.
+	 */
+	public synchronized double getPercentile(double percentile) {
+		if (numLatencies == 0) {
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(latencies, numLatencies);
+		Arrays.sort(sorted);
+		int idx = (int) Math.ceil(percentile / 100 * numLatencies) - 1;
+		idx = Math.max(0, Math.min(numLatencies - 1, idx));
+		return sorted[idx] / 1e6;
+	}
+
+	public synchronized long getNumRequests() {
+		return numRequests;
+	}
+
+	public synchronized long getNumVectors() {
+		return numVectors;
+	}
+
+	public synchronized long getNumBatches() {
+		return numBatches;
+	}
+
+	/**
+	 * Returns the number of scored vectors per second since the start (or
+	 * the last reset).
+	 */
+	public synchronized double getThroughput() {
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		return (seconds > 0 ? numVectors / seconds : 0);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "requests=" + numRequests + " vectors=" + numVectors + " batches=" + numBatches + " p50="
+				+ getPercentile(50) + "ms p99=" + getPercentile(99) + "ms throughput=" + Math.round(getThroughput())
+				+ "/s";
+	}
+}
@@ -0,0 +1,286 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.scoring;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import edu.uci.jforests.dataset.Dataset;
+import edu.uci.jforests.dataset.RankingDataset;
+import edu.uci.jforests.input.BinMapper;
+import edu.uci.jforests.input.sparse.FastSparseTextFileReader;
+import edu.uci.jforests.input.sparse.SparseTextFileLine;
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.Tree;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+import edu.uci.jforests.util.concurrency.TaskCollection;
+import edu.uci.jforests.util.concurrency.TaskItem;
+
+/**
+ * Writes the leaf index of every tree of an ensemble for every instance
+ * (a tree embedding, e.g. as the input of a linear model). Instances are
+ * processed in blocks: the leaves of a block are computed in parallel and
+ * then written before the next block is read, so text files which don't
+ * fit in memory can be processed.
+ *
+ * Output formats:
+ *
+ * <pre>
+ * matrix:  int numTrees, int bytesPerValue, int[numTrees] numLeaves, then
+ *          numTrees leaf indices per instance, each stored in bytesPerValue
+ *          bytes (1, 2 or 4, depending on the largest tree)
+ * one-hot: a sparse text file with one line per instance: the target, the
+ *          qid (if any) and "index:1" for the leaf of each tree, where the
+ *          leaves of all trees are numbered consecutively starting at 1
+ * </pre>
+ */
+
+public class LeafIndexGenerator {
+
+	public final static int DEFAULT_BLOCK_SIZE = 4096;
+
+	private Ensemble ensemble;
+	private int numTrees;
+	private int[] numLeaves;
+	private int[] leafOffsets;
+	private boolean oneHot;
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+
+	/*
+	 * Source of the current block: either bins of text lines (scored with
+	 * the flattened trees) or instances of a data set
+	 */
+	private BinnedEnsembleScorer scorer;
+	private int[][] bins;
+	private Dataset dataset;
+	private int datasetOffset;
+
+	private int[][] leaves;
+	private String[] labels;
+	private String[] qids;
+	private int blockCount;
+
+	private DataOutputStream matrixOutput;
+	private Writer textOutput;
+
+	public LeafIndexGenerator(Ensemble ensemble, boolean oneHot) {
+		this.ensemble = ensemble;
+		this.oneHot = oneHot;
+		numTrees = ensemble.getNumTrees();
+		numLeaves = new int[numTrees];
+		leafOffsets = new int[numTrees];
+		int offset = 0;
+		for (int t = 0; t < numTrees; t++) {
+			numLeaves[t] = ensemble.getTreeAt(t).numLeaves;
+			leafOffsets[t] = offset;
+			offset += numLeaves[t];
+		}
+	}
+
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	private void init(OutputStream output) throws IOException {
+		leaves = new int[blockSize][numTrees];
+		labels = new String[blockSize];
+		qids = new String[blockSize];
+		blockCount = 0;
+		if (oneHot) {
+			textOutput = new BufferedWriter(new OutputStreamWriter(output, "US-ASCII"), 1 << 16);
+		} else {
+			matrixOutput = new DataOutputStream(new BufferedOutputStream(output, 1 << 16));
+			matrixOutput.writeInt(numTrees);
+			matrixOutput.writeInt(getBytesPerValue());
+			for (int t = 0; t < numTrees; t++) {
+				matrixOutput.writeInt(numLeaves[t]);
+			}
+		}
+	}
+
+	private int getBytesPerValue() {
+		int max = 0;
+		for (int t = 0; t < numTrees; t++) {
+			max = Math.max(max, numLeaves[t]);
+		}
+		if (max <= 256) {
+			return 1;
+		} else if (max <= 65536) {
+			return 2;
+		}
+		return 4;
+	}
+
+	/**
+	 * Processes a text file whose feature values are mapped with the given
+	 * bin mapper (of the training set). The file is read in blocks.
+	 *
+	 * @return the number of instances
+	 */
+	public long process(String textFile, BinMapper binMapper, OutputStream output) throws Exception {
+		scorer = new BinnedEnsembleScorer(ensemble, binMapper);
+		init(output);
+		bins = new int[blockSize][binMapper.getNumFeatures()];
+		FastSparseTextFileReader reader = new FastSparseTextFileReader();
+		reader.open(textFile);
+		SparseTextFileLine line = new SparseTextFileLine();
+		long count = 0;
+		while (reader.loadNextLine(line)) {
+			if (line.meta) {
+				continue;
+			}
+			binMapper.map(line, bins[blockCount]);
+			labels[blockCount] = String.valueOf(line.target);
+			qids[blockCount] = line.qid;
+			blockCount++;
+			count++;
+			if (blockCount == blockSize) {
+				flushBlock();
+			}
+		}
+		reader.close();
+		flushBlock();
+		finish();
+		scorer = null;
+		return count;
+	}
+
+	/**
+	 * Processes all instances of a (bin file) data set. The leaves are
+	 * computed with the thresholds of the trees as in predict.
+	 *
+	 * @return the number of instances
+	 */
+	public long process(Dataset dataset, OutputStream output) throws Exception {
+		this.dataset = dataset;
+		init(output);
+		int[] queryBoundaries = (dataset instanceof RankingDataset ? ((RankingDataset) dataset).queryBoundaries : null);
+		int query = 0;
+		datasetOffset = 0;
+		for (int i = 0; i < dataset.numInstances; i++) {
+			double target = dataset.targets[i];
+			labels[blockCount] = (target == Math.rint(target) ? String.valueOf((long) target) : String.valueOf(target));
+			if (queryBoundaries != null) {
+				while (queryBoundaries[query + 1] <= i) {
+					query++;
+				}
+				qids[blockCount] = String.valueOf(query);
+			}
+			blockCount++;
+			if (blockCount == blockSize) {
+				flushBlock();
+				datasetOffset = i + 1;
+			}
+		}
+		flushBlock();
+		finish();
+		this.dataset = null;
+		return dataset.numInstances;
+	}
+
+	private void flushBlock() throws IOException {
+		if (blockCount == 0) {
+			return;
+		}
+		computeLeaves();
+		if (oneHot) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < blockCount; i++) {
+				sb.setLength(0);
+				sb.append(labels[i]);
+				if (qids[i] != null) {
+					sb.append(" qid:").append(qids[i]);
+				}
+				for (int t = 0; t < numTrees; t++) {
+					sb.append(' ').append(leafOffsets[t] + leaves[i][t] + 1).append(":1");
+				}
+				sb.append('\n');
+				textOutput.write(sb.toString());
+			}
+		} else {
+			int bytesPerValue = getBytesPerValue();
+			for (int i = 0; i < blockCount; i++) {
+				for (int t = 0; t < numTrees; t++) {
+					if (bytesPerValue == 1) {
+						matrixOutput.writeByte(leaves[i][t]);
+					} else if (bytesPerValue == 2) {
+						matrixOutput.writeShort(leaves[i][t]);
+					} else {
+						matrixOutput.writeInt(leaves[i][t]);
+					}
+				}
+			}
+		}
+		blockCount = 0;
+	}
+
+	private void finish() throws IOException {
+		if (oneHot) {
+			textOutput.flush();
+		} else {
+			matrixOutput.flush();
+		}
+	}
+
+	private void computeLeaves() {
+		BlockingThreadPoolExecutor executor = BlockingThreadPoolExecutor.getInstance();
+		int numWorkers = (executor != null ? executor.getMaximumPoolSize() : 1);
+		TaskCollection<LeafWorker> workers = new TaskCollection<LeafWorker>();
+		int chunkSize = 1 + blockCount / numWorkers;
+		for (int begin = 0; begin < blockCount; begin += chunkSize) {
+			workers.addTask(new LeafWorker(begin, Math.min(blockCount, begin + chunkSize)));
+		}
+		if (workers.getSize() == 1 || executor == null) {
+			for (int i = 0; i < workers.getSize(); i++) {
+				workers.getTask(i).run();
+			}
+		} else {
+			workers.run();
+		}
+	}
+
+	private class LeafWorker extends TaskItem {
+
+		private int begin;
+		private int end;
+
+		public LeafWorker(int begin, int end) {
+			this.begin = begin;
+			this.end = end;
+		}
+
+		@Override
+		public void run() {
+			if (scorer != null) {
+				scorer.getLeaves(bins, begin, end, leaves);
+				return;
+			}
+			for (int t = 0; t < numTrees; t++) {
+				Tree tree = ensemble.getTreeAt(t);
+				for (int i = begin; i < end; i++) {
+					leaves[i][t] = tree.getLeaf(dataset, datasetOffset + i);
+				}
+			}
+		}
+	}
+}
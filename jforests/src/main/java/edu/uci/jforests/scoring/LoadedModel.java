@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.scoring;
+
+import java.io.File;
+
+import edu.uci.jforests.input.BinMapper;
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.regression.RegressionTree;
+
+/**
+ * An immutable handle of a model which is ready for scoring. Unlike
+ * Ensemble, it can't be modified after loading, so a request which has
+ * obtained a handle can finish with it even if a newer version of the model
+ * is published in the meantime.
+ */
+
+public final class LoadedModel implements Scorer {
+
+	private final String name;
+	private final int version;
+	private final String modelFile;
+	private final long loadTime;
+	private final BinnedEnsembleScorer scorer;
+
+	public LoadedModel(String name, int version, String modelFile, BinnedEnsembleScorer scorer) {
+		this.name = name;
+		this.version = version;
+		this.modelFile = modelFile;
+		this.scorer = scorer;
+		this.loadTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Loads an ensemble of regression trees and the bin mapper of its
+	 * training set.
+	 */
+	public static LoadedModel load(String name, int version, String modelFile, String binMapperFile)
+			throws Exception {
+		Ensemble ensemble = new Ensemble();
+		ensemble.loadFromFile(RegressionTree.class, new File(modelFile));
+		BinMapper binMapper = BinMapper.loadFromFile(binMapperFile);
+		return new LoadedModel(name, version, modelFile, new BinnedEnsembleScorer(ensemble, binMapper));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public String getModelFile() {
+		return modelFile;
+	}
+
+	public long getLoadTime() {
+		return loadTime;
+	}
+
+	public BinnedEnsembleScorer getScorer() {
+		return scorer;
+	}
+
+	public BinMapper getBinMapper() {
+		return scorer.getBinMapper();
+	}
+
+	@Override
+	public int getNumFeatures() {
+		return scorer.getNumFeatures();
+	}
+
+	@Override
+	public double score(double[] featureVector) {
+		return scorer.score(featureVector);
+	}
+
+	@Override
+	public double score(int[] featureIndices, double[] values, int length) {
+		return scorer.score(featureIndices, values, length);
+	}
+
+	@Override
+	public String toString() {
+		return name + " v" + version + " (" + scorer.getNumTrees() + " trees)";
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.scoring;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the published (current) model and a bounded LRU cache of recently
+ * used models, e.g. for A/B traffic.
+ *
+ * New model files are loaded in the background and validated on a canary
+ * sample before they are published. Publishing is a single atomic swap of
+ * the current handle; requests which have already obtained the old handle
+ * finish with it.
+ */
+
+public class ModelRegistry {
+
+	private final AtomicReference<LoadedModel> current = new AtomicReference<LoadedModel>();
+	private final AtomicInteger lastVersion = new AtomicInteger();
+	private final Map<String, LoadedModel> recentModels;
+	private final ExecutorService loader;
+
+	/*
+	 * Canary sample (zero based sparse vectors)
+	 */
+	private int[][] canaryIndices;
+	private double[][] canaryValues;
+	private double maxCanaryDeviation = Double.POSITIVE_INFINITY;
+
+	public ModelRegistry(final int maxRecentModels) {
+		recentModels = new LinkedHashMap<String, LoadedModel>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, LoadedModel> eldest) {
+				return size() > maxRecentModels;
+			}
+		};
+		loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ModelRegistry-loader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Sets the sample which new models are validated on. A model is rejected
+	 * if it produces a non-finite score for a canary vector, or if the mean
+	 * absolute difference of its scores from the scores of the current model
+	 * is larger than maxDeviation.
+	 */
+	public synchronized void setCanary(int[][] featureIndices, double[][] values, double maxDeviation) {
+		this.canaryIndices = featureIndices;
+		this.canaryValues = values;
+		this.maxCanaryDeviation = maxDeviation;
+	}
+
+	public LoadedModel getCurrent() {
+		return current.get();
+	}
+
+	/**
+	 * Returns a recently loaded model with the given name, or null if it is
+	 * not in the cache.
+	 */
+	public LoadedModel get(String name) {
+		synchronized (recentModels) {
+			return recentModels.get(name);
+		}
+	}
+
+	public int getNumRecentModels() {
+		synchronized (recentModels) {
+			return recentModels.size();
+		}
+	}
+
+	/**
+	 * Loads and validates a model. The model is added to the recent models
+	 * and, if requested, published as the current model.
+	 */
+	public LoadedModel load(String name, String modelFile, String binMapperFile, boolean publish) throws Exception {
+		LoadedModel model = LoadedModel.load(name, lastVersion.incrementAndGet(), modelFile, binMapperFile);
+		validate(model);
+		synchronized (recentModels) {
+			recentModels.put(name, model);
+		}
+		if (publish) {
+			publish(model);
+		}
+		return model;
+	}
+
+	/**
+	 * Same as load(), but runs on the background loader thread. Errors
+	 * (including failed validations) are reported through the Future.
+	 */
+	public Future<LoadedModel> loadInBackground(final String name, final String modelFile,
+			final String binMapperFile, final boolean publish) {
+		return loader.submit(new Callable<LoadedModel>() {
+			@Override
+			public LoadedModel call() throws Exception {
+				return load(name, modelFile, binMapperFile, publish);
+			}
+		});
+	}
+
+	/**
+	 * Atomically replaces the current model.
+	 *
+	 * @return the previous model
+	 */
+	public LoadedModel publish(LoadedModel model) {
+		return current.getAndSet(model);
+	}
+
+	private void validate(LoadedModel model) throws Exception {
+		int[][] indices;
+		double[][] values;
+		double maxDeviation;
+		synchronized (this) {
+			indices = canaryIndices;
+			values = canaryValues;
+			maxDeviation = maxCanaryDeviation;
+		}
+		if (indices == null) {
+			return;
+		}
+		LoadedModel reference = current.get();
+		double totalDeviation = 0;
+		for (int i = 0; i < indices.length; i++) {
+			double score = model.score(indices[i], values[i], indices[i].length);
+			if (Double.isNaN(score) || Double.isInfinite(score)) {
+				throw new Exception("Model " + model + " produced score " + score + " for canary vector " + i);
+			}
+			if (reference != null) {
+				totalDeviation += Math.abs(score - reference.score(indices[i], values[i], indices[i].length));
+			}
+		}
+		if (reference != null && indices.length > 0) {
+			double deviation = totalDeviation / indices.length;
+			if (deviation > maxDeviation) {
+				throw new Exception("Mean absolute deviation of model " + model + " from " + reference
+						+ " on the canary sample is " + deviation + " (max: " + maxDeviation + ")");
+			}
+		}
+	}
+
+	public void shutdown() {
+		loader.shutdown();
+	}
+}
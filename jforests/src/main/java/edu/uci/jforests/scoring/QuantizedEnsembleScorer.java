@@ -0,0 +1,270 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.scoring;
+
+import java.util.Arrays;
+
+import edu.uci.jforests.input.BinMapper;
+import edu.uci.jforests.input.sparse.SparseTextFileLine;
+
+/**
+ * A compact version of BinnedEnsembleScorer for serving. The nodes of all
+ * trees are stored in a few shared arrays with 16-bit bin thresholds and
+ * child indices, 8-bit feature ids (16-bit if there are more than 256
+ * features) and either float or 16-bit fixed point leaf outputs. This
+ * takes a fraction of the memory of the double model, so that large
+ * ensembles fit in the processor caches when all trees are evaluated for
+ * one vector at a time.
+ *
+ * The leaves which are reached are the same as in the double model. Only
+ * the leaf outputs lose precision: with fixed point outputs, the error of
+ * a score is at most numTrees * getOutputScale() / 2.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+
+public class QuantizedEnsembleScorer implements Scorer {
+
+	public enum LeafOutputType {
+		Float32, Fixed16
+	}
+
+	private final BinMapper binMapper;
+	private final int numTrees;
+	private final LeafOutputType leafOutputType;
+
+	/*
+	 * Internal nodes of tree t are at [nodeOffsets[t], nodeOffsets[t + 1])
+	 * and its leaves start at leafOffsets[t]. Child indices are relative to
+	 * the tree: non-negative values are internal nodes and negative values
+	 * are ~leaf.
+	 */
+	private final int[] nodeOffsets;
+	private final int[] leafOffsets;
+	private final byte[] byteFeatures;
+	private final char[] charFeatures;
+	private final char[] thresholds;
+	private final short[] leftChild;
+	private final short[] rightChild;
+
+	private final float[] floatOutputs;
+	private final short[] fixedOutputs;
+	private final double outputScale;
+
+	public QuantizedEnsembleScorer(BinnedEnsembleScorer scorer, LeafOutputType leafOutputType) throws Exception {
+		this.binMapper = scorer.getBinMapper();
+		this.numTrees = scorer.getNumTrees();
+		this.leafOutputType = leafOutputType;
+
+		int numFeatures = binMapper.getNumFeatures();
+		if (numFeatures > 65536) {
+			throw new Exception("Too many features for 16-bit feature ids: " + numFeatures);
+		}
+		for (int f = 0; f < numFeatures; f++) {
+			if (binMapper.getNumBins(f) > 65536) {
+				throw new Exception("Feature " + f + " has too many bins for 16-bit thresholds: "
+						+ binMapper.getNumBins(f));
+			}
+		}
+
+		nodeOffsets = new int[numTrees + 1];
+		leafOffsets = new int[numTrees + 1];
+		double maxAbsOutput = 0;
+		for (int t = 0; t < numTrees; t++) {
+			int numLeaves = scorer.getNumLeaves(t);
+			if (numLeaves > 32768) {
+				throw new Exception("Tree " + t + " has too many leaves for 16-bit child indices: " + numLeaves);
+			}
+			nodeOffsets[t + 1] = nodeOffsets[t] + numLeaves - 1;
+			leafOffsets[t + 1] = leafOffsets[t] + numLeaves;
+			for (double output : scorer.getLeafOutputs(t)) {
+				maxAbsOutput = Math.max(maxAbsOutput, Math.abs(output));
+			}
+		}
+
+		int numNodes = nodeOffsets[numTrees];
+		byteFeatures = (numFeatures <= 256 ? new byte[numNodes] : null);
+		charFeatures = (numFeatures <= 256 ? null : new char[numNodes]);
+		thresholds = new char[numNodes];
+		leftChild = new short[numNodes];
+		rightChild = new short[numNodes];
+		for (int t = 0; t < numTrees; t++) {
+			int[] features = scorer.getSplitFeatures(t);
+			int[] binThresholds = scorer.getBinThresholds(t);
+			int[] left = scorer.getLeftChildren(t);
+			int[] right = scorer.getRightChildren(t);
+			for (int n = 0; n < features.length; n++) {
+				int idx = nodeOffsets[t] + n;
+				if (byteFeatures != null) {
+					byteFeatures[idx] = (byte) features[n];
+				} else {
+					charFeatures[idx] = (char) features[n];
+				}
+				thresholds[idx] = (char) binThresholds[n];
+				leftChild[idx] = (short) left[n];
+				rightChild[idx] = (short) right[n];
+			}
+		}
+
+		int numLeaves = leafOffsets[numTrees];
+		if (leafOutputType == LeafOutputType.Float32) {
+			floatOutputs = new float[numLeaves];
+			fixedOutputs = null;
+			outputScale = 1.0;
+		} else {
+			floatOutputs = null;
+			fixedOutputs = new short[numLeaves];
+			outputScale = (maxAbsOutput > 0 ? maxAbsOutput / Short.MAX_VALUE : 1.0);
+		}
+		for (int t = 0; t < numTrees; t++) {
+			double[] outputs = scorer.getLeafOutputs(t);
+			for (int l = 0; l < outputs.length; l++) {
+				if (floatOutputs != null) {
+					floatOutputs[leafOffsets[t] + l] = (float) outputs[l];
+				} else {
+					fixedOutputs[leafOffsets[t] + l] = (short) Math.round(outputs[l] / outputScale);
+				}
+			}
+		}
+	}
+
+	public BinMapper getBinMapper() {
+		return binMapper;
+	}
+
+	public int getNumTrees() {
+		return numTrees;
+	}
+
+	public LeafOutputType getLeafOutputType() {
+		return leafOutputType;
+	}
+
+	/**
+	 * Returns the value of one unit of the fixed point leaf outputs
+	 */
+	public double getOutputScale() {
+		return outputScale;
+	}
+
+	@Override
+	public int getNumFeatures() {
+		return binMapper.getNumFeatures();
+	}
+
+	/**
+	 * Returns the memory which is used by the trees
+	 */
+	public long getSizeInBytes() {
+		long numNodes = nodeOffsets[numTrees];
+		long numLeaves = leafOffsets[numTrees];
+		return numNodes * ((byteFeatures != null ? 1 : 2) + 3 * 2) + numLeaves * (floatOutputs != null ? 4 : 2)
+				+ 2L * 4 * (numTrees + 1);
+	}
+
+	public int getLeaf(int tree, int[] bins) {
+		int offset = nodeOffsets[tree];
+		if (nodeOffsets[tree + 1] == offset) {
+			return 0;
+		}
+		return getLeafFromOffset(offset, bins);
+	}
+
+	private int getLeafFromOffset(int offset, int[] bins) {
+		int node = 0;
+		if (byteFeatures != null) {
+			while (node >= 0) {
+				int idx = offset + node;
+				if (bins[byteFeatures[idx] & 0xFF] <= thresholds[idx]) {
+					node = leftChild[idx];
+				} else {
+					node = rightChild[idx];
+				}
+			}
+		} else {
+			while (node >= 0) {
+				int idx = offset + node;
+				if (bins[charFeatures[idx]] <= thresholds[idx]) {
+					node = leftChild[idx];
+				} else {
+					node = rightChild[idx];
+				}
+			}
+		}
+		return ~node;
+	}
+
+	/**
+	 * Scores a vector which is already mapped to bins
+	 */
+	public double score(int[] bins) {
+		if (floatOutputs != null) {
+			double score = 0;
+			for (int t = 0; t < numTrees; t++) {
+				score += floatOutputs[leafOffsets[t] + getLeaf(t, bins)];
+			}
+			return score;
+		}
+		long sum = 0;
+		for (int t = 0; t < numTrees; t++) {
+			sum += fixedOutputs[leafOffsets[t] + getLeaf(t, bins)];
+		}
+		return sum * outputScale;
+	}
+
+	/**
+	 * Scores a batch of vectors which are already mapped to bins, one tree
+	 * at a time.
+	 */
+	public void score(int[][] bins, int count, double[] scores) {
+		Arrays.fill(scores, 0, count, 0);
+		for (int t = 0; t < numTrees; t++) {
+			int offset = nodeOffsets[t];
+			boolean singleLeaf = (nodeOffsets[t + 1] == offset);
+			int leafOffset = leafOffsets[t];
+			for (int i = 0; i < count; i++) {
+				int leaf = leafOffset + (singleLeaf ? 0 : getLeafFromOffset(offset, bins[i]));
+				scores[i] += (floatOutputs != null ? floatOutputs[leaf] : fixedOutputs[leaf]);
+			}
+		}
+		if (fixedOutputs != null) {
+			for (int i = 0; i < count; i++) {
+				scores[i] *= outputScale;
+			}
+		}
+	}
+
+	@Override
+	public double score(double[] featureVector) {
+		int[] bins = new int[binMapper.getNumFeatures()];
+		binMapper.map(featureVector, bins);
+		return score(bins);
+	}
+
+	@Override
+	public double score(int[] featureIndices, double[] values, int length) {
+		int[] bins = new int[binMapper.getNumFeatures()];
+		binMapper.map(featureIndices, values, length, bins);
+		return score(bins);
+	}
+
+	public double score(SparseTextFileLine line, int[] bins) {
+		binMapper.map(line, bins);
+		return score(bins);
+	}
+}
@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.scoring;
+
+/**
+ * Scores feature vectors with original (not discretized) feature values.
+ * Implementations must be safe to use from multiple threads.
+ */
+
+public interface Scorer {
+
+	/**
+	 * Returns the number of features of dense feature vectors
+	 */
+	public int getNumFeatures();
+
+	/**
+	 * Scores a dense feature vector (indexed from zero)
+	 */
+	public double score(double[] featureVector);
+
+	/**
+	 * Scores a sparse feature vector. Feature indices are zero based and
+	 * features which are not listed are considered missing.
+	 */
+	public double score(int[] featureIndices, double[] values, int length);
+
+}
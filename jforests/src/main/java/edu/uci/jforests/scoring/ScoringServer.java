@@ -0,0 +1,495 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.scoring;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import edu.uci.jforests.input.BinMapper;
+
+/**
+ * A scoring server which listens on localhost and uses a simple line based
+ * protocol:
+ *
+ * <pre>
+ * request  := line+ empty-line
+ * line     := [target] [qid:id] index:value ...   (as in SVMlight files)
+ * response := score score ... newline           (one score per line of the request)
+ * </pre>
+ *
+ * A request can be a single vector or all documents of a query. It is
+ * scored with the current model of the registry, unless its first line is
+ * "@model name", which selects a recently loaded model (e.g. for A/B
+ * traffic). Other commands are:
+ *
+ * <pre>
+ * STATS                        returns the latency counters
+ * MODEL                        returns the current model
+ * LOAD name model mapper       loads, validates and publishes a new model
+ * QUIT                         closes the connection
+ * </pre>
+ *
+ * LOAD is only enabled if a model directory is set (see setModelDirectory),
+ * and the files are resolved in that directory: clients can't make the
+ * server read other files. If scoring a request fails, its response is a
+ * line starting with "ERROR".
+ *
+ * Concurrent requests are coalesced into micro-batches: a batch is scored
+ * as soon as it has maxBatchSize vectors or its first request has waited
+ * for maxBatchDelay microseconds. Batches are scored by a pool of workers.
+ */
+
+public class ScoringServer {
+
+	private ModelRegistry registry;
+	private int port;
+	private int maxBatchSize;
+	private long maxBatchDelayNanos;
+	private int numWorkers;
+	private File modelDirectory;
+
+	private ServerSocket serverSocket;
+	private BlockingQueue<ScoringRequest> queue;
+	private ExecutorService connections;
+	private ExecutorService workers;
+	private Thread acceptor;
+	private Thread batcher;
+	private volatile boolean running;
+
+	private LatencyStats stats = new LatencyStats();
+
+	public ScoringServer(BinnedEnsembleScorer scorer, int port, int maxBatchSize, long maxBatchDelayMicros,
+			int numWorkers) {
+		this(new ModelRegistry(1), port, maxBatchSize, maxBatchDelayMicros, numWorkers);
+		registry.publish(new LoadedModel("default", 0, null, scorer));
+	}
+
+	public ScoringServer(ModelRegistry registry, int port, int maxBatchSize, long maxBatchDelayMicros,
+			int numWorkers) {
+		this.registry = registry;
+		this.port = port;
+		this.maxBatchSize = maxBatchSize;
+		this.maxBatchDelayNanos = maxBatchDelayMicros * 1000;
+		this.numWorkers = numWorkers;
+	}
+
+	/**
+	 * Enables the LOAD command for model and bin mapper files in the given
+	 * directory (or its subdirectories).
+	 */
+	public void setModelDirectory(File modelDirectory) throws IOException {
+		this.modelDirectory = modelDirectory.getCanonicalFile();
+	}
+
+	/**
+	 * Starts listening. If the port is zero, a free port is chosen which can
+	 * be retrieved with getPort().
+	 */
+	public void start() throws IOException {
+		serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+		queue = new LinkedBlockingQueue<ScoringRequest>();
+		connections = Executors.newCachedThreadPool();
+		workers = Executors.newFixedThreadPool(numWorkers);
+		running = true;
+
+		acceptor = new Thread("ScoringServer-acceptor") {
+			@Override
+			public void run() {
+				acceptConnections();
+			}
+		};
+		batcher = new Thread("ScoringServer-batcher") {
+			@Override
+			public void run() {
+				makeBatches();
+			}
+		};
+		acceptor.start();
+		batcher.start();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public ModelRegistry getRegistry() {
+		return registry;
+	}
+
+	public LatencyStats getStats() {
+		return stats;
+	}
+
+	public void stop() {
+		running = false;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		batcher.interrupt();
+		connections.shutdownNow();
+		workers.shutdown();
+	}
+
+	/**
+	 * Blocks until the server is stopped.
+	 */
+	public void join() throws InterruptedException {
+		acceptor.join();
+		batcher.join();
+	}
+
+	private void acceptConnections() {
+		while (running) {
+			try {
+				final Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				connections.execute(new Runnable() {
+					@Override
+					public void run() {
+						handleConnection(socket);
+					}
+				});
+			} catch (SocketException e) {
+				// The server socket is closed
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void handleConnection(Socket socket) {
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+			Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "US-ASCII"));
+			List<int[]> vectors = new ArrayList<int[]>();
+			LoadedModel model = null;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() > 0) {
+					if (model == null) {
+						if (line.equals("QUIT")) {
+							break;
+						}
+						String response = handleCommand(line);
+						if (response != null) {
+							writer.write(response);
+							writer.write('\n');
+							writer.flush();
+							continue;
+						}
+						if (line.startsWith("@model ")) {
+							model = registry.get(line.substring(7).trim());
+							if (model == null) {
+								writer.write("ERROR Unknown model: " + line.substring(7).trim() + "\n");
+								writer.flush();
+								skipRequest(reader);
+							}
+							continue;
+						}
+						model = registry.getCurrent();
+						if (model == null) {
+							writer.write("ERROR No model is published\n");
+							writer.flush();
+							skipRequest(reader);
+							continue;
+						}
+					}
+					try {
+						vectors.add(parseVector(line, model.getBinMapper()));
+					} catch (NumberFormatException e) {
+						writer.write("ERROR " + e.getMessage() + "\n");
+						writer.flush();
+						skipRequest(reader);
+						vectors.clear();
+						model = null;
+					}
+					continue;
+				}
+				if (vectors.isEmpty()) {
+					model = null;
+					continue;
+				}
+				ScoringRequest request = new ScoringRequest(model, vectors.toArray(new int[vectors.size()][]));
+				queue.put(request);
+				request.done.await();
+				if (request.error != null) {
+					writer.write("ERROR " + request.error + "\n");
+				} else {
+					writer.write(toResponse(request.scores));
+				}
+				writer.flush();
+				vectors.clear();
+				model = null;
+			}
+		} catch (InterruptedException e) {
+			// The server is stopped
+		} catch (IOException e) {
+			if (running) {
+				e.printStackTrace();
+			}
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return the response of the command, or null if the line is not a
+	 *         command
+	 */
+	private String handleCommand(String line) {
+		if (line.equals("STATS")) {
+			return stats.toString();
+		}
+		if (line.equals("MODEL")) {
+			return String.valueOf(registry.getCurrent());
+		}
+		if (line.startsWith("LOAD ")) {
+			if (modelDirectory == null) {
+				return "ERROR LOAD is disabled (no model directory is set)";
+			}
+			String[] parts = line.split("\\s+");
+			if (parts.length != 4) {
+				return "ERROR Usage: LOAD name model-file bin-mapper-file";
+			}
+			try {
+				String modelFile = resolveModelFile(parts[2]);
+				String binMapperFile = resolveModelFile(parts[3]);
+				if (modelFile == null || binMapperFile == null) {
+					return "ERROR Files must be in the model directory";
+				}
+				return "OK " + registry.loadInBackground(parts[1], modelFile, binMapperFile, true).get();
+			} catch (Exception e) {
+				return "ERROR " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Resolves a file name of a LOAD command in the model directory.
+	 * 
+	 * @return the path of the file, or null if it is outside of the model
+	 *         directory
+	 */
+	private String resolveModelFile(String name) throws IOException {
+		File file = new File(name);
+		if (!file.isAbsolute()) {
+			file = new File(modelDirectory, name);
+		}
+		file = file.getCanonicalFile();
+		for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+			if (parent.equals(modelDirectory)) {
+				return file.getPath();
+			}
+		}
+		return null;
+	}
+
+	private static void skipRequest(BufferedReader reader) throws IOException {
+		String line;
+		while ((line = reader.readLine()) != null && line.trim().length() > 0) {
+		}
+	}
+
+	private static String toResponse(double[] scores) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < scores.length; i++) {
+			if (i > 0) {
+				sb.append(' ');
+			}
+			sb.append(scores[i]);
+		}
+		sb.append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * Parses a line in SVMlight format and maps its values to bins. The
+	 * target and qid are optional and ignored.
+	 */
+	private static int[] parseVector(String line, BinMapper binMapper) {
+		int[] bins = new int[binMapper.getNumFeatures()];
+		for (int f = 0; f < bins.length; f++) {
+			bins[f] = binMapper.getMissingBin(f);
+		}
+		int commentIdx = line.indexOf('#');
+		int end = (commentIdx >= 0 ? commentIdx : line.length());
+		int pos = 0;
+		while (pos < end) {
+			while (pos < end && Character.isWhitespace(line.charAt(pos))) {
+				pos++;
+			}
+			int tokenStart = pos;
+			int colon = -1;
+			while (pos < end && !Character.isWhitespace(line.charAt(pos))) {
+				if (colon < 0 && line.charAt(pos) == ':') {
+					colon = pos;
+				}
+				pos++;
+			}
+			if (colon < 0 || line.startsWith("qid:", tokenStart)) {
+				continue;
+			}
+			int f = Integer.parseInt(line.substring(tokenStart, colon)) - 1;
+			if (f >= 0 && f < bins.length) {
+				bins[f] = binMapper.getBinForValue(f, Double.parseDouble(line.substring(colon + 1, pos)));
+			}
+		}
+		return bins;
+	}
+
+	private void makeBatches() {
+		while (running) {
+			try {
+				ScoringRequest first = queue.take();
+				final List<ScoringRequest> batch = new ArrayList<ScoringRequest>();
+				batch.add(first);
+				int numVectors = first.bins.length;
+				long deadline = first.arrivalTime + maxBatchDelayNanos;
+				while (numVectors < maxBatchSize) {
+					long wait = deadline - System.nanoTime();
+					ScoringRequest request = (wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll());
+					if (request == null) {
+						break;
+					}
+					batch.add(request);
+					numVectors += request.bins.length;
+				}
+				final int size = numVectors;
+				try {
+					workers.execute(new Runnable() {
+						@Override
+						public void run() {
+							scoreBatch(batch, size);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					// The server is stopped
+					for (ScoringRequest request : batch) {
+						request.error = "The server is stopped";
+						request.done.countDown();
+					}
+				}
+			} catch (InterruptedException e) {
+				// The server is stopped
+			}
+		}
+	}
+
+	/**
+	 * Scores the requests of a batch. The connections of all requests are
+	 * released even if scoring fails, with an error for the requests which
+	 * were not scored.
+	 */
+	private void scoreBatch(List<ScoringRequest> batch, int numVectors) {
+		try {
+			scoreRequests(batch, numVectors);
+		} catch (Throwable e) {
+			e.printStackTrace();
+			for (ScoringRequest request : batch) {
+				if (request.done.getCount() > 0) {
+					request.error = e.toString();
+				}
+			}
+		} finally {
+			for (ScoringRequest request : batch) {
+				request.done.countDown();
+			}
+		}
+	}
+
+	private void scoreRequests(List<ScoringRequest> batch, int numVectors) {
+		/*
+		 * Requests of a batch usually use the same model, but they may not
+		 * during A/B traffic or right after a new model is published.
+		 */
+		Map<LoadedModel, List<ScoringRequest>> requestsOfModel = new LinkedHashMap<LoadedModel, List<ScoringRequest>>();
+		for (ScoringRequest request : batch) {
+			List<ScoringRequest> requests = requestsOfModel.get(request.model);
+			if (requests == null) {
+				requests = new ArrayList<ScoringRequest>();
+				requestsOfModel.put(request.model, requests);
+			}
+			requests.add(request);
+		}
+
+		int[][] bins = new int[numVectors][];
+		double[] scores = new double[numVectors];
+		for (Map.Entry<LoadedModel, List<ScoringRequest>> entry : requestsOfModel.entrySet()) {
+			int count = 0;
+			for (ScoringRequest request : entry.getValue()) {
+				System.arraycopy(request.bins, 0, bins, count, request.bins.length);
+				count += request.bins.length;
+			}
+			entry.getKey().getScorer().score(bins, count, scores);
+
+			int idx = 0;
+			long now = System.nanoTime();
+			for (ScoringRequest request : entry.getValue()) {
+				System.arraycopy(scores, idx, request.scores, 0, request.scores.length);
+				idx += request.scores.length;
+				stats.recordRequest(now - request.arrivalTime, request.scores.length);
+				request.done.countDown();
+			}
+		}
+		stats.recordBatch();
+	}
+
+	private static class ScoringRequest {
+		LoadedModel model;
+		int[][] bins;
+		double[] scores;
+		long arrivalTime;
+		String error;
+		CountDownLatch done = new CountDownLatch(1);
+
+		ScoringRequest(LoadedModel model, int[][] bins) {
+			this.model = model;
+			this.bins = bins;
+			this.scores = new double[bins.length];
+			this.arrivalTime = System.nanoTime();
+		}
+	}
+}
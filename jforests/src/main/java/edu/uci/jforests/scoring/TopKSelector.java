@@ -0,0 +1,240 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.scoring;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+import edu.uci.jforests.util.concurrency.TaskCollection;
+import edu.uci.jforests.util.concurrency.TaskItem;
+
+/**
+ * Selects the k documents with the highest scores of each query without
+ * sorting whole queries. Each query is scanned once with a bounded min-heap
+ * of size k, which is then sorted in place. Queries are processed in
+ * parallel.
+ *
+ * Documents with equal scores are ordered by their indices.
+ */
+
+public class TopKSelector {
+
+	private int k;
+	private int numQueries;
+	private int[] counts;
+
+	/*
+	 * The top documents of query q are at [q * stride, q * stride +
+	 * counts[q]). The stride is k, but at most the number of documents of
+	 * the largest query, so that the buffers are never larger than the
+	 * scores even for a very large k.
+	 */
+	private int stride;
+	private int[] topIndices;
+	private double[] topScores;
+
+	public TopKSelector(int k) {
+		this.k = k;
+	}
+
+	/**
+	 * Selects the top k documents of each query.
+	 *
+	 * @param queryBoundaries
+	 *            documents of query q are at [queryBoundaries[q],
+	 *            queryBoundaries[q + 1])
+	 */
+	public void select(int[] queryBoundaries, double[] scores) {
+		numQueries = queryBoundaries.length - 1;
+		counts = new int[numQueries];
+		int maxDocsPerQuery = 0;
+		for (int q = 0; q < numQueries; q++) {
+			maxDocsPerQuery = Math.max(maxDocsPerQuery, queryBoundaries[q + 1] - queryBoundaries[q]);
+		}
+		stride = Math.min(k, maxDocsPerQuery);
+		topIndices = new int[numQueries * stride];
+		topScores = new double[numQueries * stride];
+
+		BlockingThreadPoolExecutor executor = BlockingThreadPoolExecutor.getInstance();
+		int numWorkers = (executor != null ? executor.getMaximumPoolSize() : 1);
+		TaskCollection<SelectionWorker> workers = new TaskCollection<SelectionWorker>();
+		int chunkSize = 1 + numQueries / numWorkers;
+		for (int begin = 0; begin < numQueries; begin += chunkSize) {
+			workers.addTask(new SelectionWorker(queryBoundaries, scores, begin, Math.min(numQueries, begin + chunkSize)));
+		}
+		if (workers.getSize() == 1 || executor == null) {
+			for (int i = 0; i < workers.getSize(); i++) {
+				workers.getTask(i).run();
+			}
+		} else {
+			workers.run();
+		}
+	}
+
+	public int getNumQueries() {
+		return numQueries;
+	}
+
+	public int getCount(int query) {
+		return counts[query];
+	}
+
+	/**
+	 * Returns the index (in the data set) of the document at the given rank
+	 * of the query
+	 */
+	public int getIndex(int query, int rank) {
+		return topIndices[query * stride + rank];
+	}
+
+	public double getScore(int query, int rank) {
+		return topScores[query * stride + rank];
+	}
+
+	/**
+	 * Writes one line per selected document: query index, rank, document
+	 * index and score, separated by tabs.
+	 */
+	public void writeTsv(PrintStream output) {
+		StringBuilder sb = new StringBuilder();
+		for (int q = 0; q < numQueries; q++) {
+			for (int r = 0; r < counts[q]; r++) {
+				sb.setLength(0);
+				sb.append(q).append('\t').append(r + 1).append('\t').append(topIndices[q * stride + r]).append('\t')
+						.append(topScores[q * stride + r]);
+				output.println(sb);
+			}
+		}
+	}
+
+	/**
+	 * Writes the number of queries and then, for each query, the number of
+	 * selected documents followed by their (int index, double score) pairs.
+	 */
+	public void writeBinary(DataOutputStream output) throws IOException {
+		output.writeInt(numQueries);
+		for (int q = 0; q < numQueries; q++) {
+			output.writeInt(counts[q]);
+			for (int r = 0; r < counts[q]; r++) {
+				output.writeInt(topIndices[q * stride + r]);
+				output.writeDouble(topScores[q * stride + r]);
+			}
+		}
+	}
+
+	/*
+	 * Returns true if document a should be ranked below document b
+	 */
+	private static boolean isWorse(double scoreA, int indexA, double scoreB, int indexB) {
+		return scoreA < scoreB || (scoreA == scoreB && indexA > indexB);
+	}
+
+	private static void siftDown(int[] indices, double[] scores, int offset, int size, int pos) {
+		int index = indices[offset + pos];
+		double score = scores[offset + pos];
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size
+					&& isWorse(scores[offset + child + 1], indices[offset + child + 1], scores[offset + child],
+							indices[offset + child])) {
+				child++;
+			}
+			if (!isWorse(scores[offset + child], indices[offset + child], score, index)) {
+				break;
+			}
+			indices[offset + pos] = indices[offset + child];
+			scores[offset + pos] = scores[offset + child];
+			pos = child;
+		}
+		indices[offset + pos] = index;
+		scores[offset + pos] = score;
+	}
+
+	/**
+	 * Selects the top k documents in [begin, end) of the scores into
+	 * indices/topScores starting at offset, sorted by decreasing scores.
+	 *
+	 * @return the number of selected documents
+	 */
+	public static int select(double[] scores, int begin, int end, int k, int[] indices, double[] topScores,
+			int offset) {
+		int size = 0;
+		for (int i = begin; i < end; i++) {
+			if (size < k) {
+				// Add to the heap and move it up
+				int pos = size++;
+				while (pos > 0) {
+					int parent = (pos - 1) >>> 1;
+					if (!isWorse(scores[i], i, topScores[offset + parent], indices[offset + parent])) {
+						break;
+					}
+					indices[offset + pos] = indices[offset + parent];
+					topScores[offset + pos] = topScores[offset + parent];
+					pos = parent;
+				}
+				indices[offset + pos] = i;
+				topScores[offset + pos] = scores[i];
+			} else if (isWorse(topScores[offset], indices[offset], scores[i], i)) {
+				// Replace the worst of the top documents
+				indices[offset] = i;
+				topScores[offset] = scores[i];
+				siftDown(indices, topScores, offset, size, 0);
+			}
+		}
+
+		// Heap sort: the worst remaining document goes to the end
+		for (int n = size - 1; n > 0; n--) {
+			int index = indices[offset];
+			double score = topScores[offset];
+			indices[offset] = indices[offset + n];
+			topScores[offset] = topScores[offset + n];
+			indices[offset + n] = index;
+			topScores[offset + n] = score;
+			siftDown(indices, topScores, offset, n, 0);
+		}
+		return size;
+	}
+
+	private class SelectionWorker extends TaskItem {
+
+		private int[] queryBoundaries;
+		private double[] scores;
+		private int beginQuery;
+		private int endQuery;
+
+		public SelectionWorker(int[] queryBoundaries, double[] scores, int beginQuery, int endQuery) {
+			this.queryBoundaries = queryBoundaries;
+			this.scores = scores;
+			this.beginQuery = beginQuery;
+			this.endQuery = endQuery;
+		}
+
+		@Override
+		public void run() {
+			for (int q = beginQuery; q < endQuery; q++) {
+				counts[q] = select(scores, queryBoundaries[q], queryBoundaries[q + 1], stride, topIndices, topScores,
+						q * stride);
+			}
+		}
+	}
+}
@@ -18,15 +18,22 @@
 package edu.uci.jforests.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+import edu.uci.jforests.util.concurrency.TaskCollection;
+import edu.uci.jforests.util.concurrency.TaskItem;
+
 /**
  * @author Yasser Ganjisaffar <ganjisaffar at gmail dot com>
  */
 
 public class ArraysUtil {
 
+	private final static int MIN_PARALLEL_SORT_LENGTH = 1 << 16;
+
 	public static void increment(double[] arr, double inc) {
 		for (int i = 0; i < arr.length; i++) {
 			arr[i] += inc;
@@ -200,6 +207,10 @@ public class ArraysUtil {
 	}
 
 	public static int[] loadIntArrayFromLine(String line, int partsCount) throws Exception {
+		if (partsCount == 0 && line.trim().length() == 0) {
+			// e.g. the internal nodes of a tree with a single leaf
+			return new int[0];
+		}
 		String[] parts = line.split(" ");
 		if (parts.length != partsCount) {
 			throw new Exception("Invalid input.");
@@ -212,6 +223,10 @@ public class ArraysUtil {
 	}
 
 	public static double[] loadDoubleArrayFromLine(String line, int partsCount) throws Exception {
+		if (partsCount == 0 && line.trim().length() == 0) {
+			// e.g. the internal nodes of a tree with a single leaf
+			return new double[0];
+		}
 		String[] parts = line.split(" ");
 		if (parts.length != partsCount) {
 			throw new Exception("Invalid input.");
@@ -304,4 +319,100 @@ public class ArraysUtil {
 			swap(list, i - 1, rnd.nextInt(i));
 		}
 	}
+
+	/**
+	 * Sorts the first length elements of the array in ascending order (in
+	 * the same order as Arrays.sort). Large arrays are split into chunks
+	 * which are sorted in parallel and then merged pairwise.
+	 */
+	public static void parallelSort(double[] arr, int length) {
+		BlockingThreadPoolExecutor executor = BlockingThreadPoolExecutor.getInstance();
+		int numWorkers = (executor != null ? executor.getMaximumPoolSize() : 1);
+		if (numWorkers == 1 || length < MIN_PARALLEL_SORT_LENGTH) {
+			Arrays.sort(arr, 0, length);
+			return;
+		}
+		int chunkSize = 1 + length / numWorkers;
+		TaskCollection<SortWorker> sorters = new TaskCollection<SortWorker>();
+		for (int begin = 0; begin < length; begin += chunkSize) {
+			sorters.addTask(new SortWorker(arr, begin, Math.min(length, begin + chunkSize)));
+		}
+		sorters.run();
+
+		double[] src = arr;
+		double[] dst = new double[length];
+		for (int runSize = chunkSize; runSize < length; runSize *= 2) {
+			TaskCollection<MergeWorker> mergers = new TaskCollection<MergeWorker>();
+			for (int begin = 0; begin < length; begin += 2 * runSize) {
+				mergers.addTask(new MergeWorker(src, dst, begin, Math.min(length, begin + runSize), Math.min(length,
+						begin + 2 * runSize)));
+			}
+			mergers.run();
+			double[] tmp = src;
+			src = dst;
+			dst = tmp;
+		}
+		if (src != arr) {
+			System.arraycopy(src, 0, arr, 0, length);
+		}
+	}
+
+	private static class SortWorker extends TaskItem {
+
+		private double[] arr;
+		private int begin;
+		private int end;
+
+		public SortWorker(double[] arr, int begin, int end) {
+			this.arr = arr;
+			this.begin = begin;
+			this.end = end;
+		}
+
+		@Override
+		public void run() {
+			Arrays.sort(arr, begin, end);
+		}
+	}
+
+	/*
+	 * Merges the sorted runs [begin, middle) and [middle, end) of src into
+	 * the same range of dst
+	 */
+	private static class MergeWorker extends TaskItem {
+
+		private double[] src;
+		private double[] dst;
+		private int begin;
+		private int middle;
+		private int end;
+
+		public MergeWorker(double[] src, double[] dst, int begin, int middle, int end) {
+			this.src = src;
+			this.dst = dst;
+			this.begin = begin;
+			this.middle = middle;
+			this.end = end;
+		}
+
+		@Override
+		public void run() {
+			int i = begin;
+			int j = middle;
+			int k = begin;
+			while (i < middle && j < end) {
+				if (Double.compare(src[i], src[j]) <= 0) {
+					dst[k++] = src[i++];
+				} else {
+					dst[k++] = src[j++];
+				}
+			}
+			while (i < middle) {
+				dst[k++] = src[i++];
+			}
+			while (j < end) {
+				dst[k++] = src[j++];
+			}
+		}
+	}
 }
@@ -0,0 +1,262 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.jforests.util;
+
+import java.util.Arrays;
+
+/**
+ * Counts the occurrences of int values without boxing.
+ *
+ * Values are kept in an open-addressing hash table (linear probing). When
+ * the distinct values are dense in their range, the counter switches to a
+ * plain array of counts indexed by (value - offset), which is both smaller
+ * and faster.
+ */
+
+public class IntCounter {
+
+	private final static int INITIAL_CAPACITY = 16;
+
+	/*
+	 * The dense representation is used when it needs at most this many slots
+	 * per distinct value.
+	 */
+	private final static int DENSE_SLOTS_PER_VALUE = 4;
+
+	private int[] keys;
+	private int[] counts;
+	private int mask;
+
+	private int[] denseCounts;
+	private int denseOffset;
+
+	private int size;
+	private long totalCount;
+	private int minKey = Integer.MAX_VALUE;
+	private int maxKey = Integer.MIN_VALUE;
+
+	public IntCounter() {
+		keys = new int[INITIAL_CAPACITY];
+		counts = new int[INITIAL_CAPACITY];
+		mask = INITIAL_CAPACITY - 1;
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	public void increment(int key) {
+		add(key, 1);
+	}
+
+	public void add(int key, int count) {
+		if (count == 0) {
+			return;
+		}
+		totalCount += count;
+		if (denseCounts != null) {
+			int idx = key - denseOffset;
+			if (idx >= 0 && idx < denseCounts.length) {
+				if (denseCounts[idx] == 0) {
+					size++;
+				}
+				denseCounts[idx] += count;
+				return;
+			}
+			updateRange(key);
+			if (!fitsDense()) {
+				toSparse();
+				addToTable(key, count);
+				return;
+			}
+			growDense();
+			denseCounts[key - denseOffset] = count;
+			size++;
+			return;
+		}
+		if (addToTable(key, count)) {
+			updateRange(key);
+			if (fitsDense()) {
+				toDense();
+			}
+		}
+	}
+
+	/**
+	 * @return true if the key was not in the table before
+	 */
+	private boolean addToTable(int key, int count) {
+		int slot = hash(key) & mask;
+		while (counts[slot] != 0) {
+			if (keys[slot] == key) {
+				counts[slot] += count;
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		counts[slot] = count;
+		size++;
+		if (size * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+		return true;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldCounts = counts;
+		keys = new int[capacity];
+		counts = new int[capacity];
+		mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldCounts[i] != 0) {
+				int slot = hash(oldKeys[i]) & mask;
+				while (counts[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	private void updateRange(int key) {
+		if (key < minKey) {
+			minKey = key;
+		}
+		if (key > maxKey) {
+			maxKey = key;
+		}
+	}
+
+	private boolean fitsDense() {
+		long range = (long) maxKey - minKey + 1;
+		return range <= (long) DENSE_SLOTS_PER_VALUE * (size + 1);
+	}
+
+	private void toDense() {
+		denseOffset = minKey;
+		denseCounts = new int[maxKey - minKey + 1];
+		for (int i = 0; i < keys.length; i++) {
+			if (counts[i] != 0) {
+				denseCounts[keys[i] - denseOffset] = counts[i];
+			}
+		}
+		keys = null;
+		counts = null;
+	}
+
+	private void growDense() {
+		int[] newCounts = new int[maxKey - minKey + 1];
+		System.arraycopy(denseCounts, 0, newCounts, denseOffset - minKey, denseCounts.length);
+		denseCounts = newCounts;
+		denseOffset = minKey;
+	}
+
+	private void toSparse() {
+		int capacity = INITIAL_CAPACITY;
+		while (capacity < size * 2 + 2) {
+			capacity *= 2;
+		}
+		keys = new int[capacity];
+		counts = new int[capacity];
+		mask = capacity - 1;
+		int[] oldCounts = denseCounts;
+		denseCounts = null;
+		size = 0;
+		for (int i = 0; i < oldCounts.length; i++) {
+			if (oldCounts[i] != 0) {
+				addToTable(i + denseOffset, oldCounts[i]);
+			}
+		}
+	}
+
+	public int getCount(int key) {
+		if (denseCounts != null) {
+			int idx = key - denseOffset;
+			return (idx >= 0 && idx < denseCounts.length ? denseCounts[idx] : 0);
+		}
+		int slot = hash(key) & mask;
+		while (counts[slot] != 0) {
+			if (keys[slot] == key) {
+				return counts[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return 0;
+	}
+
+	/**
+	 * Adds all counts of the other counter to this one.
+	 */
+	public void merge(IntCounter other) {
+		if (other.denseCounts != null) {
+			for (int i = 0; i < other.denseCounts.length; i++) {
+				if (other.denseCounts[i] != 0) {
+					add(i + other.denseOffset, other.denseCounts[i]);
+				}
+			}
+		} else {
+			for (int i = 0; i < other.keys.length; i++) {
+				if (other.counts[i] != 0) {
+					add(other.keys[i], other.counts[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of distinct values
+	 */
+	public int size() {
+		return size;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public boolean isDense() {
+		return denseCounts != null;
+	}
+
+	/**
+	 * Returns the distinct values in ascending order
+	 */
+	public int[] getSortedKeys() {
+		int[] result = new int[size];
+		int idx = 0;
+		if (denseCounts != null) {
+			for (int i = 0; i < denseCounts.length; i++) {
+				if (denseCounts[i] != 0) {
+					result[idx++] = i + denseOffset;
+				}
+			}
+		} else {
+			for (int i = 0; i < keys.length; i++) {
+				if (counts[i] != 0) {
+					result[idx++] = keys[i];
+				}
+			}
+			Arrays.sort(result);
+		}
+		return result;
+	}
+}
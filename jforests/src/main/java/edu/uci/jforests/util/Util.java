@@ -190,4 +190,34 @@ public class Util {
 		reader.close();
 		return result;
 	}
+
+	/**
+	 * Parses a number of bytes with an optional k, m or g suffix (e.g. 512m)
+	 */
+	public static long parseByteSize(String value) {
+		value = value.trim().toLowerCase();
+		long unit = 1;
+		if (value.endsWith("k")) {
+			unit = 1L << 10;
+		} else if (value.endsWith("m")) {
+			unit = 1L << 20;
+		} else if (value.endsWith("g")) {
+			unit = 1L << 30;
+		}
+		if (unit > 1) {
+			value = value.substring(0, value.length() - 1).trim();
+		}
+		return (long) (Double.parseDouble(value) * unit);
+	}
+
+	public static String formatByteSize(long bytes) {
+		if (bytes >= 1L << 30) {
+			return String.format("%.2f GB", bytes / (double) (1L << 30));
+		} else if (bytes >= 1L << 20) {
+			return String.format("%.1f MB", bytes / (double) (1L << 20));
+		} else if (bytes >= 1L << 10) {
+			return String.format("%.1f KB", bytes / (double) (1L << 10));
+		}
+		return bytes + " bytes";
+	}
 }
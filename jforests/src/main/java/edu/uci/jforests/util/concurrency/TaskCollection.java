@@ -55,6 +55,12 @@ public class TaskCollection<T extends TaskItem> {
 		return tasks.get(idx);
 	}
 
+	/**
+	 * Runs the tasks on the shared thread pool and waits until the pool has
+	 * no tasks in process. The wait includes tasks which were submitted by
+	 * other threads, so task collections must not be run from two threads
+	 * at once.
+	 */
 	public void run() {
 		for (T task : tasks) {
 			BlockingThreadPoolExecutor.getInstance().execute(task);
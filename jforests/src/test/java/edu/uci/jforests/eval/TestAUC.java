@@ -0,0 +1,62 @@
+package edu.uci.jforests.eval;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import edu.uci.jforests.dataset.Dataset;
+import edu.uci.jforests.sample.Sample;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+
+public class TestAUC
+{
+	private Sample getSample(double[] targets)
+	{
+		Dataset dataset = new Dataset();
+		dataset.numInstances = targets.length;
+		dataset.targets = targets;
+		return new Sample(dataset);
+	}
+
+	@Test public void testTies() throws Exception
+	{
+		BlockingThreadPoolExecutor.init(2);
+		Sample sample = getSample(new double[] { 1, 0, 1, 0, 1 });
+		double[] scores = new double[] { 0.9, 0.8, 0.8, 0.3, 0.1 };
+
+		// 2 + 1.5 + 0 of the 6 positive/negative pairs are ordered correctly
+		assertEquals(3.5 / 6, new AUC().measure(scores, sample), 1e-12);
+		assertEquals(3.5 / 6, new AUC(1000).measure(scores, sample), 1e-12);
+
+		// With one bucket, all scores are ties
+		assertEquals(0.5, new AUC(1).measure(scores, sample), 1e-12);
+	}
+
+	@Test public void testNaN() throws Exception
+	{
+		BlockingThreadPoolExecutor.init(2);
+		Sample sample = getSample(new double[] { 1, 0, 1, 0, 1 });
+		double[] scores = new double[] { Double.NaN, Double.NaN, 0.8, 0.3, 0.1 };
+
+		// NaN scores are ranked first and are ties: 0.5 + 2 of 6 pairs
+		assertEquals(2.5 / 6, new AUC().measure(scores, sample), 1e-12);
+
+		// NaN scores share the last bucket with 0.8: 1 + 2 of 6 pairs
+		assertEquals(3.0 / 6, new AUC(1000).measure(scores, sample), 1e-12);
+	}
+
+	@Test public void testReuseBetweenCalls() throws Exception
+	{
+		BlockingThreadPoolExecutor.init(2);
+		AUC auc = new AUC(1000);
+		Sample sample = getSample(new double[] { 1, 0, 1, 0, 1 });
+
+		// The histograms of the first call must not leak into the second
+		assertEquals(3.5 / 6, auc.measure(new double[] { 0.9, 0.8, 0.8, 0.3, 0.1 }, sample), 1e-12);
+		assertEquals(1.0, auc.measure(new double[] { 0.9, 0.2, 0.8, 0.3, 0.7 }, sample), 1e-12);
+		assertEquals(3.5 / 6, auc.measure(new double[] { 0.9, 0.8, 0.8, 0.3, 0.1 }, sample), 1e-12);
+
+		Sample smaller = getSample(new double[] { 0, 1 });
+		assertEquals(1.0, auc.measure(new double[] { 0.1, 0.2 }, smaller), 1e-12);
+	}
+}
@@ -0,0 +1,65 @@
+package edu.uci.jforests.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.uci.jforests.dataset.Dataset;
+import edu.uci.jforests.sample.Sample;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+
+public class TestParallelEvaluationMetric
+{
+	/*
+	 * Larger than the minimum size of samples which are processed in
+	 * parallel, and not a multiple of the number of threads
+	 */
+	private final static int SIZE = 100003;
+
+	private Sample getSample(double[] targets)
+	{
+		Dataset dataset = new Dataset();
+		dataset.numInstances = targets.length;
+		dataset.targets = targets;
+		return new Sample(dataset);
+	}
+
+	/*
+	 * Computes the metric with the calling thread only
+	 */
+	private double measureSerially(ParallelEvaluationMetric metric, int numSums, double[] predictions, Sample sample)
+	{
+		double[] sums = new double[numSums];
+		metric.accumulate(predictions, sample.targets, 0, sample.size, sums);
+		return metric.getResult(sums, sample.size);
+	}
+
+	@Test public void testParallelMatchesSerial() throws Exception
+	{
+		BlockingThreadPoolExecutor.init(4);
+		assumeTrue(BlockingThreadPoolExecutor.getInstance().getMaximumPoolSize() > 1);
+
+		Random rnd = new Random(1);
+		double[] targets = new double[SIZE];
+		double[] predictions = new double[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			targets[i] = (rnd.nextDouble() < 0.3 ? 1 : 0);
+			predictions[i] = rnd.nextDouble();
+		}
+		Sample sample = getSample(targets);
+
+		ParallelEvaluationMetric[] metrics = { new RMSE(), new Accuracy(), new BalancedYoundenIndex() };
+		int[] numSums = { 1, 1, 4 };
+		for (int m = 0; m < metrics.length; m++) {
+			double expected = measureSerially(metrics[m], numSums[m], predictions, sample);
+			// Twice, since the workers and their sums are reused
+			for (int i = 0; i < 2; i++) {
+				assertEquals(metrics[m].getClass().getSimpleName(), expected, metrics[m].measure(predictions, sample),
+						1e-12);
+			}
+		}
+	}
+}
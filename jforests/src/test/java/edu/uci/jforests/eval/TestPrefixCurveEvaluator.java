@@ -0,0 +1,106 @@
+package edu.uci.jforests.eval;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.uci.jforests.dataset.Dataset;
+import edu.uci.jforests.dataset.DatasetLoader;
+import edu.uci.jforests.input.SyntheticBinFileGenerator;
+import edu.uci.jforests.learning.LearningUtils;
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.RandomEnsembles;
+import edu.uci.jforests.learning.trees.regression.RegressionTree;
+import edu.uci.jforests.sample.Sample;
+import edu.uci.jforests.util.IOUtils;
+
+public class TestPrefixCurveEvaluator
+{
+	private final static int NUM_FEATURES = 10;
+	private final static int NUM_BINS = 16;
+
+	private Sample createSample() throws Exception
+	{
+		File binFile = File.createTempFile("jforests-test", ".bin");
+		binFile.delete();
+		binFile.deleteOnExit();
+		SyntheticBinFileGenerator generator = new SyntheticBinFileGenerator(binFile.getPath(), 2000, NUM_FEATURES);
+		generator.setNumBins(NUM_BINS);
+		generator.generate();
+
+		InputStream in = new IOUtils().getInputStream(binFile.getPath());
+		Dataset dataset = new Dataset();
+		DatasetLoader.load(in, dataset);
+		in.close();
+		return new Sample(dataset);
+	}
+
+	/*
+	 * The synthetic features have the upper bounds 0, 1, ..., NUM_BINS - 1,
+	 * so bins can be used as thresholds
+	 */
+	private Ensemble createEnsemble(int numTrees, Random rnd) throws Exception
+	{
+		int[] thresholds = new int[NUM_BINS - 1];
+		for (int b = 0; b < thresholds.length; b++) {
+			thresholds[b] = b;
+		}
+		return RandomEnsembles.createEnsemble(numTrees, 0, 8, NUM_FEATURES, thresholds, rnd);
+	}
+
+	/*
+	 * Evaluates the first numTrees trees of the ensemble from scratch
+	 */
+	private double evaluatePrefix(Ensemble ensemble, int numTrees, Sample sample, EvaluationMetric metric)
+			throws Exception
+	{
+		double[] scores = new double[sample.size];
+		for (int t = 0; t < numTrees; t++) {
+			LearningUtils.updateScores(sample, scores, (RegressionTree) ensemble.getTreeAt(t), ensemble.getWeightAt(t));
+		}
+		return metric.measure(scores, sample);
+	}
+
+	@Test public void testPrefixesMatchFullEvaluations() throws Exception
+	{
+		Sample sample = createSample();
+		Ensemble ensemble = createEnsemble(23, new Random(1));
+		RMSE metric = new RMSE();
+		int[] intervals = { 1, 5, 23, 50 };
+		for (int interval : intervals) {
+			PrefixCurveEvaluator evaluator = new PrefixCurveEvaluator(ensemble, interval);
+			int[] checkpoints = evaluator.getCheckpoints();
+
+			// The whole ensemble is always the last checkpoint
+			assertEquals((23 + interval - 1) / interval, checkpoints.length);
+			assertEquals(23, checkpoints[checkpoints.length - 1]);
+
+			double[] curve = evaluator.evaluate(sample, metric);
+			double[] expected = new double[checkpoints.length];
+			for (int c = 0; c < checkpoints.length; c++) {
+				expected[c] = evaluatePrefix(ensemble, checkpoints[c], sample, metric);
+			}
+			assertArrayEquals(expected, curve, 0);
+		}
+	}
+
+	@Test public void testInvalidInterval() throws Exception
+	{
+		Ensemble ensemble = createEnsemble(3, new Random(2));
+		int[] intervals = { 0, -1 };
+		for (int interval : intervals) {
+			try {
+				new PrefixCurveEvaluator(ensemble, interval);
+				fail();
+			} catch (Exception e) {
+				// Expected
+			}
+		}
+	}
+}
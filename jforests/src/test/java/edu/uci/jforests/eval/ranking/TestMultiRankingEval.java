@@ -0,0 +1,84 @@
+package edu.uci.jforests.eval.ranking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.uci.jforests.dataset.RankingDataset;
+import edu.uci.jforests.dataset.RankingDatasetLoader;
+import edu.uci.jforests.input.RankingSyntheticBinFileGenerator;
+import edu.uci.jforests.sample.RankingSample;
+import edu.uci.jforests.util.IOUtils;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+
+public class TestMultiRankingEval
+{
+	private RankingSample createSample() throws Exception
+	{
+		File binFile = File.createTempFile("jforests-test", ".bin");
+		binFile.delete();
+		binFile.deleteOnExit();
+		RankingSyntheticBinFileGenerator generator = new RankingSyntheticBinFileGenerator(binFile.getPath(), 3000, 5);
+		generator.setAvgDocsPerQuery(15);
+		generator.generate();
+
+		InputStream in = new IOUtils().getInputStream(binFile.getPath());
+		RankingDataset dataset = new RankingDataset();
+		RankingDatasetLoader.load(in, dataset);
+		in.close();
+		NDCGEval.initialize(dataset.maxDocsPerQuery);
+		int[][] labelCounts = NDCGEval.getLabelCountsForQueries(dataset.targets, dataset.queryBoundaries);
+		dataset.maxDCG = NDCGEval.getMaxDCGForAllQueriesUptoTruncation(dataset.targets, dataset.queryBoundaries,
+				NDCGEval.MAX_TRUNCATION_LEVEL, labelCounts);
+		return new RankingSample(dataset);
+	}
+
+	/*
+	 * Scores with few distinct values, so that ties have to be broken in the
+	 * same way as in the standalone metrics
+	 */
+	private double[] createScores(int size, Random rnd)
+	{
+		double[] scores = new double[size];
+		for (int i = 0; i < size; i++) {
+			scores[i] = rnd.nextInt(4);
+		}
+		return scores;
+	}
+
+	@Test public void testMatchesStandaloneMetrics() throws Exception
+	{
+		BlockingThreadPoolExecutor.init(2);
+		RankingSample sample = createSample();
+		int maxDocsPerQuery = ((RankingDataset) sample.dataset).maxDocsPerQuery;
+		MultiRankingEval multi = new MultiRankingEval(maxDocsPerQuery, "NDCG@10+MAP+NDCG@3+NDCG",
+				NDCGEval.MAX_TRUNCATION_LEVEL);
+		assertEquals("NDCG@10+MAP+NDCG@3+NDCG@10", multi.toString());
+		NDCGEval ndcg10 = new NDCGEval(maxDocsPerQuery, 10);
+		NDCGEval ndcg3 = new NDCGEval(maxDocsPerQuery, 3);
+		MAPEval map = new MAPEval(maxDocsPerQuery);
+
+		Random rnd = new Random(1);
+		for (int i = 0; i < 5; i++) {
+			double[] scores = createScores(sample.size, rnd);
+
+			double[] measurements = multi.getMeasurements(scores, sample);
+			assertEquals(ndcg10.measure(scores, sample), measurements[0], 1e-12);
+			assertEquals(map.measure(scores, sample), measurements[1], 1e-12);
+			assertEquals(ndcg3.measure(scores, sample), measurements[2], 1e-12);
+			assertEquals(measurements[0], measurements[3], 0);
+			assertEquals(measurements[0], multi.measure(scores, sample), 0);
+
+			double[][] byQuery = multi.getMeasurementsByQuery(scores, sample);
+			assertArrayEquals(ndcg10.measureByQuery(scores, sample), byQuery[0], 1e-12);
+			assertArrayEquals(map.measureByQuery(scores, sample), byQuery[1], 1e-12);
+			assertArrayEquals(ndcg3.measureByQuery(scores, sample), byQuery[2], 1e-12);
+			assertArrayEquals(byQuery[0], multi.measureByQuery(scores, sample), 0);
+		}
+	}
+}
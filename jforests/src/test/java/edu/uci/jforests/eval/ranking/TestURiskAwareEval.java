@@ -0,0 +1,74 @@
+package edu.uci.jforests.eval.ranking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import edu.uci.jforests.dataset.RankingDataset;
+import edu.uci.jforests.dataset.RankingDatasetLoader;
+import edu.uci.jforests.input.RankingSyntheticBinFileGenerator;
+import edu.uci.jforests.sample.RankingSample;
+import edu.uci.jforests.util.IOUtils;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+
+public class TestURiskAwareEval
+{
+	private RankingSample createSample() throws Exception
+	{
+		File binFile = File.createTempFile("jforests-test", ".bin");
+		binFile.delete();
+		binFile.deleteOnExit();
+		RankingSyntheticBinFileGenerator generator = new RankingSyntheticBinFileGenerator(binFile.getPath(), 2000, 5);
+		generator.setAvgDocsPerQuery(10);
+		generator.generate();
+
+		InputStream in = new IOUtils().getInputStream(binFile.getPath());
+		RankingDataset dataset = new RankingDataset();
+		RankingDatasetLoader.load(in, dataset);
+		in.close();
+		NDCGEval.initialize(dataset.maxDocsPerQuery);
+		int[][] labelCounts = NDCGEval.getLabelCountsForQueries(dataset.targets, dataset.queryBoundaries);
+		dataset.maxDCG = NDCGEval.getMaxDCGForAllQueriesUptoTruncation(dataset.targets, dataset.queryBoundaries,
+				NDCGEval.MAX_TRUNCATION_LEVEL, labelCounts);
+		return new RankingSample(dataset);
+	}
+
+	@Test public void testBaselineFollowsChangedLabels() throws Exception
+	{
+		BlockingThreadPoolExecutor.init(2);
+		RankingSample sample = createSample();
+		URiskAwareEval eval = new URiskAwareEval(new NDCGEval(((RankingDataset) sample.dataset).maxDocsPerQuery,
+				10), 1);
+
+		// The natural order is the baseline, so it has neither reward nor risk
+		double[] naturalOrder = RankingEvaluationMetric.computeNaturalOrderScores(sample.size,
+				sample.queryBoundaries);
+		assertEquals(0, eval.measure(naturalOrder, sample), 0);
+
+		/*
+		 * Reverse the labels of each query in place. This does not change the
+		 * maximum DCG of the queries, but changes their baseline.
+		 */
+		double[] reversedOrder = new double[sample.size];
+		for (int q = 0; q < sample.numQueries; q++) {
+			int begin = sample.queryBoundaries[q];
+			int end = sample.queryBoundaries[q + 1];
+			for (int i = begin; i < end; i++) {
+				reversedOrder[i] = naturalOrder[begin + end - 1 - i];
+			}
+			for (int i = begin, j = end - 1; i < j; i++, j--) {
+				double temp = sample.targets[i];
+				sample.targets[i] = sample.targets[j];
+				sample.targets[j] = temp;
+			}
+		}
+		assertEquals(0, eval.measure(naturalOrder, sample), 0);
+
+		// The old natural order is now the reversed one, which has risk
+		assertTrue(eval.measure(reversedOrder, sample) < 0);
+	}
+}
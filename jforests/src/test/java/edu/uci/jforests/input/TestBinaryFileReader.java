@@ -0,0 +1,83 @@
+package edu.uci.jforests.input;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import edu.uci.jforests.dataset.Feature;
+import edu.uci.jforests.util.IOUtils;
+
+public class TestBinaryFileReader
+{
+	private File createTempFile() throws Exception
+	{
+		File binFile = File.createTempFile("jforests-test", ".bin");
+		binFile.delete();
+		binFile.deleteOnExit();
+		return binFile;
+	}
+
+	private BinaryFileReader read(BinaryFileReader reader, boolean summary) throws Exception
+	{
+		if (summary) {
+			reader.readSummary();
+		} else {
+			reader.read();
+		}
+		reader.close();
+		return reader;
+	}
+
+	private void assertSummaryMatches(BinaryFileReader summary, BinaryFileReader full)
+	{
+		assertEquals(full.getNumInstances(), summary.getNumInstances());
+		assertArrayEquals(full.getFeatureSizes(), summary.getFeatureSizes());
+		assertArrayEquals(full.getFeatureTypes(), summary.getFeatureTypes());
+		Feature[] features = full.getFeatures();
+		int[] numValues = summary.getFeatureNumValues();
+		assertEquals(features.length, numValues.length);
+		for (int f = 0; f < features.length; f++) {
+			assertEquals(features[f].getNumberOfValues(), numValues[f]);
+		}
+	}
+
+	@Test public void testSummaryOfClassificationFile() throws Exception
+	{
+		File binFile = createTempFile();
+		SyntheticBinFileGenerator generator = new SyntheticBinFileGenerator(binFile.getPath(), 1500, 7);
+		generator.setNumBins(300);
+		generator.generate();
+
+		IOUtils ioUtils = new IOUtils();
+		InputStream in = ioUtils.getInputStream(binFile.getPath());
+		BinaryFileReader summary = read(new BinaryFileReader(in), true);
+		in = ioUtils.getInputStream(binFile.getPath());
+		BinaryFileReader full = read(new BinaryFileReader(in), false);
+		assertEquals(1500, summary.getNumInstances());
+		assertSummaryMatches(summary, full);
+	}
+
+	@Test public void testSummaryOfRankingFile() throws Exception
+	{
+		File binFile = createTempFile();
+		RankingSyntheticBinFileGenerator generator = new RankingSyntheticBinFileGenerator(binFile.getPath(), 1001, 5);
+		generator.setNumBins(2);
+		generator.setAvgDocsPerQuery(12);
+		generator.generate();
+
+		IOUtils ioUtils = new IOUtils();
+		InputStream in = ioUtils.getInputStream(binFile.getPath());
+		RankingBinFileReader summary = (RankingBinFileReader) read(new RankingBinFileReader(in), true);
+		in = ioUtils.getInputStream(binFile.getPath());
+		RankingBinFileReader full = (RankingBinFileReader) read(new RankingBinFileReader(in), false);
+		assertEquals(1001, summary.getNumInstances());
+		assertSummaryMatches(summary, full);
+		assertEquals(full.getNumQueries(), summary.getNumQueries());
+		assertEquals(full.getMaximumDocsPerQuery(), summary.getMaximumDocsPerQuery());
+		assertArrayEquals(full.getQueryBoundaries(), summary.getQueryBoundaries());
+	}
+}
@@ -0,0 +1,119 @@
+package edu.uci.jforests.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestQuantileSketch
+{
+	private final static int NUM_VALUES = 100000;
+
+	/*
+	 * The values 0, 1, ..., NUM_VALUES - 1 in a random order
+	 */
+	private double[] shuffledValues(Random rnd)
+	{
+		double[] values = new double[NUM_VALUES];
+		for (int i = 0; i < NUM_VALUES; i++) {
+			values[i] = i;
+		}
+		for (int i = NUM_VALUES - 1; i > 0; i--) {
+			int j = rnd.nextInt(i + 1);
+			double temp = values[i];
+			values[i] = values[j];
+			values[j] = temp;
+		}
+		return values;
+	}
+
+	/*
+	 * Checks the estimates of the sketch of 0, 1, ..., NUM_VALUES - 1. The
+	 * centroids are small at the tails, so the error is much smaller there
+	 * than at the median.
+	 */
+	private void assertQuantiles(QuantileSketch sketch)
+	{
+		assertEquals(NUM_VALUES, sketch.getTotalWeight(), 0);
+		double[] qs = { 0.1, 0.25, 0.5, 0.75, 0.9 };
+		for (double q : qs) {
+			assertEquals(q * NUM_VALUES, sketch.getQuantile(q), 0.01 * NUM_VALUES);
+		}
+		double[] tails = { 0, 0.001, 0.999, 1 };
+		for (double q : tails) {
+			assertEquals(q * NUM_VALUES, sketch.getQuantile(q), 0.001 * NUM_VALUES);
+		}
+	}
+
+	@Test public void testQuantiles() throws Exception
+	{
+		QuantileSketch sketch = new QuantileSketch();
+		for (double value : shuffledValues(new Random(1))) {
+			sketch.add(value);
+		}
+		assertQuantiles(sketch);
+		assertTrue(sketch.toString().split(",").length < 10 * QuantileSketch.DEFAULT_COMPRESSION);
+	}
+
+	@Test public void testMergedShards() throws Exception
+	{
+		double[] values = shuffledValues(new Random(2));
+		int numShards = 7;
+		QuantileSketch[] shards = new QuantileSketch[numShards];
+		for (int s = 0; s < numShards; s++) {
+			shards[s] = new QuantileSketch();
+		}
+		for (int i = 0; i < values.length; i++) {
+			shards[i % numShards].add(values[i]);
+		}
+
+		// Merged in different orders, the results only differ within the
+		// error of the sketch
+		QuantileSketch forward = new QuantileSketch();
+		for (int s = 0; s < numShards; s++) {
+			forward.merge(shards[s]);
+		}
+		QuantileSketch backward = new QuantileSketch();
+		for (int s = numShards - 1; s >= 0; s--) {
+			backward.merge(shards[s]);
+		}
+		assertQuantiles(forward);
+		assertQuantiles(backward);
+	}
+
+	@Test public void testWeightedValues() throws Exception
+	{
+		// Missing features are added as zeros with the number of lines as
+		// their weight
+		QuantileSketch sketch = new QuantileSketch();
+		for (int i = 1; i <= 1000; i++) {
+			sketch.add(i);
+		}
+		sketch.add(0, 3000);
+		assertEquals(4000, sketch.getTotalWeight(), 0);
+		assertEquals(0, sketch.getQuantile(0.3), 0);
+		assertEquals(600, sketch.getQuantile(0.9), 10);
+	}
+
+	@Test public void testSerialization() throws Exception
+	{
+		QuantileSketch sketch = new QuantileSketch();
+		for (double value : shuffledValues(new Random(3))) {
+			sketch.add(value);
+		}
+		String str = sketch.toString();
+		QuantileSketch parsed = QuantileSketch.parse(str);
+		assertEquals(str, parsed.toString());
+		assertQuantiles(parsed);
+	}
+
+	@Test public void testEmpty() throws Exception
+	{
+		QuantileSketch sketch = new QuantileSketch();
+		assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+		assertEquals("", sketch.toString());
+		assertEquals(0, QuantileSketch.parse("").getTotalWeight(), 0);
+	}
+}
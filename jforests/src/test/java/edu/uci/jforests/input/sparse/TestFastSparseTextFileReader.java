@@ -0,0 +1,64 @@
+package edu.uci.jforests.input.sparse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestFastSparseTextFileReader
+{
+	@Test public void testParseDoubleMatchesJdk() throws Exception
+	{
+		String[] values = new String[]{"0", "-0", "1", "+2.5", "0.1", "-3.14159", ".5", "5.", "1e5", "1.5E-3",
+				"123456789012345678", "0.30000000000000004", "1e300", "4.9e-324", "NaN", "-Infinity", "0.000001"};
+		for (String value : values) {
+			byte[] bytes = value.getBytes();
+			assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)),
+					Double.doubleToLongBits(FastSparseTextFileReader.parseDouble(bytes, 0, bytes.length)));
+		}
+		Random rnd = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			String value = Double.toString((rnd.nextDouble() - 0.5) * Math.pow(10, rnd.nextInt(20) - 10));
+			byte[] bytes = value.getBytes();
+			assertEquals(value, Double.parseDouble(value), FastSparseTextFileReader.parseDouble(bytes, 0, bytes.length), 0);
+		}
+	}
+
+	@Test public void testLoadLines() throws Exception
+	{
+		String content = "# comment only\n@Feature\tid:1\tname:f1\n2 qid:10 1:0.5 3:-2 # trailing\n\n0 qid:10 2:7\r\n1 qid:11 1:1e-2";
+		FastSparseTextFileReader reader = new FastSparseTextFileReader();
+		reader.open(new ByteArrayInputStream(content.getBytes()));
+		SparseTextFileLine line = new SparseTextFileLine();
+
+		assertTrue(reader.loadNextLine(line));
+		assertTrue(line.meta);
+		assertEquals("@Feature\tid:1\tname:f1", line.content);
+
+		assertTrue(reader.loadNextLine(line));
+		assertFalse(line.meta);
+		assertEquals(2, line.target);
+		assertEquals("10", line.qid);
+		assertEquals(2, line.numPairs);
+		assertEquals(3, line.pairs[1].featureIndex);
+		assertEquals(-2.0, line.pairs[1].featureValue, 0);
+		String qid = line.qid;
+
+		assertTrue(reader.loadNextLine(line));
+		assertSame(qid, line.qid);
+		assertEquals(1, line.numPairs);
+		assertEquals(7.0, line.pairs[0].featureValue, 0);
+
+		assertTrue(reader.loadNextLine(line));
+		assertEquals("11", line.qid);
+		assertEquals(0.01, line.pairs[0].featureValue, 0);
+
+		assertFalse(reader.loadNextLine(line));
+		reader.close();
+	}
+}
@@ -0,0 +1,74 @@
+package edu.uci.jforests.learning;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import edu.uci.jforests.config.TrainingConfig;
+import edu.uci.jforests.input.BinaryFileReader;
+import edu.uci.jforests.input.RankingBinFileReader;
+import edu.uci.jforests.input.RankingSyntheticBinFileGenerator;
+import edu.uci.jforests.learning.trees.TreesConfig;
+import edu.uci.jforests.util.ConfigHolder;
+import edu.uci.jforests.util.IOUtils;
+
+public class TestMemoryPlanner
+{
+	private final static int NUM_LEAVES = 32;
+	private final static int NUM_THREADS = 4;
+
+	private BinaryFileReader readSummary() throws Exception
+	{
+		File binFile = File.createTempFile("jforests-test", ".bin");
+		binFile.delete();
+		binFile.deleteOnExit();
+		RankingSyntheticBinFileGenerator generator = new RankingSyntheticBinFileGenerator(binFile.getPath(), 2000, 20);
+		generator.setNumBins(100);
+		generator.generate();
+
+		InputStream in = new IOUtils().getInputStream(binFile.getPath());
+		BinaryFileReader reader = new RankingBinFileReader(in);
+		reader.readSummary();
+		reader.close();
+		return reader;
+	}
+
+	private ConfigHolder createConfig()
+	{
+		Properties properties = new Properties();
+		properties.setProperty("learning.algorithm", "LambdaMART-RegressionTree");
+		properties.setProperty("params.num-threads", String.valueOf(NUM_THREADS));
+		properties.setProperty("trees.num-leaves", String.valueOf(NUM_LEAVES));
+		return new ConfigHolder(properties);
+	}
+
+	@Test public void testAdjustShrinksHistogramPoolOnly() throws Exception
+	{
+		BinaryFileReader summary = readSummary();
+		ConfigHolder configHolder = createConfig();
+		TrainingConfig trainingConfig = configHolder.getConfig(TrainingConfig.class);
+		MemoryPlanner planner = new MemoryPlanner(configHolder, trainingConfig, summary, null,
+				summary.getNumInstances());
+		assertEquals(NUM_LEAVES, planner.getHistogramPoolSize());
+
+		long total = planner.getTotalBytes();
+		long histogramBytesPerLeaf = planner.getHistogramBytesPerLeaf();
+		assertTrue(planner.adjust(total - 5 * histogramBytesPerLeaf));
+		assertEquals(NUM_LEAVES - 5, planner.getHistogramPoolSize());
+		planner.apply();
+		assertEquals(NUM_LEAVES - 5, configHolder.getConfig(TreesConfig.class).getHistogramPoolSize());
+		assertEquals(NUM_THREADS, trainingConfig.numThreads);
+
+		// Does not fit even with the smallest pool; the threads are kept
+		assertFalse(planner.adjust(planner.getTotalBytes() - NUM_LEAVES * histogramBytesPerLeaf));
+		assertEquals(2, planner.getHistogramPoolSize());
+		planner.apply();
+		assertEquals(NUM_THREADS, trainingConfig.numThreads);
+	}
+}
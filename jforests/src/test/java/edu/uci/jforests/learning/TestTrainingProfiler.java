@@ -0,0 +1,124 @@
+package edu.uci.jforests.learning;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import edu.uci.jforests.applications.ClassificationApp;
+import edu.uci.jforests.config.TrainingConfig;
+import edu.uci.jforests.input.SyntheticBinFileGenerator;
+import edu.uci.jforests.learning.TrainingProfiler.IterationProfile;
+import edu.uci.jforests.learning.TrainingProfiler.Phase;
+
+public class TestTrainingProfiler
+{
+	private File createTempFile(String suffix) throws Exception
+	{
+		File file = File.createTempFile("jforests-test", suffix);
+		file.delete();
+		file.deleteOnExit();
+		return file;
+	}
+
+	private List<String> readLines(File file) throws Exception
+	{
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lines.add(line);
+		}
+		reader.close();
+		return lines;
+	}
+
+	private boolean isRegistered() throws Exception
+	{
+		return ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(TrainingProfiler.MBEAN_NAME));
+	}
+
+	@Test public void testCountsPerIteration() throws Exception
+	{
+		File csvFile = createTempFile(".csv");
+		TrainingProfiler profiler = TrainingProfiler.init(csvFile.getPath());
+		assertTrue(isRegistered());
+
+		TrainingProfiler.end(Phase.SplitSearch, TrainingProfiler.start());
+		TrainingProfiler.end(Phase.SplitSearch, TrainingProfiler.start(), 3);
+		TrainingProfiler.end(Phase.Gradients, TrainingProfiler.start());
+		IterationProfile first = profiler.endIteration();
+		assertEquals(1, first.iteration);
+		assertEquals(4, first.getCount(Phase.SplitSearch));
+		assertEquals(1, first.getCount(Phase.Gradients));
+		assertEquals(0, first.getCount(Phase.Partitioning));
+
+		TrainingProfiler.end(Phase.Partitioning, TrainingProfiler.start(), 2);
+		IterationProfile second = profiler.endIteration();
+		assertEquals(2, second.iteration);
+		assertEquals(0, second.getCount(Phase.SplitSearch));
+		assertEquals(2, second.getCount(Phase.Partitioning));
+
+		assertEquals(2, profiler.getIterations());
+		long[] totals = profiler.getPhaseCounts();
+		assertEquals(4, totals[Phase.SplitSearch.ordinal()]);
+		assertEquals(2, totals[Phase.Partitioning.ordinal()]);
+
+		TrainingProfiler.disable();
+		assertNull(TrainingProfiler.getInstance());
+		assertFalse(isRegistered());
+		assertEquals(0, TrainingProfiler.start());
+
+		// Nothing is recorded after profiling has been disabled
+		TrainingProfiler.end(Phase.SplitSearch, System.nanoTime());
+		assertEquals(4, profiler.getPhaseCounts()[Phase.SplitSearch.ordinal()]);
+
+		// Header and one line per iteration
+		List<String> lines = readLines(csvFile);
+		assertEquals(3, lines.size());
+		assertTrue(lines.get(1).startsWith("1,"));
+		assertTrue(lines.get(2).startsWith("2,"));
+	}
+
+	@Test public void testTrainingDisablesProfiling() throws Exception
+	{
+		File binFile = createTempFile(".bin");
+		SyntheticBinFileGenerator generator = new SyntheticBinFileGenerator(binFile.getPath(), 1000, 5);
+		generator.setNumBins(16);
+		generator.generate();
+		File csvFile = createTempFile(".csv");
+
+		Properties properties = new Properties();
+		properties.setProperty(TrainingConfig.TRAIN_FILENAME, binFile.getPath());
+		properties.setProperty("learning.algorithm", "GradientBoosting-RegressionTree");
+		properties.setProperty("learning.evaluation-metric", "RMSE");
+		properties.setProperty("boosting.num-trees", "5");
+		properties.setProperty("trees.num-leaves", "4");
+		properties.setProperty("params.profile-training", "true");
+		properties.setProperty("params.profile-training.csv-file", csvFile.getPath());
+		assertNotNull(new ClassificationApp().run(properties));
+
+		assertNull(TrainingProfiler.getInstance());
+		assertFalse(isRegistered());
+
+		// One line per tree
+		List<String> lines = readLines(csvFile);
+		assertEquals(6, lines.size());
+		for (int t = 1; t <= 5; t++) {
+			assertTrue(lines.get(t).startsWith(t + ","));
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package edu.uci.jforests.learning.boosting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import edu.uci.jforests.applications.ClassificationApp;
+import edu.uci.jforests.config.TrainingConfig;
+import edu.uci.jforests.dataset.Dataset;
+import edu.uci.jforests.dataset.DatasetLoader;
+import edu.uci.jforests.eval.PrefixCurveEvaluator;
+import edu.uci.jforests.eval.RMSE;
+import edu.uci.jforests.input.SyntheticBinFileGenerator;
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.sample.Sample;
+import edu.uci.jforests.util.IOUtils;
+
+public class TestEvaluationInterval
+{
+	private final static int NUM_TREES = 30;
+
+	private File generate(long seed) throws Exception
+	{
+		File binFile = File.createTempFile("jforests-test", ".bin");
+		binFile.delete();
+		binFile.deleteOnExit();
+		SyntheticBinFileGenerator generator = new SyntheticBinFileGenerator(binFile.getPath(), 2000, 10);
+		generator.setNumBins(32);
+		generator.setNoise(1.0);
+		generator.setSeed(seed);
+		generator.generate();
+		return binFile;
+	}
+
+	/*
+	 * Trains a model which overfits quickly, so that early stopping selects
+	 * an iteration before the last one. Without a validation file, all
+	 * trees are kept.
+	 */
+	private Ensemble train(ClassificationApp app, File trainFile, File validFile, int evaluationInterval)
+			throws Exception
+	{
+		Properties properties = new Properties();
+		properties.setProperty(TrainingConfig.TRAIN_FILENAME, trainFile.getPath());
+		if (validFile != null) {
+			properties.setProperty(TrainingConfig.VALID_FILENAME, validFile.getPath());
+		}
+		properties.setProperty("learning.algorithm", "GradientBoosting-RegressionTree");
+		properties.setProperty("learning.evaluation-metric", "RMSE");
+		properties.setProperty("boosting.num-trees", String.valueOf(NUM_TREES));
+		properties.setProperty("boosting.learning-rate", "0.15");
+		properties.setProperty("boosting.evaluation-interval", String.valueOf(evaluationInterval));
+		properties.setProperty("trees.num-leaves", "32");
+		properties.setProperty("trees.min-instance-per-leaf", "1");
+		Ensemble ensemble = app.run(properties);
+		assertNotNull(ensemble);
+		return ensemble;
+	}
+
+	private Sample loadSample(File binFile) throws Exception
+	{
+		InputStream in = new IOUtils().getInputStream(binFile.getPath());
+		Dataset dataset = new Dataset();
+		DatasetLoader.load(in, dataset);
+		in.close();
+		return new Sample(dataset);
+	}
+
+	/*
+	 * Returns the iteration which early stopping should select when the
+	 * given iterations are evaluated: the first one with the lowest RMSE
+	 */
+	private int getBestIteration(double[] curve, int evaluationInterval)
+	{
+		int best = 0;
+		for (int iteration = 1; iteration <= curve.length; iteration++) {
+			if (iteration % evaluationInterval != 0 && iteration != curve.length) {
+				continue;
+			}
+			if (best == 0 || curve[iteration - 1] < curve[best - 1]) {
+				best = iteration;
+			}
+		}
+		return best;
+	}
+
+	@Test public void testIntervalsSelectEvaluatedIterations() throws Exception
+	{
+		File trainFile = generate(1);
+		File validFile = generate(2);
+
+		/*
+		 * Validation curve of the whole model, for every iteration
+		 */
+		Ensemble fullEnsemble = train(new ClassificationApp(), trainFile, null, 1);
+		assertEquals(NUM_TREES, fullEnsemble.getNumTrees());
+		double[] curve = new PrefixCurveEvaluator(fullEnsemble, 1).evaluate(loadSample(validFile), new RMSE());
+
+		int bestIteration = getBestIteration(curve, 1);
+		assertTrue("The model has to overfit for this test", bestIteration < NUM_TREES);
+
+		int[] intervals = { 1, 3, 4, 7, 50 };
+		for (int interval : intervals) {
+			ClassificationApp app = new ClassificationApp();
+			Ensemble ensemble = train(app, trainFile, validFile, interval);
+			int expected = getBestIteration(curve, interval);
+			assertEquals("Interval " + interval, expected, ensemble.getNumTrees());
+			assertEquals("Interval " + interval, curve[expected - 1], app.getValidMeasurement(), 1e-12);
+			if (bestIteration % interval == 0) {
+				// The best iteration of interval 1 is evaluated as well
+				assertEquals("Interval " + interval, bestIteration, ensemble.getNumTrees());
+			}
+			if (interval > NUM_TREES) {
+				// Only the last iteration is evaluated
+				assertEquals(NUM_TREES, ensemble.getNumTrees());
+			}
+		}
+	}
+}
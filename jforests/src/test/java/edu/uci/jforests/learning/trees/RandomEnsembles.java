@@ -0,0 +1,96 @@
+package edu.uci.jforests.learning.trees;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Random;
+
+import edu.uci.jforests.dataset.Feature;
+import edu.uci.jforests.input.BinMapper;
+import edu.uci.jforests.learning.trees.regression.RegressionTree;
+
+/**
+ * Random models for tests
+ */
+public class RandomEnsembles
+{
+	/**
+	 * Creates a bin mapper whose features have the given minimum, a factor of
+	 * 1 and the given upper bounds
+	 */
+	public static BinMapper createBinMapper(int numFeatures, double min, int[] upperBounds)
+	{
+		Feature[] features = new Feature[numFeatures];
+		for (int f = 0; f < features.length; f++) {
+			features[f] = new Feature(null);
+			features[f].setMin(min);
+			features[f].setFactor(1);
+			features[f].upperBounds = upperBounds.clone();
+		}
+		return new BinMapper(features);
+	}
+
+	/*
+	 * Builds a random tree in preorder and returns the index of its root
+	 */
+	private static int buildTree(int numLeaves, int numFeatures, int[] thresholds, int[] next, int[][] nodes,
+			Random rnd)
+	{
+		if (numLeaves == 1) {
+			return ~(next[1]++);
+		}
+		int node = next[0]++;
+		nodes[0][node] = rnd.nextInt(numFeatures);
+		nodes[1][node] = thresholds[rnd.nextInt(thresholds.length)];
+		int leftLeaves = 1 + rnd.nextInt(numLeaves - 1);
+		nodes[2][node] = buildTree(leftLeaves, numFeatures, thresholds, next, nodes, rnd);
+		nodes[3][node] = buildTree(numLeaves - leftLeaves, numFeatures, thresholds, next, nodes, rnd);
+		return node;
+	}
+
+	private static String join(int[] values)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int value : values) {
+			sb.append(sb.length() > 0 ? " " : "").append(value);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Creates an ensemble of random trees with numLeaves leaves, or a random
+	 * number of leaves up to maxLeaves if numLeaves is 0. The trees split on
+	 * the first numFeatures features and their thresholds are taken from the
+	 * given values.
+	 */
+	public static Ensemble createEnsemble(int numTrees, int numLeaves, int maxLeaves, int numFeatures, int[] thresholds,
+			Random rnd) throws Exception
+	{
+		File modelFile = File.createTempFile("jforests-model", ".txt");
+		modelFile.deleteOnExit();
+		PrintStream model = new PrintStream(modelFile);
+		model.println("<Ensemble>");
+		for (int t = 0; t < numTrees; t++) {
+			int leaves = (numLeaves > 0 ? numLeaves : 2 + rnd.nextInt(maxLeaves - 1));
+			int[][] nodes = new int[4][leaves - 1];
+			buildTree(leaves, numFeatures, thresholds, new int[2], nodes, rnd);
+			StringBuilder outputs = new StringBuilder();
+			for (int l = 0; l < leaves; l++) {
+				outputs.append(l > 0 ? " " : "").append(rnd.nextGaussian());
+			}
+			model.println("\t<Tree leaves=\"" + leaves + "\" weight=\"0.1\">");
+			model.println("\t\t<SplitFeatures>" + join(nodes[0]) + "</SplitFeatures>");
+			model.println("\t\t<LeftChildren>" + join(nodes[2]) + "</LeftChildren>");
+			model.println("\t\t<RightChildren>" + join(nodes[3]) + "</RightChildren>");
+			model.println("\t\t<Thresholds>" + join(nodes[1]) + "</Thresholds>");
+			model.println("\t\t<OriginalThresholds>" + join(nodes[1]) + "</OriginalThresholds>");
+			model.println("\t\t<LeafOutputs>" + outputs + "</LeafOutputs>");
+			model.println("\t</Tree>");
+		}
+		model.println("</Ensemble>");
+		model.close();
+
+		Ensemble ensemble = new Ensemble();
+		ensemble.loadFromFile(RegressionTree.class, modelFile);
+		return ensemble;
+	}
+}
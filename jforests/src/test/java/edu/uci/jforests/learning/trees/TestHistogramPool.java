@@ -0,0 +1,75 @@
+package edu.uci.jforests.learning.trees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import edu.uci.jforests.learning.trees.regression.RegressionTree;
+
+import edu.uci.jforests.applications.ClassificationApp;
+import edu.uci.jforests.config.TrainingConfig;
+import edu.uci.jforests.input.SyntheticBinFileGenerator;
+
+public class TestHistogramPool
+{
+	private Ensemble train(File binFile, int histogramPoolSize) throws Exception
+	{
+		Properties properties = new Properties();
+		properties.setProperty(TrainingConfig.TRAIN_FILENAME, binFile.getPath());
+		properties.setProperty(TrainingConfig.VALID_FILENAME, binFile.getPath());
+		properties.setProperty("learning.algorithm", "GradientBoosting-RegressionTree");
+		properties.setProperty("learning.evaluation-metric", "RMSE");
+		properties.setProperty("boosting.num-trees", "20");
+		properties.setProperty("trees.num-leaves", "16");
+		properties.setProperty("trees.min-instance-per-leaf", "5");
+		properties.setProperty("trees.histogram-pool-size", String.valueOf(histogramPoolSize));
+		properties.setProperty("params.num-threads", "2");
+		Ensemble ensemble = new ClassificationApp().run(properties);
+		assertNotNull(ensemble);
+		return ensemble;
+	}
+
+	/*
+	 * Histograms which are built instead of computed by subtraction may
+	 * differ in the last bits, so leaf outputs are compared with a tolerance
+	 */
+	private void assertSameModel(String message, Ensemble expected, Ensemble actual)
+	{
+		assertEquals(message, expected.getNumTrees(), actual.getNumTrees());
+		for (int t = 0; t < expected.getNumTrees(); t++) {
+			RegressionTree expectedTree = (RegressionTree) expected.getTreeAt(t);
+			RegressionTree actualTree = (RegressionTree) actual.getTreeAt(t);
+			assertEquals(message, expectedTree.numLeaves, actualTree.numLeaves);
+			for (int n = 0; n < expectedTree.numLeaves - 1; n++) {
+				assertEquals(message, expectedTree.getSplitFeature(n), actualTree.getSplitFeature(n));
+				assertEquals(message, expectedTree.getThreshold(n), actualTree.getThreshold(n));
+				assertEquals(message, expectedTree.getLeftChild(n), actualTree.getLeftChild(n));
+				assertEquals(message, expectedTree.getRightChild(n), actualTree.getRightChild(n));
+			}
+			for (int l = 0; l < expectedTree.numLeaves; l++) {
+				assertEquals(message, expectedTree.getLeafOutput(l), actualTree.getLeafOutput(l), 1e-9);
+			}
+		}
+	}
+
+	@Test public void testBoundedPoolGivesSameModel() throws Exception
+	{
+		File binFile = File.createTempFile("jforests-train", ".bin");
+		binFile.deleteOnExit();
+		SyntheticBinFileGenerator generator = new SyntheticBinFileGenerator(binFile.getPath(), 5000, 20);
+		generator.setNumBins(32);
+		generator.setNumInformativeFeatures(20);
+		generator.setNoise(0.2);
+		generator.setLabelDistribution(new double[] { 0.2, 0.2, 0.2, 0.2, 0.2 });
+		generator.generate();
+
+		Ensemble unbounded = train(binFile, -1);
+		for (int poolSize = 2; poolSize <= 4; poolSize++) {
+			assertSameModel("Pool of " + poolSize + " leaves", unbounded, train(binFile, poolSize));
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package edu.uci.jforests.learning.trees.regression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.uci.jforests.dataset.Dataset;
+import edu.uci.jforests.dataset.DatasetLoader;
+import edu.uci.jforests.dataset.RankingDataset;
+import edu.uci.jforests.dataset.RankingDatasetLoader;
+import edu.uci.jforests.eval.EvaluationMetric;
+import edu.uci.jforests.eval.RMSE;
+import edu.uci.jforests.eval.ranking.NDCGEval;
+import edu.uci.jforests.input.RankingSyntheticBinFileGenerator;
+import edu.uci.jforests.input.SyntheticBinFileGenerator;
+import edu.uci.jforests.learning.LearningUtils;
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.RandomEnsembles;
+import edu.uci.jforests.sample.RankingSample;
+import edu.uci.jforests.sample.Sample;
+import edu.uci.jforests.util.IOUtils;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+
+public class TestEnsembleCompactor
+{
+	private final static int NUM_FEATURES = 10;
+	private final static int NUM_BINS = 16;
+
+	private void generate(SyntheticBinFileGenerator generator) throws Exception
+	{
+		generator.setNumBins(NUM_BINS);
+		generator.generate();
+	}
+
+	private File createTempFile() throws Exception
+	{
+		File binFile = File.createTempFile("jforests-test", ".bin");
+		binFile.delete();
+		binFile.deleteOnExit();
+		return binFile;
+	}
+
+	private Sample createSample() throws Exception
+	{
+		File binFile = createTempFile();
+		generate(new SyntheticBinFileGenerator(binFile.getPath(), 2000, NUM_FEATURES));
+
+		InputStream in = new IOUtils().getInputStream(binFile.getPath());
+		Dataset dataset = new Dataset();
+		DatasetLoader.load(in, dataset);
+		in.close();
+		return new Sample(dataset);
+	}
+
+	private RankingSample createRankingSample() throws Exception
+	{
+		File binFile = createTempFile();
+		RankingSyntheticBinFileGenerator generator = new RankingSyntheticBinFileGenerator(binFile.getPath(), 2000,
+				NUM_FEATURES);
+		generator.setAvgDocsPerQuery(10);
+		generate(generator);
+
+		InputStream in = new IOUtils().getInputStream(binFile.getPath());
+		RankingDataset dataset = new RankingDataset();
+		RankingDatasetLoader.load(in, dataset);
+		in.close();
+		NDCGEval.initialize(dataset.maxDocsPerQuery);
+		int[][] labelCounts = NDCGEval.getLabelCountsForQueries(dataset.targets, dataset.queryBoundaries);
+		dataset.maxDCG = NDCGEval.getMaxDCGForAllQueriesUptoTruncation(dataset.targets, dataset.queryBoundaries,
+				NDCGEval.MAX_TRUNCATION_LEVEL, labelCounts);
+		return new RankingSample(dataset);
+	}
+
+	/*
+	 * The synthetic features have the upper bounds 0, 1, ..., NUM_BINS - 1,
+	 * so bins can be used as thresholds
+	 */
+	private Ensemble createEnsemble(int numTrees, Random rnd) throws Exception
+	{
+		int[] thresholds = new int[NUM_BINS - 1];
+		for (int b = 0; b < thresholds.length; b++) {
+			thresholds[b] = b;
+		}
+		return RandomEnsembles.createEnsemble(numTrees, 0, 8, NUM_FEATURES, thresholds, rnd);
+	}
+
+	private double measure(Ensemble ensemble, Sample sample, EvaluationMetric metric) throws Exception
+	{
+		double[] scores = new double[sample.size];
+		LearningUtils.updateScores(sample, scores, ensemble);
+		return metric.measure(scores, sample);
+	}
+
+	private void assertPrunedEnsembleIsMeasured(Sample sample, EvaluationMetric metric, double maxLoss)
+			throws Exception
+	{
+		Ensemble ensemble = createEnsemble(40, new Random(1));
+		EnsembleCompactor compactor = new EnsembleCompactor(ensemble);
+		compactor.removeRedundantSplits();
+		compactor.mergeIdenticalTrees();
+		double value = compactor.pruneTrees(sample, metric, maxLoss);
+
+		// The test needs some trees to be removed and some to be kept
+		assertTrue(compactor.getNumPrunedTrees() > 0);
+		assertTrue(compactor.getNumPrunedTrees() < 40);
+		assertTrue(compactor.getBias() != 0);
+
+		assertEquals(value, measure(compactor.getEnsemble(), sample, metric), 1e-9);
+	}
+
+	@Test public void testPruneTreesMeasuresExportedEnsembleRMSE() throws Exception
+	{
+		assertPrunedEnsembleIsMeasured(createSample(), new RMSE(), 0.01);
+	}
+
+	@Test public void testPruneTreesMeasuresExportedEnsembleNDCG() throws Exception
+	{
+		BlockingThreadPoolExecutor.init(2);
+		RankingSample sample = createRankingSample();
+		NDCGEval ndcg = new NDCGEval(((RankingDataset) sample.dataset).maxDocsPerQuery, 10);
+		assertPrunedEnsembleIsMeasured(sample, ndcg, 0.01);
+	}
+}
@@ -0,0 +1,104 @@
+package edu.uci.jforests.scoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.uci.jforests.dataset.RankingDataset;
+import edu.uci.jforests.dataset.RankingDatasetLoader;
+import edu.uci.jforests.input.RankingSyntheticBinFileGenerator;
+import edu.uci.jforests.learning.LearningUtils;
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.RandomEnsembles;
+import edu.uci.jforests.sample.RankingSample;
+import edu.uci.jforests.util.IOUtils;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+
+public class TestCascadeScorer
+{
+	private final static int NUM_FEATURES = 10;
+	private final static int NUM_BINS = 16;
+	private final static int NUM_TREES = 30;
+	private final static int TOP_K = 5;
+
+	private RankingSample createRankingSample() throws Exception
+	{
+		File binFile = File.createTempFile("jforests-test", ".bin");
+		binFile.delete();
+		binFile.deleteOnExit();
+		RankingSyntheticBinFileGenerator generator = new RankingSyntheticBinFileGenerator(binFile.getPath(), 3000,
+				NUM_FEATURES);
+		generator.setNumBins(NUM_BINS);
+		generator.setAvgDocsPerQuery(50);
+		generator.generate();
+
+		InputStream in = new IOUtils().getInputStream(binFile.getPath());
+		RankingDataset dataset = new RankingDataset();
+		RankingDatasetLoader.load(in, dataset);
+		in.close();
+		return new RankingSample(dataset);
+	}
+
+	/*
+	 * The synthetic features have the upper bounds 0, 1, ..., NUM_BINS - 1,
+	 * so bins can be used as thresholds
+	 */
+	private Ensemble createEnsemble() throws Exception
+	{
+		int[] thresholds = new int[NUM_BINS - 1];
+		for (int b = 0; b < thresholds.length; b++) {
+			thresholds[b] = b;
+		}
+		return RandomEnsembles.createEnsemble(NUM_TREES, 0, 8, NUM_FEATURES, thresholds, new Random(1));
+	}
+
+	@Test public void testSafeThresholdsKeepTopK() throws Exception
+	{
+		BlockingThreadPoolExecutor.init(2);
+		RankingSample sample = createRankingSample();
+		Ensemble ensemble = createEnsemble();
+
+		double[] fullScores = new double[sample.size];
+		LearningUtils.updateScores(sample, fullScores, ensemble);
+
+		// Thresholds learned on the same sample with a miss rate of zero keep
+		// every top k document of every query
+		CascadeScorer cascade = new CascadeScorer(ensemble, new int[] { 5, 15 }, TOP_K);
+		cascade.learnScoreThresholds(sample, 0);
+		assertEquals(0, cascade.getNumTreeEvaluations());
+		double[] cascadeScores = new double[sample.size];
+		cascade.score(sample, cascadeScores);
+
+		TopKSelector full = new TopKSelector(TOP_K);
+		full.select(sample.queryBoundaries, fullScores);
+		TopKSelector cascaded = new TopKSelector(TOP_K);
+		cascaded.select(sample.queryBoundaries, cascadeScores);
+		assertEquals(sample.numQueries, cascaded.getNumQueries());
+		for (int q = 0; q < sample.numQueries; q++) {
+			assertEquals(full.getCount(q), cascaded.getCount(q));
+			for (int r = 0; r < full.getCount(q); r++) {
+				assertEquals(full.getIndex(q, r), cascaded.getIndex(q, r));
+				assertEquals(full.getScore(q, r), cascaded.getScore(q, r), 1e-9);
+			}
+		}
+
+		long numFullEvaluations = (long) sample.size * NUM_TREES;
+		assertTrue(cascade.getNumTreeEvaluations() > 0);
+		assertTrue(cascade.getNumTreeEvaluations() < numFullEvaluations);
+	}
+
+	@Test public void testNoPruningEvaluatesAllTrees() throws Exception
+	{
+		BlockingThreadPoolExecutor.init(2);
+		RankingSample sample = createRankingSample();
+		CascadeScorer cascade = new CascadeScorer(createEnsemble(), new int[] { 5, 15 }, TOP_K);
+		cascade.setScoreThresholds(new double[] { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY });
+		cascade.score(sample, new double[sample.size]);
+		assertEquals((long) sample.size * NUM_TREES, cascade.getNumTreeEvaluations());
+	}
+}
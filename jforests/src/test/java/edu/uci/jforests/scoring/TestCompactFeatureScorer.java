@@ -0,0 +1,102 @@
+package edu.uci.jforests.scoring;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.uci.jforests.input.BinMapper;
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.RandomEnsembles;
+
+public class TestCompactFeatureScorer
+{
+	private final static int NUM_FEATURES = 8;
+	private final static int NUM_BINS = 10;
+
+	/*
+	 * Features 5 and above are not used by the trees
+	 */
+	private final static int NUM_USED_FEATURES = 5;
+
+	/*
+	 * Values are shifted by MIN so that the discrete value zero of missing
+	 * features is different from the discrete value of 0.0
+	 */
+	private final static double MIN = -3;
+
+	/*
+	 * Upper bounds of the bins, which are also the thresholds of the trees
+	 * (as in trained models)
+	 */
+	private int[] getUpperBounds()
+	{
+		int[] bounds = new int[NUM_BINS];
+		for (int b = 0; b < NUM_BINS; b++) {
+			bounds[b] = 2 * b;
+		}
+		return bounds;
+	}
+
+	private Ensemble createEnsemble(Random rnd) throws Exception
+	{
+		int[] thresholds = Arrays.copyOf(getUpperBounds(), NUM_BINS - 1);
+		return RandomEnsembles.createEnsemble(100, 0, 16, NUM_USED_FEATURES, thresholds, rnd);
+	}
+
+	private double nextValue(Random rnd)
+	{
+		return MIN + rnd.nextDouble() * 2 * (NUM_BINS - 1);
+	}
+
+	@Test public void testSparseVectorsMatchBinnedScorer() throws Exception
+	{
+		Random rnd = new Random(1);
+		Ensemble ensemble = createEnsemble(rnd);
+		BinMapper binMapper = RandomEnsembles.createBinMapper(NUM_FEATURES, MIN, getUpperBounds());
+		BinnedEnsembleScorer binnedScorer = new BinnedEnsembleScorer(ensemble, binMapper);
+		CompactFeatureScorer compactScorer = new CompactFeatureScorer(ensemble, binMapper);
+		assertEquals(NUM_USED_FEATURES, compactScorer.getNumUsedFeatures());
+		assertEquals(NUM_FEATURES, compactScorer.getNumFeatures());
+
+		int[] indices = new int[NUM_FEATURES];
+		double[] values = new double[NUM_FEATURES];
+		for (int i = 0; i < 2000; i++) {
+			/*
+			 * Each feature is missing with probability 0.5
+			 */
+			int length = 0;
+			for (int f = 0; f < NUM_FEATURES; f++) {
+				if (rnd.nextBoolean()) {
+					indices[length] = f;
+					values[length] = nextValue(rnd);
+					length++;
+				}
+			}
+			assertEquals(binnedScorer.score(indices, values, length), compactScorer.score(indices, values, length),
+					1e-12);
+		}
+	}
+
+	@Test public void testDenseVectorsMatchBinnedScorer() throws Exception
+	{
+		Random rnd = new Random(2);
+		Ensemble ensemble = createEnsemble(rnd);
+		BinMapper binMapper = RandomEnsembles.createBinMapper(NUM_FEATURES, MIN, getUpperBounds());
+		BinnedEnsembleScorer binnedScorer = new BinnedEnsembleScorer(ensemble, binMapper);
+		CompactFeatureScorer compactScorer = new CompactFeatureScorer(ensemble, binMapper);
+
+		for (int i = 0; i < 2000; i++) {
+			/*
+			 * Features beyond the end of the vector are missing
+			 */
+			double[] featureVector = new double[rnd.nextInt(NUM_FEATURES + 1)];
+			for (int f = 0; f < featureVector.length; f++) {
+				featureVector[f] = nextValue(rnd);
+			}
+			assertEquals(binnedScorer.score(featureVector), compactScorer.score(featureVector), 1e-12);
+		}
+	}
+}
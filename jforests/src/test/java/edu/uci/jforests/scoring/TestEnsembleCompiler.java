@@ -0,0 +1,73 @@
+package edu.uci.jforests.scoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.RandomEnsembles;
+
+public class TestEnsembleCompiler
+{
+	private final static int NUM_FEATURES = 5;
+	private final static int NUM_BINS = 10;
+
+	private BinnedEnsembleScorer createScorer(int numTrees, int numLeaves, int maxLeaves, Random rnd) throws Exception
+	{
+		int[] bounds = new int[NUM_BINS];
+		for (int b = 0; b < NUM_BINS; b++) {
+			bounds[b] = b;
+		}
+		Ensemble ensemble = RandomEnsembles.createEnsemble(numTrees, numLeaves, maxLeaves, NUM_FEATURES, bounds, rnd);
+		return new BinnedEnsembleScorer(ensemble, RandomEnsembles.createBinMapper(NUM_FEATURES, 0, bounds));
+	}
+
+	private void assertSameScores(BinnedEnsembleScorer scorer, CompiledEnsembleScorer compiled, Random rnd)
+	{
+		int[] bins = new int[NUM_FEATURES];
+		for (int i = 0; i < 2000; i++) {
+			for (int f = 0; f < bins.length; f++) {
+				bins[f] = rnd.nextInt(NUM_BINS);
+			}
+			assertEquals(scorer.score(bins), compiled.score(bins), 0);
+		}
+	}
+
+	@Test public void testCompiledScorerMatchesBinnedScorer() throws Exception
+	{
+		Random rnd = new Random(1);
+		BinnedEnsembleScorer scorer = createScorer(150, 0, 301, rnd);
+		CompiledEnsembleScorer compiled = EnsembleCompiler.compile(scorer);
+		assertEquals(150, compiled.getNumTrees());
+		assertSameScores(scorer, compiled, rnd);
+	}
+
+	@Test public void testLargeEnsembleIsSplitIntoClasses() throws Exception
+	{
+		// Needs more than 65535 constants, i.e. several classes of trees
+		Random rnd = new Random(2);
+		BinnedEnsembleScorer scorer = createScorer(2000, 64, 0, rnd);
+		assertTrue(EnsembleCompiler.canCompile(scorer));
+		CompiledEnsembleScorer compiled = EnsembleCompiler.compile(scorer);
+		assertEquals(2000, compiled.getNumTrees());
+		assertSameScores(scorer, compiled, rnd);
+	}
+
+	@Test public void testTooLargeTree() throws Exception
+	{
+		Random rnd = new Random(3);
+		BinnedEnsembleScorer scorer = createScorer(1, 10000, 0, rnd);
+		assertFalse(EnsembleCompiler.canCompile(scorer));
+		try {
+			EnsembleCompiler.compile(scorer);
+			fail();
+		} catch (Exception e) {
+			// The interpreted scorer has to be used
+		}
+	}
+}
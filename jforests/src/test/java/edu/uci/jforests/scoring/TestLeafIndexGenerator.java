@@ -0,0 +1,171 @@
+package edu.uci.jforests.scoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.uci.jforests.dataset.Dataset;
+import edu.uci.jforests.dataset.DatasetLoader;
+import edu.uci.jforests.input.BinMapper;
+import edu.uci.jforests.input.SyntheticBinFileGenerator;
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.RandomEnsembles;
+import edu.uci.jforests.util.IOUtils;
+import edu.uci.jforests.util.concurrency.BlockingThreadPoolExecutor;
+
+public class TestLeafIndexGenerator
+{
+	private final static int NUM_FEATURES = 6;
+	private final static int NUM_BINS = 12;
+	private final static int NUM_TREES = 20;
+
+	/*
+	 * Small blocks, so that the instances span several blocks
+	 */
+	private final static int BLOCK_SIZE = 37;
+
+	private File createTempFile(String suffix) throws Exception
+	{
+		File file = File.createTempFile("jforests-test", suffix);
+		file.delete();
+		file.deleteOnExit();
+		return file;
+	}
+
+	private Dataset createDataset() throws Exception
+	{
+		File binFile = createTempFile(".bin");
+		SyntheticBinFileGenerator generator = new SyntheticBinFileGenerator(binFile.getPath(), 500, NUM_FEATURES);
+		generator.setNumBins(NUM_BINS);
+		generator.generate();
+
+		InputStream in = new IOUtils().getInputStream(binFile.getPath());
+		Dataset dataset = new Dataset();
+		DatasetLoader.load(in, dataset);
+		in.close();
+		return dataset;
+	}
+
+	/*
+	 * The synthetic features have the upper bounds 0, 1, ..., NUM_BINS - 1,
+	 * so bins can be used as thresholds and as values of a text file (with
+	 * the bin mapper of createBinMapper)
+	 */
+	private int[] getUpperBounds()
+	{
+		int[] bounds = new int[NUM_BINS];
+		for (int b = 0; b < NUM_BINS; b++) {
+			bounds[b] = b;
+		}
+		return bounds;
+	}
+
+	private Ensemble createEnsemble() throws Exception
+	{
+		int[] thresholds = new int[NUM_BINS - 1];
+		System.arraycopy(getUpperBounds(), 0, thresholds, 0, thresholds.length);
+		return RandomEnsembles.createEnsemble(NUM_TREES, 0, 10, NUM_FEATURES, thresholds, new Random(1));
+	}
+
+	/*
+	 * Writes the instances of the data set as a text file whose values are
+	 * the bins of the data set. Targets of text files are integers.
+	 */
+	private File writeTextFile(Dataset dataset) throws Exception
+	{
+		File textFile = createTempFile(".txt");
+		PrintStream out = new PrintStream(textFile);
+		for (int i = 0; i < dataset.numInstances; i++) {
+			out.print((int) dataset.targets[i]);
+			for (int f = 0; f < NUM_FEATURES; f++) {
+				out.print(" " + (f + 1) + ":" + dataset.getFeatureValue(i, f));
+			}
+			out.println();
+		}
+		out.close();
+		return textFile;
+	}
+
+	private void assertMatrix(byte[] output, Ensemble ensemble, Dataset dataset) throws Exception
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(output));
+		assertEquals(NUM_TREES, in.readInt());
+		assertEquals(1, in.readInt());
+		for (int t = 0; t < NUM_TREES; t++) {
+			assertEquals(ensemble.getTreeAt(t).numLeaves, in.readInt());
+		}
+		for (int i = 0; i < dataset.numInstances; i++) {
+			for (int t = 0; t < NUM_TREES; t++) {
+				assertEquals(ensemble.getTreeAt(t).getLeaf(dataset, i), in.readUnsignedByte());
+			}
+		}
+		assertEquals(-1, in.read());
+	}
+
+	private void assertOneHot(byte[] output, Ensemble ensemble, Dataset dataset) throws Exception
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(output), "US-ASCII"));
+		for (int i = 0; i < dataset.numInstances; i++) {
+			String[] parts = in.readLine().split(" ");
+			assertEquals(NUM_TREES + 1, parts.length);
+			assertEquals(dataset.targets[i], Double.parseDouble(parts[0]), 0);
+			int offset = 0;
+			for (int t = 0; t < NUM_TREES; t++) {
+				int leaf = ensemble.getTreeAt(t).getLeaf(dataset, i);
+				assertEquals((offset + leaf + 1) + ":1", parts[t + 1]);
+				offset += ensemble.getTreeAt(t).numLeaves;
+			}
+		}
+		assertNull(in.readLine());
+	}
+
+	private byte[] processDataset(Ensemble ensemble, Dataset dataset, boolean oneHot) throws Exception
+	{
+		LeafIndexGenerator generator = new LeafIndexGenerator(ensemble, oneHot);
+		generator.setBlockSize(BLOCK_SIZE);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		assertEquals(dataset.numInstances, generator.process(dataset, output));
+		return output.toByteArray();
+	}
+
+	private byte[] processTextFile(Ensemble ensemble, File textFile, BinMapper binMapper, boolean oneHot)
+			throws Exception
+	{
+		LeafIndexGenerator generator = new LeafIndexGenerator(ensemble, oneHot);
+		generator.setBlockSize(BLOCK_SIZE);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		generator.process(textFile.getPath(), binMapper, output);
+		return output.toByteArray();
+	}
+
+	@Test public void testBinFileLeavesMatchTrees() throws Exception
+	{
+		BlockingThreadPoolExecutor.init(2);
+		Dataset dataset = createDataset();
+		Ensemble ensemble = createEnsemble();
+		assertMatrix(processDataset(ensemble, dataset, false), ensemble, dataset);
+		assertOneHot(processDataset(ensemble, dataset, true), ensemble, dataset);
+	}
+
+	@Test public void testTextFileLeavesMatchTrees() throws Exception
+	{
+		BlockingThreadPoolExecutor.init(2);
+		Dataset dataset = createDataset();
+		Ensemble ensemble = createEnsemble();
+		File textFile = writeTextFile(dataset);
+		BinMapper binMapper = RandomEnsembles.createBinMapper(NUM_FEATURES, 0, getUpperBounds());
+		assertMatrix(processTextFile(ensemble, textFile, binMapper, false), ensemble, dataset);
+		assertOneHot(processTextFile(ensemble, textFile, binMapper, true), ensemble, dataset);
+	}
+}
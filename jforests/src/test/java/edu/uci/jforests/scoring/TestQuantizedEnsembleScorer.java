@@ -0,0 +1,101 @@
+package edu.uci.jforests.scoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.RandomEnsembles;
+import edu.uci.jforests.scoring.QuantizedEnsembleScorer.LeafOutputType;
+
+public class TestQuantizedEnsembleScorer
+{
+	private final static int NUM_BINS = 10;
+	private final static int NUM_TREES = 200;
+
+	private BinnedEnsembleScorer createScorer(int numFeatures, Random rnd) throws Exception
+	{
+		int[] bounds = new int[NUM_BINS];
+		for (int b = 0; b < NUM_BINS; b++) {
+			bounds[b] = b;
+		}
+		Ensemble ensemble = RandomEnsembles.createEnsemble(NUM_TREES, 0, 32, numFeatures, bounds, rnd);
+		return new BinnedEnsembleScorer(ensemble, RandomEnsembles.createBinMapper(numFeatures, 0, bounds));
+	}
+
+	private double getMaxAbsOutput(BinnedEnsembleScorer scorer)
+	{
+		double max = 0;
+		for (int t = 0; t < scorer.getNumTrees(); t++) {
+			for (double output : scorer.getLeafOutputs(t)) {
+				max = Math.max(max, Math.abs(output));
+			}
+		}
+		return max;
+	}
+
+	/*
+	 * Checks that the quantized scorer reaches the same leaves as the double
+	 * scorer and that its scores are within maxError of the double scores,
+	 * both one vector at a time and in batches
+	 */
+	private void assertScoresWithin(BinnedEnsembleScorer scorer, QuantizedEnsembleScorer quantized, double maxError,
+			int numFeatures, Random rnd)
+	{
+		int count = 100;
+		int[][] bins = new int[count][numFeatures];
+		double[] scores = new double[count];
+		for (int batch = 0; batch < 20; batch++) {
+			for (int i = 0; i < count; i++) {
+				for (int f = 0; f < numFeatures; f++) {
+					bins[i][f] = rnd.nextInt(NUM_BINS);
+				}
+			}
+			quantized.score(bins, count, scores);
+			for (int i = 0; i < count; i++) {
+				for (int t = 0; t < NUM_TREES; t++) {
+					assertEquals(scorer.getLeaf(t, bins[i]), quantized.getLeaf(t, bins[i]));
+				}
+				double score = quantized.score(bins[i]);
+				assertEquals(score, scores[i], 1e-9);
+				assertEquals(scorer.score(bins[i]), score, maxError);
+			}
+		}
+	}
+
+	@Test public void testFloatOutputs() throws Exception
+	{
+		Random rnd = new Random(1);
+		BinnedEnsembleScorer scorer = createScorer(5, rnd);
+		QuantizedEnsembleScorer quantized = new QuantizedEnsembleScorer(scorer, LeafOutputType.Float32);
+		assertTrue(quantized.getSizeInBytes() < scorer.getSizeInBytes());
+
+		// Rounding a double to a float has a relative error of at most 2^-24
+		double maxError = NUM_TREES * getMaxAbsOutput(scorer) * Math.pow(2, -24);
+		assertScoresWithin(scorer, quantized, maxError, 5, rnd);
+	}
+
+	@Test public void testFixedOutputs() throws Exception
+	{
+		Random rnd = new Random(2);
+		BinnedEnsembleScorer scorer = createScorer(5, rnd);
+		QuantizedEnsembleScorer quantized = new QuantizedEnsembleScorer(scorer, LeafOutputType.Fixed16);
+		assertEquals(getMaxAbsOutput(scorer) / Short.MAX_VALUE, quantized.getOutputScale(), 1e-15);
+
+		double maxError = NUM_TREES * quantized.getOutputScale() / 2 + 1e-9;
+		assertScoresWithin(scorer, quantized, maxError, 5, rnd);
+	}
+
+	@Test public void testWideFeatureIds() throws Exception
+	{
+		// More than 256 features need 16-bit feature ids
+		Random rnd = new Random(3);
+		BinnedEnsembleScorer scorer = createScorer(300, rnd);
+		QuantizedEnsembleScorer quantized = new QuantizedEnsembleScorer(scorer, LeafOutputType.Fixed16);
+		double maxError = NUM_TREES * quantized.getOutputScale() / 2 + 1e-9;
+		assertScoresWithin(scorer, quantized, maxError, 300, rnd);
+	}
+}
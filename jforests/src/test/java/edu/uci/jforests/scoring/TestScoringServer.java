@@ -0,0 +1,224 @@
+package edu.uci.jforests.scoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+
+import org.junit.Test;
+
+import edu.uci.jforests.dataset.Feature;
+import edu.uci.jforests.input.BinMapper;
+import edu.uci.jforests.learning.trees.Ensemble;
+import edu.uci.jforests.learning.trees.regression.RegressionTree;
+
+public class TestScoringServer
+{
+	private File writeModel(double weight) throws Exception
+	{
+		File modelFile = File.createTempFile("jforests-model", ".txt");
+		modelFile.deleteOnExit();
+		PrintStream model = new PrintStream(modelFile);
+		model.println("<Ensemble>");
+		model.println("\t<Tree leaves=\"3\" weight=\"" + weight + "\">");
+		model.println("\t\t<SplitFeatures>0 1</SplitFeatures>");
+		model.println("\t\t<LeftChildren>-1 -2</LeftChildren>");
+		model.println("\t\t<RightChildren>1 -3</RightChildren>");
+		model.println("\t\t<Thresholds>2 1</Thresholds>");
+		model.println("\t\t<OriginalThresholds>2.0 1.0</OriginalThresholds>");
+		model.println("\t\t<LeafOutputs>1.0 2.0 4.0</LeafOutputs>");
+		model.println("\t</Tree>");
+		model.println("</Ensemble>");
+		model.close();
+		return modelFile;
+	}
+
+	private BinMapper createBinMapper()
+	{
+		return createBinMapper(2, 4);
+	}
+
+	private BinMapper createBinMapper(int numFeatures, int numBins)
+	{
+		Feature[] features = new Feature[numFeatures];
+		for (int f = 0; f < features.length; f++) {
+			features[f] = new Feature(null);
+			features[f].setMin(0);
+			features[f].setFactor(1);
+			features[f].upperBounds = new int[numBins];
+			for (int b = 0; b < numBins; b++) {
+				features[f].upperBounds[b] = b;
+			}
+		}
+		return new BinMapper(features);
+	}
+
+	private BinnedEnsembleScorer createScorer() throws Exception
+	{
+		Ensemble ensemble = new Ensemble();
+		ensemble.loadFromFile(RegressionTree.class, writeModel(0.5));
+		return new BinnedEnsembleScorer(ensemble, createBinMapper());
+	}
+
+	@Test public void testModelHotSwap() throws Exception
+	{
+		File mapperFile = File.createTempFile("jforests-mapper", ".bin");
+		mapperFile.deleteOnExit();
+		createBinMapper().saveToFile(mapperFile.getPath());
+		String mapper = mapperFile.getPath();
+
+		ModelRegistry registry = new ModelRegistry(2);
+		registry.setCanary(new int[][] { { 0 }, { 0, 1 } }, new double[][] { { 1 }, { 3, 3 } }, 2.0);
+		LoadedModel a = registry.load("a", writeModel(0.5).getPath(), mapper, true);
+		LoadedModel b = registry.loadInBackground("b", writeModel(1.0).getPath(), mapper, true).get();
+		assertSame(b, registry.getCurrent());
+		assertSame(a, registry.get("a"));
+		assertEquals(a.getVersion() + 1, b.getVersion());
+
+		// Scores of 'c' deviate too much from 'b' on the canary sample
+		try {
+			registry.load("c", writeModel(10).getPath(), mapper, true);
+			fail();
+		} catch (Exception e) {
+			assertSame(b, registry.getCurrent());
+		}
+
+		ScoringServer server = new ScoringServer(registry, 0, 16, 100, 1);
+		server.start();
+		try {
+			Socket socket = new Socket("127.0.0.1", server.getPort());
+			PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			writer.print("0 1:1\n\n@model a\n0 1:1\n\n");
+			writer.flush();
+			assertEquals("1.0", reader.readLine());
+			assertEquals("0.5", reader.readLine());
+
+			// LOAD is disabled without a model directory
+			File modelFile = writeModel(1.5);
+			writer.print("LOAD d " + modelFile.getPath() + " " + mapper + "\n");
+			writer.flush();
+			assertTrue(reader.readLine().startsWith("ERROR"));
+
+			// Files must be in the model directory
+			server.setModelDirectory(modelFile.getParentFile());
+			writer.print("LOAD d " + modelFile.getName() + " /etc/passwd\n");
+			writer.flush();
+			assertTrue(reader.readLine().startsWith("ERROR"));
+			writer.print("LOAD d ../" + modelFile.getName() + " " + mapper + "\n");
+			writer.flush();
+			assertTrue(reader.readLine().startsWith("ERROR"));
+
+			writer.print("LOAD d " + modelFile.getName() + " " + mapper + "\n0 1:1\n\n");
+			writer.flush();
+			assertTrue(reader.readLine().startsWith("OK d"));
+			assertEquals("1.5", reader.readLine());
+			socket.close();
+		} finally {
+			server.stop();
+			registry.shutdown();
+		}
+		// Only the two most recently used models are kept ('a' was used after 'b')
+		assertEquals(2, registry.getNumRecentModels());
+		assertNull(registry.get("b"));
+		assertSame(a, registry.get("a"));
+	}
+
+	@Test public void testScoringErrorIsReturned() throws Exception
+	{
+		Ensemble ensemble = new Ensemble();
+		ensemble.loadFromFile(RegressionTree.class, writeModel(0.5));
+		BinnedEnsembleScorer scorer = new BinnedEnsembleScorer(ensemble, createBinMapper())
+		{
+			@Override
+			public void score(int[][] bins, int count, double[] scores)
+			{
+				throw new IllegalStateException("broken scorer");
+			}
+		};
+		ScoringServer server = new ScoringServer(scorer, 0, 16, 100, 1);
+		server.start();
+		try {
+			Socket socket = new Socket("127.0.0.1", server.getPort());
+			socket.setSoTimeout(10000);
+			PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			writer.print("0 1:1\n\n0 1:3\n\n");
+			writer.flush();
+			assertTrue(reader.readLine().startsWith("ERROR"));
+			assertTrue(reader.readLine().startsWith("ERROR"));
+			socket.close();
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test public void testBatchScoresMatchSingleScores() throws Exception
+	{
+		BinnedEnsembleScorer scorer = createScorer();
+		int[][] bins = new int[][] { { 0, 0 }, { 3, 0 }, { 3, 3 }, { 2, 3 } };
+		double[] scores = new double[bins.length];
+		scorer.score(bins, bins.length, scores);
+		for (int i = 0; i < bins.length; i++) {
+			assertEquals(scorer.score(bins[i]), scores[i], 0);
+		}
+		assertEquals(0.5, scores[0], 0);
+		assertEquals(1.0, scores[1], 0);
+		assertEquals(2.0, scores[2], 0);
+	}
+
+	@Test public void testConcurrentRequests() throws Exception
+	{
+		final ScoringServer server = new ScoringServer(createScorer(), 0, 64, 2000, 2);
+		server.start();
+		try {
+			final String[] responses = new String[8];
+			Thread[] clients = new Thread[responses.length];
+			for (int c = 0; c < clients.length; c++) {
+				final int id = c;
+				clients[c] = new Thread() {
+					public void run() {
+						try {
+							Socket socket = new Socket("127.0.0.1", server.getPort());
+							PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+							BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+							writer.print("0 qid:" + id + " 1:1\n2 qid:" + id + " 1:3 2:0.6\n1 qid:" + id + " 1:3 2:3\n\n");
+							writer.flush();
+							responses[id] = reader.readLine();
+							socket.close();
+						} catch (Exception e) {
+							e.printStackTrace();
+						}
+					}
+				};
+				clients[c].start();
+			}
+			for (Thread client : clients) {
+				client.join();
+			}
+			for (String response : responses) {
+				assertEquals("0.5 1.0 2.0", response);
+			}
+
+			Socket socket = new Socket("127.0.0.1", server.getPort());
+			PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			writer.print("STATS\n");
+			writer.flush();
+			String stats = reader.readLine();
+			assertTrue(stats, stats.startsWith("requests=8 vectors=24 "));
+			socket.close();
+			assertTrue(server.getStats().getNumBatches() <= 8);
+		} finally {
+			server.stop();
+		}
+	}
+}
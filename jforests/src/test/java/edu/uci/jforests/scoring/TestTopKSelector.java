@@ -0,0 +1,123 @@
+package edu.uci.jforests.scoring;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestTopKSelector
+{
+	/*
+	 * Returns the indices of [begin, end) sorted by decreasing scores and
+	 * then by increasing indices
+	 */
+	private Integer[] sortQuery(final double[] scores, int begin, int end)
+	{
+		Integer[] indices = new Integer[end - begin];
+		for (int i = begin; i < end; i++) {
+			indices[i - begin] = i;
+		}
+		Arrays.sort(indices, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				if (scores[a] != scores[b]) {
+					return (scores[a] > scores[b] ? -1 : 1);
+				}
+				return a.compareTo(b);
+			}
+		});
+		return indices;
+	}
+
+	private void assertTopK(int[] queryBoundaries, double[] scores, int k)
+	{
+		TopKSelector selector = new TopKSelector(k);
+		selector.select(queryBoundaries, scores);
+		assertEquals(queryBoundaries.length - 1, selector.getNumQueries());
+		for (int q = 0; q < selector.getNumQueries(); q++) {
+			Integer[] expected = sortQuery(scores, queryBoundaries[q], queryBoundaries[q + 1]);
+			assertEquals(Math.min(k, expected.length), selector.getCount(q));
+			for (int r = 0; r < selector.getCount(q); r++) {
+				assertEquals(expected[r].intValue(), selector.getIndex(q, r));
+				assertEquals(scores[expected[r]], selector.getScore(q, r), 0);
+			}
+		}
+	}
+
+	@Test public void testTiesAreBrokenByIndex() throws Exception
+	{
+		int[] queryBoundaries = { 0, 6 };
+		double[] scores = { 1, 2, 2, 0, 2, 1 };
+		TopKSelector selector = new TopKSelector(4);
+		selector.select(queryBoundaries, scores);
+		assertEquals(4, selector.getCount(0));
+		int[] expected = { 1, 2, 4, 0 };
+		for (int r = 0; r < expected.length; r++) {
+			assertEquals(expected[r], selector.getIndex(0, r));
+		}
+	}
+
+	@Test public void testKLargerThanQuery() throws Exception
+	{
+		int[] queryBoundaries = { 0, 3, 5 };
+		double[] scores = { 0.5, 1.5, 1.0, -1, 3 };
+		TopKSelector selector = new TopKSelector(10);
+		selector.select(queryBoundaries, scores);
+		assertEquals(3, selector.getCount(0));
+		assertEquals(2, selector.getCount(1));
+		assertEquals(1, selector.getIndex(0, 0));
+		assertEquals(2, selector.getIndex(0, 1));
+		assertEquals(0, selector.getIndex(0, 2));
+		assertEquals(4, selector.getIndex(1, 0));
+		assertEquals(3, selector.getIndex(1, 1));
+	}
+
+	@Test public void testVeryLargeK() throws Exception
+	{
+		// numQueries * k does not fit in an int
+		int[] queryBoundaries = { 0, 3, 5, 9 };
+		double[] scores = { 0.5, 1.5, 1.0, -1, 3, 2, 2, 0, 4 };
+		assertTopK(queryBoundaries, scores, Integer.MAX_VALUE);
+		assertTopK(queryBoundaries, scores, Integer.MAX_VALUE / 2);
+	}
+
+	@Test public void testEmptyQueries() throws Exception
+	{
+		int[] queryBoundaries = { 0, 0, 3, 3, 3, 4, 4 };
+		double[] scores = { 2, 3, 1, 7 };
+		TopKSelector selector = new TopKSelector(2);
+		selector.select(queryBoundaries, scores);
+		int[] counts = { 0, 2, 0, 0, 1, 0 };
+		for (int q = 0; q < counts.length; q++) {
+			assertEquals(counts[q], selector.getCount(q));
+		}
+		assertEquals(1, selector.getIndex(1, 0));
+		assertEquals(0, selector.getIndex(1, 1));
+		assertEquals(3, selector.getIndex(4, 0));
+
+		selector.select(new int[] { 0 }, new double[0]);
+		assertEquals(0, selector.getNumQueries());
+	}
+
+	@Test public void testRandomQueries() throws Exception
+	{
+		// Few distinct scores, so that there are many ties
+		Random rnd = new Random(1);
+		int numQueries = 200;
+		int[] queryBoundaries = new int[numQueries + 1];
+		for (int q = 0; q < numQueries; q++) {
+			queryBoundaries[q + 1] = queryBoundaries[q] + rnd.nextInt(40);
+		}
+		double[] scores = new double[queryBoundaries[numQueries]];
+		for (int i = 0; i < scores.length; i++) {
+			scores[i] = rnd.nextInt(8);
+		}
+		int[] ks = { 1, 3, 10, 50 };
+		for (int k : ks) {
+			assertTopK(queryBoundaries, scores, k);
+		}
+	}
+}
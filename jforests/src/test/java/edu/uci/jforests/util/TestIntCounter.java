@@ -0,0 +1,127 @@
+package edu.uci.jforests.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestIntCounter
+{
+	private void add(IntCounter counter, Map<Integer, Integer> reference, int key, int count)
+	{
+		counter.add(key, count);
+		Integer prev = reference.get(key);
+		reference.put(key, (prev != null ? prev : 0) + count);
+	}
+
+	private void assertSameCounts(Map<Integer, Integer> reference, IntCounter counter)
+	{
+		assertEquals(reference.size(), counter.size());
+		long totalCount = 0;
+		int[] keys = new int[reference.size()];
+		int idx = 0;
+		for (Map.Entry<Integer, Integer> entry : reference.entrySet()) {
+			assertEquals(entry.getValue().intValue(), counter.getCount(entry.getKey()));
+			totalCount += entry.getValue();
+			keys[idx++] = entry.getKey();
+		}
+		assertEquals(totalCount, counter.getTotalCount());
+		Arrays.sort(keys);
+		assertArrayEquals(keys, counter.getSortedKeys());
+	}
+
+	@Test public void testSwitchBetweenHashAndDense() throws Exception
+	{
+		IntCounter counter = new IntCounter();
+		Map<Integer, Integer> reference = new HashMap<Integer, Integer>();
+
+		add(counter, reference, 0, 3);
+		assertTrue(counter.isDense());
+		assertSameCounts(reference, counter);
+
+		// The range 0..1000 needs more than 4 slots per distinct value
+		add(counter, reference, 1000, 1);
+		assertFalse(counter.isDense());
+		assertSameCounts(reference, counter);
+
+		// Filling the range switches back once it has 250 distinct values
+		Random rnd = new Random(1);
+		boolean switched = false;
+		for (int i = 0; i < 5000; i++) {
+			add(counter, reference, 1 + rnd.nextInt(999), 1 + rnd.nextInt(3));
+			if (!switched && counter.isDense()) {
+				switched = true;
+				assertTrue(reference.size() >= 250);
+				assertSameCounts(reference, counter);
+			}
+		}
+		assertTrue(switched);
+		assertSameCounts(reference, counter);
+
+		// Keys just outside of the range grow the dense array
+		add(counter, reference, -5, 1);
+		add(counter, reference, 1010, 2);
+		assertTrue(counter.isDense());
+		assertSameCounts(reference, counter);
+
+		// A far key switches to the hash table again
+		add(counter, reference, Integer.MIN_VALUE, 1);
+		add(counter, reference, Integer.MAX_VALUE, 1);
+		assertFalse(counter.isDense());
+		assertSameCounts(reference, counter);
+		assertEquals(0, counter.getCount(2000));
+	}
+
+	@Test public void testRandomKeys() throws Exception
+	{
+		// Mixes dense runs with sparse keys, so that the counter switches
+		// many times
+		Random rnd = new Random(2);
+		IntCounter counter = new IntCounter();
+		Map<Integer, Integer> reference = new HashMap<Integer, Integer>();
+		int numSwitches = 0;
+		boolean dense = counter.isDense();
+		for (int i = 0; i < 20000; i++) {
+			int key;
+			if (rnd.nextInt(100) == 0) {
+				key = rnd.nextInt();
+			} else {
+				key = (i / 2000) * 10000 + rnd.nextInt(200);
+			}
+			add(counter, reference, key, 1);
+			if (counter.isDense() != dense) {
+				dense = counter.isDense();
+				numSwitches++;
+				assertSameCounts(reference, counter);
+			}
+			if (i % 1000 == 0) {
+				assertSameCounts(reference, counter);
+			}
+		}
+		assertTrue(numSwitches > 1);
+		assertSameCounts(reference, counter);
+	}
+
+	@Test public void testMerge() throws Exception
+	{
+		IntCounter dense = new IntCounter();
+		IntCounter sparse = new IntCounter();
+		Map<Integer, Integer> reference = new HashMap<Integer, Integer>();
+		for (int i = 0; i < 100; i++) {
+			add(dense, reference, i % 20, 1);
+			add(sparse, reference, i * 1000, 2);
+		}
+		assertTrue(dense.isDense());
+		assertFalse(sparse.isDense());
+
+		dense.merge(sparse);
+		assertSameCounts(reference, dense);
+	}
+}